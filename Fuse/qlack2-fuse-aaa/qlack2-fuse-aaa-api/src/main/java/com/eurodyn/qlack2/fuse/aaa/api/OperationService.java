@@ -16,9 +16,11 @@ package com.eurodyn.qlack2.fuse.aaa.api;
 
 import com.eurodyn.qlack2.fuse.aaa.api.dto.GroupHasOperationDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.OperationDTO;
+import com.eurodyn.qlack2.fuse.aaa.api.dto.PermissionQuery;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.ResourceDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.exception.QDynamicOperationException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -221,6 +223,36 @@ public interface OperationService {
 	 */
 	Boolean isPermitted(String userID, String operationName, String resourceObjectID);
 
+	/**
+	 * Performs a number of permission checks for a user at once. Each check has the same
+	 * semantics as isPermitted(String, String, String); however, the permissions of the user and
+	 * of the user's groups are loaded once (in a constant number of queries per level of the group
+	 * hierarchy) and all checks are then evaluated in memory.
+	 *
+	 * @param userID  The id of the user for whom to check the operations
+	 * @param queries The operations (and optionally resources) to check
+	 * @return The result of each check, in the iteration order of the queries: true, if the user
+	 * is allowed the operation. false, if the user is denied the operation. null, if there is no
+	 * information available to reply accordingly.
+	 * @throws QDynamicOperationException If an error occurs while evaluating a dynamic operation.
+	 */
+	List<Boolean> isPermittedBatch(String userID, Collection<PermissionQuery> queries);
+
+	/**
+	 * Filters a number of resources, keeping only the ones on which a user is permitted a specific
+	 * operation (i.e. the resources for which isPermitted(String, String, String) would return
+	 * true). As with isPermittedBatch, the permissions of the user are loaded once for all
+	 * resources.
+	 *
+	 * @param userID            The id of the user for whom to check the operation
+	 * @param operationName     The name of the operation to check
+	 * @param resourceObjectIDs The object IDs of the resources to check
+	 * @return The object IDs of the permitted resources, in their original iteration order.
+	 * @throws QDynamicOperationException If an error occurs while evaluating a dynamic operation.
+	 */
+	Set<String> filterPermittedResources(String userID, String operationName,
+			Collection<String> resourceObjectIDs);
+
 	/**
 	 * Checks whether a specific operation, for a specific group is allowed. The
 	 * check is performed by checking whether the specified group is assigned
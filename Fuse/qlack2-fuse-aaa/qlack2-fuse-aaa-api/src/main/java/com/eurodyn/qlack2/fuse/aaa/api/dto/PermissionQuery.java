@@ -0,0 +1,51 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.aaa.api.dto;
+
+import java.io.Serializable;
+
+/**
+ * A single check of a batch permission check, i.e. an operation optionally on a specific
+ * resource.
+ */
+public class PermissionQuery implements Serializable {
+	private static final long serialVersionUID = 4473614541066284216L;
+	private String operationName;
+	private String resourceObjectID;
+
+	public PermissionQuery() {
+	}
+
+	public PermissionQuery(String operationName, String resourceObjectID) {
+		this.operationName = operationName;
+		this.resourceObjectID = resourceObjectID;
+	}
+
+	public String getOperationName() {
+		return operationName;
+	}
+
+	public void setOperationName(String operationName) {
+		this.operationName = operationName;
+	}
+
+	public String getResourceObjectID() {
+		return resourceObjectID;
+	}
+
+	public void setResourceObjectID(String resourceObjectID) {
+		this.resourceObjectID = resourceObjectID;
+	}
+}
@@ -25,11 +25,14 @@ import com.eurodyn.qlack2.fuse.aaa.impl.model.SessionAttribute;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.User;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.ConverterUtil;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 import org.apache.commons.collections.CollectionUtils;
 import org.joda.time.DateTime;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
@@ -57,9 +60,16 @@ public class AccountingServiceImpl implements AccountingService {
   // JUL reference.
   private static final Logger LOGGER = Logger.getLogger(AccountingServiceImpl.class.getName());
 
+  // The number of sessions deleted per transaction when deleting old sessions.
+  private static final int CLEANUP_CHUNK_SIZE = 1000;
+
   @PersistenceContext(unitName = "fuse-aaa")
   private EntityManager em;
 
+  @Inject
+  @Named("SessionCleanupJob")
+  private SessionCleanupJob sessionCleanupJob;
+
   // QuertyDSL helpers.
   private static QSession qSession = QSession.session;
   private static QSessionAttribute qSessionAttribute = QSessionAttribute.sessionAttribute;
@@ -249,10 +259,16 @@ public class AccountingServiceImpl implements AccountingService {
   }
 
   @Override
+  @Transactional(TxType.NOT_SUPPORTED)
   public long deleteOldSessions(long deleteBeforeDate) {
-    return new JPAQueryFactory(em)
-      .delete(qSession)
-      .where(qSession.createdOn.lt(deleteBeforeDate))
-      .execute();
+    // Delete a chunk of sessions per transaction, so that large deletes do not
+    // lock the sessions table for long.
+    long deleted = 0;
+    int chunk;
+    do {
+      chunk = sessionCleanupJob.deleteSessions(deleteBeforeDate, CLEANUP_CHUNK_SIZE);
+      deleted += chunk;
+    } while (chunk == CLEANUP_CHUNK_SIZE);
+    return deleted;
   }
 }
\ No newline at end of file
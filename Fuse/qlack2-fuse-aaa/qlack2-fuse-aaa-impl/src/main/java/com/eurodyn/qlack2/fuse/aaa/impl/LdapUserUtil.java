@@ -3,6 +3,7 @@ package com.eurodyn.qlack2.fuse.aaa.impl;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Group;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.User;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.UserAttribute;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.PermissionIndex;
 
 import javax.inject.Singleton;
 import javax.naming.AuthenticationException;
@@ -35,6 +36,8 @@ public class LdapUserUtil {
 
   private EntityManager em;
 
+  private PermissionIndex permissionIndex;
+
   private boolean ldapEnable;
   private String ldapUrl;
   private String ldapBaseDN;
@@ -47,6 +50,10 @@ public class LdapUserUtil {
     this.em = em;
   }
 
+  public void setPermissionIndex(PermissionIndex permissionIndex) {
+    this.permissionIndex = permissionIndex;
+  }
+
   public void setLdapEnable(boolean ldapEnable) {
     this.ldapEnable = ldapEnable;
   }
@@ -227,6 +234,7 @@ public class LdapUserUtil {
     List<Group> groups = new ArrayList<Group>();
     groups.add(group);
     user.setGroups(groups);
+    permissionIndex.invalidateUser(user.getId());
 
     return groupId;
   }
@@ -277,6 +285,7 @@ public class LdapUserUtil {
       newGroup.getUsers().add(user);
       user.getGroups().remove(oldGroup);
       user.getGroups().add(newGroup);
+      permissionIndex.invalidateUser(user.getId());
     }
 
     return newGroupId;
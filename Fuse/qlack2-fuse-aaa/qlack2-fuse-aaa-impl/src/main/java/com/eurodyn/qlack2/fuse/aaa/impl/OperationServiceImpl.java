@@ -15,13 +15,17 @@
 package com.eurodyn.qlack2.fuse.aaa.impl;
 
 import com.eurodyn.qlack2.fuse.aaa.api.dto.GroupHasOperationDTO;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -31,6 +35,7 @@ import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 
 import com.eurodyn.qlack2.fuse.aaa.api.OperationService;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.OperationDTO;
+import com.eurodyn.qlack2.fuse.aaa.api.dto.PermissionQuery;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.ResourceDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.exception.QDynamicOperationException;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Group;
@@ -41,10 +46,14 @@ import com.eurodyn.qlack2.fuse.aaa.impl.model.Operation;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Resource;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.User;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.UserHasOperation;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.DynamicOperationCache;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.Grant;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.GroupPermissions;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.PermissionIndex;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.UserPermissions;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.ConverterUtil;
 
 import bsh.EvalError;
-import bsh.Interpreter;
 
 /**
  *
@@ -58,6 +67,12 @@ public class OperationServiceImpl implements OperationService {
     @PersistenceContext(unitName = "fuse-aaa")
     private EntityManager em;
 
+    @Inject
+    private PermissionIndex permissionIndex;
+
+    @Inject
+    private DynamicOperationCache dynamicOperationCache;
+
     private boolean prioritisePositive;
 
 	public void setPrioritisePositive(boolean prioritisePositive) {
@@ -83,11 +98,15 @@ public class OperationServiceImpl implements OperationService {
 		operation.setDescription(operationDTO.getDescription());
 		operation.setDynamic(operationDTO.isDynamic());
 		operation.setDynamicCode(operationDTO.getDynamicCode());
+		permissionIndex.invalidateAll();
+		dynamicOperationCache.invalidateAll();
 	}
 
 	@Override
 	public void deleteOperation(String operationID) {
 		em.remove(Operation.find(operationID, em));
+		permissionIndex.invalidateAll();
+		dynamicOperationCache.invalidateAll();
 	}
 	
 	@Override
@@ -115,6 +134,7 @@ public class OperationServiceImpl implements OperationService {
 			operation.addUserHasOperation(uho);
 			em.persist(uho);
 		}
+		permissionIndex.updateUser(userID, operationName, null, toGrant(uho.getOperation(), isDeny));
 	}
 
 	@Override
@@ -135,6 +155,8 @@ public class OperationServiceImpl implements OperationService {
 			resource.addUserHasOperation(uho);
 			em.persist(uho);
 		}
+		permissionIndex.updateUser(userID, operationName, uho.getResource().getObjectId(),
+				toGrant(uho.getOperation(), isDeny));
 	}
 
 	@Override
@@ -174,6 +196,7 @@ public class OperationServiceImpl implements OperationService {
 			operation.addGroupHasOperation(gho);
 			em.persist(gho);
 		}
+		permissionIndex.updateGroup(groupID, operationName, null, toGrant(gho.getOperation(), isDeny));
 	}
 
 	@Override
@@ -194,6 +217,8 @@ public class OperationServiceImpl implements OperationService {
 			resource.addGroupHasOperation(gho);
 			em.persist(gho);
 		}
+		permissionIndex.updateGroup(groupID, operationName, gho.getResource().getObjectId(),
+				toGrant(gho.getOperation(), isDeny));
 	}
 
 	@Override
@@ -223,6 +248,7 @@ public class OperationServiceImpl implements OperationService {
 		UserHasOperation uho = UserHasOperation.findByUserIDAndOperationName(userID, operationName, em);
 		if (uho != null) {
 			em.remove(uho);
+			permissionIndex.updateUser(userID, operationName, null, null);
 		}
 	}
 
@@ -231,6 +257,7 @@ public class OperationServiceImpl implements OperationService {
 		UserHasOperation uho = UserHasOperation.findByUserAndResourceIDAndOperationName(userID, operationName, resourceID, em);
 		if (uho != null) {
 			em.remove(uho);
+			permissionIndex.updateUser(userID, operationName, uho.getResource().getObjectId(), null);
 		}
 	}
 
@@ -239,6 +266,7 @@ public class OperationServiceImpl implements OperationService {
 		GroupHasOperation gho = GroupHasOperation.findByGroupIDAndOperationName(groupID, operationName, em);
 		if (gho != null) {
 			em.remove(gho);
+			permissionIndex.updateGroup(groupID, operationName, null, null);
 		}
 	}
 
@@ -247,9 +275,14 @@ public class OperationServiceImpl implements OperationService {
 		GroupHasOperation gho = GroupHasOperation.findByGroupAndResourceIDAndOperationName(groupID, operationName, resourceID, em);
 		if (gho != null) {
 			em.remove(gho);
+			permissionIndex.updateGroup(groupID, operationName, gho.getResource().getObjectId(), null);
 		}
 	}
 
+	private Grant toGrant(Operation operation, boolean isDeny) {
+		return new Grant(operation.getName(), isDeny, operation.isDynamic(), operation.getDynamicCode());
+	}
+
 	@Override
 	public Boolean isPermitted(String userId, String operationName) {
 		return isPermitted(userId, operationName, null);
@@ -261,7 +294,10 @@ public class OperationServiceImpl implements OperationService {
 				Level.FINEST,
 				"Checking permissions for user ''{0}'', operation ''{1}'' and resource object ID ''{2}''.",
 				new String[] { userId, operationName, resourceObjectID });
-		User user = User.find(userId, em);
+		UserPermissions user = permissionIndex.getUser(userId, em);
+		if (user == null) {
+			return null;
+		}
 
 		// If the user is a superadmin then the operation is permitted
 		// by definition
@@ -269,31 +305,25 @@ public class OperationServiceImpl implements OperationService {
 			return true;
 		}
 
-		Operation operation = Operation.findByName(operationName, em);
-		String resourceId = (resourceObjectID == null) ? null : Resource.findByObjectID(resourceObjectID, em).getId();
-
 		Boolean retVal = null;
-		UserHasOperation uho = (resourceId == null)
-				? UserHasOperation.findByUserIDAndOperationName(userId, operationName, em)
-				: UserHasOperation.findByUserAndResourceIDAndOperationName(userId, operationName, resourceId, em);
+		Grant grant = user.getGrants().get(operationName, resourceObjectID);
 
 		// Check the user's permission on the operation
-		if (uho != null) {
+		if (grant != null) {
 			// First check whether this is a dynamic operation.
-			if (operation.isDynamic()) {
-				retVal = evaluateDynamicOperation(operation, userId, null,
-						resourceObjectID);
+			if (grant.isDynamic()) {
+				retVal = evaluateDynamicOperation(grant.getOperationName(), grant.getDynamicCode(),
+						userId, null, resourceObjectID);
 			}
 			else {
-				retVal = !uho.isDeny();
+				retVal = !grant.isDeny();
 			}
 		}
 		// If no user permission on the operation exists check the permissions for the user groups.
 		else {
-			List<Group> userGroups = user.getGroups();
-			for (Group group : userGroups) {
+			for (String groupID : user.getGroupIDs()) {
 				Boolean groupPermission;
-				groupPermission = isPermittedForGroup(group.getId(), operationName, resourceObjectID);
+				groupPermission = isPermittedForGroup(groupID, operationName, resourceObjectID);
 				if (groupPermission != null) {
 					// Assign the permission we got for the group to the return value only if
 					// a. We haven't found another permission for this user so far
@@ -310,6 +340,49 @@ public class OperationServiceImpl implements OperationService {
 		return retVal;
 	}
 
+	@Override
+	public List<Boolean> isPermittedBatch(String userId, Collection<PermissionQuery> queries) {
+		LOGGER.log(Level.FINEST, "Checking {0} permissions for user ''{1}''.",
+				new Object[] { queries.size(), userId });
+		preloadPermissions(userId);
+
+		List<Boolean> retVal = new ArrayList<>(queries.size());
+		for (PermissionQuery query : queries) {
+			retVal.add(isPermitted(userId, query.getOperationName(), query.getResourceObjectID()));
+		}
+
+		return retVal;
+	}
+
+	@Override
+	public Set<String> filterPermittedResources(String userId, String operationName,
+			Collection<String> resourceObjectIDs) {
+		LOGGER.log(Level.FINEST, "Filtering {0} resources for user ''{1}'' and operation ''{2}''.",
+				new Object[] { resourceObjectIDs.size(), userId, operationName });
+		preloadPermissions(userId);
+
+		Set<String> retVal = new LinkedHashSet<>();
+		for (String resourceObjectID : resourceObjectIDs) {
+			if (Boolean.TRUE.equals(isPermitted(userId, operationName, resourceObjectID))) {
+				retVal.add(resourceObjectID);
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Loads the permissions of a user and of the whole hierarchy of the user's groups in a
+	 * constant number of queries (per hierarchy level), so that subsequent checks for this user
+	 * are answered from the permission index.
+	 */
+	private void preloadPermissions(String userId) {
+		UserPermissions user = permissionIndex.getUser(userId, em);
+		if (user != null && !user.isSuperadmin()) {
+			permissionIndex.preloadGroups(user, em);
+		}
+	}
+
 	@Override
 	public Boolean isPermittedForGroup(String groupID, String operationName) {
 		return isPermittedForGroup(groupID, operationName, null);
@@ -368,29 +441,27 @@ public class OperationServiceImpl implements OperationService {
 				"Checking permissions for group {0}, operation {1} and resource with object ID {2}.",
 				new String[] { groupID, operationName, resourceObjectID});
 
-		Group group = Group.find(groupID, em);
-		Operation operation = Operation.findByName(operationName, em);
-		String resourceId = (resourceObjectID == null) ? null : Resource.findByObjectID(resourceObjectID, em).getId();
-
 		Boolean retVal = null;
-		GroupHasOperation gho = (resourceId == null)
-				? GroupHasOperation.findByGroupIDAndOperationName(groupID, operationName, em)
-				: GroupHasOperation.findByGroupAndResourceIDAndOperationName(groupID, operationName, resourceId, em);
-		if (gho != null) {
-			// First check whether this is a dynamic operation.
-			if (operation.isDynamic()) {
-				retVal = evaluateDynamicOperation(operation, null, groupID,
-						resourceObjectID);
+		GroupPermissions group = permissionIndex.getGroup(groupID, em);
+		// If a group is not assigned the operation check the group's parents
+		// until a result is found or until no other parent exists.
+		while (group != null && retVal == null) {
+			Grant grant = group.getGrants().get(operationName, resourceObjectID);
+			if (grant != null) {
+				// First check whether this is a dynamic operation.
+				if (grant.isDynamic()) {
+					retVal = evaluateDynamicOperation(grant.getOperationName(), grant.getDynamicCode(),
+							null, group.getGroupID(), resourceObjectID);
+				}
+				else {
+					retVal = !grant.isDeny();
+				}
 			}
 			else {
-				retVal = !gho.isDeny();
+				group = (group.getParentID() != null)
+						? permissionIndex.getGroup(group.getParentID(), em) : null;
 			}
 		}
-		else if (group.getParent() != null) {
-			// If this group is not assigned the operation check the group's
-			// parents until a result is found or until no other parent exists.
-			retVal = isPermittedForGroup(group.getParent().getId(), operationName, resourceObjectID);
-		}
 
 		return retVal;
 	}
@@ -582,30 +653,27 @@ public class OperationServiceImpl implements OperationService {
 
 	private Boolean evaluateDynamicOperation(Operation operation,
 			String userID, String groupID, String resourceObjectID) {
+		return evaluateDynamicOperation(operation.getName(), operation.getDynamicCode(),
+				userID, groupID, resourceObjectID);
+	}
+
+	private Boolean evaluateDynamicOperation(String operationName, String algorithm,
+			String userID, String groupID, String resourceObjectID) {
 		LOGGER.log(Level.FINEST, "Evaluating dynamic operation ''{0}''.",
-				operation.getName());
+				operationName);
 
-		Boolean retVal;
-		String algorithm = operation.getDynamicCode();
-		// Create a BeanShell interpreter for this operation.
-		Interpreter i = new Interpreter();
-		// Pass parameters to the algorithm.
 		try {
-			i.set("userID", userID);
-			i.set("groupID", groupID);
-			i.set("resourceObjectID", resourceObjectID);
-			i.set("entitymanager", em);
-			i.eval(algorithm);
-			retVal = ((Boolean) i.get("retVal")).booleanValue();
+			// The code of the operation is compiled once and reused, receiving
+			// userID, groupID, resourceObjectID and entitymanager as parameters.
+			return dynamicOperationCache.evaluate(operationName, algorithm,
+					userID, groupID, resourceObjectID, em);
 		} catch (EvalError ex) {
 			// Catching the EvalError in order to convert it to
 			// a RuntimeException which will also rollback the transaction.
 			throw new QDynamicOperationException(
 					"Error evaluating dynamic operation '"
-							+ operation.getName() + "'.");
+							+ operationName + "'.");
 		}
-
-		return retVal;
 	}
 
 	@Override
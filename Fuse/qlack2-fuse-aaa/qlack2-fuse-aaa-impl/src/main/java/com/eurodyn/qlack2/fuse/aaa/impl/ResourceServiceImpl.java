@@ -17,9 +17,11 @@ package com.eurodyn.qlack2.fuse.aaa.impl;
 import com.eurodyn.qlack2.fuse.aaa.api.ResourceService;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.ResourceDTO;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Resource;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.PermissionIndex;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.ConverterUtil;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -38,6 +40,9 @@ public class ResourceServiceImpl implements ResourceService {
 	@PersistenceContext(unitName = "fuse-aaa")
     private EntityManager em;
 
+	@Inject
+	private PermissionIndex permissionIndex;
+
 	@Override
 	public String createResource(ResourceDTO resourceDTO) {
 		Resource resource = new Resource();
@@ -54,11 +59,14 @@ public class ResourceServiceImpl implements ResourceService {
 		resource.setName(resourceDTO.getName());
 		resource.setDescription(resourceDTO.getDescription());
 		resource.setObjectId(resourceDTO.getObjectID());
+		// Permissions are indexed by resource object ID.
+		permissionIndex.invalidateAll();
 	}
 
 	@Override
 	public void deleteResource(String resourceID) {
 		em.remove(Resource.find(resourceID, em));
+		permissionIndex.invalidateAll();
 	}
 
 	@Override
@@ -66,11 +74,13 @@ public class ResourceServiceImpl implements ResourceService {
 		for (String resourceID : resourceIDs) {
 			em.remove(Resource.find(resourceID, em));
 		}
+		permissionIndex.invalidateAll();
 	}
 
 	@Override
 	public void deleteResourceByObjectId(String objectID) {
 		em.remove(Resource.findByObjectID(objectID, em));
+		permissionIndex.invalidateAll();
 	}
 
 	@Override
@@ -78,6 +88,7 @@ public class ResourceServiceImpl implements ResourceService {
 		for (String objectID : objectIDs) {
 			em.remove(Resource.findByObjectID(objectID, em));
 		}
+		permissionIndex.invalidateAll();
 	}
 
 	@Override
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl;
+
+import com.eurodyn.qlack2.fuse.aaa.impl.model.QSession;
+import com.eurodyn.qlack2.util.cleanup.api.CleanupJob;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+/**
+ * Deletes the sessions (together with their attributes) created more than a
+ * configured time ago, oldest first, using the index on the creation time of
+ * the sessions. This bean is configured using Blueprint; the job does nothing
+ * when the retention is 0.
+ *
+ * @author European Dynamics SA
+ */
+@Transactional(TxType.REQUIRES_NEW)
+public class SessionCleanupJob implements CleanupJob {
+
+  @PersistenceContext(unitName = "fuse-aaa")
+  private EntityManager em;
+
+  // QuertyDSL helpers.
+  private static QSession qSession = QSession.session;
+
+  // The time (in msec) for which sessions are kept, 0 to keep them forever.
+  private long sessionRetention;
+
+  public void setSessionRetention(long sessionRetention) {
+    this.sessionRetention = sessionRetention;
+  }
+
+  @Override
+  public String getName() {
+    return "aaa.sessions";
+  }
+
+  @Override
+  public int deleteChunk(int maxRows) {
+    if (sessionRetention <= 0) {
+      return 0;
+    }
+    return deleteSessions(System.currentTimeMillis() - sessionRetention, maxRows);
+  }
+
+  @Override
+  public long getLag() {
+    if (sessionRetention <= 0) {
+      return 0;
+    }
+    long deleteBeforeDate = System.currentTimeMillis() - sessionRetention;
+    Long oldest = new JPAQueryFactory(em)
+      .select(qSession.createdOn.min())
+      .from(qSession)
+      .where(qSession.createdOn.lt(deleteBeforeDate))
+      .fetchOne();
+    return oldest != null ? deleteBeforeDate - oldest : 0;
+  }
+
+  /**
+   * Deletes some of the sessions created before a certain date, regardless of
+   * the configuration.
+   *
+   * @param deleteBeforeDate The date (in milliseconds) before which sessions are deleted.
+   * @param maxRows The maximum number of sessions to delete.
+   * @return The number of sessions deleted.
+   */
+  public int deleteSessions(long deleteBeforeDate, int maxRows) {
+    List<String> sessionIDs = new JPAQueryFactory(em)
+      .select(qSession.id)
+      .from(qSession)
+      .where(qSession.createdOn.lt(deleteBeforeDate))
+      .orderBy(qSession.createdOn.asc())
+      .limit(maxRows)
+      .fetch();
+    if (sessionIDs.isEmpty()) {
+      return 0;
+    }
+    // Session attributes are deleted by the database (on delete cascade).
+    return (int) new JPAQueryFactory(em)
+      .delete(qSession)
+      .where(qSession.id.in(sessionIDs))
+      .execute();
+  }
+}
@@ -20,9 +20,11 @@ import com.eurodyn.qlack2.fuse.aaa.api.exception.QInvalidGroupHierarchyException
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Group;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.QGroup;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.User;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.PermissionIndex;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.ConverterUtil;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import java.util.stream.Collectors;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -47,6 +49,9 @@ public class UserGroupServiceImpl implements UserGroupService {
   @PersistenceContext(unitName = "fuse-aaa")
   private EntityManager em;
 
+  @Inject
+  private PermissionIndex permissionIndex;
+
   // QueryDSL helpers.
   private static QGroup qGroup = QGroup.group;
 
@@ -78,6 +83,8 @@ public class UserGroupServiceImpl implements UserGroupService {
   @Override
   public void deleteGroup(String groupID) {
     em.remove(Group.find(groupID, em));
+    // Members and descendants of the group are affected.
+    permissionIndex.invalidateAll();
   }
 
   @Override
@@ -99,6 +106,7 @@ public class UserGroupServiceImpl implements UserGroupService {
     }
 
     group.setParent(newParent);
+    permissionIndex.invalidateGroup(groupID);
   }
 
   @Override
@@ -217,6 +225,7 @@ public class UserGroupServiceImpl implements UserGroupService {
       }
       user.getGroups().add(group);
     }
+    permissionIndex.invalidateUsers(userIDs);
   }
 
   @Override
@@ -258,6 +267,7 @@ public class UserGroupServiceImpl implements UserGroupService {
       User user = User.find(userID, em);
       group.getUsers().remove(user);
     }
+    permissionIndex.invalidateUsers(userIDs);
   }
 
   @Override
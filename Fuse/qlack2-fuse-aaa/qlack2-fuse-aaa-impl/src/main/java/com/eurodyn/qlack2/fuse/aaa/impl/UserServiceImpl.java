@@ -26,6 +26,7 @@ import com.eurodyn.qlack2.fuse.aaa.impl.model.QUserAttribute;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.Session;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.User;
 import com.eurodyn.qlack2.fuse.aaa.impl.model.UserAttribute;
+import com.eurodyn.qlack2.fuse.aaa.impl.permission.PermissionIndex;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.AaaUserSearchHelper;
 import com.eurodyn.qlack2.fuse.aaa.impl.util.ConverterUtil;
 import com.querydsl.jpa.impl.JPAQueryFactory;
@@ -77,6 +78,9 @@ public class UserServiceImpl implements UserService {
   @Inject
   private LdapUserUtil ldapUserUtil;
 
+  @Inject
+  private PermissionIndex permissionIndex;
+
   private static final int saltLength = 16;
 
   @Override
@@ -112,6 +116,7 @@ public class UserServiceImpl implements UserService {
     user.setStatus(dto.getStatus());
     user.setSuperadmin(dto.isSuperadmin());
     user.setExternal(dto.isExternal());
+    permissionIndex.invalidateUser(dto.getId());
 
     if (dto.getUserAttributes() != null) {
       for (UserAttributeDTO attribute : dto.getUserAttributes()) {
@@ -129,6 +134,7 @@ public class UserServiceImpl implements UserService {
   public void deleteUser(String userID) {
     User user = User.find(userID, em);
     em.remove(user);
+    permissionIndex.invalidateUser(userID);
   }
 
   @Override
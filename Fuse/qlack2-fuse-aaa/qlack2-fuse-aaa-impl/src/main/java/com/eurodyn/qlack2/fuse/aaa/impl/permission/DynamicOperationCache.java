@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import bsh.EvalError;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import org.apache.aries.blueprint.annotation.config.ConfigProperty;
+
+/**
+ * Keeps the compiled evaluators of dynamic operations, so that the code of an operation is parsed
+ * once per version of the operation rather than on every permission check. Evaluators are
+ * recompiled whenever the code of an operation changes and are also dropped explicitly when
+ * operations are updated or deleted.
+ *
+ * Optionally (when dynamicOperation.results.expiryTime is set), the results of evaluations are also kept for a short
+ * time per operation, user, group and resource. Since dynamic operations may depend on arbitrary
+ * data, this is disabled by default.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+public class DynamicOperationCache {
+
+  private static final Logger LOGGER = Logger.getLogger(DynamicOperationCache.class.getName());
+
+  @ConfigProperty("${dynamicOperation.cache.maxEntries}")
+  private long maxEntries = 1000;
+
+  @ConfigProperty("${dynamicOperation.results.maxEntries}")
+  private long resultMaxEntries = 10000;
+
+  @ConfigProperty("${dynamicOperation.results.expiryTime}")
+  private long resultExpiryTime = 0;
+
+  private Cache<String, DynamicOperationEvaluator> evaluators;
+  private Cache<ResultKey, Boolean> results;
+
+  public void setMaxEntries(long maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public void setResultMaxEntries(long resultMaxEntries) {
+    this.resultMaxEntries = resultMaxEntries;
+  }
+
+  public void setResultExpiryTime(long resultExpiryTime) {
+    this.resultExpiryTime = resultExpiryTime;
+  }
+
+  @PostConstruct
+  public void init() {
+    evaluators = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    if (resultExpiryTime > 0) {
+      results = CacheBuilder.newBuilder().maximumSize(resultMaxEntries)
+        .expireAfterWrite(resultExpiryTime, TimeUnit.MILLISECONDS).build();
+    }
+  }
+
+  /**
+   * Evaluates a dynamic operation, compiling its code if this is the first evaluation of this
+   * version of the operation.
+   *
+   * @param operationName The name of the operation.
+   * @param code The BeanShell code of the operation.
+   * @param userID The ID of the user checked, if any.
+   * @param groupID The ID of the group checked, if any.
+   * @param resourceObjectID The object ID of the resource checked, if any.
+   * @param em The entity manager made available to the code.
+   * @return The result of the evaluation.
+   * @throws EvalError If the code can not be compiled or evaluated.
+   */
+  public boolean evaluate(String operationName, String code, String userID, String groupID,
+    String resourceObjectID, EntityManager em) throws EvalError {
+    ResultKey resultKey = null;
+    if (results != null) {
+      resultKey = new ResultKey(operationName, code, userID, groupID, resourceObjectID);
+      Boolean retVal = results.getIfPresent(resultKey);
+      if (retVal != null) {
+        return retVal;
+      }
+    }
+
+    boolean retVal = getEvaluator(operationName, code)
+      .evaluate(userID, groupID, resourceObjectID, em);
+    if (resultKey != null) {
+      results.put(resultKey, retVal);
+    }
+
+    return retVal;
+  }
+
+  private DynamicOperationEvaluator getEvaluator(String operationName, String code)
+    throws EvalError {
+    DynamicOperationEvaluator evaluator = evaluators.getIfPresent(operationName);
+    // The code is compared as well, so that evaluators compiled for a previous version of the
+    // operation (e.g. one updated on another cluster node) are never used.
+    if (evaluator == null || !Objects.equals(evaluator.getCode(), code)) {
+      LOGGER.log(Level.FINEST, "Compiling dynamic operation ''{0}''.", operationName);
+      evaluator = new DynamicOperationEvaluator(operationName, code);
+      evaluators.put(operationName, evaluator);
+    }
+
+    return evaluator;
+  }
+
+  /**
+   * Drops the compiled evaluators and cached results of all operations.
+   */
+  public void invalidateAll() {
+    evaluators.invalidateAll();
+    if (results != null) {
+      results.invalidateAll();
+    }
+  }
+
+  private static final class ResultKey {
+
+    private final String[] values;
+    private final int hashCode;
+
+    ResultKey(String... values) {
+      this.values = values;
+      this.hashCode = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof ResultKey && Arrays.equals(values, ((ResultKey) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
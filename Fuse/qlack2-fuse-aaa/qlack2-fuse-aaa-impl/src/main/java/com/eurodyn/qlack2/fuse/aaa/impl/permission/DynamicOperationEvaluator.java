@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import bsh.BshMethod;
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.Primitive;
+import javax.persistence.EntityManager;
+
+/**
+ * The compiled form of the code of a dynamic operation. The code is parsed once, wrapped in a
+ * BeanShell method taking the parameters previously set on a per-check interpreter ('userID',
+ * 'groupID', 'resourceObjectID' and 'entitymanager') and returning 'retVal'. Every evaluation
+ * invokes this method in a new, method-local namespace, so a single evaluator can be shared by
+ * concurrent permission checks.
+ */
+public final class DynamicOperationEvaluator {
+
+  private static final String METHOD_NAME = "qlack2EvaluateDynamicOperation";
+
+  private final String operationName;
+  private final String code;
+  private final Interpreter interpreter;
+  private final BshMethod method;
+
+  /**
+   * Compiles the code of a dynamic operation.
+   *
+   * @param operationName The name of the operation.
+   * @param code The BeanShell code of the operation, setting 'retVal'.
+   * @throws EvalError If the code can not be parsed.
+   */
+  public DynamicOperationEvaluator(String operationName, String code) throws EvalError {
+    this.operationName = operationName;
+    this.code = code;
+    interpreter = new Interpreter();
+    interpreter.eval(METHOD_NAME + "(userID, groupID, resourceObjectID, entitymanager) {\n"
+      + (code != null ? code : "") + "\nreturn retVal;\n}");
+    method = findMethod(interpreter);
+  }
+
+  private static BshMethod findMethod(Interpreter interpreter) throws EvalError {
+    for (BshMethod candidate : interpreter.getNameSpace().getMethods()) {
+      if (METHOD_NAME.equals(candidate.getName())) {
+        return candidate;
+      }
+    }
+
+    throw new EvalError("Dynamic operation could not be compiled.", null, null);
+  }
+
+  public String getOperationName() {
+    return operationName;
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  /**
+   * Evaluates the operation.
+   *
+   * @return The value of 'retVal' as set by the code of the operation.
+   * @throws EvalError If the code fails or does not set 'retVal' to a boolean.
+   */
+  public boolean evaluate(String userID, String groupID, String resourceObjectID,
+    EntityManager em) throws EvalError {
+    Object retVal = Primitive.unwrap(method.invoke(
+      new Object[]{userID, groupID, resourceObjectID, em}, interpreter));
+    if (!(retVal instanceof Boolean)) {
+      throw new EvalError("Dynamic operation did not return a boolean.", null, null);
+    }
+
+    return (Boolean) retVal;
+  }
+}
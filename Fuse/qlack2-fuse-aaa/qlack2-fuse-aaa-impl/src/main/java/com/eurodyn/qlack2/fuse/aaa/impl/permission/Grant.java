@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+/**
+ * An immutable, detached copy of an operation assigned to a user or a group (optionally on a
+ * specific resource).
+ */
+public final class Grant {
+
+  private final String operationName;
+  private final boolean deny;
+  private final boolean dynamic;
+  private final String dynamicCode;
+
+  public Grant(String operationName, boolean deny, boolean dynamic, String dynamicCode) {
+    this.operationName = operationName;
+    this.deny = deny;
+    this.dynamic = dynamic;
+    this.dynamicCode = dynamicCode;
+  }
+
+  public String getOperationName() {
+    return operationName;
+  }
+
+  public boolean isDeny() {
+    return deny;
+  }
+
+  public boolean isDynamic() {
+    return dynamic;
+  }
+
+  public String getDynamicCode() {
+    return dynamicCode;
+  }
+}
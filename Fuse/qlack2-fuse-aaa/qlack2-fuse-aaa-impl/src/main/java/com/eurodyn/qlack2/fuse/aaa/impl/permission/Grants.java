@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable table of the operations assigned to a user or a group, indexed by operation name
+ * and resource object ID (null for operations not assigned on a specific resource).
+ */
+public final class Grants {
+
+  private final Map<String, Map<String, Grant>> grants;
+
+  private Grants(Map<String, Map<String, Grant>> grants) {
+    this.grants = grants;
+  }
+
+  /**
+   * Looks up a grant.
+   *
+   * @param operationName The name of the operation.
+   * @param resourceObjectID The object ID of the resource or null for generic operations.
+   * @return The matching grant or null if the operation is not assigned.
+   */
+  public Grant get(String operationName, String resourceObjectID) {
+    Map<String, Grant> byResource = grants.get(operationName);
+    return byResource != null ? byResource.get(resourceObjectID) : null;
+  }
+
+  /**
+   * @param operationName The name of the operation.
+   * @return The grants of the operation, indexed by resource object ID.
+   */
+  public Map<String, Grant> get(String operationName) {
+    Map<String, Grant> byResource = grants.get(operationName);
+    return byResource != null ? byResource : Collections.<String, Grant>emptyMap();
+  }
+
+  /**
+   * Creates a copy of these grants with a single grant replaced.
+   *
+   * @param operationName The name of the operation.
+   * @param resourceObjectID The object ID of the resource or null for generic operations.
+   * @param grant The new grant or null to remove the operation.
+   * @return The updated copy.
+   */
+  public Grants with(String operationName, String resourceObjectID, Grant grant) {
+    Map<String, Map<String, Grant>> retVal = new HashMap<>(grants);
+    Map<String, Grant> byResource = new HashMap<>(get(operationName));
+    if (grant != null) {
+      byResource.put(resourceObjectID, grant);
+    } else {
+      byResource.remove(resourceObjectID);
+    }
+    if (byResource.isEmpty()) {
+      retVal.remove(operationName);
+    } else {
+      retVal.put(operationName, byResource);
+    }
+
+    return new Grants(retVal);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+
+    private final Map<String, Map<String, Grant>> grants = new HashMap<>();
+
+    private Builder() {
+    }
+
+    /**
+     * Adds a grant. In the (unexpected) case of multiple resources with the same object ID, the
+     * first grant added is kept, as with the database lookups by object ID.
+     */
+    public Builder add(String resourceObjectID, Grant grant) {
+      Map<String, Grant> byResource = grants.get(grant.getOperationName());
+      if (byResource == null) {
+        byResource = new HashMap<>();
+        grants.put(grant.getOperationName(), byResource);
+      }
+      if (!byResource.containsKey(resourceObjectID)) {
+        byResource.put(resourceObjectID, grant);
+      }
+
+      return this;
+    }
+
+    public Grants build() {
+      return new Grants(grants);
+    }
+  }
+}
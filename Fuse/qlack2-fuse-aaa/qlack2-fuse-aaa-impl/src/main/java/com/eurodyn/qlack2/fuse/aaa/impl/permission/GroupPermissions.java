@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+/**
+ * An immutable snapshot of the permission related information of a group.
+ */
+public final class GroupPermissions {
+
+  private final String groupID;
+  private final String parentID;
+  private final Grants grants;
+
+  public GroupPermissions(String groupID, String parentID, Grants grants) {
+    this.groupID = groupID;
+    this.parentID = parentID;
+    this.grants = grants;
+  }
+
+  public String getGroupID() {
+    return groupID;
+  }
+
+  public String getParentID() {
+    return parentID;
+  }
+
+  public Grants getGrants() {
+    return grants;
+  }
+
+  public GroupPermissions withGrants(Grants grants) {
+    return new GroupPermissions(groupID, parentID, grants);
+  }
+}
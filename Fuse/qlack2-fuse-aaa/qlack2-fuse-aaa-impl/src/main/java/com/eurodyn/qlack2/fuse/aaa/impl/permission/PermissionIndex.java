@@ -0,0 +1,607 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.apache.aries.blueprint.annotation.config.ConfigProperty;
+import org.ops4j.pax.cdi.api.OsgiService;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * An in-memory index of the effective permission related information of users and groups, used
+ * to answer permission checks without querying the database. Entries are compiled lazily (one
+ * query per table) the first time a user or group is checked.
+ *
+ * The AAA services report every change of the underlying data to the index; changes are collected
+ * per transaction and applied once the transaction commits, so that concurrent checks never
+ * re-load uncommitted data. Changes to the operations of a user or group update the existing entry
+ * in place, any other change drops the affected entries. Until its transaction commits, checks
+ * within the modifying transaction bypass the index for the affected users and groups. When a
+ * QlackClusterService is available, committed changes are also propagated to the other nodes of
+ * the cluster (where the affected entries are dropped). Entries also expire after expiryTime, as
+ * a safety net for changes made outside the AAA services.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+public class PermissionIndex {
+
+  private static final Logger LOGGER = Logger.getLogger(PermissionIndex.class.getName());
+
+  /**
+   * The topic on which invalidations are exchanged between cluster nodes.
+   */
+  static final String CLUSTER_TOPIC = "qlack2-fuse-aaa-permissions";
+
+  private static final String CLUSTER_SERVICE =
+    "com.eurodyn.qlack2.util.cluster.core.QlackClusterService";
+
+  @ConfigProperty("${permission.index.maxEntries}")
+  private long maxEntries = 10000;
+
+  @ConfigProperty("${permission.index.expiryTime}")
+  private long expiryTime = 600000;
+
+  @Inject
+  @OsgiService
+  private TransactionSynchronizationRegistry tsr;
+
+  private Cache<String, UserPermissions> users;
+  private Cache<String, GroupPermissions> groups;
+
+  /**
+   * Incremented on every invalidation so that entries loaded concurrently with an invalidation
+   * are not put in the index.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private ServiceTracker<Object, Object> clusterTracker;
+
+  public void setMaxEntries(long maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public void setExpiryTime(long expiryTime) {
+    this.expiryTime = expiryTime;
+  }
+
+  public void setTsr(TransactionSynchronizationRegistry tsr) {
+    this.tsr = tsr;
+  }
+
+  @PostConstruct
+  public void init() {
+    users = CacheBuilder.newBuilder().maximumSize(maxEntries)
+      .expireAfterWrite(expiryTime, TimeUnit.MILLISECONDS).build();
+    groups = CacheBuilder.newBuilder().maximumSize(maxEntries)
+      .expireAfterWrite(expiryTime, TimeUnit.MILLISECONDS).build();
+    trackClusterService();
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (clusterTracker != null) {
+      clusterTracker.close();
+    }
+  }
+
+  /**
+   * Looks up (loading it if necessary) the permissions of a user.
+   *
+   * @param userID The ID of the user.
+   * @param em The entity manager to load the permissions with.
+   * @return The permissions of the user or null if the user does not exist.
+   */
+  public UserPermissions getUser(String userID, EntityManager em) {
+    if (current().affectsUser(userID)) {
+      return loadUser(userID, em);
+    }
+
+    UserPermissions retVal = users.getIfPresent(userID);
+    if (retVal == null) {
+      long loadGeneration = generation.get();
+      retVal = loadUser(userID, em);
+      if (retVal != null) {
+        fill(users, userID, retVal, loadGeneration);
+      }
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Looks up (loading it if necessary) the permissions of a group.
+   *
+   * @param groupID The ID of the group.
+   * @param em The entity manager to load the permissions with.
+   * @return The permissions of the group or null if the group does not exist.
+   */
+  public GroupPermissions getGroup(String groupID, EntityManager em) {
+    if (current().affectsGroup(groupID)) {
+      return loadGroup(groupID, em);
+    }
+
+    GroupPermissions retVal = groups.getIfPresent(groupID);
+    if (retVal == null) {
+      long loadGeneration = generation.get();
+      retVal = loadGroup(groupID, em);
+      if (retVal != null) {
+        fill(groups, groupID, retVal, loadGeneration);
+      }
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Loads the permissions of the groups of a user as well as of all their ancestors, fetching the
+   * groups missing from the index with two queries per level of the group hierarchy.
+   *
+   * @param user The permissions of the user.
+   * @param em The entity manager to load the permissions with.
+   */
+  public void preloadGroups(UserPermissions user, EntityManager em) {
+    Set<String> visited = new HashSet<>();
+    Set<String> level = new HashSet<>(user.getGroupIDs());
+    while (!level.isEmpty()) {
+      visited.addAll(level);
+      Set<String> parents = new HashSet<>();
+      for (GroupPermissions group : getGroups(level, em)) {
+        if (group.getParentID() != null && !visited.contains(group.getParentID())) {
+          parents.add(group.getParentID());
+        }
+      }
+      level = parents;
+    }
+  }
+
+  private List<GroupPermissions> getGroups(Collection<String> groupIDs, EntityManager em) {
+    Changes pending = current();
+    List<GroupPermissions> retVal = new ArrayList<>(groupIDs.size());
+    List<String> missing = new ArrayList<>();
+    for (String groupID : groupIDs) {
+      GroupPermissions group = pending.affectsGroup(groupID) ? null : groups.getIfPresent(groupID);
+      if (group != null) {
+        retVal.add(group);
+      } else {
+        missing.add(groupID);
+      }
+    }
+    if (missing.isEmpty()) {
+      return retVal;
+    }
+
+    LOGGER.log(Level.FINEST, "Compiling permissions of groups {0}.", missing);
+    long loadGeneration = generation.get();
+    List<Object[]> rows = em.createQuery(
+      "SELECT g.id, p.id FROM Group g LEFT JOIN g.parent p WHERE g.id IN :groupIDs",
+      Object[].class).setParameter("groupIDs", missing).getResultList();
+    Map<String, String> parentIDs = new HashMap<>();
+    Map<String, Grants.Builder> grants = new HashMap<>();
+    for (Object[] row : rows) {
+      parentIDs.put((String) row[0], (String) row[1]);
+      grants.put((String) row[0], Grants.builder());
+    }
+    rows = em.createQuery(
+      "SELECT gho.group.id, o.name, r.objectId, gho.deny, o.dynamic, o.dynamicCode "
+        + "FROM GroupHasOperation gho JOIN gho.operation o LEFT JOIN gho.resource r "
+        + "WHERE gho.group.id IN :groupIDs", Object[].class)
+      .setParameter("groupIDs", missing).getResultList();
+    for (Object[] row : rows) {
+      grants.get(row[0]).add((String) row[2], new Grant((String) row[1],
+        Boolean.TRUE.equals(row[3]), Boolean.TRUE.equals(row[4]), (String) row[5]));
+    }
+
+    for (Map.Entry<String, String> entry : parentIDs.entrySet()) {
+      GroupPermissions group = new GroupPermissions(entry.getKey(), entry.getValue(),
+        grants.get(entry.getKey()).build());
+      if (!pending.affectsGroup(entry.getKey())) {
+        fill(groups, entry.getKey(), group, loadGeneration);
+      }
+      retVal.add(group);
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Puts a loaded entry in the index, unless the index has been invalidated since the entry
+   * started loading. An invalidation may take place between the check and the put, in which case
+   * the entry is removed again (the invalidation itself may find no entry to act on).
+   */
+  private <V> void fill(Cache<String, V> cache, String key, V value, long loadGeneration) {
+    if (loadGeneration == generation.get() && cache.asMap().putIfAbsent(key, value) == null
+      && loadGeneration != generation.get()) {
+      cache.invalidate(key);
+    }
+  }
+
+  private UserPermissions loadUser(String userID, EntityManager em) {
+    LOGGER.log(Level.FINEST, "Compiling permissions of user {0}.", userID);
+    List<Boolean> superadmin = em.createQuery(
+      "SELECT u.superadmin FROM User u WHERE u.id = :userID", Boolean.class)
+      .setParameter("userID", userID).getResultList();
+    if (superadmin.isEmpty()) {
+      return null;
+    }
+
+    List<String> groupIDs = em.createQuery(
+      "SELECT g.id FROM Group g JOIN g.users u WHERE u.id = :userID", String.class)
+      .setParameter("userID", userID).getResultList();
+
+    List<Object[]> rows = em.createQuery(
+      "SELECT o.name, r.objectId, uho.deny, o.dynamic, o.dynamicCode "
+        + "FROM UserHasOperation uho JOIN uho.operation o LEFT JOIN uho.resource r "
+        + "WHERE uho.user.id = :userID", Object[].class)
+      .setParameter("userID", userID).getResultList();
+
+    return new UserPermissions(userID, Boolean.TRUE.equals(superadmin.get(0)),
+      Collections.unmodifiableList(new ArrayList<>(groupIDs)), toGrants(rows));
+  }
+
+  private GroupPermissions loadGroup(String groupID, EntityManager em) {
+    LOGGER.log(Level.FINEST, "Compiling permissions of group {0}.", groupID);
+    List<Object[]> group = em.createQuery(
+      "SELECT g.id, p.id FROM Group g LEFT JOIN g.parent p WHERE g.id = :groupID", Object[].class)
+      .setParameter("groupID", groupID).getResultList();
+    if (group.isEmpty()) {
+      return null;
+    }
+
+    List<Object[]> rows = em.createQuery(
+      "SELECT o.name, r.objectId, gho.deny, o.dynamic, o.dynamicCode "
+        + "FROM GroupHasOperation gho JOIN gho.operation o LEFT JOIN gho.resource r "
+        + "WHERE gho.group.id = :groupID", Object[].class)
+      .setParameter("groupID", groupID).getResultList();
+
+    return new GroupPermissions(groupID, (String) group.get(0)[1], toGrants(rows));
+  }
+
+  private Grants toGrants(List<Object[]> rows) {
+    Grants.Builder builder = Grants.builder();
+    for (Object[] row : rows) {
+      builder.add((String) row[1], new Grant((String) row[0], Boolean.TRUE.equals(row[2]),
+        Boolean.TRUE.equals(row[3]), (String) row[4]));
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Removes a user from the index (on this and all other cluster nodes), once the current
+   * transaction commits.
+   *
+   * @param userID The ID of the user.
+   */
+  public void invalidateUser(String userID) {
+    Changes changes = pending();
+    changes.userIDs.add(userID);
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Removes a number of users from the index (on this and all other cluster nodes), once the
+   * current transaction commits.
+   *
+   * @param userIDs The IDs of the users.
+   */
+  public void invalidateUsers(Collection<String> userIDs) {
+    Changes changes = pending();
+    changes.userIDs.addAll(userIDs);
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Removes a group from the index (on this and all other cluster nodes), once the current
+   * transaction commits.
+   *
+   * @param groupID The ID of the group.
+   */
+  public void invalidateGroup(String groupID) {
+    Changes changes = pending();
+    changes.groupIDs.add(groupID);
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Empties the index (on this and all other cluster nodes), once the current transaction
+   * commits. Used for changes affecting an unknown number of users and groups, such as changes to
+   * operations and resources.
+   */
+  public void invalidateAll() {
+    Changes changes = pending();
+    changes.all = true;
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Updates the entry of a user (if indexed) once the current transaction commits, after an
+   * operation was assigned to or removed from the user. The other cluster nodes drop the entry.
+   *
+   * @param userID The ID of the user.
+   * @param operationName The name of the operation.
+   * @param resourceObjectID The object ID of the resource or null for generic operations.
+   * @param grant The new grant or null if the operation was removed.
+   */
+  public void updateUser(String userID, String operationName, String resourceObjectID,
+    Grant grant) {
+    Changes changes = pending();
+    changes.grantChanges.add(new GrantChange(userID, null, operationName, resourceObjectID, grant));
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Updates the entry of a group (if indexed) once the current transaction commits, after an
+   * operation was assigned to or removed from the group. The other cluster nodes drop the entry.
+   *
+   * @param groupID The ID of the group.
+   * @param operationName The name of the operation.
+   * @param resourceObjectID The object ID of the resource or null for generic operations.
+   * @param grant The new grant or null if the operation was removed.
+   */
+  public void updateGroup(String groupID, String operationName, String resourceObjectID,
+    Grant grant) {
+    Changes changes = pending();
+    changes.grantChanges.add(new GrantChange(null, groupID, operationName, resourceObjectID, grant));
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * @return The changes made so far by the current transaction, if any.
+   */
+  private Changes current() {
+    if (tsr != null && tsr.getTransactionStatus() != Status.STATUS_NO_TRANSACTION) {
+      Changes retVal = (Changes) tsr.getResource(this);
+      if (retVal != null) {
+        return retVal;
+      }
+    }
+
+    return Changes.NONE;
+  }
+
+  /**
+   * @return The changes of the current transaction, registering them to be applied on commit, or
+   * an empty set of changes to be applied immediately when there is no transaction.
+   */
+  private Changes pending() {
+    if (tsr == null || tsr.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+      return new Changes(false);
+    }
+    Changes retVal = (Changes) tsr.getResource(this);
+    if (retVal == null) {
+      retVal = new Changes(true);
+      tsr.putResource(this, retVal);
+      if (tsr.getTransactionStatus() == Status.STATUS_ACTIVE) {
+        final Changes changes = retVal;
+        tsr.registerInterposedSynchronization(new Synchronization() {
+          @Override
+          public void beforeCompletion() {
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+              apply(changes);
+            }
+          }
+        });
+      }
+      // Otherwise the transaction is rolling back, so there is nothing to apply.
+    }
+
+    return retVal;
+  }
+
+  private void applyIfImmediate(Changes changes) {
+    if (!changes.transactional) {
+      apply(changes);
+    }
+  }
+
+  /**
+   * Applies committed changes to the index and propagates them to the other cluster nodes.
+   */
+  private void apply(Changes changes) {
+    if (changes.all) {
+      invalidateAllLocally();
+      publish(PermissionIndexClusterSync.ALL);
+      return;
+    }
+
+    // Entries loaded concurrently with the transaction may be stale, so they are not put in the
+    // index; the ones already in the index are updated below.
+    generation.incrementAndGet();
+    Set<String> userIDs = new HashSet<>(changes.userIDs);
+    Set<String> groupIDs = new HashSet<>(changes.groupIDs);
+    for (GrantChange change : changes.grantChanges) {
+      if (change.userID != null) {
+        if (!changes.userIDs.contains(change.userID)) {
+          UserPermissions user = users.getIfPresent(change.userID);
+          if (user != null && !users.asMap().replace(change.userID, user, user.withGrants(
+            user.getGrants().with(change.operationName, change.resourceObjectID, change.grant)))) {
+            users.invalidate(change.userID);
+          }
+        }
+        userIDs.add(change.userID);
+      } else {
+        if (!changes.groupIDs.contains(change.groupID)) {
+          GroupPermissions group = groups.getIfPresent(change.groupID);
+          if (group != null && !groups.asMap().replace(change.groupID, group, group.withGrants(
+            group.getGrants().with(change.operationName, change.resourceObjectID, change.grant)))) {
+            groups.invalidate(change.groupID);
+          }
+        }
+        groupIDs.add(change.groupID);
+      }
+    }
+    users.invalidateAll(changes.userIDs);
+    groups.invalidateAll(changes.groupIDs);
+
+    for (String userID : userIDs) {
+      publish(PermissionIndexClusterSync.USER + userID);
+    }
+    for (String groupID : groupIDs) {
+      publish(PermissionIndexClusterSync.GROUP + groupID);
+    }
+  }
+
+  void invalidateUserLocally(String userID) {
+    generation.incrementAndGet();
+    users.invalidate(userID);
+  }
+
+  void invalidateGroupLocally(String groupID) {
+    generation.incrementAndGet();
+    groups.invalidate(groupID);
+  }
+
+  void invalidateAllLocally() {
+    generation.incrementAndGet();
+    users.invalidateAll();
+    groups.invalidateAll();
+  }
+
+  private void publish(String message) {
+    Object sync = clusterTracker != null ? clusterTracker.getService() : null;
+    if (sync != null) {
+      ((PermissionIndexClusterSync) sync).publish(message);
+    }
+  }
+
+  /**
+   * Tracks the (optional) QlackClusterService, registering a listener for invalidations on the
+   * other nodes whenever the service appears.
+   */
+  private void trackClusterService() {
+    Bundle bundle = FrameworkUtil.getBundle(PermissionIndex.class);
+    if (bundle == null || bundle.getBundleContext() == null) {
+      return;
+    }
+
+    clusterTracker = new ServiceTracker<Object, Object>(bundle.getBundleContext(),
+      CLUSTER_SERVICE, null) {
+      @Override
+      public Object addingService(ServiceReference<Object> reference) {
+        try {
+          PermissionIndexClusterSync sync = new PermissionIndexClusterSync(PermissionIndex.this,
+            context.getService(reference));
+          LOGGER.log(Level.CONFIG, "Propagating permission invalidations on cluster topic {0}.",
+            CLUSTER_TOPIC);
+          return sync;
+        } catch (LinkageError e) {
+          LOGGER.log(Level.WARNING, "Cluster support is not available to AAA, permission "
+            + "invalidations will not be propagated.", e);
+          context.ungetService(reference);
+          return null;
+        }
+      }
+
+      @Override
+      public void removedService(ServiceReference<Object> reference, Object service) {
+        ((PermissionIndexClusterSync) service).close();
+        context.ungetService(reference);
+      }
+    };
+    clusterTracker.open();
+  }
+
+  /**
+   * The changes made to the data of the index by a transaction.
+   */
+  private static final class Changes {
+
+    static final Changes NONE = new Changes(false);
+
+    private final boolean transactional;
+    private boolean all;
+    private final Set<String> userIDs = new HashSet<>();
+    private final Set<String> groupIDs = new HashSet<>();
+    private final List<GrantChange> grantChanges = new ArrayList<>();
+
+    Changes(boolean transactional) {
+      this.transactional = transactional;
+    }
+
+    boolean affectsUser(String userID) {
+      if (all || userIDs.contains(userID)) {
+        return true;
+      }
+      for (GrantChange change : grantChanges) {
+        if (userID.equals(change.userID)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean affectsGroup(String groupID) {
+      if (all || groupIDs.contains(groupID)) {
+        return true;
+      }
+      for (GrantChange change : grantChanges) {
+        if (groupID.equals(change.groupID)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * An operation assigned to (or removed from) a user or a group.
+   */
+  private static final class GrantChange {
+
+    private final String userID;
+    private final String groupID;
+    private final String operationName;
+    private final String resourceObjectID;
+    private final Grant grant;
+
+    GrantChange(String userID, String groupID, String operationName, String resourceObjectID,
+      Grant grant) {
+      this.userID = userID;
+      this.groupID = groupID;
+      this.operationName = operationName;
+      this.resourceObjectID = resourceObjectID;
+      this.grant = grant;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterListener;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterService;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exchanges {@link PermissionIndex} invalidations with the other nodes of the cluster. Messages
+ * have the form 'nodeID type[ID]', where type is 'U' (user), 'G' (group) or 'A' (everything).
+ * This class is only loaded when a QlackClusterService is present, so that AAA does not require
+ * the cluster bundles.
+ */
+class PermissionIndexClusterSync extends QlackClusterListener {
+
+  private static final Logger LOGGER = Logger.getLogger(PermissionIndexClusterSync.class.getName());
+  static final String USER = "U";
+  static final String GROUP = "G";
+  static final String ALL = "A";
+
+  private final String nodeID = UUID.randomUUID().toString();
+  private final PermissionIndex index;
+  private final QlackClusterService clusterService;
+  private final String registrationID;
+
+  PermissionIndexClusterSync(PermissionIndex index, Object clusterService) {
+    this.index = index;
+    this.clusterService = (QlackClusterService) clusterService;
+    this.registrationID = this.clusterService.addListener(this, PermissionIndex.CLUSTER_TOPIC);
+  }
+
+  void publish(String message) {
+    clusterService.publish(PermissionIndex.CLUSTER_TOPIC, nodeID + " " + message);
+  }
+
+  void close() {
+    clusterService.removeListener(registrationID, PermissionIndex.CLUSTER_TOPIC);
+  }
+
+  @Override
+  public void onMessage(String message) {
+    int separator = message.indexOf(' ');
+    if (separator < 1 || separator == message.length() - 1
+      || nodeID.equals(message.substring(0, separator))) {
+      return;
+    }
+
+    String type = message.substring(separator + 1, separator + 2);
+    String id = message.substring(separator + 2);
+    LOGGER.log(Level.FINEST, "Received permission invalidation {0}{1}.", new Object[]{type, id});
+    if (USER.equals(type)) {
+      index.invalidateUserLocally(id);
+    } else if (GROUP.equals(type)) {
+      index.invalidateGroupLocally(id);
+    } else {
+      index.invalidateAllLocally();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.aaa.impl.permission;
+
+import java.util.List;
+
+/**
+ * An immutable snapshot of the permission related information of a user.
+ */
+public final class UserPermissions {
+
+  private final String userID;
+  private final boolean superadmin;
+  private final List<String> groupIDs;
+  private final Grants grants;
+
+  public UserPermissions(String userID, boolean superadmin, List<String> groupIDs, Grants grants) {
+    this.userID = userID;
+    this.superadmin = superadmin;
+    this.groupIDs = groupIDs;
+    this.grants = grants;
+  }
+
+  public String getUserID() {
+    return userID;
+  }
+
+  public boolean isSuperadmin() {
+    return superadmin;
+  }
+
+  public List<String> getGroupIDs() {
+    return groupIDs;
+  }
+
+  public Grants getGrants() {
+    return grants;
+  }
+
+  public UserPermissions withGrants(Grants grants) {
+    return new UserPermissions(userID, superadmin, groupIDs, grants);
+  }
+}
@@ -8,11 +8,15 @@ import com.eurodyn.qlack2.fuse.aaa.api.UserService;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.GroupDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.OpTemplateDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.OperationDTO;
+import com.eurodyn.qlack2.fuse.aaa.api.dto.PermissionQuery;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.ResourceDTO;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.UserDTO;
 import com.eurodyn.qlack2.fuse.aaa.conf.ITTestConf;
 import com.eurodyn.qlack2.fuse.aaa.util.TestConst;
 import com.eurodyn.qlack2.fuse.aaa.util.TestUtilities;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import javax.inject.Inject;
 import org.junit.Assert;
@@ -324,6 +328,116 @@ public class OperationServiceImplTest extends ITTestConf {
         Assert.assertNull(operationService.isPermitted(userID,operationName,null));
     }
 
+    @Test
+    public void isPermittedBatch() {
+        UserDTO userDTO = TestUtilities.createUserDTO();
+        String userID = userService.createUser(userDTO);
+        GroupDTO groupDTO = TestUtilities.createGroupDTO();
+        String groupID = userGroupService.createGroup(groupDTO);
+        userGroupService.addUser(userID, groupID);
+
+        OperationDTO operationDTO = TestUtilities.createOperationDTO();
+        operationService.createOperation(operationDTO);
+        String operationName = operationDTO.getName();
+
+        ResourceDTO allowedResourceDTO = TestUtilities.createResourceDTO();
+        String allowedResourceID = resourceService.createResource(allowedResourceDTO);
+        ResourceDTO deniedResourceDTO = TestUtilities.createResourceDTO();
+        String deniedResourceID = resourceService.createResource(deniedResourceDTO);
+        operationService.addOperationToGroup(groupID, operationName, allowedResourceID, false);
+        operationService.addOperationToUser(userID, operationName, deniedResourceID, true);
+
+        List<Boolean> permissions = operationService.isPermittedBatch(userID, Arrays.asList(
+            new PermissionQuery(operationName, allowedResourceDTO.getObjectID()),
+            new PermissionQuery(operationName, deniedResourceDTO.getObjectID()),
+            new PermissionQuery(operationName, null)));
+        Assert.assertEquals(Arrays.asList(true, false, null), permissions);
+    }
+
+    @Test
+    public void isPermittedAfterAddOperationToUser() {
+        UserDTO userDTO = TestUtilities.createUserDTO();
+        String userID = userService.createUser(userDTO);
+        OperationDTO operationDTO = TestUtilities.createOperationDTO();
+        operationService.createOperation(operationDTO);
+        String operationName = operationDTO.getName();
+
+        // Indexes the permissions of the user.
+        Assert.assertNull(operationService.isPermitted(userID, operationName, null));
+
+        operationService.addOperationToUser(userID, operationName, false);
+        Assert.assertTrue(operationService.isPermitted(userID, operationName, null));
+
+        operationService.addOperationToUser(userID, operationName, true);
+        Assert.assertFalse(operationService.isPermitted(userID, operationName, null));
+    }
+
+    @Test
+    public void isPermittedAfterRemoveOperationFromGroup() {
+        UserDTO userDTO = TestUtilities.createUserDTO();
+        String userID = userService.createUser(userDTO);
+        GroupDTO groupDTO = TestUtilities.createGroupDTO();
+        String groupID = userGroupService.createGroup(groupDTO);
+        userGroupService.addUser(userID, groupID);
+        OperationDTO operationDTO = TestUtilities.createOperationDTO();
+        operationService.createOperation(operationDTO);
+        String operationName = operationDTO.getName();
+        operationService.addOperationToGroup(groupID, operationName, false);
+
+        // Indexes the permissions of the user and the group.
+        Assert.assertTrue(operationService.isPermitted(userID, operationName, null));
+        Assert.assertTrue(operationService.isPermittedForGroup(groupID, operationName, null));
+
+        operationService.removeOperationFromGroup(groupID, operationName);
+        Assert.assertNull(operationService.isPermitted(userID, operationName, null));
+        Assert.assertNull(operationService.isPermittedForGroup(groupID, operationName, null));
+    }
+
+    @Test
+    public void isPermittedAfterMoveGroup() {
+        UserDTO userDTO = TestUtilities.createUserDTO();
+        String userID = userService.createUser(userDTO);
+        GroupDTO parentDTO = TestUtilities.createGroupDTO();
+        String parentID = userGroupService.createGroup(parentDTO);
+        GroupDTO childDTO = TestUtilities.createGroupDTO();
+        String childID = userGroupService.createGroup(childDTO);
+        userGroupService.addUser(userID, childID);
+        OperationDTO operationDTO = TestUtilities.createOperationDTO();
+        operationService.createOperation(operationDTO);
+        String operationName = operationDTO.getName();
+        operationService.addOperationToGroup(parentID, operationName, false);
+
+        // Indexes the permissions of the user and the child group.
+        Assert.assertNull(operationService.isPermitted(userID, operationName, null));
+        Assert.assertNull(operationService.isPermittedForGroup(childID, operationName, null));
+
+        // The child group inherits the operation from its new parent.
+        userGroupService.moveGroup(childID, parentID);
+        Assert.assertTrue(operationService.isPermittedForGroup(childID, operationName, null));
+        Assert.assertTrue(operationService.isPermitted(userID, operationName, null));
+    }
+
+    @Test
+    public void filterPermittedResources() {
+        UserDTO userDTO = TestUtilities.createUserDTO();
+        String userID = userService.createUser(userDTO);
+
+        OperationDTO operationDTO = TestUtilities.createOperationDTO();
+        operationService.createOperation(operationDTO);
+        String operationName = operationDTO.getName();
+
+        ResourceDTO allowedResourceDTO = TestUtilities.createResourceDTO();
+        String allowedResourceID = resourceService.createResource(allowedResourceDTO);
+        ResourceDTO otherResourceDTO = TestUtilities.createResourceDTO();
+        resourceService.createResource(otherResourceDTO);
+        operationService.addOperationToUser(userID, operationName, allowedResourceID, false);
+
+        Set<String> permitted = operationService.filterPermittedResources(userID, operationName,
+            Arrays.asList(allowedResourceDTO.getObjectID(), otherResourceDTO.getObjectID()));
+        Assert.assertEquals(1, permitted.size());
+        Assert.assertTrue(permitted.contains(allowedResourceDTO.getObjectID()));
+    }
+
     @Test
     public void isPermittedForGroup() {
         //creates Group
@@ -15,6 +15,8 @@
 package com.eurodyn.qlack2.fuse.auditing.api;
 import com.eurodyn.qlack2.fuse.auditing.api.dto.AuditLogDTO;
 
+import java.util.Map;
+
 public interface AuditClientService {
 	String audit(AuditLogDTO dto);
 	void audit(String level, String event, String groupName, String description,
@@ -30,4 +32,11 @@ public interface AuditClientService {
 	 */
 	boolean isEnabled();
 
+	/**
+	 * Returns the statistics of the batched audit writer (queue depth, records written, dropped
+	 * and spilled, flush latency etc.).
+	 * @return The statistics, or an empty map if audits are not written in batches.
+	 */
+	Map<String, Long> getStatistics();
+
 }
@@ -21,6 +21,7 @@ import com.eurodyn.qlack2.fuse.auditing.api.dto.SortDTO;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * To manage audit logging functionality.
@@ -110,6 +111,41 @@ public interface AuditLoggingService {
     Date startDate, Date endDate, List<SortDTO> sortList,
     PagingParams pagingParams);
 
+  /**
+   * Returns a page of AuditLogDTO's using keyset pagination: audits are ordered by creation date
+   * and ID, and the page starts right after the given audit. Unlike offset paging, the cost of
+   * fetching a page does not grow with its depth.
+   *
+   * @param searchList list with search criteria
+   * @param startDate from date to search
+   * @param endDate to date to search
+   * @param isAscending the sort order
+   * @param after the last audit of the previous page, or null for the first page
+   * @param pageSize the maximum number of audits to return
+   * @param fetchTraceData whether the trace data of the audits should be returned
+   * @return list of AuditLogDTO's
+   */
+  List<AuditLogDTO> listAuditLogsAfter(List<SearchDTO> searchList,
+    Date startDate, Date endDate, boolean isAscending, AuditLogDTO after,
+    int pageSize, boolean fetchTraceData);
+
+  /**
+   * Passes all audits matching the given criteria to a consumer, ordered by creation date and ID.
+   * Audits are read in pages and released as soon as they are consumed, so that exports (e.g. to
+   * CSV or JSON) of any size run in constant memory.
+   *
+   * @param searchList list with search criteria
+   * @param startDate from date to search
+   * @param endDate to date to search
+   * @param isAscending the sort order
+   * @param fetchTraceData whether the trace data of the audits should be exported
+   * @param consumer the consumer of the exported audits
+   * @return the number of exported audits
+   */
+  long exportAuditLogs(List<SearchDTO> searchList, Date startDate,
+    Date endDate, boolean isAscending, boolean fetchTraceData,
+    Consumer<AuditLogDTO> consumer);
+
   /**
    * Returns the number of entities that the given query will return. Used for
    * pagination.
@@ -21,11 +21,15 @@ import com.eurodyn.qlack2.fuse.auditing.api.dto.AuditLogDTO;
 import com.eurodyn.qlack2.fuse.eventpublisher.api.EventPublisherService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 public class AuditClientServiceImpl implements AuditClientService {
 
   private boolean synchronous;
+  private boolean batched;
+  private AuditWriter auditWriter;
   private boolean enabled;
   private boolean traceEnabled;
   private AuditLoggingService auditLoggingService;
@@ -36,6 +40,14 @@ public class AuditClientServiceImpl implements AuditClientService {
     this.synchronous = synchronous;
   }
 
+  public void setBatched(boolean batched) {
+    this.batched = batched;
+  }
+
+  public void setAuditWriter(AuditWriter auditWriter) {
+    this.auditWriter = auditWriter;
+  }
+
   public void setEventPublisherService(
     EventPublisherService eventPublisherService) {
     this.eventPublisherService = eventPublisherService;
@@ -60,6 +72,8 @@ public class AuditClientServiceImpl implements AuditClientService {
     if (enabled) {
       if (synchronous) {
         auditId = auditLoggingService.logAudit(dto);
+      } else if (batched) {
+        auditWriter.submit(dto);
       } else {
         eventPublisherService.publishAsync(new HashMap<String, Object>() {
           {
@@ -129,4 +143,13 @@ public class AuditClientServiceImpl implements AuditClientService {
   public boolean isEnabled() {
     return enabled;
   }
+
+  @Override
+  public Map<String, Long> getStatistics() {
+    if (batched) {
+      return auditWriter.getStatistics();
+    } else {
+      return Collections.emptyMap();
+    }
+  }
 }
@@ -31,17 +31,31 @@ public class AuditEventListener implements EventHandler {
 			.getLogger(AuditEventListener.class.getName());
 
 	private AuditLoggingService auditLoggingService;
+	private AuditWriter auditWriter;
+	private boolean batched;
 
 	public void setAuditLoggingService(AuditLoggingService auditLoggingService) {
 		this.auditLoggingService = auditLoggingService;
 	}
 
+	public void setAuditWriter(AuditWriter auditWriter) {
+		this.auditWriter = auditWriter;
+	}
+
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
 	@Override
 	public void handleEvent(Event event) {
 		LOGGER.log(Level.FINE, "Got an auditing event via Event Admin.");
 		AuditLogDTO auditLogDTO = (AuditLogDTO) event
 				.getProperty(Constants.EVENT_ADMIN_DTO_PROPERTY);
-		auditLoggingService.logAudit(auditLogDTO);
+		if (batched) {
+			auditWriter.submit(auditLogDTO);
+		} else {
+			auditLoggingService.logAudit(auditLogDTO);
+		}
 	}
 
 }
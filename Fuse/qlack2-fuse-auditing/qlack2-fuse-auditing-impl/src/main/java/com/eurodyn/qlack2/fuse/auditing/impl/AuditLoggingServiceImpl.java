@@ -17,8 +17,11 @@ package com.eurodyn.qlack2.fuse.auditing.impl;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +34,7 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.transaction.Transactional;
@@ -53,13 +57,35 @@ public class AuditLoggingServiceImpl implements
 		AuditLoggingService {
 	private static final Logger LOGGER = Logger
 			.getLogger(AuditLoggingServiceImpl.class.getSimpleName());
+	private static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+	private static final String READ_ONLY_HINT = "org.hibernate.readOnly";
 	@PersistenceContext(unitName = "fuse-audit")
 	private EntityManager em;
+	private AuditStorageManager auditStorageManager;
+	private int purgeChunkSize = 10000;
+	private int exportPageSize = 10000;
+	private int exportFetchSize = 1000;
 
 	public void setEm(EntityManager em) {
 		this.em = em;
 	}
 
+	public void setAuditStorageManager(AuditStorageManager auditStorageManager) {
+		this.auditStorageManager = auditStorageManager;
+	}
+
+	public void setPurgeChunkSize(int purgeChunkSize) {
+		this.purgeChunkSize = purgeChunkSize;
+	}
+
+	public void setExportPageSize(int exportPageSize) {
+		this.exportPageSize = exportPageSize;
+	}
+
+	public void setExportFetchSize(int exportFetchSize) {
+		this.exportFetchSize = exportFetchSize;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -97,13 +123,20 @@ public class AuditLoggingServiceImpl implements
 		LOGGER.log(Level.FINER, "Adding audits ''{0}''.", auditList);
 
 		List<String> uuids = new ArrayList<>();
+		// Batches usually contain a handful of levels, look each one up once.
+		Map<String, AuditLevel> levels = new HashMap<>();
 
 		for(AuditLogDTO audit: auditList) {
 			if (audit.getCreatedOn() == null) {
 				audit.setCreatedOn(new Date());
 			}
 			Audit alAudit = ConverterUtil.convertToAuditLogModel(audit);
-			alAudit.setLevelId(AuditLevel.findByName(em, audit.getLevel()));
+			AuditLevel level = levels.get(audit.getLevel());
+			if (level == null) {
+				level = AuditLevel.findByName(em, audit.getLevel());
+				levels.put(audit.getLevel(), level);
+			}
+			alAudit.setLevelId(level);
 			alAudit.setCorrelationId(correlationId);
 			if (null != alAudit.getTraceId()) {
 				em.persist(alAudit.getTraceId());
@@ -147,19 +180,16 @@ public class AuditLoggingServiceImpl implements
 			cq = addPredicate(cq, cb, pr);
 		}
 
+    // Date ranges are added to (rather than replacing) the other criteria, so
+    // that the created_on index is used and partitions outside the range are
+    // pruned.
     if (startDate != null) {
       Expression expression = root.get("createdOn");
-      cq.where(cb.greaterThanOrEqualTo(expression,startDate.getTime()));
-      if (endDate != null) {
-        cq.where(cb.and(cq.getRestriction(), cb.lessThanOrEqualTo(expression, endDate.getTime())));
-      }
+      cq = addPredicate(cq, cb, cb.greaterThanOrEqualTo(expression, startDate.getTime()));
     }
     if (endDate != null) {
       Expression expression = root.get("createdOn");
-      cq.where(cb.lessThanOrEqualTo(expression,endDate.getTime()));
-      if (startDate != null) {
-        cq.where(cb.and(cq.getRestriction(),cb.greaterThanOrEqualTo(expression, startDate.getTime())));
-      }
+      cq = addPredicate(cq, cb, cb.lessThanOrEqualTo(expression, endDate.getTime()));
     }
 
 		return cq;
@@ -196,14 +226,11 @@ public class AuditLoggingServiceImpl implements
 	 *            {@inheritDoc}
 	 */
 	@Override
-	@Transactional(TxType.REQUIRED)
+	@Transactional(TxType.NOT_SUPPORTED)
 	public void truncateAudits(Date createdOn) {
 		LOGGER.log(Level.FINER, "Clearing audit log data before {0}",
 				createdOn.toString());
-		Query query = em
-				.createQuery("DELETE FROM Audit a WHERE a.createdOn < :createdOn");
-		query.setParameter("createdOn", createdOn.getTime());
-		query.executeUpdate();
+		purge(createdOn.getTime());
 	}
 
 	/**
@@ -213,15 +240,43 @@ public class AuditLoggingServiceImpl implements
 	 *            {@inheritDoc}
 	 */
 	@Override
-	@Transactional(TxType.REQUIRED)
+	@Transactional(TxType.NOT_SUPPORTED)
 	public void truncateAudits(long retentionPeriod) {
 		LOGGER.log(Level.FINER, "Clearing audit log data older than {0}",
 				String.valueOf(retentionPeriod));
-		Query query = em
-				.createQuery("DELETE FROM Audit a WHERE a.createdOn < :createdOn");
-		query.setParameter("createdOn", Calendar.getInstance()
-				.getTimeInMillis() - retentionPeriod);
-		query.executeUpdate();
+		purge(Calendar.getInstance().getTimeInMillis() - retentionPeriod);
+	}
+
+	/**
+	 * Deletes the audits created before a specific time without holding a
+	 * single long running transaction: whole partitions are dropped (when the
+	 * audit table is partitioned) after the trace data of their audits, and
+	 * the remaining audits are deleted in chunks, each chunk in its own
+	 * transaction.
+	 */
+	private void purge(long createdBefore) {
+		if (auditStorageManager.isPartitioned()) {
+			// Retention runs regularly, so this is also where partitions for the
+			// upcoming time buckets are created.
+			auditStorageManager.ensurePartitions();
+			List<String> expired = auditStorageManager.getExpiredPartitions(createdBefore);
+			if (!expired.isEmpty()) {
+				Object[] last = null;
+				do {
+					last = auditStorageManager.deleteTraceChunk(expired, last,
+							purgeChunkSize);
+				} while (last != null);
+				auditStorageManager.dropPartitions(expired);
+			}
+		}
+
+		long deleted = 0;
+		int chunk;
+		do {
+			chunk = auditStorageManager.deleteChunk(createdBefore, purgeChunkSize);
+			deleted += chunk;
+		} while (chunk == purgeChunkSize);
+		LOGGER.log(Level.FINE, "Deleted {0} audits in chunks.", deleted);
 	}
 
 	/**
@@ -412,6 +467,98 @@ public class AuditLoggingServiceImpl implements
 		return listAuditLogs(searchList, startDate, endDate, sortList, pagingParams, true);
 	}
 
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public List<AuditLogDTO> listAuditLogsAfter(List<SearchDTO> searchList,
+			Date startDate, Date endDate, boolean isAscending, AuditLogDTO after,
+			int pageSize, boolean fetchTraceData) {
+		LOGGER.log(Level.FINER,
+				"listAuditLogsAfter, searchList count = {0}, after = {1} and pageSize = {2}",
+				new Object[] {
+						(searchList != null) ? searchList.size() : 0,
+						(after != null) ? after.getId() : "NONE", pageSize });
+
+		TypedQuery<Audit> query = createKeysetQuery(searchList, startDate,
+				endDate, isAscending, after != null ? after.getCreatedOn().getTime() : null,
+				after != null ? after.getId() : null, fetchTraceData);
+		query.setMaxResults(pageSize);
+
+		return ConverterUtil.convertToAuditLogList(query.getResultList(), fetchTraceData);
+	}
+
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public long exportAuditLogs(List<SearchDTO> searchList, Date startDate,
+			Date endDate, boolean isAscending, boolean fetchTraceData,
+			Consumer<AuditLogDTO> consumer) {
+		LOGGER.log(Level.FINER, "exportAuditLogs, searchList count = {0}",
+				(searchList != null) ? searchList.size() : 0);
+
+		// Audits are read in keyset pages and the persistence context is cleared
+		// after each page, so that memory use does not depend on the export size.
+		long exported = 0;
+		Long lastCreatedOn = null;
+		String lastId = null;
+		List<Audit> page;
+		do {
+			TypedQuery<Audit> query = createKeysetQuery(searchList, startDate,
+					endDate, isAscending, lastCreatedOn, lastId, fetchTraceData);
+			query.setMaxResults(exportPageSize);
+			query.setHint(FETCH_SIZE_HINT, exportFetchSize);
+			query.setHint(READ_ONLY_HINT, true);
+			page = query.getResultList();
+			for (Audit audit : page) {
+				consumer.accept(ConverterUtil.convertToAuditLogDTO(audit, fetchTraceData));
+				lastCreatedOn = audit.getCreatedOn();
+				lastId = audit.getId();
+			}
+			exported += page.size();
+			em.clear();
+		} while (page.size() == exportPageSize);
+
+		LOGGER.log(Level.FINE, "Exported {0} audits.", exported);
+		return exported;
+	}
+
+	/**
+	 * Creates a query ordered by creation date and ID, optionally seeking past
+	 * the audit with the given creation date and ID.
+	 */
+	private TypedQuery<Audit> createKeysetQuery(List<SearchDTO> searchList,
+			Date startDate, Date endDate, boolean isAscending, Long afterCreatedOn,
+			String afterId, boolean fetchTraceData) {
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		CriteriaQuery<Audit> cq = cb.createQuery(Audit.class);
+		Root<Audit> root = cq.from(Audit.class);
+		root.fetch("levelId", JoinType.LEFT);
+		if (fetchTraceData) {
+			root.fetch("traceId", JoinType.LEFT);
+		}
+
+		cq = applySearchCriteria(cb, cq, root, searchList, startDate, endDate);
+
+		Path<Long> createdOn = root.get("createdOn");
+		Path<String> id = root.get("id");
+		if (afterCreatedOn != null) {
+			Predicate pr;
+			if (isAscending) {
+				pr = cb.or(cb.greaterThan(createdOn, afterCreatedOn),
+						cb.and(cb.equal(createdOn, afterCreatedOn), cb.greaterThan(id, afterId)));
+			} else {
+				pr = cb.or(cb.lessThan(createdOn, afterCreatedOn),
+						cb.and(cb.equal(createdOn, afterCreatedOn), cb.lessThan(id, afterId)));
+			}
+			cq = addPredicate(cq, cb, pr);
+		}
+		if (isAscending) {
+			cq.orderBy(cb.asc(createdOn), cb.asc(id));
+		} else {
+			cq.orderBy(cb.desc(createdOn), cb.desc(id));
+		}
+
+		return em.createQuery(cq);
+	}
+
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public int countAuditLogs(List<SearchDTO> searchList, Date startDate,
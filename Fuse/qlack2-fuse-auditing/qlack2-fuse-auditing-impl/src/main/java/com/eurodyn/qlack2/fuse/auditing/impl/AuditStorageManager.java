@@ -0,0 +1,266 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.auditing.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+/**
+ * Low level operations used to purge old audit records without long running transactions.
+ *
+ * Records are deleted in chunks, each one in its own transaction. When the audit table is
+ * partitioned by time (see the 'auditing_5' changeset, applied on MySQL when the
+ * 'qlack2.fuse.auditing.partitioned' system property is 'true'), partitions are named after their
+ * (exclusive) upper bound, e.g. 'p20240301', and partitions lying completely before the retention
+ * limit are dropped instead, once the trace data of their records has been deleted in chunks
+ * (partitioned tables can not have the foreign keys which would cascade the deletion). Partitions
+ * for the upcoming time buckets are created in advance by splitting the catch-all 'pmax'
+ * partition.
+ */
+public class AuditStorageManager {
+
+  private static final Logger LOGGER = Logger.getLogger(AuditStorageManager.class.getName());
+  private static final String MAX_PARTITION = "pmax";
+  static final String BUCKET_DAILY = "daily";
+  static final String BUCKET_MONTHLY = "monthly";
+
+  @PersistenceContext(unitName = "fuse-audit")
+  private EntityManager em;
+
+  private boolean partitioned = false;
+  private String partitionBucket = BUCKET_MONTHLY;
+  private int partitionsAhead = 3;
+
+  public void setEm(EntityManager em) {
+    this.em = em;
+  }
+
+  public void setPartitioned(boolean partitioned) {
+    this.partitioned = partitioned;
+  }
+
+  public void setPartitionBucket(String partitionBucket) {
+    this.partitionBucket = partitionBucket;
+  }
+
+  public void setPartitionsAhead(int partitionsAhead) {
+    this.partitionsAhead = partitionsAhead;
+  }
+
+  public boolean isPartitioned() {
+    return partitioned;
+  }
+
+  /**
+   * Deletes (at most) a chunk of audit records created before a specific time, together with
+   * their trace data.
+   *
+   * @param createdBefore The creation time (in msec) before which records are deleted.
+   * @param chunkSize The maximum number of records to delete.
+   * @return The number of records deleted.
+   */
+  @Transactional(TxType.REQUIRES_NEW)
+  public int deleteChunk(long createdBefore, int chunkSize) {
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = em.createQuery(
+      "SELECT a.id, t.id FROM Audit a LEFT JOIN a.traceId t WHERE a.createdOn < :createdOn")
+      .setParameter("createdOn", createdBefore)
+      .setMaxResults(chunkSize)
+      .getResultList();
+    if (rows.isEmpty()) {
+      return 0;
+    }
+
+    List<String> auditIDs = new ArrayList<>(rows.size());
+    List<String> traceIDs = new ArrayList<>();
+    for (Object[] row : rows) {
+      auditIDs.add((String) row[0]);
+      if (row[1] != null) {
+        traceIDs.add((String) row[1]);
+      }
+    }
+    em.createQuery("DELETE FROM Audit a WHERE a.id IN :ids")
+      .setParameter("ids", auditIDs).executeUpdate();
+    if (!traceIDs.isEmpty()) {
+      em.createQuery("DELETE FROM AuditTrace t WHERE t.id IN :ids")
+        .setParameter("ids", traceIDs).executeUpdate();
+    }
+    LOGGER.log(Level.FINEST, "Deleted {0} audit records.", auditIDs.size());
+
+    return auditIDs.size();
+  }
+
+  /**
+   * Creates the partitions of the current and the next partitionsAhead time buckets, if they do
+   * not already exist. The partition of the current bucket also receives all older records still
+   * in the catch-all partition.
+   */
+  @Transactional(TxType.REQUIRES_NEW)
+  public void ensurePartitions() {
+    TreeSet<Long> existing = new TreeSet<>();
+    for (Object[] partition : getPartitions()) {
+      if (!MAX_PARTITION.equals(partition[0])) {
+        existing.add(Long.valueOf((String) partition[1]));
+      }
+    }
+
+    Calendar bucket = bucketStart(System.currentTimeMillis());
+    List<Long> missing = new ArrayList<>();
+    for (int i = 0; i <= partitionsAhead; i++) {
+      long upperBound = bucket.getTimeInMillis();
+      // Partitions can only be added after the last existing one.
+      if (existing.isEmpty() || upperBound > existing.last()) {
+        missing.add(upperBound);
+      }
+      nextBucket(bucket);
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    StringBuilder sql = new StringBuilder("ALTER TABLE al_audit REORGANIZE PARTITION ")
+      .append(MAX_PARTITION).append(" INTO (");
+    for (Long upperBound : missing) {
+      sql.append("PARTITION ").append(partitionName(upperBound))
+        .append(" VALUES LESS THAN (").append(upperBound).append("), ");
+    }
+    sql.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+    LOGGER.log(Level.CONFIG, "Creating {0} audit partitions.", missing.size());
+    em.createNativeQuery(sql.toString()).executeUpdate();
+  }
+
+  /**
+   * @param createdBefore The creation time (in msec) before which records are deleted.
+   * @return The names of the partitions containing only records created before a specific time.
+   */
+  @Transactional(TxType.REQUIRES_NEW)
+  public List<String> getExpiredPartitions(long createdBefore) {
+    List<String> expired = new ArrayList<>();
+    for (Object[] partition : getPartitions()) {
+      if (!MAX_PARTITION.equals(partition[0])
+        && Long.parseLong((String) partition[1]) <= createdBefore) {
+        expired.add((String) partition[0]);
+      }
+    }
+
+    return expired;
+  }
+
+  /**
+   * Deletes (at most) the trace data of a chunk of the audit records of specific partitions. The
+   * records are processed in the order of their creation time and ID, so that each chunk
+   * continues after the last record of the previous one.
+   *
+   * @param partitions The names of the partitions.
+   * @param after The creation time and ID of the last record of the previous chunk, or null for
+   * the first chunk.
+   * @param chunkSize The maximum number of records to process.
+   * @return The creation time and ID of the last record of the chunk, or null if there were no
+   * records left.
+   */
+  @Transactional(TxType.REQUIRES_NEW)
+  public Object[] deleteTraceChunk(List<String> partitions, Object[] after, int chunkSize) {
+    StringBuilder sql = new StringBuilder("SELECT created_on, id, trace_id FROM al_audit PARTITION (")
+      .append(String.join(", ", partitions)).append(")");
+    if (after != null) {
+      sql.append(" WHERE created_on > ?1 OR (created_on = ?2 AND id > ?3)");
+    }
+    sql.append(" ORDER BY created_on, id");
+    Query query = em.createNativeQuery(sql.toString()).setMaxResults(chunkSize);
+    if (after != null) {
+      query.setParameter(1, after[0]).setParameter(2, after[0]).setParameter(3, after[1]);
+    }
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = query.getResultList();
+    if (rows.isEmpty()) {
+      return null;
+    }
+
+    List<String> traceIDs = new ArrayList<>();
+    for (Object[] row : rows) {
+      if (row[2] != null) {
+        traceIDs.add((String) row[2]);
+      }
+    }
+    if (!traceIDs.isEmpty()) {
+      em.createQuery("DELETE FROM AuditTrace t WHERE t.id IN :ids")
+        .setParameter("ids", traceIDs).executeUpdate();
+    }
+    LOGGER.log(Level.FINEST, "Deleted the trace data of {0} audit records.", rows.size());
+
+    Object[] last = rows.get(rows.size() - 1);
+    return new Object[]{last[0], last[1]};
+  }
+
+  /**
+   * Drops partitions of the audit table; the trace data of their records should be deleted first
+   * (see {@link #deleteTraceChunk(List, Object[], int)}).
+   *
+   * @param partitions The names of the partitions.
+   */
+  @Transactional(TxType.REQUIRES_NEW)
+  public void dropPartitions(List<String> partitions) {
+    LOGGER.log(Level.FINE, "Dropping audit partitions {0}.", partitions);
+    em.createNativeQuery("ALTER TABLE al_audit DROP PARTITION " + String.join(", ", partitions))
+      .executeUpdate();
+  }
+
+  /**
+   * @return The name and upper bound of the partitions of the audit table, in ascending order.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Object[]> getPartitions() {
+    return em.createNativeQuery("SELECT PARTITION_NAME, PARTITION_DESCRIPTION "
+      + "FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() "
+      + "AND TABLE_NAME = 'al_audit' AND PARTITION_NAME IS NOT NULL "
+      + "ORDER BY PARTITION_ORDINAL_POSITION").getResultList();
+  }
+
+  private Calendar bucketStart(long millis) {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    calendar.setTimeInMillis(millis);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    if (!BUCKET_DAILY.equals(partitionBucket)) {
+      calendar.set(Calendar.DAY_OF_MONTH, 1);
+    }
+
+    return calendar;
+  }
+
+  private void nextBucket(Calendar calendar) {
+    calendar.add(BUCKET_DAILY.equals(partitionBucket) ? Calendar.DAY_OF_MONTH : Calendar.MONTH, 1);
+  }
+
+  private String partitionName(long upperBound) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return "p" + format.format(upperBound);
+  }
+}
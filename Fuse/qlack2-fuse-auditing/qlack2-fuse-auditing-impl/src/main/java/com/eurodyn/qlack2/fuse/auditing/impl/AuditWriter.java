@@ -0,0 +1,444 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.auditing.impl;
+
+import com.eurodyn.qlack2.fuse.auditing.api.AuditLoggingService;
+import com.eurodyn.qlack2.fuse.auditing.api.dto.AuditLogDTO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes audit records asynchronously and in batches. Records are placed in a bounded queue which
+ * is drained by a dedicated writer thread into {@link AuditLoggingService#logAudits(List, String)},
+ * so that many records are persisted in a single transaction (and, with JDBC batching, in a few
+ * statements). A batch is written as soon as it reaches batchSize records or flushInterval msec
+ * after its first record was taken from the queue.
+ *
+ * When the queue is full, the overflowPolicy decides what happens:
+ * 'block' - the caller waits until there is space in the queue,
+ * 'drop-oldest' - the oldest queued record is discarded,
+ * 'spill' - the record is written to a file under spillDirectory and replayed once the queue
+ * is empty.
+ * Under the spill policy, the records of a batch which could not be written are spilled too, and
+ * spilled records are replayed no sooner than a while after a failed write.
+ *
+ * The writer is only started when audits are committed in batches; records submitted while it is
+ * not running (e.g. after it is stopped) are written at once instead.
+ */
+public class AuditWriter {
+
+  private static final Logger LOGGER = Logger.getLogger(AuditWriter.class.getName());
+  private static final String SPILL_FILE_SUFFIX = ".spill";
+  // Spill files which could not be read are kept with this suffix (and not replayed again).
+  private static final String FAILED_FILE_SUFFIX = ".failed";
+  static final String POLICY_BLOCK = "block";
+  static final String POLICY_DROP_OLDEST = "drop-oldest";
+  static final String POLICY_SPILL = "spill";
+
+  private AuditLoggingService auditLoggingService;
+  private boolean enabled = true;
+  private int queueSize = 10000;
+  private int batchSize = 500;
+  private long flushInterval = 1000;
+  private String overflowPolicy = POLICY_BLOCK;
+  private String spillDirectory;
+  private long replayRetryDelay = 30000;
+
+  private BlockingQueue<AuditLogDTO> queue;
+  private Thread writerThread;
+  private volatile boolean running;
+
+  // Spilling.
+  private final Object spillLock = new Object();
+  private ObjectOutputStream spillOut;
+  private long spillFileCounter;
+  private volatile boolean spillPending;
+  private volatile long replayAfter;
+
+  // Statistics.
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong spilled = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong flushTimeTotal = new AtomicLong();
+  private volatile long flushTimeLast;
+  private volatile long flushTimeMax;
+
+  public void setAuditLoggingService(AuditLoggingService auditLoggingService) {
+    this.auditLoggingService = auditLoggingService;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setFlushInterval(long flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public void setSpillDirectory(String spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * @param replayRetryDelay How long (in msec) to wait after a failed write before writing spilled
+   * records again.
+   */
+  public void setReplayRetryDelay(long replayRetryDelay) {
+    this.replayRetryDelay = replayRetryDelay;
+  }
+
+  public void init() {
+    queue = new ArrayBlockingQueue<>(queueSize);
+    if (!enabled) {
+      return;
+    }
+    if (!Arrays.asList(POLICY_BLOCK, POLICY_DROP_OLDEST, POLICY_SPILL).contains(overflowPolicy)) {
+      LOGGER.log(Level.WARNING, "Unknown audit overflow policy {0}, using {1}.",
+        new Object[]{overflowPolicy, POLICY_BLOCK});
+      overflowPolicy = POLICY_BLOCK;
+    }
+    if (POLICY_SPILL.equals(overflowPolicy)) {
+      new File(spillDirectory).mkdirs();
+      // Replay records spilled before a previous shutdown.
+      spillPending = listSpillFiles().length > 0;
+    }
+
+    running = true;
+    writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        write();
+      }
+    }, "qlack2-audit-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    LOGGER.log(Level.CONFIG, "Audit writer started with queue size {0}, batch size {1}, "
+      + "flush interval {2} and overflow policy {3}.",
+      new Object[]{queueSize, batchSize, flushInterval, overflowPolicy});
+  }
+
+  /**
+   * Stops the writer, after writing all records still in the queue.
+   */
+  public void destroy() {
+    running = false;
+    if (writerThread != null) {
+      try {
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // Write the records the writer did not get to.
+    List<AuditLogDTO> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    if (!remaining.isEmpty()) {
+      flush(remaining);
+    }
+    synchronized (spillLock) {
+      closeSpillFile();
+    }
+  }
+
+  /**
+   * Queues an audit record for writing, applying the overflow policy if the queue is full.
+   *
+   * @param dto The audit record.
+   */
+  public void submit(AuditLogDTO dto) {
+    submitted.incrementAndGet();
+    if (!running) {
+      flush(Collections.singletonList(dto));
+      return;
+    }
+    if (POLICY_DROP_OLDEST.equals(overflowPolicy)) {
+      while (!queue.offer(dto)) {
+        if (queue.poll() != null) {
+          dropped.incrementAndGet();
+        }
+      }
+    } else if (POLICY_SPILL.equals(overflowPolicy)) {
+      if (!queue.offer(dto)) {
+        if (!spill(dto)) {
+          dropped.incrementAndGet();
+        }
+        return;
+      }
+    } else {
+      try {
+        // Wait for space in the queue only while the writer is running.
+        while (!queue.offer(dto, flushInterval, TimeUnit.MILLISECONDS)) {
+          if (!running) {
+            flush(Collections.singletonList(dto));
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        dropped.incrementAndGet();
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    // The writer may have stopped before the record was queued.
+    if (!running && queue.remove(dto)) {
+      flush(Collections.singletonList(dto));
+    }
+  }
+
+  private void write() {
+    while (running || !queue.isEmpty()) {
+      List<AuditLogDTO> batch = new ArrayList<>(batchSize);
+      try {
+        AuditLogDTO first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          long deadline = System.currentTimeMillis() + flushInterval;
+          while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+              break;
+            }
+            AuditLogDTO next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+              break;
+            }
+            batch.add(next);
+          }
+        }
+      } catch (InterruptedException e) {
+        running = false;
+      }
+
+      if (!batch.isEmpty()) {
+        flush(batch);
+      } else if (spillPending && running && System.currentTimeMillis() >= replayAfter) {
+        replaySpillFiles();
+      }
+    }
+  }
+
+  /**
+   * Writes a batch of records. Under the spill policy, records which can not be written are
+   * spilled instead.
+   *
+   * @return false if some records could neither be written nor spilled.
+   */
+  private boolean flush(List<AuditLogDTO> batch) {
+    long start = System.currentTimeMillis();
+    boolean ok = true;
+    try {
+      auditLoggingService.logAudits(batch, null);
+      written.addAndGet(batch.size());
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "Could not write " + batch.size() + " audit records.", e);
+      replayAfter = System.currentTimeMillis() + replayRetryDelay;
+      ok = spillAll(batch);
+    }
+    long duration = System.currentTimeMillis() - start;
+    flushes.incrementAndGet();
+    flushTimeTotal.addAndGet(duration);
+    flushTimeLast = duration;
+    flushTimeMax = Math.max(flushTimeMax, duration);
+    LOGGER.log(Level.FINEST, "Wrote {0} audit records in {1} msec.",
+      new Object[]{batch.size(), duration});
+
+    return ok;
+  }
+
+  /**
+   * Spills records which could not be written, if the spill policy is used.
+   *
+   * @return false if some records could not be spilled (and are lost).
+   */
+  private boolean spillAll(List<AuditLogDTO> batch) {
+    int lost = 0;
+    for (AuditLogDTO dto : batch) {
+      if (!POLICY_SPILL.equals(overflowPolicy) || !spill(dto)) {
+        lost++;
+      }
+    }
+    failed.addAndGet(lost);
+
+    return lost == 0;
+  }
+
+  /**
+   * @return false if the record could not be spilled.
+   */
+  private boolean spill(AuditLogDTO dto) {
+    synchronized (spillLock) {
+      try {
+        if (spillOut == null) {
+          File spillFile = new File(spillDirectory, System.currentTimeMillis() + "-"
+            + (spillFileCounter++) + SPILL_FILE_SUFFIX);
+          spillOut = new ObjectOutputStream(new BufferedOutputStream(
+            new FileOutputStream(spillFile)));
+        }
+        spillOut.writeObject(dto);
+        // Do not keep references to spilled records.
+        spillOut.reset();
+        spillOut.flush();
+        spilled.incrementAndGet();
+        spillPending = true;
+        return true;
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Could not spill audit record, the record is lost.", e);
+        return false;
+      }
+    }
+  }
+
+  private void closeSpillFile() {
+    if (spillOut != null) {
+      try {
+        spillOut.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Could not close audit spill file.", e);
+      }
+      spillOut = null;
+    }
+  }
+
+  private File[] listSpillFiles() {
+    File[] files = new File(spillDirectory).listFiles((dir, name) -> name.endsWith(SPILL_FILE_SUFFIX));
+    if (files == null) {
+      return new File[0];
+    }
+    Arrays.sort(files);
+
+    return files;
+  }
+
+  /**
+   * Writes the spilled records back to the database. The file currently written to is closed
+   * first, so that new overflowing records go to a new file. A spill file is deleted only once all
+   * of its records have been written (or spilled again, to a new file, if writing failed); a file
+   * which can not be read is kept, renamed, for inspection.
+   */
+  private void replaySpillFiles() {
+    File[] files;
+    synchronized (spillLock) {
+      closeSpillFile();
+      files = listSpillFiles();
+      spillPending = false;
+    }
+
+    for (File file : files) {
+      LOGGER.log(Level.FINE, "Replaying audit spill file {0}.", file);
+      List<AuditLogDTO> batch = new ArrayList<>(batchSize);
+      boolean ok = true;
+      boolean readable = true;
+      try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+        new FileInputStream(file)))) {
+        while (true) {
+          batch.add((AuditLogDTO) in.readObject());
+          if (batch.size() >= batchSize) {
+            ok &= replay(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+      } catch (EOFException e) {
+        // End of the spill file.
+      } catch (IOException | ClassNotFoundException e) {
+        LOGGER.log(Level.SEVERE, "Could not read audit spill file " + file + ".", e);
+        readable = false;
+      }
+      if (!batch.isEmpty()) {
+        ok &= replay(batch);
+      }
+
+      if (!readable) {
+        File failedFile = new File(file.getPath() + FAILED_FILE_SUFFIX);
+        if (!file.renameTo(failedFile)) {
+          LOGGER.log(Level.WARNING, "Could not rename audit spill file {0}.", file);
+        }
+      } else if (!ok) {
+        // Keep the file and try again later.
+        spillPending = true;
+        break;
+      } else if (!file.delete()) {
+        LOGGER.log(Level.WARNING, "Could not delete audit spill file {0}.", file);
+      }
+    }
+  }
+
+  /**
+   * Writes a batch of spilled records, or spills them again at once if a write failed recently.
+   *
+   * @return false if some records could neither be written nor spilled.
+   */
+  private boolean replay(List<AuditLogDTO> batch) {
+    return System.currentTimeMillis() < replayAfter ? spillAll(batch) : flush(batch);
+  }
+
+  /**
+   * @return The statistics of the writer: the current queue depth, the number of records
+   * submitted, written, dropped, spilled and failed as well as the number of flushes and their
+   * latency (in msec).
+   */
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = new LinkedHashMap<>();
+    statistics.put("queue.depth", (long) queue.size());
+    statistics.put("queue.capacity", (long) queueSize);
+    statistics.put("records.submitted", submitted.get());
+    statistics.put("records.written", written.get());
+    statistics.put("records.dropped", dropped.get());
+    statistics.put("records.spilled", spilled.get());
+    statistics.put("records.failed", failed.get());
+    statistics.put("flush.count", flushes.get());
+    statistics.put("flush.latency.last", flushTimeLast);
+    statistics.put("flush.latency.max", flushTimeMax);
+    statistics.put("flush.latency.avg",
+      flushes.get() > 0 ? flushTimeTotal.get() / flushes.get() : 0L);
+
+    return statistics;
+  }
+}
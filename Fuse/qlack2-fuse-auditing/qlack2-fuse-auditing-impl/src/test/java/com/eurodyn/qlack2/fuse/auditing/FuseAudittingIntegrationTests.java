@@ -4,6 +4,7 @@ import com.eurodyn.qlack2.fuse.auditing.conf.ITTestConf;
 import com.eurodyn.qlack2.fuse.auditing.tests.AuditClientServiceImplTest;
 import com.eurodyn.qlack2.fuse.auditing.tests.AuditLevelServiceImplTest;
 import com.eurodyn.qlack2.fuse.auditing.tests.AuditLoggingServiceImplTest;
+import com.eurodyn.qlack2.fuse.auditing.tests.AuditWriterTest;
 import com.eurodyn.qlack2.util.availcheck.api.AvailabilityCheck;
 import com.eurodyn.qlack2.util.docker.DockerContainer;
 import com.eurodyn.qlack2.util.testing.TestingUtil;
@@ -24,7 +25,8 @@ import java.util.logging.Logger;
 @Suite.SuiteClasses({
   AuditLevelServiceImplTest.class,
   AuditLoggingServiceImplTest.class,
-  AuditClientServiceImplTest.class
+  AuditClientServiceImplTest.class,
+  AuditWriterTest.class
 })
 public class FuseAudittingIntegrationTests {
 
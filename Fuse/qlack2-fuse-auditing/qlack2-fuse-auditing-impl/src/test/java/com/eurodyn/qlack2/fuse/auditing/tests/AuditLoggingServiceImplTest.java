@@ -21,11 +21,14 @@ import org.ops4j.pax.exam.spi.reactors.PerSuite;
 import org.ops4j.pax.exam.util.Filter;
 import javax.inject.Inject;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import com.eurodyn.qlack2.fuse.auditing.api.enums.AuditLogColumns;
 
 /**
@@ -35,6 +38,8 @@ import com.eurodyn.qlack2.fuse.auditing.api.enums.AuditLogColumns;
 @ExamReactorStrategy(PerSuite.class)
 public class AuditLoggingServiceImplTest extends ITTestConf {
 
+    private static final Logger LOGGER = Logger.getLogger(AuditLoggingServiceImplTest.class.getName());
+
     @Inject
     @Filter(timeout = 1200000)
     AuditLoggingService auditLoggingService;
@@ -466,4 +471,101 @@ public class AuditLoggingServiceImplTest extends ITTestConf {
     Assert.assertNotNull(auditLoggingService.getAuditLogsColumn(searchList, startDate,endDate,"opt3"));
   }
 
+
+  /**
+   * Load generator for the retention purge. The number of generated rows defaults to a value
+   * exercising more than one purge chunk; run with e.g. -Dqlack2.audit.loadTest.rows=20000000 to
+   * verify purge behaviour on large tables.
+   */
+  @Test
+  public void truncateAuditsLoad() {
+    int rows = Integer.getInteger("qlack2.audit.loadTest.rows", 25000);
+    int batchSize = 1000;
+
+    AuditLevelDTO auditLevelDTO = TestUtilities.createAuditLevelDTO();
+    Assert.assertNotNull(auditLevelService.addLevel(auditLevelDTO));
+
+    // Spread the generated audits over the last 60 days.
+    long now = System.currentTimeMillis();
+    long period = 60L * 24 * 60 * 60 * 1000;
+    List<String> levelNames = new ArrayList<>();
+    levelNames.add(auditLevelDTO.getName());
+    List<AuditLogDTO> batch = new ArrayList<>(batchSize);
+    for (int i = 0; i < rows; i++) {
+      AuditLogDTO auditLogDTO = new AuditLogDTO();
+      auditLogDTO.setLevel(auditLevelDTO.getName());
+      auditLogDTO.setPrinSessionId(UUID.randomUUID().toString());
+      auditLogDTO.setCreatedOn(new Date(now - period + (period * i) / rows));
+      auditLogDTO.setShortDescription("loadTest");
+      auditLogDTO.setEvent("loadTest");
+      batch.add(auditLogDTO);
+      if (batch.size() == batchSize || i == rows - 1) {
+        auditLoggingService.logAudits(batch, null);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+
+    // Purge the older half of the generated audits.
+    // Date criteria are inclusive while the purge is not.
+    Date cutOff = new Date(now - period / 2);
+    Date beforeCutOffDate = new Date(cutOff.getTime() - 1);
+    int beforeCutOff = auditLoggingService.countAudits(levelNames, null, null, null,
+      beforeCutOffDate);
+    Assert.assertTrue(beforeCutOff > 0);
+    long startTime = System.currentTimeMillis();
+    auditLoggingService.truncateAudits(cutOff);
+    LOGGER.log(Level.INFO, "Purged {0} of {1} audits in {2} msec.", new Object[]{beforeCutOff,
+      rows, System.currentTimeMillis() - startTime});
+
+    Assert.assertEquals(0,
+      auditLoggingService.countAudits(levelNames, null, null, null, beforeCutOffDate));
+    Assert.assertEquals(rows - beforeCutOff,
+      auditLoggingService.countAudits(levelNames, null, null, cutOff, null));
+  }
+
+  @Test
+  public void listAuditLogsAfter() {
+    AuditLevelDTO auditLevelDTO = TestUtilities.createAuditLevelDTO();
+    Assert.assertNotNull(auditLevelService.addLevel(auditLevelDTO));
+    // Audits sharing the same creation date are ordered by ID.
+    Date createdOn = new Date();
+    List<AuditLogDTO> audits = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      AuditLogDTO auditLogDTO = new AuditLogDTO();
+      auditLogDTO.setLevel(auditLevelDTO.getName());
+      auditLogDTO.setCreatedOn(createdOn);
+      auditLogDTO.setEvent("keyset");
+      audits.add(auditLogDTO);
+    }
+    auditLoggingService.logAudits(audits, null);
+
+    List<SearchDTO> searchList = new ArrayList<>();
+    SearchDTO searchDTO = new SearchDTO();
+    searchDTO.setColumn(AuditLogColumns.levelId);
+    searchDTO.setOperator(SearchOperator.EQUAL);
+    List<String> values = new ArrayList<>();
+    values.add(auditLevelDTO.getName());
+    searchDTO.setValue(values);
+    searchList.add(searchDTO);
+
+    List<String> ids = new ArrayList<>();
+    List<AuditLogDTO> page = auditLoggingService.listAuditLogsAfter(searchList, null, null, true,
+      null, 2, false);
+    while (!page.isEmpty()) {
+      Assert.assertTrue(page.size() <= 2);
+      for (AuditLogDTO auditLogDTO : page) {
+        ids.add(auditLogDTO.getId());
+      }
+      page = auditLoggingService.listAuditLogsAfter(searchList, null, null, true,
+        page.get(page.size() - 1), 2, false);
+    }
+    Assert.assertEquals(5, ids.size());
+    Assert.assertEquals(5, new HashSet<>(ids).size());
+
+    List<String> exported = new ArrayList<>();
+    Assert.assertEquals(5, auditLoggingService.exportAuditLogs(searchList, null, null, true, false,
+      auditLogDTO -> exported.add(auditLogDTO.getId())));
+    Assert.assertEquals(ids, exported);
+  }
+
 }
@@ -0,0 +1,162 @@
+package com.eurodyn.qlack2.fuse.auditing.tests;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.eurodyn.qlack2.fuse.auditing.api.AuditLoggingService;
+import com.eurodyn.qlack2.fuse.auditing.api.dto.AuditLogDTO;
+import com.eurodyn.qlack2.fuse.auditing.impl.AuditWriter;
+import com.eurodyn.qlack2.fuse.auditing.util.TestUtilities;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Tests the batching, spilling and shutdown of the audit writer, outside the container.
+ *
+ * @author European Dynamics SA
+ */
+public class AuditWriterTest {
+
+    private AuditLoggingService auditLoggingService;
+    private AuditWriter auditWriter;
+    private File spillDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        auditLoggingService = mock(AuditLoggingService.class);
+        spillDirectory = Files.createTempDirectory("audit-spill").toFile();
+
+        auditWriter = new AuditWriter();
+        auditWriter.setAuditLoggingService(auditLoggingService);
+        auditWriter.setQueueSize(10);
+        auditWriter.setBatchSize(2);
+        auditWriter.setFlushInterval(50);
+        auditWriter.setSpillDirectory(spillDirectory.getPath());
+        auditWriter.setReplayRetryDelay(0);
+    }
+
+    @After
+    public void tearDown() {
+        auditWriter.destroy();
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spillDirectory.delete();
+    }
+
+    @Test
+    public void writeBatched() {
+        auditWriter.init();
+        for (int i = 0; i < 4; i++) {
+            auditWriter.submit(TestUtilities.createAuditLogDTO());
+        }
+
+        auditWriter.destroy();
+
+        // At most batchSize records per call.
+        verify(auditLoggingService, atLeast(2)).logAudits(anyListOf(AuditLogDTO.class), anyString());
+        Assert.assertEquals(Long.valueOf(4),
+            auditWriter.getStatistics().get("records.written"));
+    }
+
+    @Test
+    public void writeNotBatched() {
+        auditWriter.setEnabled(false);
+        auditWriter.init();
+        AuditLogDTO dto = TestUtilities.createAuditLogDTO();
+        auditWriter.submit(dto);
+
+        // Written at once, by the caller.
+        verify(auditLoggingService).logAudits(Collections.singletonList(dto), null);
+        Assert.assertFalse(isWriterThreadAlive());
+    }
+
+    @Test
+    public void spillFailedBatch() {
+        auditWriter.setOverflowPolicy("spill");
+        AuditLogDTO dto = TestUtilities.createAuditLogDTO();
+        doThrow(new IllegalStateException("Database unavailable")).doReturn(null)
+            .when(auditLoggingService).logAudits(Collections.singletonList(dto), null);
+        auditWriter.init();
+        auditWriter.submit(dto);
+
+        // Written again from the spill file once writing succeeds.
+        verify(auditLoggingService, timeout(5000).times(2))
+            .logAudits(Collections.singletonList(dto), null);
+        waitForNoSpillFiles();
+        Assert.assertEquals(Long.valueOf(0), auditWriter.getStatistics().get("records.failed"));
+        Assert.assertEquals(Long.valueOf(1), auditWriter.getStatistics().get("records.written"));
+    }
+
+    @Test
+    public void keepSpilledRecordsWhileReplayFails() throws Exception {
+        auditWriter.setOverflowPolicy("spill");
+        auditWriter.setReplayRetryDelay(100);
+        doThrow(new IllegalStateException("Database unavailable"))
+            .when(auditLoggingService).logAudits(anyListOf(AuditLogDTO.class), anyString());
+        auditWriter.init();
+        auditWriter.submit(TestUtilities.createAuditLogDTO());
+
+        // Let the writer replay (and fail) a few times.
+        verify(auditLoggingService, timeout(5000).atLeast(3))
+            .logAudits(anyListOf(AuditLogDTO.class), anyString());
+        auditWriter.destroy();
+
+        Assert.assertEquals(1, spillDirectory.list((dir, name) -> name.endsWith(".spill")).length);
+        Assert.assertEquals(Long.valueOf(0), auditWriter.getStatistics().get("records.failed"));
+    }
+
+    @Test(timeout = 5000)
+    public void submitAfterDestroy() {
+        auditWriter.setQueueSize(1);
+        auditWriter.init();
+        auditWriter.destroy();
+        verify(auditLoggingService, never()).logAudits(anyListOf(AuditLogDTO.class), anyString());
+
+        // Neither queued nor blocked, although the queue would fill up.
+        AuditLogDTO first = TestUtilities.createAuditLogDTO();
+        AuditLogDTO second = TestUtilities.createAuditLogDTO();
+        auditWriter.submit(first);
+        auditWriter.submit(second);
+        verify(auditLoggingService).logAudits(Collections.singletonList(first), null);
+        verify(auditLoggingService).logAudits(Collections.singletonList(second), null);
+    }
+
+    private void waitForNoSpillFiles() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (spillDirectory.list((dir, name) -> name.endsWith(".spill")).length > 0) {
+            Assert.assertTrue("The spill file was not deleted.",
+                System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static boolean isWriterThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("qlack2-audit-writer".equals(thread.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
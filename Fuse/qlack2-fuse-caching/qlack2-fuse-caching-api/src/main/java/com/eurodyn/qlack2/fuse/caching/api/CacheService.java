@@ -14,6 +14,10 @@
 */
 package com.eurodyn.qlack2.fuse.caching.api;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public abstract class CacheService {
@@ -116,6 +120,62 @@ public abstract class CacheService {
    */
   public abstract Object get(String key);
 
+  /**
+   * Gets a key from the cache converting its value to the given type. Implementations storing
+   * values outside the JVM use this type to deserialise the value.
+   *
+   * @param key The key to be retrieved.
+   * @param type The expected type of the value.
+   * @param <T> The expected type of the value.
+   * @return The key value or null if the key does not exist.
+   */
+  public <T> T get(String key, Class<T> type) {
+    return type.cast(get(key));
+  }
+
+  /**
+   * Gets multiple keys from the cache. Implementations backed by a remote cache fetch all keys in a
+   * single round trip, so prefer this method over repeated calls to {@link #get(String)}.
+   *
+   * @param keys The keys to be retrieved.
+   * @return A map of the keys found in the cache to their values. Keys that do not exist are not
+   * included in the map.
+   */
+  public Map<String, Object> getAll(Collection<String> keys) {
+    Map<String, Object> retVal = new HashMap<>();
+    for (String key : keys) {
+      Object value = get(key);
+      if (value != null) {
+        retVal.put(key, value);
+      }
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Adds multiple keys to the cache. Implementations backed by a remote cache send all keys in a
+   * single round trip.
+   *
+   * @param entries The keys to create and the values to associate them with.
+   */
+  public void setAll(Map<String, Object> entries) {
+    for (Map.Entry<String, Object> entry : entries.entrySet()) {
+      set(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Deletes multiple keys from the cache.
+   *
+   * @param keys The keys to be deleted.
+   */
+  public void deleteAll(Collection<String> keys) {
+    for (String key : keys) {
+      deleteByKeyName(key);
+    }
+  }
+
   /**
    * The names of the keys currently cached.
    *
@@ -123,8 +183,30 @@ public abstract class CacheService {
    */
   public abstract Set<String> getKeyNames();
 
+  /**
+   * Iterates over the names of the keys currently cached. Contrary to {@link #getKeyNames()},
+   * implementations backed by a remote cache may fetch the keys lazily in batches, so that large
+   * caches can be traversed without loading all key names in memory. Keys added or removed while
+   * iterating may or may not be returned.
+   *
+   * @return An iterator over the names of the keys currently cached.
+   */
+  public Iterator<String> getKeyNamesIterator() {
+    return getKeyNames().iterator();
+  }
+
   /**
    * Entirely clears cache's entries.
    */
   public abstract void clear();
+
+  /**
+   * Runtime statistics of the cache (e.g. hits and misses). Implementations that do not keep
+   * statistics return an empty map.
+   *
+   * @return A map of statistic names to their current values.
+   */
+  public Map<String, Long> getStatistics() {
+    return new HashMap<>();
+  }
 }
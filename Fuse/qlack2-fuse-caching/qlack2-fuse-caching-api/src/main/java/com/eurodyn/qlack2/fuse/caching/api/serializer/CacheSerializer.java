@@ -0,0 +1,48 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.caching.api.serializer;
+
+/**
+ * Converts cached values to and from their binary representation, for cache implementations that
+ * store values outside the JVM (e.g. Redis).
+ */
+public interface CacheSerializer {
+
+  /**
+   * Serialises a value.
+   *
+   * @param value The value to serialise.
+   * @return The binary representation of the value.
+   */
+  byte[] serialize(Object value);
+
+  /**
+   * Deserialises a value without any knowledge of its expected type.
+   *
+   * @param data The binary representation of the value.
+   * @return The deserialised value.
+   */
+  Object deserialize(byte[] data);
+
+  /**
+   * Deserialises a value to the given type.
+   *
+   * @param data The binary representation of the value.
+   * @param type The expected type of the value.
+   * @param <T> The expected type of the value.
+   * @return The deserialised value.
+   */
+  <T> T deserialize(byte[] data, Class<T> type);
+}
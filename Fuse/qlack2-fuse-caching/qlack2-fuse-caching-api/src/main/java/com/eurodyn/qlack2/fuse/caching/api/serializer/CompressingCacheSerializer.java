@@ -0,0 +1,114 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.caching.api.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decorates a {@link CacheSerializer} compressing payloads larger than a threshold. Each payload
+ * is prefixed with a single byte denoting whether the rest of it is compressed, so that small
+ * values are stored with a one byte overhead only.
+ */
+public class CompressingCacheSerializer implements CacheSerializer {
+
+  private static final byte UNCOMPRESSED = 0;
+  private static final byte COMPRESSED = 1;
+
+  private final CacheSerializer delegate;
+  private final int threshold;
+
+  /**
+   * @param delegate The serialiser producing the uncompressed payloads.
+   * @param threshold The size (in bytes) above which payloads are compressed.
+   */
+  public CompressingCacheSerializer(CacheSerializer delegate, int threshold) {
+    this.delegate = delegate;
+    this.threshold = threshold;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    byte[] data = delegate.serialize(value);
+    if (data.length <= threshold) {
+      return frame(UNCOMPRESSED, data, data.length);
+    }
+
+    // Use the fastest compression level, as this runs on every cache write.
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      byte[] buffer = new byte[data.length];
+      int length = 0;
+      while (!deflater.finished() && length < buffer.length) {
+        length += deflater.deflate(buffer, length, buffer.length - length);
+      }
+      // Store the payload uncompressed if compression does not pay off.
+      if (!deflater.finished()) {
+        return frame(UNCOMPRESSED, data, data.length);
+      }
+      return frame(COMPRESSED, buffer, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private byte[] frame(byte header, byte[] data, int length) {
+    byte[] retVal = new byte[length + 1];
+    retVal[0] = header;
+    System.arraycopy(data, 0, retVal, 1, length);
+
+    return retVal;
+  }
+
+  private byte[] unframe(byte[] data) {
+    if (data[0] == UNCOMPRESSED) {
+      return Arrays.copyOfRange(data, 1, data.length);
+    }
+
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, 1, data.length - 1);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new CacheSerializerException("Truncated compressed value.", null);
+        }
+        out.write(buffer, 0, length);
+      }
+      return out.toByteArray();
+    } catch (DataFormatException e) {
+      throw new CacheSerializerException("Could not decompress value.", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    return delegate.deserialize(unframe(data));
+  }
+
+  @Override
+  public <T> T deserialize(byte[] data, Class<T> type) {
+    return delegate.deserialize(unframe(data), type);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.caching.api.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * A binary {@link CacheSerializer} based on Java serialisation; cached values need to implement
+ * {@link java.io.Serializable}. The format is not compact: every value carries the descriptors of
+ * its classes, so small values are usually larger than their JSON form (see
+ * {@link CompressingCacheSerializer} for large ones). Only classes whose name starts with one of the allowed prefixes
+ * (plus the expected type itself) are deserialised, so that a compromised cache can not be used to
+ * instantiate arbitrary classes. Classes are resolved through the class loader of the expected type
+ * (i.e. the bundle of the caller) or, for untyped reads, through the context class loader of the
+ * calling thread; the class loader of this bundle is never used for non-JDK classes.
+ */
+public class JavaCacheSerializer implements CacheSerializer {
+
+  /**
+   * The JDK packages allowed by default, covering Strings, boxed primitives, collections, dates and
+   * big numbers.
+   */
+  public static final String[] DEFAULT_ALLOWED_CLASSES = {"java.lang.", "java.util.", "java.math.",
+    "java.time."};
+
+  private final String[] allowedClasses;
+
+  public JavaCacheSerializer() {
+    this(DEFAULT_ALLOWED_CLASSES);
+  }
+
+  /**
+   * @param allowedClasses The prefixes of the fully qualified names of the classes allowed to be
+   * deserialised (e.g. 'com.eurodyn.qlack2.' or 'java.util.ArrayList').
+   */
+  public JavaCacheSerializer(String... allowedClasses) {
+    this.allowedClasses = allowedClasses;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(value);
+    } catch (IOException e) {
+      throw new CacheSerializerException("Could not serialise value.", e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    return deserialize(data, Object.class);
+  }
+
+  @Override
+  public <T> T deserialize(byte[] data, Class<T> type) {
+    final ClassLoader classLoader = type.getClassLoader() != null
+      ? type.getClassLoader() : Thread.currentThread().getContextClassLoader();
+    try (ObjectInputStream in = new FilteringObjectInputStream(new ByteArrayInputStream(data),
+      classLoader, type)) {
+      return type.cast(in.readObject());
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      throw new CacheSerializerException("Could not deserialise value.", e);
+    }
+  }
+
+  private boolean isAllowed(String className, Class<?> type) {
+    // Strip the array notation, e.g. '[[Ljava.lang.String;'.
+    String name = className;
+    int dimensions = 0;
+    while (name.charAt(dimensions) == '[') {
+      dimensions++;
+    }
+    if (dimensions > 0) {
+      if (name.charAt(dimensions) != 'L') {
+        // An array of primitives.
+        return true;
+      }
+      name = name.substring(dimensions + 1, name.length() - 1);
+    }
+    if (name.equals(type.getName())) {
+      return true;
+    }
+    for (String allowedClass : allowedClasses) {
+      if (name.startsWith(allowedClass)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private class FilteringObjectInputStream extends ObjectInputStream {
+
+    private final ClassLoader classLoader;
+    private final Class<?> type;
+
+    FilteringObjectInputStream(InputStream in, ClassLoader classLoader, Class<?> type)
+      throws IOException {
+      super(in);
+      this.classLoader = classLoader;
+      this.type = type;
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+      throws IOException, ClassNotFoundException {
+      if (!isAllowed(desc.getName(), type)) {
+        throw new InvalidClassException(desc.getName(), "Class is not allowed to be deserialised.");
+      }
+      final boolean jdkClass = desc.getName().indexOf('.') < 0
+        || desc.getName().startsWith("java.");
+      if (classLoader != null) {
+        try {
+          return Class.forName(desc.getName(), false, classLoader);
+        } catch (ClassNotFoundException e) {
+          if (!jdkClass) {
+            throw e;
+          }
+        }
+      } else if (!jdkClass) {
+        throw new ClassNotFoundException(desc.getName());
+      }
+
+      // The default resolution, for JDK and primitive types.
+      return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+      throw new InvalidClassException("Proxy classes are not allowed to be deserialised.");
+    }
+  }
+}
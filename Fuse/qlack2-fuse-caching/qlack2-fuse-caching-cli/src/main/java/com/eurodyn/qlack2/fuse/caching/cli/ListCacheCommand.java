@@ -21,8 +21,7 @@ import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Iterator;
 
 @Command(scope = "qlack", name = "caching-list", description = "List entries currently in cache.")
 @Service
@@ -45,20 +44,24 @@ public final class ListCacheCommand implements Action {
 
   @Override
   public Object execute() {
-    /** Get all keys */
-    Set<String> keyNames = cacheService.getKeyNames();
-    System.out.println("Total keys: " + keyNames.size());
+    /** Iterate over all keys, without loading them in memory at once */
+    Iterator<String> keyNames = cacheService.getKeyNamesIterator();
+    long total = 0;
+    long displayed = 0;
 
-    /** Filter keys if requested so */
-    if (filter != null && filter.length() > 0) {
-      keyNames = keyNames.parallelStream().filter(k -> k.matches(filter)).collect(Collectors.toSet());
-    }
+    while (keyNames.hasNext()) {
+      String keyName = keyNames.next();
+      total++;
 
-    for (String keyName : keyNames) {
-      System.out.format("\t%." + keyCutoff + "s %."+ valueCutoff + "s\n", keyName, cacheService.get(keyName));
+      /** Filter keys if requested so */
+      if (filter == null || filter.length() == 0 || keyName.matches(filter)) {
+        System.out.format("\t%." + keyCutoff + "s %."+ valueCutoff + "s\n", keyName, cacheService.get(keyName));
+        displayed++;
+      }
     }
 
-    System.out.println("Keys displayed: " + keyNames.size());
+    System.out.println("Total keys: " + total);
+    System.out.println("Keys displayed: " + displayed);
 
     return null;
   }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.caching.cli;
+
+import com.eurodyn.qlack2.fuse.caching.api.CacheService;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import java.util.Map;
+
+@Command(scope = "qlack", name = "caching-stats", description = "Displays the statistics of the cache.")
+@Service
+public final class StatisticsCacheCommand implements Action {
+
+  @Reference
+  private CacheService cacheService;
+
+  @Override
+  public Object execute() {
+    Map<String, Long> statistics = cacheService.getStatistics();
+    if (statistics.isEmpty()) {
+      System.out.println("No statistics available for this cache.");
+    }
+    for (Map.Entry<String, Long> entry : statistics.entrySet()) {
+      System.out.format("\t%s: %d\n", entry.getKey(), entry.getValue());
+    }
+
+    return null;
+  }
+
+}
@@ -21,7 +21,10 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -83,6 +86,29 @@ public class CacheServiceImpl extends CacheService {
     }
   }
 
+  @Override
+  public Map<String, Object> getAll(Collection<String> keys) {
+    if (isActive()) {
+      return new HashMap<>(cache.getAllPresent(keys));
+    } else {
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public void setAll(Map<String, Object> entries) {
+    if (isActive()) {
+      cache.putAll(entries);
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<String> keys) {
+    if (isActive()) {
+      cache.invalidateAll(keys);
+    }
+  }
+
   @Override
   public void deleteByKeyPattern(String pattern) {
     if (isActive()) {
@@ -24,7 +24,10 @@ import net.spy.memcached.OperationTimeoutException;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
@@ -73,16 +76,18 @@ public class CacheServiceImpl extends CacheService {
     }
   }
 
+  /**
+   * Memcached expresses EPOCH in seconds, therefore we need to convert the msec passed EPOCH.
+   */
+  private int expiresAtEpochSec() {
+    return getExpiryTime() > 0 ? (int) ((System.currentTimeMillis() + getExpiryTime()) / 1000l) : 0;
+  }
+
   @Override
   public void set(String key, Object value) {
     if (isActive()) {
       try {
-        /**
-         * Memcached expresses EPOCH in seconds, therefore we need to convert the msec passed EPOCH.
-         */
-        int expiresAtEpochSec =
-          getExpiryTime() > 0 ? (int) ((System.currentTimeMillis() + getExpiryTime()) / 1000l) : 0;
-        cache.set(key, expiresAtEpochSec, value);
+        cache.set(key, expiresAtEpochSec(), value);
         LOGGER.log(Level.FINEST, "Added to memcached key {0}, with " + "value {1}.",
           new String[]{key, value.toString()});
         keys.add(key);
@@ -122,6 +127,48 @@ public class CacheServiceImpl extends CacheService {
     return retVal;
   }
 
+  @Override
+  public Map<String, Object> getAll(Collection<String> keys) {
+    Map<String, Object> retVal = new HashMap<>();
+
+    if (isActive() && cache != null && !keys.isEmpty()) {
+      try {
+        retVal.putAll(cache.getBulk(keys));
+      } catch (OperationTimeoutException | CancellationException e) {
+        LOGGER.log(Level.FINEST, "Could not get the keys from the cache.", e);
+      }
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Keys are set asynchronously; spymemcached pipelines the queued operations over the same
+   * connection, so that all keys are sent without waiting for each individual reply.
+   */
+  @Override
+  public void setAll(Map<String, Object> entries) {
+    if (isActive()) {
+      int expiresAtEpochSec = expiresAtEpochSec();
+      for (Map.Entry<String, Object> entry : entries.entrySet()) {
+        cache.set(entry.getKey(), expiresAtEpochSec, entry.getValue());
+        keys.add(entry.getKey());
+      }
+      LOGGER.log(Level.FINEST, "Added to memcached {0} keys.", entries.size());
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<String> keys) {
+    if (isActive()) {
+      for (String key : keys) {
+        cache.delete(key);
+        this.keys.remove(key);
+      }
+      LOGGER.log(Level.FINEST, "Deleted from memcached {0} keys.", keys.size());
+    }
+  }
+
   @Override
   public void deleteByKeyPattern(String pattern) {
     if (isActive()) {
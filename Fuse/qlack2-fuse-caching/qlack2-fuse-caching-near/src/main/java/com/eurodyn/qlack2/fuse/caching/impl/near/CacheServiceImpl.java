@@ -0,0 +1,506 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.caching.impl.near;
+
+import com.eurodyn.qlack2.fuse.caching.api.CacheService;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializer;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializerException;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.JavaCacheSerializer;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterListener;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterService;
+import com.google.common.base.Predicates;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * A two-tier cache decorating a remote cache (e.g. Redis or Memcached) with a bounded, local,
+ * in-memory tier. Reads are served from the local tier when possible and fall back to the remote
+ * cache otherwise. Every mutation is applied to the remote cache and is broadcast to the rest of
+ * the cluster, so that other nodes can evict their local copy of the affected keys.
+ *
+ * Local entries are kept per key and per requested type, as the remote cache may return a different
+ * representation of the same value for typed and untyped reads. Mutable values are kept in their
+ * serialised form and every read returns its own copy, so that callers can not modify each other's
+ * values; values which are neither immutable nor {@link java.io.Serializable} are not cached locally.
+ *
+ * Every local invalidation, whether by a mutation on this node or by a message from another node,
+ * moves the invalidation generation of this node. A value read from the remote cache is only kept
+ * locally if the generation did not move since before the remote read, so that a concurrent
+ * mutation can not be overwritten by the value it replaced. Invalidation messages are not
+ * guaranteed to arrive, though; stale entries then survive at most for the expiry time of the local
+ * tier, so keep this value considerably lower than the expiry time of the remote cache.
+ */
+public class CacheServiceImpl extends CacheService {
+
+  public static final Logger LOGGER = Logger.getLogger(CacheServiceImpl.class.getName());
+
+  /**
+   * Invalidation operations exchanged between the nodes of the cluster.
+   */
+  private static final String OP_KEY = "K";
+  private static final String OP_KEYS = "M";
+  private static final String OP_PATTERN = "P";
+  private static final String OP_CLEAR = "C";
+
+  /**
+   * A unique ID for this node, so that invalidation messages published by this node are ignored
+   * when received back from the cluster.
+   */
+  private final String nodeID = UUID.randomUUID().toString();
+
+  /**
+   * The types which are safe to share between callers.
+   */
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.asList(
+    String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+    Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class));
+
+  /**
+   * Serialises the local copies of mutable values, deserialising only the classes allowed by the
+   * configuration (as the remote caches do).
+   */
+  private CacheSerializer copySerializer;
+
+  /**
+   * Comma-separated prefixes of the classes (in addition to the JDK ones) allowed in the local
+   * copies of mutable values, e.g. 'com.eurodyn.qlack2.,com.example.dto.'. Values containing other
+   * classes are not cached locally.
+   */
+  private String allowedClasses = "";
+
+  private Cache<String, ConcurrentMap<Class<?>, LocalValue>> cache;
+  private CacheService remote;
+  private QlackClusterService clusterService;
+  private String invalidationTopic = "qlack2-fuse-caching-near";
+  private String registrationID;
+
+  /**
+   * Per tier statistics.
+   */
+  private final AtomicLong nearHits = new AtomicLong();
+  private final AtomicLong nearMisses = new AtomicLong();
+  private final AtomicLong remoteHits = new AtomicLong();
+  private final AtomicLong remoteMisses = new AtomicLong();
+  private final AtomicLong invalidationsReceived = new AtomicLong();
+
+  /**
+   * Moved before every local invalidation, so that values read from the remote cache before it are
+   * not kept locally.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  public void setRemote(CacheService remote) {
+    this.remote = remote;
+  }
+
+  public void setClusterService(QlackClusterService clusterService) {
+    this.clusterService = clusterService;
+  }
+
+  public void setInvalidationTopic(String invalidationTopic) {
+    this.invalidationTopic = invalidationTopic;
+  }
+
+  public void setAllowedClasses(String allowedClasses) {
+    this.allowedClasses = allowedClasses != null ? allowedClasses : "";
+  }
+
+  public void init() {
+    if (isActive()) {
+      LOGGER.log(Level.CONFIG, MessageFormat.format("Initialising near cache: {0}.", nodeID));
+      final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+      if (getMaxEntries() > 0) {
+        cacheBuilder.maximumSize(getMaxEntries());
+      }
+      if (getExpiryTime() > 0) {
+        cacheBuilder.expireAfterWrite(getExpiryTime(), TimeUnit.MILLISECONDS);
+      }
+      cache = cacheBuilder.build();
+      copySerializer = new JavaCacheSerializer(allowedClassPrefixes());
+
+      registrationID = clusterService.addListener(new QlackClusterListener() {
+        @Override
+        public void onMessage(String messageBody) {
+          onInvalidation(messageBody);
+        }
+      }, invalidationTopic);
+    } else {
+      LOGGER.log(Level.CONFIG, "Near cache is configured as inactive, all calls are delegated to "
+        + "the remote cache.");
+    }
+  }
+
+  private String[] allowedClassPrefixes() {
+    List<String> retVal = new ArrayList<>(Arrays.asList(JavaCacheSerializer.DEFAULT_ALLOWED_CLASSES));
+    for (String prefix : allowedClasses.split(",")) {
+      if (!prefix.trim().isEmpty()) {
+        retVal.add(prefix.trim());
+      }
+    }
+
+    return retVal.toArray(new String[retVal.size()]);
+  }
+
+  public void destroy() {
+    if (registrationID != null) {
+      clusterService.removeListener(registrationID, invalidationTopic);
+      registrationID = null;
+    }
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  private void publish(String op, String arg) {
+    clusterService.publish(invalidationTopic, nodeID + " " + op + " " + arg);
+  }
+
+  /**
+   * Publishes the invalidation of several keys as a single message, the argument of which is the
+   * keys each prefixed with its length (e.g. '3:abc2:de'), so that keys may contain any character.
+   */
+  private void publishKeys(Collection<String> keys) {
+    if (keys.size() == 1) {
+      publish(OP_KEY, keys.iterator().next());
+    } else if (!keys.isEmpty()) {
+      StringBuilder arg = new StringBuilder();
+      for (String key : keys) {
+        arg.append(key.length()).append(':').append(key);
+      }
+      publish(OP_KEYS, arg.toString());
+    }
+  }
+
+  private static List<String> parseKeys(String arg) {
+    List<String> retVal = new ArrayList<>();
+    int i = 0;
+    while (i < arg.length()) {
+      int separator = arg.indexOf(':', i);
+      int start = separator + 1;
+      int end = start + Integer.parseInt(arg.substring(i, separator));
+      retVal.add(arg.substring(start, end));
+      i = end;
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Processes an invalidation message of the form 'nodeID op [argument]' received from the
+   * cluster.
+   *
+   * @param message The invalidation message.
+   */
+  private void onInvalidation(String message) {
+    String[] parts = message.split(" ", 3);
+    if (parts.length < 2 || nodeID.equals(parts[0]) || cache == null) {
+      return;
+    }
+    invalidationsReceived.incrementAndGet();
+    generation.incrementAndGet();
+    LOGGER.log(Level.FINEST, "Received near cache invalidation: {0}.", message);
+    switch (parts[1]) {
+      case OP_KEY:
+        cache.invalidate(parts[2]);
+        break;
+      case OP_KEYS:
+        cache.invalidateAll(parseKeys(parts[2]));
+        break;
+      case OP_PATTERN:
+        evictLocal(parts[2]);
+        break;
+      case OP_CLEAR:
+        cache.invalidateAll();
+        break;
+      default:
+        LOGGER.log(Level.WARNING, "Unknown near cache invalidation message: {0}.", message);
+    }
+  }
+
+  private void evictLocal(String pattern) {
+    cache.invalidateAll(Sets.filter(cache.asMap().keySet(), Predicates.containsPattern(pattern)));
+  }
+
+  @Override
+  public void set(String key, Object value) {
+    remote.set(key, value);
+    if (isActive()) {
+      // The value is not cached locally here, as remote caches may return a different
+      // representation of it (e.g. Redis returns its serialised form).
+      generation.incrementAndGet();
+      cache.invalidate(key);
+      publish(OP_KEY, key);
+    }
+  }
+
+  @Override
+  public void deleteByKeyName(String key) {
+    remote.deleteByKeyName(key);
+    if (isActive()) {
+      generation.incrementAndGet();
+      cache.invalidate(key);
+      publish(OP_KEY, key);
+    }
+  }
+
+  @Override
+  public void deleteByKeyPattern(String pattern) {
+    remote.deleteByKeyPattern(pattern);
+    if (isActive()) {
+      generation.incrementAndGet();
+      evictLocal(pattern);
+      publish(OP_PATTERN, pattern);
+    }
+  }
+
+  @Override
+  public void deleteByKeyPrefix(String prefix) {
+    remote.deleteByKeyPrefix(prefix);
+    if (isActive()) {
+      // The prefix is matched literally, as it is for the remote caches.
+      String pattern = "^" + Pattern.quote(prefix);
+      generation.incrementAndGet();
+      evictLocal(pattern);
+      publish(OP_PATTERN, pattern);
+    }
+  }
+
+  /**
+   * Returns a copy of the local value of a key for a type, or null if there is none.
+   */
+  private Object getLocal(String key, Class<?> type) {
+    Map<Class<?>, LocalValue> values = cache.getIfPresent(key);
+    LocalValue value = values != null ? values.get(type) : null;
+    if (value == null) {
+      return null;
+    }
+    try {
+      return value.get();
+    } catch (CacheSerializerException e) {
+      LOGGER.log(Level.WARNING, "Could not copy local value of key " + key + ".", e);
+      values.remove(type, value);
+      return null;
+    }
+  }
+
+  /**
+   * Keeps a local copy of the value of a key for a type, if the value can be copied and no local
+   * invalidation happened since the given generation.
+   *
+   * @param loadGeneration The invalidation generation before the value was read remotely.
+   */
+  private void putLocal(String key, Class<?> type, Object value, long loadGeneration) {
+    if (loadGeneration != generation.get()) {
+      return;
+    }
+    LocalValue localValue;
+    if (IMMUTABLE_TYPES.contains(value.getClass()) || value instanceof Enum) {
+      localValue = new LocalValue(value, null, null);
+    } else if (value instanceof Serializable) {
+      try {
+        localValue = new LocalValue(null, value.getClass(), copySerializer.serialize(value));
+        // Copy the value once, so that values containing classes which are not allowed are
+        // rejected here rather than on every read.
+        localValue.get();
+      } catch (CacheSerializerException e) {
+        LOGGER.log(Level.FINE, "Could not copy value of key " + key + ", it is not cached "
+          + "locally.", e);
+        return;
+      }
+    } else {
+      return;
+    }
+    ConcurrentMap<Class<?>, LocalValue> values;
+    try {
+      values = cache.get(key, new Callable<ConcurrentMap<Class<?>, LocalValue>>() {
+        @Override
+        public ConcurrentMap<Class<?>, LocalValue> call() {
+          return new ConcurrentHashMap<>(2);
+        }
+      });
+    } catch (ExecutionException e) {
+      // Not thrown, the loader above does not fail.
+      throw new IllegalStateException(e);
+    }
+    values.put(type, localValue);
+    // An invalidation since the remote read may have missed the value put above (e.g. a set on
+    // this node right after the read), in which case the value may be stale.
+    if (loadGeneration != generation.get()) {
+      values.remove(type, localValue);
+    }
+  }
+
+  @Override
+  public Object get(String key) {
+    return get(key, Object.class);
+  }
+
+  @Override
+  public <T> T get(String key, Class<T> type) {
+    if (!isActive()) {
+      return type == Object.class ? type.cast(remote.get(key)) : remote.get(key, type);
+    }
+
+    Object retVal = getLocal(key, type);
+    if (retVal != null) {
+      nearHits.incrementAndGet();
+    } else {
+      nearMisses.incrementAndGet();
+      long loadGeneration = generation.get();
+      retVal = type == Object.class ? remote.get(key) : remote.get(key, type);
+      if (retVal != null) {
+        remoteHits.incrementAndGet();
+        putLocal(key, type, retVal, loadGeneration);
+      } else {
+        remoteMisses.incrementAndGet();
+      }
+    }
+
+    return type.cast(retVal);
+  }
+
+  @Override
+  public Map<String, Object> getAll(Collection<String> keys) {
+    if (!isActive()) {
+      return remote.getAll(keys);
+    }
+
+    Map<String, Object> retVal = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String key : keys) {
+      Object value = getLocal(key, Object.class);
+      if (value != null) {
+        retVal.put(key, value);
+      } else {
+        missing.add(key);
+      }
+    }
+    nearHits.addAndGet(retVal.size());
+    nearMisses.addAndGet(missing.size());
+
+    if (!missing.isEmpty()) {
+      long loadGeneration = generation.get();
+      Map<String, Object> remoteValues = remote.getAll(missing);
+      remoteHits.addAndGet(remoteValues.size());
+      remoteMisses.addAndGet(missing.size() - remoteValues.size());
+      for (Map.Entry<String, Object> entry : remoteValues.entrySet()) {
+        putLocal(entry.getKey(), Object.class, entry.getValue(), loadGeneration);
+      }
+      retVal.putAll(remoteValues);
+    }
+
+    return retVal;
+  }
+
+  @Override
+  public void setAll(Map<String, Object> entries) {
+    remote.setAll(entries);
+    if (isActive()) {
+      generation.incrementAndGet();
+      cache.invalidateAll(entries.keySet());
+      publishKeys(entries.keySet());
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<String> keys) {
+    remote.deleteAll(keys);
+    if (isActive()) {
+      generation.incrementAndGet();
+      cache.invalidateAll(keys);
+      publishKeys(keys);
+    }
+  }
+
+  @Override
+  public Set<String> getKeyNames() {
+    return remote.getKeyNames();
+  }
+
+  @Override
+  public Iterator<String> getKeyNamesIterator() {
+    return remote.getKeyNamesIterator();
+  }
+
+  @Override
+  public void clear() {
+    remote.clear();
+    if (isActive()) {
+      generation.incrementAndGet();
+      cache.invalidateAll();
+      publish(OP_CLEAR, "");
+    }
+  }
+
+  @Override
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> retVal = new LinkedHashMap<>();
+    retVal.put("near.hits", nearHits.get());
+    retVal.put("near.misses", nearMisses.get());
+    retVal.put("near.size", cache != null ? cache.size() : 0L);
+    retVal.put("remote.hits", remoteHits.get());
+    retVal.put("remote.misses", remoteMisses.get());
+    retVal.put("invalidations.received", invalidationsReceived.get());
+
+    return retVal;
+  }
+
+  /**
+   * A locally cached value; immutable values are kept as-is, mutable ones in their serialised form.
+   */
+  private final class LocalValue {
+
+    private final Object value;
+    private final Class<?> type;
+    private final byte[] data;
+
+    LocalValue(Object value, Class<?> type, byte[] data) {
+      this.value = value;
+      this.type = type;
+      this.data = data;
+    }
+
+    Object get() {
+      // Resolve classes through the class loader of the value, i.e. the bundle that cached it.
+      return data == null ? value : copySerializer.deserialize(data, type);
+    }
+  }
+}
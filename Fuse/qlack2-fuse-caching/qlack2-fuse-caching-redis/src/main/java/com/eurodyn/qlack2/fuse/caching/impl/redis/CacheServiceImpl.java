@@ -15,31 +15,97 @@
 package com.eurodyn.qlack2.fuse.caching.impl.redis;
 
 import com.eurodyn.qlack2.fuse.caching.api.CacheService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Sets;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializer;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializerException;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CompressingCacheSerializer;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.JavaCacheSerializer;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
  * A Redis backed caching client. The caching URL is:
  * redis-host:redis-port:maxTotal:minIdle:maxIdle
+ *
+ * Keys are enumerated with cursor-based SCAN (never with KEYS), so that enumerating or deleting
+ * keys does not block the Redis server. When a namespace is configured all keys are stored
+ * under 'namespace:key' and operations affecting multiple keys (including {@link #clear()}) are
+ * restricted to this namespace.
  */
 public class CacheServiceImpl extends CacheService {
 
   public static final Logger LOGGER = Logger.getLogger(CacheServiceImpl.class.getName());
   private final String namespaceSeparator = ":";
   private JedisPool pool;
-  private ObjectMapper mapper = new ObjectMapper();
+  private CacheSerializer serializer;
 
-  public CacheServiceImpl() {
+  /**
+   * An optional namespace for the keys of this cache.
+   */
+  private String namespace = "";
+
+  /**
+   * The number of keys fetched per SCAN call as well as the number of keys deleted per pipeline.
+   */
+  private int scanBatchSize = 1000;
+
+  /**
+   * The format values are stored in: 'json' (human readable, untyped reads return the JSON String)
+   * or 'java' (binary, but not compact, Java serialisation; untyped reads return the original
+   * Object).
+   */
+  private String serializerType = "json";
+
+  /**
+   * The size (in bytes) above which values are compressed. Leave at '0' to disable compression.
+   */
+  private int compressionThreshold = 0;
+
+  /**
+   * Comma-separated prefixes of the classes (in addition to the JDK ones) allowed to be
+   * deserialised with 'java' serialisation, e.g. 'com.eurodyn.qlack2.,com.example.dto.'.
+   */
+  private String allowedClasses = "";
+
+  public void setSerializerType(String serializerType) {
+    this.serializerType = serializerType;
+  }
+
+  public void setCompressionThreshold(int compressionThreshold) {
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public void setAllowedClasses(String allowedClasses) {
+    this.allowedClasses = allowedClasses != null ? allowedClasses : "";
+  }
+
+  public void setNamespace(String namespace) {
+    this.namespace = namespace != null ? namespace : "";
+  }
+
+  public void setScanBatchSize(int scanBatchSize) {
+    this.scanBatchSize = scanBatchSize;
+  }
+
+  public void init() {
     if (isActive()) {
       LOGGER.log(Level.CONFIG, "Initialising Redis pool to {0}.", getCacheURL());
       JedisPoolConfig config = new JedisPoolConfig();
@@ -48,37 +114,71 @@ public class CacheServiceImpl extends CacheService {
       config.setMaxIdle(Integer.parseInt(cacheURLArgs[3]));
       config.setMinIdle(Integer.parseInt(cacheURLArgs[4]));
       pool = new JedisPool(config, cacheURLArgs[0], Integer.parseInt(cacheURLArgs[1]));
+
+      serializer = "java".equalsIgnoreCase(serializerType)
+        ? new JavaCacheSerializer(allowedClassPrefixes()) : new JacksonCacheSerializer();
+      if (compressionThreshold > 0) {
+        serializer = new CompressingCacheSerializer(serializer, compressionThreshold);
+      }
+      LOGGER.log(Level.CONFIG, "Using {0} serialisation with compression threshold {1}.",
+        new Object[]{serializerType, compressionThreshold});
     }
   }
 
-  private String keyName(String namespace, String key) {
-    return namespace + namespaceSeparator + key;
+  private String[] allowedClassPrefixes() {
+    List<String> retVal = new ArrayList<>(Arrays.asList(JavaCacheSerializer.DEFAULT_ALLOWED_CLASSES));
+    for (String prefix : allowedClasses.split(",")) {
+      if (!prefix.trim().isEmpty()) {
+        retVal.add(prefix.trim());
+      }
+    }
+
+    return retVal.toArray(new String[retVal.size()]);
+  }
+
+  private String keyName(String key) {
+    return namespace.isEmpty() ? key : namespace + namespaceSeparator + key;
+  }
+
+  private String stripNamespace(String key) {
+    return namespace.isEmpty() ? key : key.substring(namespace.length() + namespaceSeparator.length());
+  }
+
+  /**
+   * Escapes the glob-style special characters of Redis MATCH patterns.
+   */
+  private String escapeGlob(String value) {
+    return value.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+  }
+
+  private String namespaceMatch() {
+    return namespace.isEmpty() ? "*" : escapeGlob(namespace + namespaceSeparator) + "*";
   }
 
   public void destroy() {
-    pool.destroy();
+    if (pool != null) {
+      pool.destroy();
+    }
+  }
+
+  private byte[] rawKey(String key) {
+    return keyName(key).getBytes(StandardCharsets.UTF_8);
   }
 
   @Override
   public void set(String key, Object value) {
     if (isActive()) {
       try {
-        /** Convert Object to String, since Redis only holds Strings */
-        String serialisedValue;
-        if (!(value instanceof String)) {
-          serialisedValue = mapper.writeValueAsString(value);
-        } else {
-          serialisedValue = (String) value;
-        }
+        byte[] serialisedValue = serializer.serialize(value);
 
         try (Jedis jedis = pool.getResource()) {
           if (getExpiryTime() > 0) {
-            jedis.setex(key, (int) (getExpiryTime() / 1000), serialisedValue);
+            jedis.setex(rawKey(key), (int) (getExpiryTime() / 1000), serialisedValue);
           } else {
-            jedis.set(key, serialisedValue);
+            jedis.set(rawKey(key), serialisedValue);
           }
         }
-      } catch (JsonProcessingException e) {
+      } catch (CacheSerializerException e) {
         LOGGER.log(Level.SEVERE, "Could not serialise value.", e);
       }
     }
@@ -88,36 +188,145 @@ public class CacheServiceImpl extends CacheService {
   public void deleteByKeyName(String key) {
     if (isActive()) {
       try (Jedis jedis = pool.getResource()) {
-        jedis.del(key);
+        jedis.del(keyName(key));
       }
     }
   }
 
   @Override
   public Object get(String key) {
+    return get(key, Object.class);
+  }
+
+  @Override
+  public <T> T get(String key, Class<T> type) {
     if (isActive()) {
+      byte[] value;
       try (Jedis jedis = pool.getResource()) {
-        return jedis.get(key);
+        value = jedis.get(rawKey(key));
       }
+      return value != null ? serializer.deserialize(value, type) : null;
     } else {
       return null;
     }
   }
 
   @Override
-  public void deleteByKeyPattern(String pattern) {
+  public Map<String, Object> getAll(Collection<String> keys) {
+    Map<String, Object> retVal = new HashMap<>();
+
+    if (isActive() && !keys.isEmpty()) {
+      List<String> keyList = new ArrayList<>(keys);
+      byte[][] keyNames = new byte[keyList.size()][];
+      for (int i = 0; i < keyNames.length; i++) {
+        keyNames[i] = rawKey(keyList.get(i));
+      }
+      List<byte[]> values;
+      try (Jedis jedis = pool.getResource()) {
+        values = jedis.mget(keyNames);
+      }
+      for (int i = 0; i < values.size(); i++) {
+        if (values.get(i) != null) {
+          retVal.put(keyList.get(i), serializer.deserialize(values.get(i)));
+        }
+      }
+    }
+
+    return retVal;
+  }
+
+  @Override
+  public void setAll(Map<String, Object> entries) {
+    if (isActive() && !entries.isEmpty()) {
+      // Serialise all values before opening the pipeline, so that a failure cannot leave
+      // commands queued on a connection returned to the pool.
+      byte[][] keyNames = new byte[entries.size()][];
+      byte[][] values = new byte[entries.size()][];
+      int i = 0;
+      try {
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+          keyNames[i] = rawKey(entry.getKey());
+          values[i] = serializer.serialize(entry.getValue());
+          i++;
+        }
+      } catch (CacheSerializerException e) {
+        LOGGER.log(Level.SEVERE, "Could not serialise value.", e);
+        return;
+      }
+
+      try (Jedis jedis = pool.getResource()) {
+        Pipeline pipeline = jedis.pipelined();
+        for (i = 0; i < keyNames.length; i++) {
+          if (getExpiryTime() > 0) {
+            pipeline.setex(keyNames[i], (int) (getExpiryTime() / 1000), values[i]);
+          } else {
+            pipeline.set(keyNames[i], values[i]);
+          }
+        }
+        pipeline.sync();
+      }
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<String> keys) {
     if (isActive()) {
+      List<String> batch = new ArrayList<>(scanBatchSize);
+      for (String key : keys) {
+        batch.add(keyName(key));
+        if (batch.size() >= scanBatchSize) {
+          deleteBatch(batch);
+        }
+      }
+      deleteBatch(batch);
+    }
+  }
+
+  /**
+   * Deletes the keys matching a server-side MATCH pattern (and optionally a Java regular
+   * expression applied to the key name without its namespace). Keys are scanned and deleted in
+   * pipelined batches, so that neither the server blocks nor all keys are loaded in memory.
+   */
+  private void deleteMatching(String match, Pattern regex) {
+    ScanIterator scanIterator = new ScanIterator(match);
+    List<String> batch = new ArrayList<>(scanBatchSize);
+    while (scanIterator.hasNext()) {
+      String key = scanIterator.next();
+      if (regex == null || regex.matcher(key).find()) {
+        batch.add(keyName(key));
+      }
+      if (batch.size() >= scanBatchSize) {
+        deleteBatch(batch);
+      }
+    }
+    deleteBatch(batch);
+  }
+
+  private void deleteBatch(List<String> batch) {
+    if (!batch.isEmpty()) {
       try (Jedis jedis = pool.getResource()) {
-        Set<String> filter = Sets.filter(getKeyNames(), Predicates.containsPattern(pattern));
-        jedis.del(filter.toArray(new String[filter.size()]));
+        Pipeline pipeline = jedis.pipelined();
+        for (String key : batch) {
+          pipeline.del(key);
+        }
+        pipeline.sync();
       }
+      LOGGER.log(Level.FINEST, "Deleted {0} keys.", batch.size());
+      batch.clear();
+    }
+  }
+
+  @Override
+  public void deleteByKeyPattern(String pattern) {
+    if (isActive()) {
+      deleteMatching(namespaceMatch(), Pattern.compile(pattern));
     }
   }
 
   @Override
   public void deleteByKeyPrefix(String prefix) {
     if (isActive()) {
-      deleteByKeyPattern(prefix + ".*");
+      deleteMatching(escapeGlob(keyName(prefix)) + "*", null);
     }
   }
 
@@ -126,20 +335,68 @@ public class CacheServiceImpl extends CacheService {
     Set<String> retVal = new HashSet<>();
 
     if (isActive()) {
-      try (Jedis jedis = pool.getResource()) {
-        retVal = jedis.keys("*");
+      Iterator<String> keys = getKeyNamesIterator();
+      while (keys.hasNext()) {
+        retVal.add(keys.next());
       }
     }
 
     return retVal;
   }
 
+  @Override
+  public Iterator<String> getKeyNamesIterator() {
+    if (isActive()) {
+      return new ScanIterator(namespaceMatch());
+    } else {
+      return new HashSet<String>().iterator();
+    }
+  }
+
   @Override
   public void clear() {
     if (isActive()) {
-      try (Jedis jedis = pool.getResource()) {
-        jedis.flushAll();
+      deleteMatching(namespaceMatch(), null);
+    }
+  }
+
+  /**
+   * Lazily iterates over the keys matching a MATCH pattern, fetching a new page via SCAN when the
+   * current one is exhausted. A pooled connection is borrowed only for the duration of each SCAN
+   * call. Note that SCAN may return the same key more than once.
+   */
+  private class ScanIterator implements Iterator<String> {
+
+    private final ScanParams params;
+    private String cursor = ScanParams.SCAN_POINTER_START;
+    private Iterator<String> page;
+    private boolean finished = false;
+
+    ScanIterator(String match) {
+      params = new ScanParams().match(match).count(scanBatchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while ((page == null || !page.hasNext()) && !finished) {
+        try (Jedis jedis = pool.getResource()) {
+          ScanResult<String> result = jedis.scan(cursor, params);
+          cursor = result.getStringCursor();
+          page = result.getResult().iterator();
+          finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+        }
+      }
+
+      return page != null && page.hasNext();
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
+
+      return stripNamespace(page.next());
     }
   }
 
@@ -0,0 +1,60 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.caching.impl.redis;
+
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializer;
+import com.eurodyn.qlack2.fuse.caching.api.serializer.CacheSerializerException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON {@link CacheSerializer}, writing Strings as-is and any other value as JSON. Untyped reads
+ * return the raw (JSON) String, as the Redis cache has always done.
+ */
+public class JacksonCacheSerializer implements CacheSerializer {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Override
+  public byte[] serialize(Object value) {
+    if (value instanceof String) {
+      return ((String) value).getBytes(StandardCharsets.UTF_8);
+    }
+    try {
+      return mapper.writeValueAsBytes(value);
+    } catch (IOException e) {
+      throw new CacheSerializerException("Could not serialise value.", e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    return new String(data, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public <T> T deserialize(byte[] data, Class<T> type) {
+    if (type == String.class || type == Object.class) {
+      return type.cast(deserialize(data));
+    }
+    try {
+      return mapper.readValue(data, type);
+    } catch (IOException e) {
+      throw new CacheSerializerException("Could not deserialise value.", e);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.eventpublisher.api;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A handler of events published asynchronously, receiving them in batches
+ * instead of one at a time. Handlers are registered as OSGi services with
+ * the event.topics (and optionally event.filter) service properties of
+ * EventHandlers, and receive events only when the event bus of the event
+ * publisher is enabled.
+ */
+public interface EventBatchHandler {
+
+	/**
+	 * Handles consecutive events published on the same topic.
+	 *
+	 * @param topic The topic of the events.
+	 * @param events The (read-only) data of the events, in the order they are
+	 * delivered.
+	 */
+	void handleEvents(String topic, List<Map<String, Object>> events);
+}
@@ -17,6 +17,31 @@ package com.eurodyn.qlack2.fuse.eventpublisher.api;
 import java.util.Map;
 
 public interface EventPublisherService {
+
+	/**
+	 * The event property by which events are ordered when delivered
+	 * asynchronously through the event bus: events with equal values of the
+	 * property are delivered to each handler in the order they were
+	 * published. Events without the property are ordered per publishing
+	 * thread, as with EventAdmin.
+	 */
+	String ORDERING_KEY = "qlack2.eventpublisher.key";
+
+	/**
+	 * The (optional) service property of event handlers setting the number of
+	 * threads delivering events to the handler through the event bus.
+	 */
+	String HANDLER_THREADS = "qlack2.eventpublisher.threads";
+
 	void publishAsync(Map<String, Object> data, String topic);
 	void publishSync(Map<String, Object> data, String topic);
+
+	/**
+	 * @return The statistics of the event bus (events published, backlog,
+	 * events overflowing the ring buffer, and per handler the events
+	 * delivered, the backlog, the events overflowing the lane capacity, the
+	 * failures and the latency in microseconds); empty when the event bus is
+	 * disabled.
+	 */
+	Map<String, Long> getStatistics();
 }
@@ -15,16 +15,23 @@
 package com.eurodyn.qlack2.fuse.eventpublisher.impl;
 
 import com.eurodyn.qlack2.fuse.eventpublisher.api.EventPublisherService;
+import com.eurodyn.qlack2.fuse.eventpublisher.impl.bus.EventBus;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Publishes events through EventAdmin or, when enabled, publishes the
+ * asynchronous events through the {@link EventBus}.
+ */
 public class EventPublisherServiceImpl implements EventPublisherService {
 
   private EventAdmin eventAdmin;
+  private EventBus eventBus;
   private static final Logger logger = Logger
     .getLogger(EventPublisherServiceImpl.class.getName());
 
@@ -32,10 +39,17 @@ public class EventPublisherServiceImpl implements EventPublisherService {
     this.eventAdmin = eventAdmin;
   }
 
+  public void setEventBus(EventBus eventBus) {
+    this.eventBus = eventBus;
+  }
+
   @Override
   public void publishAsync(Map<String, Object> data, String topic) {
     logger.log(Level.FINEST, "Publish async: ", new Object[]{topic, data});
-    eventAdmin.postEvent(new Event(topic, data));
+    // Fall back to EventAdmin when the event bus is disabled or stopped.
+    if (eventBus == null || !eventBus.publish(topic, data)) {
+      eventAdmin.postEvent(new Event(topic, data));
+    }
   }
 
   @Override
@@ -44,4 +58,9 @@ public class EventPublisherServiceImpl implements EventPublisherService {
     eventAdmin.sendEvent(new Event(topic, data));
   }
 
+  @Override
+  public Map<String, Long> getStatistics() {
+    return eventBus != null ? eventBus.getStatistics() : new HashMap<>();
+  }
+
 }
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.eventpublisher.impl.bus;
+
+import com.eurodyn.qlack2.fuse.eventpublisher.api.EventBatchHandler;
+import com.eurodyn.qlack2.fuse.eventpublisher.api.EventPublisherService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.util.tracker.ServiceTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An event bus delivering the events published asynchronously to the
+ * EventHandler and {@link EventBatchHandler} services, as an alternative to
+ * EventAdmin for high volumes of events.
+ *
+ * Publishers add events to a lock-free ring buffer, from which a dispatcher
+ * thread hands them to the handlers subscribed to their topics. Each handler
+ * has its own pool of threads (lanes), so that a slow handler does not delay
+ * the others; events with the same {@link EventPublisherService#ORDERING_KEY}
+ * (or else published by the same thread) are delivered by the same lane, in
+ * order. Batch handlers receive the queued events of a lane together.
+ *
+ * Events are never dropped. When the lane of a handler is full, the
+ * dispatcher waits for a bounded time for room, which in turn holds back the
+ * publishers; after that the lane overflows and queues the events beyond its
+ * capacity. Likewise, publishers wait for a bounded time when the ring buffer
+ * is full, after which the events are queued in an overflow queue, which the
+ * dispatcher takes only after the ring buffer, so the order of the events is
+ * kept. Overflowing events are counted in the statistics.
+ *
+ * This bean is configured using Blueprint; the bus is disabled by default.
+ */
+public class EventBus {
+
+  private static final Logger LOGGER = Logger.getLogger(EventBus.class.getName());
+
+  // The maximum number of events the dispatcher takes from the ring buffer at a time.
+  private static final int DISPATCH_BATCH = 256;
+
+  // How long publishers wait for room in a full ring buffer (nsec).
+  private static final long FULL_PARK_NANOS = 100000;
+
+  // How long to wait for the dispatcher to hand out the remaining events on shutdown (msec).
+  private static final long SHUTDOWN_TIMEOUT = 10000;
+
+  private BundleContext bundleContext;
+  private boolean enabled;
+  private int size = 65536;
+  private int threads = 2;
+  private int batchSize = 100;
+  private int laneCapacity = 10000;
+  private long publishTimeout = 100;
+  private long laneTimeout = 100;
+
+  private RingBuffer<PublishedEvent> ring;
+  private Thread dispatcher;
+  private ServiceTracker<Object, Registration> tracker;
+  private volatile boolean running;
+  private volatile boolean dispatcherWaiting;
+  private final LongAdder published = new LongAdder();
+  private final LongAdder overflow = new LongAdder();
+  // The events published while the ring buffer was full, and those published
+  // after them until the dispatcher takes them all.
+  private final Queue<PublishedEvent> overflowQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger overflowBacklog = new AtomicInteger();
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  // The subscribers of each topic, used by the dispatcher only and replaced
+  // whenever the subscribers change.
+  private volatile Map<String, List<Subscriber>> topicSubscribers = new HashMap<>();
+
+  public void setBundleContext(BundleContext bundleContext) {
+    this.bundleContext = bundleContext;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setLaneCapacity(int laneCapacity) {
+    this.laneCapacity = laneCapacity;
+  }
+
+  /**
+   * @param publishTimeout How long (in msec) publishers wait for room in a
+   * full ring buffer, before queueing the event in the overflow queue.
+   */
+  public void setPublishTimeout(long publishTimeout) {
+    this.publishTimeout = publishTimeout;
+  }
+
+  /**
+   * @param laneTimeout How long (in msec) the dispatcher waits for room in
+   * the full lane of a handler, before queueing the event beyond the lane
+   * capacity.
+   */
+  public void setLaneTimeout(long laneTimeout) {
+    this.laneTimeout = laneTimeout;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public void init() {
+    if (!enabled) {
+      return;
+    }
+
+    ring = new RingBuffer<>(size);
+    running = true;
+    dispatcher = new Thread(this::dispatch, "Event bus dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+
+    try {
+      Filter filter = bundleContext.createFilter("(|(" + Constants.OBJECTCLASS + "="
+        + EventHandler.class.getName() + ")(" + Constants.OBJECTCLASS + "="
+        + EventBatchHandler.class.getName() + "))");
+      tracker = new ServiceTracker<Object, Registration>(bundleContext, filter, null) {
+        @Override
+        public Registration addingService(ServiceReference<Object> reference) {
+          Registration registration = new Registration(context.getService(reference));
+          registration.subscriber = subscribe(reference, registration.handler);
+          return registration;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<Object> reference,
+          Registration registration) {
+          if (registration.subscriber != null) {
+            unsubscribe(registration.subscriber);
+          }
+          registration.subscriber = subscribe(reference, registration.handler);
+        }
+
+        @Override
+        public void removedService(ServiceReference<Object> reference,
+          Registration registration) {
+          if (registration.subscriber != null) {
+            unsubscribe(registration.subscriber);
+          }
+          context.ungetService(reference);
+        }
+      };
+      tracker.open();
+    } catch (InvalidSyntaxException e) {
+      LOGGER.log(Level.SEVERE, "Could not track the event handlers.", e);
+    }
+    LOGGER.log(Level.CONFIG, "Started the event bus with {0} slots.", size);
+  }
+
+  public void destroy() {
+    if (!running) {
+      return;
+    }
+
+    // Let the dispatcher hand out the published events before stopping; the
+    // lanes stop once they deliver their queued events.
+    running = false;
+    LockSupport.unpark(dispatcher);
+    try {
+      dispatcher.join(SHUTDOWN_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (tracker != null) {
+      tracker.close();
+    }
+  }
+
+  /**
+   * Publishes an event, waiting up to the publish timeout while the ring
+   * buffer is full; after that, or while earlier events are waiting in the
+   * overflow queue, the event is queued in the overflow queue.
+   *
+   * @param topic The topic of the event.
+   * @param data The properties of the event; copied, so the caller may
+   * change them afterwards.
+   * @return false if the bus is not running, in which case the event is not
+   * published.
+   */
+  public boolean publish(String topic, Map<String, Object> data) {
+    if (!running) {
+      return false;
+    }
+    Map<String, Object> properties = data != null
+      ? Collections.unmodifiableMap(new HashMap<>(data))
+      : Collections.<String, Object>emptyMap();
+    Object key = properties.get(EventPublisherService.ORDERING_KEY);
+    int keyHash = key != null ? key.hashCode() : Long.hashCode(Thread.currentThread().getId());
+    PublishedEvent event = new PublishedEvent(topic, properties, keyHash ^ (keyHash >>> 16));
+
+    // Once events overflow, queue the following ones after them, so that
+    // they are not delivered before the earlier events.
+    if (!overflowQueue.isEmpty() || !offer(event)) {
+      if (!running) {
+        return false;
+      }
+      overflowBacklog.incrementAndGet();
+      overflowQueue.offer(event);
+      overflow.increment();
+    }
+    published.increment();
+    if (dispatcherWaiting) {
+      LockSupport.unpark(dispatcher);
+    }
+    return true;
+  }
+
+  private boolean offer(PublishedEvent event) {
+    int attempts = 0;
+    long deadline = 0;
+    while (!ring.offer(event)) {
+      if (!running) {
+        return false;
+      }
+      if (++attempts < 100) {
+        Thread.yield();
+        continue;
+      }
+      long now = System.nanoTime();
+      if (deadline == 0) {
+        deadline = now + TimeUnit.MILLISECONDS.toNanos(publishTimeout);
+      }
+      if (now - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    return true;
+  }
+
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = new HashMap<>();
+    if (!running) {
+      return statistics;
+    }
+    statistics.put("published", published.sum());
+    statistics.put("backlog", (long) ring.size() + overflowBacklog.get());
+    statistics.put("overflow", overflow.sum());
+    for (Subscriber subscriber : subscribers) {
+      subscriber.addStatistics(statistics);
+    }
+    return statistics;
+  }
+
+  private void dispatch() {
+    List<PublishedEvent> batch = new ArrayList<>(DISPATCH_BATCH);
+    long laneTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(laneTimeout);
+    while (true) {
+      // Take the overflow queue only once the ring buffer is empty, since
+      // the events in the ring buffer were published before.
+      if (ring.drainTo(batch, DISPATCH_BATCH) == 0 && drainOverflow(batch) == 0) {
+        if (!running) {
+          return;
+        }
+        // Check again after announcing the wait, so that an event published
+        // meanwhile either is seen here or unparks the dispatcher.
+        dispatcherWaiting = true;
+        if (ring.size() == 0 && overflowQueue.isEmpty() && running) {
+          LockSupport.park(this);
+        }
+        dispatcherWaiting = false;
+        continue;
+      }
+
+      for (PublishedEvent event : batch) {
+        for (Subscriber subscriber : getSubscribers(event.topic)) {
+          try {
+            subscriber.offer(event, laneCapacity, laneTimeoutNanos);
+          } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not dispatch an event of topic " + event.topic
+              + " to " + subscriber.getName() + ".", e);
+          }
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  private int drainOverflow(List<PublishedEvent> batch) {
+    int count = 0;
+    PublishedEvent event;
+    while (count < DISPATCH_BATCH && (event = overflowQueue.poll()) != null) {
+      batch.add(event);
+      count++;
+    }
+    overflowBacklog.addAndGet(-count);
+    return count;
+  }
+
+  private List<Subscriber> getSubscribers(String topic) {
+    Map<String, List<Subscriber>> cache = topicSubscribers;
+    List<Subscriber> result = cache.get(topic);
+    if (result == null) {
+      result = new ArrayList<>();
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.matchesTopic(topic)) {
+          result.add(subscriber);
+        }
+      }
+      cache.put(topic, result);
+    }
+    return result;
+  }
+
+  private Subscriber subscribe(ServiceReference<Object> reference, Object handler) {
+    String[] topics = toStrings(reference.getProperty(EventConstants.EVENT_TOPIC));
+    if (handler == null || topics == null || topics.length == 0) {
+      return null;
+    }
+
+    Filter filter = null;
+    Object filterProperty = reference.getProperty(EventConstants.EVENT_FILTER);
+    if (filterProperty != null) {
+      try {
+        filter = bundleContext.createFilter(filterProperty.toString());
+      } catch (InvalidSyntaxException e) {
+        LOGGER.log(Level.WARNING, "Ignoring event handler " + handler.getClass().getName()
+          + " with an invalid event filter.", e);
+        return null;
+      }
+    }
+
+    int handlerThreads = threads;
+    Object threadsProperty = reference.getProperty(EventPublisherService.HANDLER_THREADS);
+    if (threadsProperty != null) {
+      handlerThreads = Math.max(1, Integer.parseInt(threadsProperty.toString()));
+    }
+
+    Subscriber subscriber = new Subscriber(handler.getClass().getName() + "#"
+      + reference.getProperty(Constants.SERVICE_ID), handler, topics, filter, handlerThreads,
+      batchSize);
+    subscribers.add(subscriber);
+    topicSubscribers = new HashMap<>();
+    LOGGER.log(Level.FINE, "Subscribed {0} to the event bus.", subscriber.getName());
+    return subscriber;
+  }
+
+  private void unsubscribe(Subscriber subscriber) {
+    subscribers.remove(subscriber);
+    topicSubscribers = new HashMap<>();
+    subscriber.stop();
+    LOGGER.log(Level.FINE, "Unsubscribed {0} from the event bus.", subscriber.getName());
+  }
+
+  private static String[] toStrings(Object property) {
+    if (property instanceof String) {
+      return new String[]{(String) property};
+    } else if (property instanceof String[]) {
+      return (String[]) property;
+    } else if (property instanceof Collection) {
+      Collection<?> values = (Collection<?>) property;
+      List<String> result = new ArrayList<>(values.size());
+      for (Object value : values) {
+        result.add(String.valueOf(value));
+      }
+      return result.toArray(new String[result.size()]);
+    }
+    return null;
+  }
+
+  /**
+   * A tracked handler service, with its subscriber (if it subscribes to any
+   * topics).
+   */
+  private static class Registration {
+    private final Object handler;
+    private Subscriber subscriber;
+
+    Registration(Object handler) {
+      this.handler = handler;
+    }
+  }
+}
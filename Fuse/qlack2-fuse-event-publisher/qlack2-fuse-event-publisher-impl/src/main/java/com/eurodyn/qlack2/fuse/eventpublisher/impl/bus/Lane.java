@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.eventpublisher.impl.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread delivering events to a handler in the order they were queued, a
+ * batch at a time. Events are queued by the dispatcher thread of the event
+ * bus only.
+ */
+final class Lane implements Runnable {
+
+  private final Subscriber subscriber;
+  private final int batchSize;
+  private final Queue<PublishedEvent> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final Thread thread;
+  private volatile boolean waiting;
+  private volatile boolean stopped;
+
+  // Whether events are queued beyond the lane capacity; used by the
+  // dispatcher thread only.
+  boolean overflowing;
+
+  Lane(Subscriber subscriber, int batchSize, String name) {
+    this.subscriber = subscriber;
+    this.batchSize = batchSize;
+    thread = new Thread(this, name);
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Stops the lane once the queued events are delivered.
+   */
+  void stop() {
+    stopped = true;
+    LockSupport.unpark(thread);
+  }
+
+  void offer(PublishedEvent event) {
+    if (stopped) {
+      return;
+    }
+    queue.offer(event);
+    size.incrementAndGet();
+    if (waiting) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  @Override
+  public void run() {
+    List<PublishedEvent> batch = new ArrayList<>(batchSize);
+    while (true) {
+      PublishedEvent event;
+      while (batch.size() < batchSize && (event = queue.poll()) != null) {
+        batch.add(event);
+      }
+      if (batch.isEmpty()) {
+        if (stopped) {
+          return;
+        }
+        // Check again after announcing the wait, so that an event queued
+        // meanwhile either is seen here or unparks the lane.
+        waiting = true;
+        if (queue.isEmpty() && !stopped) {
+          LockSupport.park(this);
+        }
+        waiting = false;
+        continue;
+      }
+
+      size.addAndGet(-batch.size());
+      subscriber.deliver(batch);
+      batch.clear();
+    }
+  }
+}
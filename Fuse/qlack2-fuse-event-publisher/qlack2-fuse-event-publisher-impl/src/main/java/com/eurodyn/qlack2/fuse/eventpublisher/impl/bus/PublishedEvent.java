@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.eventpublisher.impl.bus;
+
+import org.osgi.service.event.Event;
+
+import java.util.Map;
+
+/**
+ * An event published on the event bus. The OSGi {@link Event} is only
+ * created when a handler needs it, once for all handlers.
+ */
+final class PublishedEvent {
+
+  final String topic;
+  final Map<String, Object> data;
+  final int keyHash;
+  private volatile Event event;
+
+  PublishedEvent(String topic, Map<String, Object> data, int keyHash) {
+    this.topic = topic;
+    this.data = data;
+    this.keyHash = keyHash;
+  }
+
+  Event toEvent() {
+    Event result = event;
+    if (result == null) {
+      // Creating the event twice in a race is harmless.
+      result = new Event(topic, data);
+      event = result;
+    }
+    return result;
+  }
+}
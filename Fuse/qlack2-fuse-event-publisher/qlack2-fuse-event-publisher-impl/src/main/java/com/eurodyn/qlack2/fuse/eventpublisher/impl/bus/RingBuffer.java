@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.eventpublisher.impl.bus;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer with many producers and a single
+ * consumer. Producers claim a sequence with a CAS, store their entry in the
+ * slot of the sequence and then mark the slot as published with the
+ * sequence; the consumer takes the entries of consecutive published slots
+ * in batches, releasing the slots to the producers.
+ */
+final class RingBuffer<E> {
+
+  private final Object[] entries;
+  private final int mask;
+
+  // The sequence last stored in each slot.
+  private final AtomicLongArray published;
+
+  // The last sequence claimed by a producer.
+  private final AtomicLong claimed = new AtomicLong(-1);
+
+  // The last sequence taken by the consumer.
+  private volatile long consumed = -1;
+
+  /**
+   * @param size The number of slots, rounded up to a power of two.
+   */
+  RingBuffer(int size) {
+    int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+    entries = new Object[capacity];
+    mask = capacity - 1;
+    published = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /**
+   * Adds an entry, unless the buffer is full.
+   *
+   * @return true if the entry was added.
+   */
+  boolean offer(E entry) {
+    long sequence;
+    do {
+      sequence = claimed.get() + 1;
+      if (sequence - consumed > entries.length) {
+        return false;
+      }
+    } while (!claimed.compareAndSet(sequence - 1, sequence));
+
+    int index = (int) (sequence & mask);
+    entries[index] = entry;
+    published.lazySet(index, sequence);
+    return true;
+  }
+
+  /**
+   * Takes the published entries, in order. Must only be called by the
+   * consumer thread.
+   *
+   * @param batch The list to add the entries to.
+   * @param maxEntries The maximum number of entries to take.
+   * @return The number of entries taken.
+   */
+  @SuppressWarnings("unchecked")
+  int drainTo(List<E> batch, int maxEntries) {
+    long next = consumed + 1;
+    int taken = 0;
+    while (taken < maxEntries) {
+      int index = (int) (next & mask);
+      if (published.get(index) != next) {
+        break;
+      }
+      batch.add((E) entries[index]);
+      entries[index] = null;
+      next++;
+      taken++;
+    }
+    if (taken > 0) {
+      consumed = next - 1;
+    }
+    return taken;
+  }
+
+  /**
+   * @return The number of entries claimed but not yet taken.
+   */
+  long size() {
+    return claimed.get() - consumed;
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.eventpublisher.impl.bus;
+
+import com.eurodyn.qlack2.fuse.eventpublisher.api.EventBatchHandler;
+import org.osgi.framework.Filter;
+import org.osgi.service.event.EventHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An event handler (or batch handler) registered with the event bus, with
+ * its own pool of lanes. Events with the same ordering key always go to the
+ * same lane, so they are delivered in order. The lanes are started on their
+ * first event, so that handlers receiving few events do not hold idle threads.
+ */
+final class Subscriber {
+
+  private static final Logger LOGGER = Logger.getLogger(Subscriber.class.getName());
+
+  // How long the dispatcher waits at a time for room in a full lane (nsec).
+  private static final long FULL_PARK_NANOS = 100000;
+
+  private final String name;
+  private final Object handler;
+  private final String[] topics;
+  private final Filter filter;
+  private final int batchSize;
+
+  // The lanes, created by the dispatcher thread only.
+  private final AtomicReferenceArray<Lane> lanes;
+  private volatile boolean stopped;
+
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong overflow = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong latencyTotal = new AtomicLong();
+  private final AtomicLong latencyMax = new AtomicLong();
+
+  Subscriber(String name, Object handler, String[] topics, Filter filter, int threads,
+    int batchSize) {
+    this.name = name;
+    this.handler = handler;
+    this.topics = topics;
+    this.filter = filter;
+    this.batchSize = handler instanceof EventBatchHandler ? batchSize : 1;
+    lanes = new AtomicReferenceArray<>(threads);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  void stop() {
+    stopped = true;
+    for (int i = 0; i < lanes.length(); i++) {
+      Lane lane = lanes.get(i);
+      if (lane != null) {
+        lane.stop();
+      }
+    }
+  }
+
+  boolean matchesTopic(String topic) {
+    for (String pattern : topics) {
+      if (pattern.equals("*") || pattern.equals(topic)
+        || (pattern.endsWith("/*") && topic.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Queues an event for delivery; called by the dispatcher thread only.
+   * Events are never dropped: when the lane of the event is full, the
+   * dispatcher waits up to the lane timeout for room, which holds back the
+   * publishers too. If the lane is still full, it overflows: the event is
+   * queued beyond the lane capacity (and counted), in order, and further
+   * events are queued without waiting until the lane catches up.
+   *
+   * @param laneTimeout How long (in nsec) to wait for room in a full lane.
+   */
+  void offer(PublishedEvent event, int laneCapacity, long laneTimeout) {
+    if (stopped || (filter != null && !event.toEvent().matches(filter))) {
+      return;
+    }
+    int index = (event.keyHash & Integer.MAX_VALUE) % lanes.length();
+    Lane lane = lanes.get(index);
+    if (lane == null) {
+      lane = new Lane(this, batchSize, "Event bus " + name + " #" + index);
+      lanes.set(index, lane);
+      lane.start();
+      // Stop the lane if the subscriber was stopped before it was created.
+      if (stopped) {
+        lane.stop();
+      }
+    }
+    if (lane.size() < laneCapacity) {
+      lane.overflowing = false;
+    } else if (!lane.overflowing) {
+      lane.overflowing = !awaitRoom(lane, laneCapacity, laneTimeout);
+    }
+    if (lane.overflowing && overflow.getAndIncrement() == 0) {
+      LOGGER.log(Level.WARNING, "Queueing events beyond the lane capacity for event handler "
+        + "{0}, which does not keep up with them.", name);
+    }
+    lane.offer(event);
+  }
+
+  private boolean awaitRoom(Lane lane, int laneCapacity, long laneTimeout) {
+    long deadline = System.nanoTime() + laneTimeout;
+    while (lane.size() >= laneCapacity) {
+      if (stopped || System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    return true;
+  }
+
+  /**
+   * Delivers a batch of events to the handler; called by the lanes.
+   */
+  void deliver(List<PublishedEvent> batch) {
+    if (handler instanceof EventBatchHandler) {
+      // Deliver the consecutive events of each topic together.
+      int from = 0;
+      for (int i = 1; i <= batch.size(); i++) {
+        if (i < batch.size() && batch.get(i).topic.equals(batch.get(from).topic)) {
+          continue;
+        }
+        List<Map<String, Object>> events = new ArrayList<>(i - from);
+        for (int j = from; j < i; j++) {
+          events.add(batch.get(j).data);
+        }
+        long start = System.nanoTime();
+        try {
+          ((EventBatchHandler) handler).handleEvents(batch.get(from).topic, events);
+        } catch (RuntimeException e) {
+          failed(batch.get(from).topic, e);
+        }
+        record(start, events.size());
+        from = i;
+      }
+    } else {
+      for (PublishedEvent event : batch) {
+        long start = System.nanoTime();
+        try {
+          ((EventHandler) handler).handleEvent(event.toEvent());
+        } catch (RuntimeException e) {
+          failed(event.topic, e);
+        }
+        record(start, 1);
+      }
+    }
+  }
+
+  private void failed(String topic, RuntimeException e) {
+    failures.incrementAndGet();
+    LOGGER.log(Level.WARNING, "Event handler " + name + " failed to handle an event of topic "
+      + topic + ".", e);
+  }
+
+  private void record(long start, int events) {
+    long latency = System.nanoTime() - start;
+    delivered.addAndGet(events);
+    calls.incrementAndGet();
+    latencyTotal.addAndGet(latency);
+    long max;
+    while (latency > (max = latencyMax.get()) && !latencyMax.compareAndSet(max, latency)) {
+      // Retry until the maximum is updated.
+    }
+  }
+
+  void addStatistics(Map<String, Long> statistics) {
+    long backlog = 0;
+    for (int i = 0; i < lanes.length(); i++) {
+      Lane lane = lanes.get(i);
+      if (lane != null) {
+        backlog += lane.size();
+      }
+    }
+    long callCount = calls.get();
+    statistics.put(name + ".delivered", delivered.get());
+    statistics.put(name + ".backlog", backlog);
+    statistics.put(name + ".overflow", overflow.get());
+    statistics.put(name + ".failures", failures.get());
+    statistics.put(name + ".latency.avg", callCount > 0 ? latencyTotal.get() / callCount / 1000 : 0);
+    statistics.put(name + ".latency.max", latencyMax.get() / 1000);
+  }
+}
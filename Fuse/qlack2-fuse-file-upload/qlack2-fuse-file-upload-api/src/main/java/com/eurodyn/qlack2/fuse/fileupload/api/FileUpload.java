@@ -25,6 +25,8 @@ import com.eurodyn.qlack2.fuse.fileupload.api.response.FileListResponse;
 import com.eurodyn.qlack2.fuse.fileupload.api.response.FileUploadResponse;
 import com.eurodyn.qlack2.fuse.fileupload.api.response.VirusScanResponse;
 
+import java.io.InputStream;
+
 public interface FileUpload {
 	CheckChunkResponse checkChunk(CheckChunkRequest req);
 
@@ -33,6 +35,36 @@ public interface FileUpload {
 	FileDeleteResponse deleteByID(String fileID);
 
 	FileGetResponse getByID(String fileID);
+
+	/**
+	 * Retrieves the information of a file without its binary content.
+	 * @param fileID the ID of the file
+	 * @return FileGetResponse The response containing the file information
+	 */
+	FileGetResponse getInfoByID(String fileID);
+
+	/**
+	 * Opens a stream over the binary content of a file. The chunks of the file
+	 * are loaded lazily as the stream is read, so that large files can be
+	 * processed without loading them in memory. The stream must be closed.
+	 * @param fileID the ID of the file
+	 * @return The content of the file
+	 * @throws com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotFoundException
+	 *             if the file does not exist
+	 * @throws com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotCompletedException
+	 *             if not all chunks of the file have been uploaded
+	 */
+	InputStream openStream(String fileID);
+
+	/**
+	 * Same as {@link #openStream(String)}, starting at the given offset (e.g.
+	 * to serve an HTTP range request). The chunks before the offset are not
+	 * loaded.
+	 * @param fileID the ID of the file
+	 * @param offset the offset of the first byte to read
+	 * @return The content of the file from the given offset on
+	 */
+	InputStream openStream(String fileID, long offset);
 	/**
 	 * Retrieves a specific chunk of a required file
 	 * @param fileID the ID of the file from which a chunk will be retrieved
@@ -24,6 +24,7 @@ public class DBFileDTO {
 	private long receivedChunks;
 	private long reassemblyTime;
 	private long totalSize;
+	private String contentHash;
 
 	public long getTotalSize() {
 		return totalSize;
@@ -31,6 +32,16 @@ public class DBFileDTO {
 	public void setTotalSize(long totalSize) {
 		this.totalSize = totalSize;
 	}
+	/**
+	 * @return The SHA-256 hash (hex) of the content of the file, set once all
+	 *         chunks of the file have been uploaded.
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
 	public long getReassemblyTime() {
 		return reassemblyTime;
 	}
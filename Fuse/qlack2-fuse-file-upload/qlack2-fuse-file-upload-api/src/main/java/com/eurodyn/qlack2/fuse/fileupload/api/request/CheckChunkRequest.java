@@ -18,6 +18,11 @@ public class CheckChunkRequest {
 
   private String fileAlias;
   private long chunkNumber;
+  private String chunkHash;
+  private long chunkSize;
+  private long totalSize;
+  private long totalChunks;
+  private boolean includeMissingChunks;
 
   public String getFileAlias() {
     return fileAlias;
@@ -35,6 +40,58 @@ public class CheckChunkRequest {
     this.chunkNumber = chunkNumber;
   }
 
+  /**
+   * @return The SHA-256 hash (hex) of the chunk the client holds, if known. An
+   * uploaded chunk with a different hash is reported as missing.
+   */
+  public String getChunkHash() {
+    return chunkHash;
+  }
+
+  public void setChunkHash(String chunkHash) {
+    this.chunkHash = chunkHash;
+  }
+
+  /**
+   * @return The (nominal) size of the chunks of the file, if known, used to
+   * validate the number of chunks.
+   */
+  public long getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(long chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public long getTotalSize() {
+    return totalSize;
+  }
+
+  public void setTotalSize(long totalSize) {
+    this.totalSize = totalSize;
+  }
+
+  public long getTotalChunks() {
+    return totalChunks;
+  }
+
+  public void setTotalChunks(long totalChunks) {
+    this.totalChunks = totalChunks;
+  }
+
+  /**
+   * @return Whether to report the chunks of the file which have not been
+   * uploaded yet (e.g. to resume an upload).
+   */
+  public boolean isIncludeMissingChunks() {
+    return includeMissingChunks;
+  }
+
+  public void setIncludeMissingChunks(boolean includeMissingChunks) {
+    this.includeMissingChunks = includeMissingChunks;
+  }
+
   public CheckChunkRequest() {
 
   }
@@ -22,6 +22,7 @@ public class FileUploadRequest {
 	private String alias;
 	private String filename;
 	private byte[] data;
+	private String chunkHash;
 	private String uploadedBy;
 	private boolean autoDelete;
 	private boolean virusScan;
@@ -74,6 +75,16 @@ public class FileUploadRequest {
 	public void setData(byte[] data) {
 		this.data = data;
 	}
+	/**
+	 * @return The SHA-256 hash (hex) of the data of the chunk, verified on
+	 *         upload if set.
+	 */
+	public String getChunkHash() {
+		return chunkHash;
+	}
+	public void setChunkHash(String chunkHash) {
+		this.chunkHash = chunkHash;
+	}
 	public String getUploadedBy() {
 		return uploadedBy;
 	}
@@ -16,6 +16,8 @@ package com.eurodyn.qlack2.fuse.fileupload.api.response;
 
 public class CheckChunkResponse {
 	private boolean chunkExists;
+	private boolean fileCompleted;
+	private byte[] missingChunks;
 
 	public CheckChunkResponse() {
 
@@ -27,4 +29,30 @@ public class CheckChunkResponse {
 	public void setChunkExists(boolean chunkExists) {
 		this.chunkExists = chunkExists;
 	}
+
+	/**
+	 * @return Whether all chunks of the file are available, e.g. because a file
+	 *         with the same content hash has already been uploaded.
+	 */
+	public boolean isFileCompleted() {
+		return fileCompleted;
+	}
+
+	public void setFileCompleted(boolean fileCompleted) {
+		this.fileCompleted = fileCompleted;
+	}
+
+	/**
+	 * @return The chunks of the file which have not been uploaded yet, when
+	 *         requested, as a bitmap in the format of
+	 *         {@link java.util.BitSet#toByteArray()}: bit (n - 1) is set if
+	 *         chunk n is missing.
+	 */
+	public byte[] getMissingChunks() {
+		return missingChunks;
+	}
+
+	public void setMissingChunks(byte[] missingChunks) {
+		this.missingChunks = missingChunks;
+	}
 }
@@ -17,6 +17,7 @@ package com.eurodyn.qlack2.fuse.fileupload.impl;
 import com.eurodyn.qlack2.fuse.fileupload.api.FileUpload;
 import com.eurodyn.qlack2.fuse.fileupload.api.dto.DBFileChunkDTO;
 import com.eurodyn.qlack2.fuse.fileupload.api.dto.DBFileDTO;
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileChecksumException;
 import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotCompletedException;
 import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotFoundException;
 import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileUploadException;
@@ -32,15 +33,27 @@ import com.eurodyn.qlack2.fuse.fileupload.api.response.FileListResponse;
 import com.eurodyn.qlack2.fuse.fileupload.api.response.FileUploadResponse;
 import com.eurodyn.qlack2.fuse.fileupload.api.response.VirusScanResponse;
 import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFile;
+import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFileContent;
 import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFilePK;
-import com.eurodyn.qlack2.fuse.fileupload.impl.model.QDBFile;
-import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.ChunkInfo;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.ChunkInputStream;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.ChunkStore;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.ContentRegistry;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.DBChunkStore;
+import com.eurodyn.qlack2.fuse.fileupload.impl.storage.LocalDiskChunkStore;
+import com.eurodyn.qlack2.fuse.fileupload.impl.util.TransactionUtil;
 import io.sensesecure.clamav4j.ClamAV;
 import io.sensesecure.clamav4j.ClamAVException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
 import javax.transaction.Transactional.TxType;
 import org.apache.commons.lang3.StringUtils;
@@ -48,13 +61,17 @@ import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 import org.ops4j.pax.cdi.api.Properties;
 import org.ops4j.pax.cdi.api.Property;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -72,13 +89,66 @@ public class FileUploadImpl implements FileUpload {
   @PersistenceContext(unitName = "fuse-fileupload")
   private EntityManager em;
 
+  @Inject
+  private DBChunkStore dbChunkStore;
+
+  // The local disk chunk store injected by blueprint.
+  @Inject
+  @Named("LocalDiskChunkStore")
+  private LocalDiskChunkStore localDiskChunkStore;
+
+  // The store of the chunk data, the local disk if configured or else the database.
+  private ChunkStore chunkStore;
+
+  @Inject
+  private ContentRegistry contentRegistry;
+
+  // The transaction synchronization registry referenced by blueprint.
+  @Inject
+  @Named("transactionSynchronizations")
+  private TransactionSynchronizationRegistry tsr;
+
   private String clamAV;
   private static final int CLAMAV_SOCKET_TIMEOUT = 10000;
 
+  // The maximum number of chunks of a file, bounding the memory used to track missing chunks
+  // when the size of the chunks is not known.
+  private static final long MAX_CHUNKS = 1000000;
+
+  // The number of chunks fetched ahead of the chunk being read when streaming a file.
+  private static final int STREAM_READ_AHEAD = 2;
+
+  // Fetches the chunks of the streamed files ahead of the chunk being read.
+  private ExecutorService readAheadExecutor;
+
+  // Completes the files whose last chunk has been uploaded, after the upload has committed.
+  private ExecutorService completionExecutor;
+
   public void setClamAV(String clamAV) {
     this.clamAV = clamAV;
   }
 
+  @PostConstruct
+  public void init() {
+    chunkStore = localDiskChunkStore.isEnabled() ? localDiskChunkStore : dbChunkStore;
+    readAheadExecutor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "qlack2-fileupload-read-ahead");
+      thread.setDaemon(true);
+      return thread;
+    });
+    completionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "qlack2-fileupload-completion");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void destroy() {
+    readAheadExecutor.shutdownNow();
+    completionExecutor.shutdownNow();
+  }
+
   /**
    * Given a file ID it reconstructs the complete file that was uploaded together with it metadata.
    *
@@ -86,23 +156,27 @@ public class FileUploadImpl implements FileUpload {
    * @param includeBinary Whether to include the binary content of the file or not.
    */
   private DBFileDTO getByID(String fileID, boolean includeBinary) {
-    // Find all chunks of the requested file.
-    Query q = em
-      .createQuery(
-        "select f from DBFile f where f.id.id = :id order by f.id.chunkOrder")
-      .setParameter("id", fileID);
+    // Find the first chunk of the requested file to obtain information for the underlying file
+    // (i.e. all chunks contain replicated information about the file from which they were
+    // decomposed), without loading the data of the chunks.
     @SuppressWarnings("unchecked")
-    List<DBFile> results = q.getResultList();
+    List<Object[]> results = em
+      .createQuery(
+        "select f.fileName, f.expectedChunks, f.uploadedAt, f.uploadedBy, f.fileSize, "
+          + "f.contentHash from DBFile f where f.id.id = :id order by f.id.chunkOrder")
+      .setParameter("id", fileID)
+      .setMaxResults(1)
+      .getResultList();
 
     // Check if any chunk for the requested file has been found.
-    if (results != null && results.size() == 0) {
+    if (results.isEmpty()) {
       throw new QFileNotFoundException();
     }
-
-    // Get a random chunk to obtain information for the underlying file
-    // (i.e. all chunks contain replicated information about the file from
-    // which they were decomposed).
-    DBFile randomChunk = results.get(0);
+    Object[] firstChunk = results.get(0);
+    long receivedChunks = (Long) em
+      .createQuery("select count(f) from DBFile f where f.id.id = :id")
+      .setParameter("id", fileID)
+      .getSingleResult();
 
     // Prepare the return value.
     DBFileDTO dto = new DBFileDTO();
@@ -112,41 +186,214 @@ public class FileUploadImpl implements FileUpload {
     // representation of the file in order not to return a corrupted file.
     if (includeBinary) {
       long startTime = System.currentTimeMillis();
-      if (randomChunk.getExpectedChunks() != results.size()) {
+      if ((Long) firstChunk[1] != receivedChunks) {
         throw new QFileNotCompletedException();
       }
-      // Assemble the original file out of its chunks.
-      try {
-        ByteArrayOutputStream bOut = new ByteArrayOutputStream(
-          (int) randomChunk.getFileSize());
-        for (DBFile f : results) {
-          bOut.write(f.getChunkData());
+      // Assemble the original file out of its chunks, reading them one at a time.
+      List<ChunkInfo> chunks = getCompletedChunks(fileID);
+      long fileSize = 0;
+      for (ChunkInfo chunk : chunks) {
+        fileSize += chunk.getSize();
+      }
+      byte[] fileData = new byte[(int) fileSize];
+      try (InputStream in = openStream(chunks, getDataID(fileID), 0)) {
+        int read = 0;
+        while (read < fileData.length) {
+          int count = in.read(fileData, read, fileData.length - read);
+          if (count < 0) {
+            throw new IOException("Unexpected end of file");
+          }
+          read += count;
         }
-        dto.setFileData(bOut.toByteArray());
-
       } catch (IOException e) {
         LOGGER.log(Level.SEVERE, "Could not reassemble file " + fileID,
           e);
         throw new QFileUploadException("Could not reassemble file "
           + fileID);
       }
+      dto.setFileData(fileData);
       dto.setReassemblyTime(System.currentTimeMillis() - startTime);
     } else {
       dto.setReassemblyTime(-1);
     }
 
     // Further compose the return value.
-    dto.setFilename(randomChunk.getFileName());
+    dto.setFilename((String) firstChunk[0]);
     dto.setId(fileID);
-    dto.setReceivedChunks(results.size());
-    dto.setTotalChunks(randomChunk.getExpectedChunks());
-    dto.setUploadedAt(randomChunk.getUploadedAt());
-    dto.setUploadedBy(randomChunk.getUploadedBy());
-    dto.setTotalSize(randomChunk.getFileSize());
+    dto.setReceivedChunks(receivedChunks);
+    dto.setTotalChunks((Long) firstChunk[1]);
+    dto.setUploadedAt((Long) firstChunk[2]);
+    dto.setUploadedBy((String) firstChunk[3]);
+    dto.setTotalSize((Long) firstChunk[4]);
+    dto.setContentHash((String) firstChunk[5]);
 
     return dto;
   }
 
+  /**
+   * Returns the chunks of a file, without their data.
+   *
+   * @param fileID The ID of the file.
+   * @return The chunks of the file, in chunk order.
+   * @throws QFileNotFoundException If the file does not exist.
+   * @throws QFileNotCompletedException If not all chunks of the file have been uploaded.
+   */
+  private List<ChunkInfo> getChunks(String fileID) {
+    @SuppressWarnings("unchecked")
+    List<Object[]> results = em.createQuery("select f.id.chunkOrder, f.chunkOffset, f.chunkSize, "
+      + "f.expectedChunks from DBFile f where f.id.id = :id order by f.id.chunkOrder")
+      .setParameter("id", fileID)
+      .getResultList();
+    if (results.isEmpty()) {
+      throw new QFileNotFoundException();
+    }
+    if ((Long) results.get(0)[3] != results.size()) {
+      throw new QFileNotCompletedException();
+    }
+
+    List<ChunkInfo> chunks = new ArrayList<>(results.size());
+    for (Object[] result : results) {
+      chunks.add(new ChunkInfo((Long) result[0], (Long) result[1], (Long) result[2]));
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Returns the chunks of a file, completing the file first if needed (i.e. if its last chunks
+   * were uploaded concurrently, so that none of the uploads saw all chunks).
+   */
+  private List<ChunkInfo> getCompletedChunks(String fileID) {
+    List<ChunkInfo> chunks = getChunks(fileID);
+    if (getContentHash(fileID) == null) {
+      complete(fileID, chunks);
+      chunks = getChunks(fileID);
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Returns the content hash of a file, or null if the file has not been completed.
+   */
+  private String getContentHash(String fileID) {
+    List<?> results = em
+      .createQuery("select f.contentHash from DBFile f where f.id.id = :id")
+      .setParameter("id", fileID)
+      .setMaxResults(1)
+      .getResultList();
+
+    return results.isEmpty() ? null : (String) results.get(0);
+  }
+
+  /**
+   * Returns the ID under which the data of a file is stored, which is the ID of another file with
+   * the same content if the file has been deduplicated.
+   */
+  private String getDataID(String fileID) {
+    String contentHash = getContentHash(fileID);
+    if (contentHash == null) {
+      return fileID;
+    }
+    DBFileContent content = em.find(DBFileContent.class, contentHash);
+
+    return content != null ? content.getFileId() : fileID;
+  }
+
+  /**
+   * Completes a file all of whose chunks have been uploaded: computes the hash of its content
+   * and, if a file with the same content has already been uploaded, drops the data of the file
+   * in favour of a reference to the existing data.
+   *
+   * @param fileID The ID of the file.
+   * @param chunks The chunks of the file.
+   */
+  private void complete(String fileID, List<ChunkInfo> chunks) {
+    // The chunks are read through the injected chunk store, so they are visible to the current
+    // transaction (if any) or read in short transactions of their own.
+    MessageDigest digest = sha256();
+    long fileSize = 0;
+    for (ChunkInfo chunk : chunks) {
+      digest.update(chunkStore.readChunk(fileID, chunk));
+      fileSize += chunk.getSize();
+    }
+
+    if (contentRegistry.complete(fileID, toHex(digest.digest()), fileSize)) {
+      chunkStore.delete(fileID);
+    }
+  }
+
+  /**
+   * Completes a file once the current transaction (which uploaded its last chunk) commits, so
+   * that the file is not read and hashed while the upload holds its locks. A file that could not
+   * be completed this way is completed when first read.
+   */
+  private void completeAfterCommit(final String fileID, final List<ChunkInfo> chunks) {
+    TransactionUtil.afterCommit(tsr, () -> completionExecutor.execute(() -> {
+      try {
+        complete(fileID, chunks);
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Could not complete file " + fileID
+          + ", it will be completed when first read.", e);
+      }
+    }));
+  }
+
+  /**
+   * Releases the reference of a file to its content, handing the data over to another file with
+   * the same content if the file holds it.
+   */
+  private void release(String fileID, String contentHash) {
+    DBFileContent content = em.find(DBFileContent.class, contentHash,
+      LockModeType.PESSIMISTIC_WRITE);
+    if (content == null) {
+      return;
+    }
+
+    List<?> heirs = em.createQuery("select distinct f.id.id from DBFile f "
+      + "where f.contentHash = :contentHash and f.id.id <> :id")
+      .setParameter("contentHash", contentHash)
+      .setParameter("id", fileID)
+      .setMaxResults(1)
+      .getResultList();
+    if (heirs.isEmpty()) {
+      em.remove(content);
+      if (!fileID.equals(content.getFileId())) {
+        chunkStore.delete(content.getFileId());
+      }
+      return;
+    }
+
+    content.setRefCount(content.getRefCount() - 1);
+    if (fileID.equals(content.getFileId())) {
+      String heir = (String) heirs.get(0);
+      chunkStore.move(fileID, heir, getChunks(fileID));
+      content.setFileId(heir);
+    }
+  }
+
+  private InputStream openStream(List<ChunkInfo> chunks, String fileID, long offset) {
+    // The chunks are read through the injected chunk store, each in its own transaction, so the
+    // stream remains readable after the current transaction ends.
+    return new ChunkInputStream(chunks, offset, chunk -> chunkStore.readChunk(fileID, chunk),
+      readAheadExecutor, STREAM_READ_AHEAD);
+  }
+
+  @Override
+  public InputStream openStream(String fileID) {
+    return openStream(fileID, 0);
+  }
+
+  @Override
+  public InputStream openStream(String fileID, long offset) {
+    List<ChunkInfo> chunks = getCompletedChunks(fileID);
+    return openStream(chunks, getDataID(fileID), offset);
+  }
+
+  @Override
+  public FileGetResponse getInfoByID(String fileID) {
+    return new FileGetResponse(getByID(fileID, false));
+  }
 
   @Override
   public FileGetResponse getByIDForConsole(String fileID) {
@@ -186,7 +433,9 @@ public class FileUploadImpl implements FileUpload {
     dto.setUploadedAt(currentChunk.getUploadedAt());
     dto.setUploadedBy(currentChunk.getUploadedBy());
     dto.setTotalSize(currentChunk.getFileSize());
-    dto.setBinContent(currentChunk.getChunkData());
+    dto.setBinContent(chunkStore.readChunk(getDataID(fileID), new ChunkInfo(
+      currentChunk.getId().getChunkOrder(), currentChunk.getChunkOffset(),
+      currentChunk.getChunkSize())));
 
     if (results.size() > 0) {
       dto.setChunkIndex(results.get(0).getId().getChunkOrder());
@@ -201,20 +450,82 @@ public class FileUploadImpl implements FileUpload {
   @Transactional(TxType.REQUIRED)
   public CheckChunkResponse checkChunk(CheckChunkRequest req) {
     CheckChunkResponse res = new CheckChunkResponse();
-    res.setChunkExists(DBFile.getChunk(req.getFileAlias(),
-      req.getChunkNumber(), em) != null);
+    String fileID = req.getFileAlias();
+
+    // Find the chunk, without its data.
+    List<?> results = em.createQuery("select f.chunkHash from DBFile f "
+      + "where f.id.id = :id and f.id.chunkOrder = :chunkOrder")
+      .setParameter("id", fileID)
+      .setParameter("chunkOrder", req.getChunkNumber())
+      .getResultList();
+    boolean completed = getContentHash(fileID) != null;
+    // A chunk whose data differs from the client's copy is reported as missing, to be uploaded
+    // again. Once a file is completed all of its chunks exist (even if a file with the same
+    // content has been uploaded in chunks of a different size).
+    res.setChunkExists(completed || !results.isEmpty() && (req.getChunkHash() == null
+      || req.getChunkHash().equalsIgnoreCase((String) results.get(0))));
+    res.setFileCompleted(completed);
+
+    if (req.isIncludeMissingChunks()) {
+      BitSet missingChunks = new BitSet();
+      if (!completed) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> chunks = em.createQuery("select f.id.chunkOrder, f.expectedChunks "
+          + "from DBFile f where f.id.id = :id")
+          .setParameter("id", fileID)
+          .getResultList();
+        long totalChunks = chunks.isEmpty() ? req.getTotalChunks() : (Long) chunks.get(0)[1];
+        validateTotalChunks(fileID, totalChunks, req.getTotalSize(), req.getChunkSize());
+        missingChunks.set(0, (int) totalChunks);
+        for (Object[] chunk : chunks) {
+          long chunkOrder = (Long) chunk[0];
+          if (chunkOrder >= 1 && chunkOrder <= totalChunks) {
+            missingChunks.clear((int) chunkOrder - 1);
+          }
+        }
+      }
+      res.setMissingChunks(missingChunks.toByteArray());
+    }
 
     return res;
   }
 
+  /**
+   * Rejects a number of chunks which is not positive, exceeds the number of chunks of the given
+   * size the file can be split in or (when the sizes are not known) exceeds MAX_CHUNKS.
+   */
+  private static void validateTotalChunks(String fileID, long totalChunks, long totalSize,
+    long chunkSize) {
+    long maxChunks = totalSize > 0 && chunkSize > 0
+      ? (totalSize + chunkSize - 1) / chunkSize : MAX_CHUNKS;
+    if (totalChunks <= 0 || totalChunks > Math.min(maxChunks, MAX_CHUNKS)) {
+      throw new QFileUploadException("Invalid number of chunks " + totalChunks + " for file "
+        + fileID + ".");
+    }
+  }
+
   @Override
   @Transactional(TxType.REQUIRED)
   public FileUploadResponse upload(FileUploadRequest req) {
     FileUploadResponse res = new FileUploadResponse();
+    validateTotalChunks(req.getAlias(), req.getTotalChunks(), req.getTotalSize(),
+      req.getChunkSize());
+
+    String chunkHash = toHex(sha256().digest(req.getData()));
+    if (req.getChunkHash() != null && !req.getChunkHash().equalsIgnoreCase(chunkHash)) {
+      throw new QFileChecksumException("Checksum mismatch for chunk " + req.getChunkNumber()
+        + " of file " + req.getAlias());
+    }
 
     // Check if this chunk has already been uploaded, so that we can support
     // updating existing chunks.
     DBFile file = DBFile.getChunk(req.getAlias(), req.getChunkNumber(), em);
+    if (file != null && file.getContentHash() != null) {
+      // The file has been completed (and its data may be shared with other files), so its
+      // chunks are no longer updated.
+      res.setChunkExists(true);
+      return res;
+    }
     if (file == null) {
       file = new DBFile(
         new DBFilePK(req.getAlias(), req.getChunkNumber()));
@@ -231,10 +542,26 @@ public class FileUploadImpl implements FileUpload {
     }
     file.setUploadedAt(System.currentTimeMillis());
     file.setUploadedBy(req.getUploadedBy());
-    file.setChunkData(req.getData());
     file.setChunkSize(req.getData().length);
+    file.setChunkHash(chunkHash);
+    // Chunks are numbered from 1 and all chunks but the last one have the (nominal) chunk size
+    // of the upload, so each chunk has a fixed offset in the file irrespective of upload order.
+    long chunkSize = req.getChunkSize() > 0 ? req.getChunkSize() : req.getData().length;
+    file.setChunkOffset(Math.max(0, req.getChunkNumber() - 1) * chunkSize);
 
     em.persist(file);
+    chunkStore.writeChunk(req.getAlias(), new ChunkInfo(req.getChunkNumber(),
+      file.getChunkOffset(), file.getChunkSize()), req.getData());
+
+    // Complete the file once all of its chunks have been uploaded. Chunks uploaded concurrently
+    // may not see each other, in which case the file is completed when first read.
+    long receivedChunks = (Long) em
+      .createQuery("select count(f) from DBFile f where f.id.id = :id")
+      .setParameter("id", req.getAlias())
+      .getSingleResult();
+    if (receivedChunks == req.getTotalChunks()) {
+      completeAfterCommit(req.getAlias(), getChunks(req.getAlias()));
+    }
 
     return res;
   }
@@ -242,13 +569,24 @@ public class FileUploadImpl implements FileUpload {
   @Override
   @Transactional(TxType.REQUIRED)
   public FileDeleteResponse deleteByID(String fileID) {
-    return new FileDeleteResponse(DBFile.delete(fileID, em));
+    return delete(fileID);
   }
 
   @Override
   @Transactional(TxType.REQUIRED)
   public FileDeleteResponse deleteByIDForConsole(String fileID) {
-    return new FileDeleteResponse(DBFile.delete(fileID, em));
+    return delete(fileID);
+  }
+
+  private FileDeleteResponse delete(String fileID) {
+    String contentHash = getContentHash(fileID);
+    if (contentHash != null) {
+      release(fileID, contentHash);
+    }
+    FileDeleteResponse res = new FileDeleteResponse(DBFile.delete(fileID, em));
+    chunkStore.delete(fileID);
+
+    return res;
   }
 
   @Override
@@ -289,10 +627,10 @@ public class FileUploadImpl implements FileUpload {
     }
     LOGGER.log(Level.FINE, "Contacting ClamAV at: {0}.", clamAVAddress);
     ClamAV clamAV = new ClamAV(clamAVAddress, CLAMAV_SOCKET_TIMEOUT);
-    DBFileDTO fileDTO = getByID(req.getId(), true);
     String scanResult = null;
-    try {
-      scanResult = clamAV.scan(new ByteArrayInputStream(fileDTO.getFileData()));
+    // Pipe the file to ClamAV as it is read, rather than assembling it in memory first.
+    try (InputStream in = openStream(req.getId())) {
+      scanResult = clamAV.scan(in);
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, "Could not check file for virus, file ID=" + req.getId(), e);
       throw new QVirusScanException("Could not check file for virus, file ID=" + req.getId());
@@ -311,9 +649,15 @@ public class FileUploadImpl implements FileUpload {
 
   @Override
   public void cleanupExpired(long deleteBefore) {
-    QDBFile qFile = QDBFile.dBFile;
-    new JPAQueryFactory(em).delete(qFile)
-      .where(qFile.uploadedAt.lt(deleteBefore)).execute();
+    // Expired files are deleted as a whole, releasing their references to their content.
+    @SuppressWarnings("unchecked")
+    List<String> fileIDs = em
+      .createQuery("select distinct f.id.id from DBFile f where f.uploadedAt < :deleteBefore")
+      .setParameter("deleteBefore", deleteBefore)
+      .getResultList();
+    for (String fileID : fileIDs) {
+      delete(fileID);
+    }
   }
 
   @Override
@@ -332,5 +676,20 @@ public class FileUploadImpl implements FileUpload {
     return new FileListResponse(retVal);
   }
 
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new QFileUploadException("SHA-256 is not supported");
+    }
+  }
 
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+
+    return hex.toString();
+  }
 }
@@ -0,0 +1,91 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.fileupload.impl.cleanup;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import com.eurodyn.qlack2.fuse.fileupload.api.FileUpload;
+import com.eurodyn.qlack2.util.cleanup.api.CleanupJob;
+
+/**
+ * Deletes the files uploaded more than a configured time ago (i.e. abandoned
+ * files), using the index on the upload time of the chunks. Files are deleted
+ * as a whole, so the number of rows deleted is counted in files.
+ *
+ * This bean is configured using Blueprint.
+ */
+@Transactional(TxType.REQUIRES_NEW)
+public class ExpiredFilesCleanupJob implements CleanupJob {
+	@PersistenceContext(unitName = "fuse-fileupload")
+	private EntityManager em;
+
+	private boolean enableCleanup;
+	private long cleanupThreshold;
+	private FileUpload fileUploadService;
+
+	public void setEnableCleanup(boolean enableCleanup) {
+		this.enableCleanup = enableCleanup;
+	}
+
+	public void setCleanupThreshold(long cleanupThreshold) {
+		this.cleanupThreshold = cleanupThreshold;
+	}
+
+	public void setFileUploadService(FileUpload fileUploadService) {
+		this.fileUploadService = fileUploadService;
+	}
+
+	@Override
+	public String getName() {
+		return "fileupload.expired";
+	}
+
+	@Override
+	public int deleteChunk(int maxRows) {
+		if (!enableCleanup) {
+			return 0;
+		}
+		@SuppressWarnings("unchecked")
+		List<String> fileIDs = em
+				.createQuery("select distinct f.id.id from DBFile f where f.uploadedAt < :deleteBefore")
+				.setParameter("deleteBefore", System.currentTimeMillis() - cleanupThreshold)
+				.setMaxResults(maxRows)
+				.getResultList();
+		// Expired files are deleted as a whole, releasing their references to
+		// their content.
+		for (String fileID : fileIDs) {
+			fileUploadService.deleteByID(fileID);
+		}
+		return fileIDs.size();
+	}
+
+	@Override
+	public long getLag() {
+		if (!enableCleanup) {
+			return 0;
+		}
+		long deleteBefore = System.currentTimeMillis() - cleanupThreshold;
+		Long oldest = (Long) em
+				.createQuery("select min(f.uploadedAt) from DBFile f where f.uploadedAt < :deleteBefore")
+				.setParameter("deleteBefore", deleteBefore)
+				.getSingleResult();
+		return oldest != null ? deleteBefore - oldest : 0;
+	}
+}
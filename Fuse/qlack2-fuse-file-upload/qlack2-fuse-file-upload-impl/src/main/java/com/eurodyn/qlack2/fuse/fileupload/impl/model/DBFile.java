@@ -44,6 +44,12 @@ public class DBFile {
 	private byte[] chunkData;
 	@Column(name = "chunk_size")
 	private long chunkSize;
+	@Column(name = "chunk_offset")
+	private long chunkOffset;
+	@Column(name = "chunk_hash")
+	private String chunkHash;
+	@Column(name = "content_hash")
+	private String contentHash;
 	
 	@Version
 	private long dbversion;
@@ -121,6 +127,30 @@ public class DBFile {
 		this.chunkSize = chunkSize;
 	}
 
+	public long getChunkOffset() {
+		return chunkOffset;
+	}
+
+	public void setChunkOffset(long chunkOffset) {
+		this.chunkOffset = chunkOffset;
+	}
+
+	public String getChunkHash() {
+		return chunkHash;
+	}
+
+	public void setChunkHash(String chunkHash) {
+		this.chunkHash = chunkHash;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
 	public static DBFile getChunk(String id, long chunkOrder, EntityManager em) {
 		return em.find(DBFile.class, new DBFilePK(id, chunkOrder));
 	}
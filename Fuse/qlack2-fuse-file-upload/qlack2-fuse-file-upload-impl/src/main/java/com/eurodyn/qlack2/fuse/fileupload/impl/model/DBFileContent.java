@@ -0,0 +1,87 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.fileupload.impl.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * The content of one or more uploaded files with the same content hash. The
+ * data is stored once, under the chunks of one of the files (the holder), and
+ * shared by all files referencing it.
+ */
+@Entity
+@Table(name = "flu_file_content")
+public class DBFileContent {
+	@Id
+	@Column(name = "content_hash")
+	private String contentHash;
+	@Column(name = "file_id")
+	private String fileId;
+	@Column(name = "file_size")
+	private long fileSize;
+	@Column(name = "ref_count")
+	private long refCount;
+
+	@Version
+	private long dbversion;
+
+	public DBFileContent() {
+
+	}
+
+	public DBFileContent(String contentHash, String fileId, long fileSize) {
+		this.contentHash = contentHash;
+		this.fileId = fileId;
+		this.fileSize = fileSize;
+		this.refCount = 1;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public String getFileId() {
+		return fileId;
+	}
+
+	public void setFileId(String fileId) {
+		this.fileId = fileId;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(long fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public long getRefCount() {
+		return refCount;
+	}
+
+	public void setRefCount(long refCount) {
+		this.refCount = refCount;
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+/**
+ * The location of a chunk of a file, as recorded in the metadata of the file.
+ *
+ * @author European Dynamics SA
+ */
+public class ChunkInfo {
+
+  private final long chunkOrder;
+  private final long offset;
+  private final long size;
+
+  /**
+   * @param chunkOrder The order of the chunk.
+   * @param offset The offset of the first byte of the chunk in the file.
+   * @param size The size of the chunk.
+   */
+  public ChunkInfo(long chunkOrder, long offset, long size) {
+    this.chunkOrder = chunkOrder;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  public long getChunkOrder() {
+    return chunkOrder;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getSize() {
+    return size;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * An input stream over the chunks of a file, loading the chunks lazily in chunk order. While a
+ * chunk is being read the next few chunks are fetched in the background, so at most
+ * (readAhead + 1) chunks are held in memory at any time. Chunks before the initial offset are not
+ * loaded at all.
+ *
+ * @author European Dynamics SA
+ */
+public class ChunkInputStream extends InputStream {
+
+  private final List<ChunkInfo> chunks;
+  private final Function<ChunkInfo, byte[]> loader;
+  private final Executor executor;
+  private final int readAhead;
+
+  /**
+   * The chunks requested but not read yet, in chunk order.
+   */
+  private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+  /**
+   * The index of the next chunk to request.
+   */
+  private int nextChunk;
+
+  /**
+   * The number of bytes to skip in the first chunk read.
+   */
+  private int firstChunkOffset;
+
+  private byte[] current = new byte[0];
+  private int position;
+  private boolean closed;
+
+  /**
+   * @param chunks The chunks of the file, in chunk order.
+   * @param offset The offset of the first byte to read.
+   * @param loader Loads the data of a chunk.
+   * @param executor The executor fetching the chunks ahead.
+   * @param readAhead The number of chunks to fetch ahead of the chunk being read.
+   */
+  public ChunkInputStream(List<ChunkInfo> chunks, long offset, Function<ChunkInfo, byte[]> loader,
+    Executor executor, int readAhead) {
+    this.chunks = chunks;
+    this.loader = loader;
+    this.executor = executor;
+    this.readAhead = readAhead;
+
+    // Skip the chunks before the offset without loading them.
+    long chunkStart = 0;
+    int skipped = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      long chunkSize = chunks.get(i).getSize();
+      if (skipped == i && chunkStart + chunkSize <= offset) {
+        chunkStart += chunkSize;
+        skipped++;
+      }
+    }
+    nextChunk = skipped;
+    firstChunkOffset = (int) (offset - chunkStart);
+    fill();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureAvailable()) {
+      return -1;
+    }
+
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureAvailable()) {
+      return -1;
+    }
+
+    int count = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, count);
+    position += count;
+
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && ensureAvailable()) {
+      int count = (int) Math.min(n - skipped, current.length - position);
+      position += count;
+      skipped += count;
+    }
+
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return closed ? 0 : current.length - position;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (CompletableFuture<byte[]> future : pending) {
+      future.cancel(false);
+    }
+    pending.clear();
+    current = new byte[0];
+    position = 0;
+  }
+
+  /**
+   * Moves to the next non-empty chunk if the current one has been read.
+   *
+   * @return false at the end of the stream.
+   */
+  private boolean ensureAvailable() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (position >= current.length) {
+      if (pending.isEmpty()) {
+        return false;
+      }
+      current = take();
+      position = firstChunkOffset;
+      firstChunkOffset = 0;
+    }
+
+    return true;
+  }
+
+  /**
+   * Takes the next requested chunk, requesting one more to keep the read-ahead full.
+   */
+  private byte[] take() throws IOException {
+    CompletableFuture<byte[]> next = pending.poll();
+    fill();
+    try {
+      return next.join();
+    } catch (CompletionException e) {
+      close();
+      throw new IOException("Could not read file chunk", e.getCause());
+    }
+  }
+
+  private void fill() {
+    while (pending.size() < Math.max(readAhead, 1) && nextChunk < chunks.size()) {
+      ChunkInfo chunk = chunks.get(nextChunk++);
+      pending.add(CompletableFuture.supplyAsync(() -> loader.apply(chunk), executor));
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+import java.util.List;
+
+/**
+ * Stores the data of the chunks of uploaded files. The metadata of the files and their chunks
+ * (name, size, uploader, chunk offsets etc.) is always kept in the database; the data is kept
+ * wherever the configured store puts it.
+ *
+ * @author European Dynamics SA
+ */
+public interface ChunkStore {
+
+  /**
+   * Stores the data of a chunk, replacing any data previously stored for it. It is called after
+   * the metadata of the chunk has been persisted, in the same transaction.
+   *
+   * @param fileID The ID of the file.
+   * @param chunk The chunk.
+   * @param data The data of the chunk.
+   */
+  void writeChunk(String fileID, ChunkInfo chunk, byte[] data);
+
+  /**
+   * Returns the data of a chunk.
+   *
+   * @param fileID The ID of the file.
+   * @param chunk The chunk.
+   * @return The data of the chunk.
+   */
+  byte[] readChunk(String fileID, ChunkInfo chunk);
+
+  /**
+   * Moves the data of all chunks of a file to another file with the same chunks, e.g. when a file
+   * whose data is shared with other files is deleted. Stores outside the database move the data
+   * once the calling transaction commits.
+   *
+   * @param fromID The ID of the file holding the data.
+   * @param toID The ID of the file to move the data to.
+   * @param chunks The chunks of the files.
+   */
+  void move(String fromID, String toID, List<ChunkInfo> chunks);
+
+  /**
+   * Deletes the data of all chunks of a file. It is called after the metadata of the file has
+   * been deleted. Stores outside the database delete the data once the calling transaction
+   * commits.
+   *
+   * @param fileID The ID of the file.
+   */
+  void delete(String fileID);
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFile;
+import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFileContent;
+import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFilePK;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+/**
+ * Keeps track of the distinct contents of the uploaded files, so that files with the same content
+ * share a single copy of its data. Every call through the injected reference runs in its own
+ * (short) transaction if none is active, so files can be completed after the transaction that
+ * uploaded their last chunk has committed.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+@Transactional
+public class ContentRegistry {
+
+  private static final Logger LOGGER = Logger.getLogger(ContentRegistry.class.getName());
+
+  @PersistenceContext(unitName = "fuse-fileupload")
+  private EntityManager em;
+
+  /**
+   * Records the content of a file all of whose chunks have been uploaded. If a file with the same
+   * content has already been uploaded, the chunks of the file are replaced by references to the
+   * existing data.
+   *
+   * @param fileID The ID of the file.
+   * @param contentHash The hash of the content of the file.
+   * @param fileSize The size of the file.
+   * @return Whether the data of the file is no longer needed (and should be deleted from the chunk
+   * store).
+   */
+  public boolean complete(String fileID, String contentHash, long fileSize) {
+    // The update locks the chunks of the file, so that concurrent completions of the file are
+    // serialised and only the first one proceeds.
+    em.flush();
+    int updated = em.createQuery("update DBFile f set f.contentHash = :contentHash "
+      + "where f.id.id = :id and f.contentHash is null")
+      .setParameter("contentHash", contentHash)
+      .setParameter("id", fileID)
+      .executeUpdate();
+    if (updated == 0) {
+      return false;
+    }
+    // The chunks in the persistence context are stale after the bulk update.
+    em.clear();
+
+    DBFileContent content = em.find(DBFileContent.class, contentHash,
+      LockModeType.PESSIMISTIC_WRITE);
+    if (content == null) {
+      em.persist(new DBFileContent(contentHash, fileID, fileSize));
+      return false;
+    }
+
+    // A file with the same content exists, so keep a reference to its data instead.
+    LOGGER.log(Level.FINE, "File {0} has the same content as file {1}.",
+      new Object[]{fileID, content.getFileId()});
+    Object[] file = (Object[]) em.createQuery("select f.fileName, f.uploadedAt, f.uploadedBy "
+      + "from DBFile f where f.id.id = :id")
+      .setParameter("id", fileID)
+      .setMaxResults(1)
+      .getSingleResult();
+    DBFile.delete(fileID, em);
+    share(content, fileID, (String) file[0], (Long) file[1], (String) file[2]);
+
+    return true;
+  }
+
+  /**
+   * Adds a reference to the content of an existing file, creating the chunks of a file as copies
+   * of the chunks of the file holding the data (without the data).
+   *
+   * @param content The content, locked by the caller.
+   * @param fileID The ID of the file referencing the content.
+   * @param filename The name of the file, or null to keep the name of the file holding the data.
+   * @param uploadedAt The upload time of the file.
+   * @param uploadedBy The uploader of the file.
+   */
+  public void share(DBFileContent content, String fileID, String filename, long uploadedAt,
+    String uploadedBy) {
+    @SuppressWarnings("unchecked")
+    List<Object[]> chunks = em.createQuery("select f.id.chunkOrder, f.chunkOffset, f.chunkSize, "
+      + "f.chunkHash, f.expectedChunks, f.fileName from DBFile f where f.id.id = :id")
+      .setParameter("id", content.getFileId())
+      .getResultList();
+    for (Object[] chunk : chunks) {
+      DBFile file = new DBFile(new DBFilePK(fileID, (Long) chunk[0]));
+      file.setChunkOffset((Long) chunk[1]);
+      file.setChunkSize((Long) chunk[2]);
+      file.setChunkHash((String) chunk[3]);
+      file.setExpectedChunks((Long) chunk[4]);
+      file.setFileName(filename != null ? filename : (String) chunk[5]);
+      file.setFileSize(content.getFileSize());
+      file.setUploadedAt(uploadedAt);
+      file.setUploadedBy(uploadedBy);
+      file.setContentHash(content.getContentHash());
+      em.persist(file);
+    }
+    content.setRefCount(content.getRefCount() + 1);
+  }
+}
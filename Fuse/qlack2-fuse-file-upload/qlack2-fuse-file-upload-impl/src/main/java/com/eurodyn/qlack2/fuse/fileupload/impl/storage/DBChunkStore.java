@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotFoundException;
+import com.eurodyn.qlack2.fuse.fileupload.impl.model.DBFile;
+import java.util.List;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+/**
+ * Stores the data of the chunks of uploaded files in the database, together with their metadata.
+ * Chunks are read one at a time, so that files can be streamed without loading all of their
+ * chunks in memory. Every call through the injected reference runs in its own (short)
+ * transaction if none is active, so a stream can keep reading chunks after the transaction that
+ * opened it has ended.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+@Transactional
+public class DBChunkStore implements ChunkStore {
+
+  @PersistenceContext(unitName = "fuse-fileupload")
+  private EntityManager em;
+
+  @Override
+  public void writeChunk(String fileID, ChunkInfo chunk, byte[] data) {
+    DBFile file = DBFile.getChunk(fileID, chunk.getChunkOrder(), em);
+    if (file == null) {
+      throw new QFileNotFoundException();
+    }
+    file.setChunkData(data);
+  }
+
+  /**
+   * @throws QFileNotFoundException If the chunk does not exist.
+   */
+  @Override
+  public byte[] readChunk(String fileID, ChunkInfo chunk) {
+    // The data is returned to be streamed, so it is queried without loading the chunk in the
+    // context.
+    List<?> results = em.createQuery("select f.chunkData from DBFile f "
+      + "where f.id.id = :id and f.id.chunkOrder = :chunkOrder")
+      .setParameter("id", fileID)
+      .setParameter("chunkOrder", chunk.getChunkOrder())
+      .getResultList();
+    if (results.isEmpty()) {
+      throw new QFileNotFoundException();
+    }
+
+    return (byte[]) results.get(0);
+  }
+
+  @Override
+  public void move(String fromID, String toID, List<ChunkInfo> chunks) {
+    for (ChunkInfo chunk : chunks) {
+      writeChunk(toID, chunk, readChunk(fromID, chunk));
+    }
+  }
+
+  @Override
+  public void delete(String fileID) {
+    // The data is deleted together with the metadata of the file.
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.storage;
+
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotCompletedException;
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileUploadException;
+import com.eurodyn.qlack2.fuse.fileupload.impl.util.TransactionUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Stores the chunks of each file in a single file on the local disk. Every chunk is written with
+ * a positional write at its offset in the file, so the file is complete as soon as its last chunk
+ * arrives (in any order) and no assembly step is needed; reads are positional reads of the
+ * requested chunk. Uploads therefore create no BLOB traffic on the database. Files are moved and
+ * deleted once the calling transaction commits, so that a rollback never leaves chunks recorded in
+ * the database without their data.
+ *
+ * This bean is configured using Blueprint; it is disabled (and chunks are stored in the database)
+ * when no directory is configured.
+ *
+ * @author European Dynamics SA
+ */
+public class LocalDiskChunkStore implements ChunkStore {
+
+  private static final Logger LOGGER = Logger.getLogger(LocalDiskChunkStore.class.getName());
+
+  // The directory the files are stored in.
+  private String directory;
+
+  // The transaction synchronization registry, used to defer moves and deletions until commit.
+  private TransactionSynchronizationRegistry tsr;
+
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  public void setTsr(TransactionSynchronizationRegistry tsr) {
+    this.tsr = tsr;
+  }
+
+  public boolean isEnabled() {
+    return StringUtils.isNotBlank(directory);
+  }
+
+  public void init() throws IOException {
+    if (isEnabled()) {
+      Files.createDirectories(Paths.get(directory));
+      LOGGER.log(Level.CONFIG, "Storing uploaded files in {0}.", directory);
+    }
+  }
+
+  @Override
+  public void writeChunk(String fileID, ChunkInfo chunk, byte[] data) {
+    try (FileChannel channel = FileChannel.open(getPath(fileID), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+      long position = chunk.getOffset();
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Could not store chunk " + chunk.getChunkOrder() + " of file "
+        + fileID, e);
+      throw new QFileUploadException("Could not store chunk " + chunk.getChunkOrder()
+        + " of file " + fileID);
+    }
+  }
+
+  @Override
+  public byte[] readChunk(String fileID, ChunkInfo chunk) {
+    ByteBuffer buffer = ByteBuffer.allocate((int) chunk.getSize());
+    try (FileChannel channel = FileChannel.open(getPath(fileID), StandardOpenOption.READ)) {
+      long position = chunk.getOffset();
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          // The chunk has been recorded but its data is not there (e.g. the file was removed).
+          throw new QFileNotCompletedException();
+        }
+        position += read;
+      }
+    } catch (NoSuchFileException e) {
+      throw new QFileNotCompletedException();
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Could not read chunk " + chunk.getChunkOrder() + " of file "
+        + fileID, e);
+      throw new QFileUploadException("Could not read chunk " + chunk.getChunkOrder()
+        + " of file " + fileID);
+    }
+
+    return buffer.array();
+  }
+
+  @Override
+  public void move(String fromID, String toID, List<ChunkInfo> chunks) {
+    TransactionUtil.afterCommit(tsr, () -> moveNow(fromID, toID));
+  }
+
+  private void moveNow(String fromID, String toID) {
+    try {
+      Files.move(getPath(fromID), getPath(toID), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Could not move stored file " + fromID + " to " + toID, e);
+      throw new QFileUploadException("Could not move stored file " + fromID + " to " + toID);
+    }
+  }
+
+  @Override
+  public void delete(String fileID) {
+    TransactionUtil.afterCommit(tsr, () -> deleteNow(fileID));
+  }
+
+  private void deleteNow(String fileID) {
+    try {
+      Files.deleteIfExists(getPath(fileID));
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not delete stored file " + fileID, e);
+    }
+  }
+
+  /**
+   * Returns the path of the file storing the chunks of an uploaded file. File IDs are chosen by
+   * the clients, so they are not used in paths as they are.
+   */
+  private Path getPath(String fileID) {
+    return Paths.get(directory,
+      UUID.nameUUIDFromBytes(fileID.getBytes(StandardCharsets.UTF_8)) + ".data");
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.fileupload.impl.util;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Helpers for work that has to follow the outcome of the current transaction.
+ *
+ * @author European Dynamics SA
+ */
+public final class TransactionUtil {
+
+  private TransactionUtil() {
+  }
+
+  /**
+   * Runs an action once the current transaction commits, or at once if there is no transaction.
+   * The action is dropped if the transaction rolls back.
+   *
+   * @param tsr The transaction synchronization registry, or null to run the action at once.
+   * @param action The action to run.
+   */
+  public static void afterCommit(TransactionSynchronizationRegistry tsr, final Runnable action) {
+    int status = tsr != null ? tsr.getTransactionStatus() : Status.STATUS_NO_TRANSACTION;
+    if (status == Status.STATUS_NO_TRANSACTION) {
+      action.run();
+    } else if (status == Status.STATUS_ACTIVE) {
+      tsr.registerInterposedSynchronization(new Synchronization() {
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          if (status == Status.STATUS_COMMITTED) {
+            action.run();
+          }
+        }
+      });
+    }
+    // Otherwise the transaction is rolling back, so there is nothing to run.
+  }
+}
@@ -15,16 +15,24 @@
 package com.eurodyn.qlack2.fuse.fileupload.rest;
 
 import com.eurodyn.qlack2.fuse.fileupload.api.FileUpload;
+import com.eurodyn.qlack2.fuse.fileupload.api.dto.DBFileDTO;
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotCompletedException;
+import com.eurodyn.qlack2.fuse.fileupload.api.exception.QFileNotFoundException;
 import com.eurodyn.qlack2.fuse.fileupload.api.request.CheckChunkRequest;
 import com.eurodyn.qlack2.fuse.fileupload.api.request.FileUploadRequest;
 import com.eurodyn.qlack2.fuse.fileupload.api.response.CheckChunkResponse;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
 import org.apache.cxf.jaxrs.ext.multipart.MultipartBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +40,9 @@ public abstract class FileUploadRestTemplate {
 
   private static final Logger LOGGER = Logger.getLogger(FileUploadRestTemplate.class.getName());
 
+  private static final String RANGE_UNIT = "bytes=";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private byte[] getBin(String fieldName, MultipartBody body)
     throws IOException {
     Attachment attachment = body.getAttachment(fieldName);
@@ -68,6 +79,9 @@ public abstract class FileUploadRestTemplate {
     CheckChunkRequest req = new CheckChunkRequest();
     req.setChunkNumber(chunkNumber);
     req.setFileAlias(alias);
+    req.setChunkSize(chunkSize);
+    req.setTotalSize(totalSize);
+    req.setTotalChunks(totalChunks);
     CheckChunkResponse res = fileUpload.checkChunk(req);
 
     if (!res.isChunkExists()) {
@@ -102,6 +116,7 @@ public abstract class FileUploadRestTemplate {
         fur.setTotalSize(getLong("flowTotalSize", body).longValue());
       }
 
+      fur.setChunkHash(getString("chunkHash", body));
       fur.setData(getBin("file", body));
 
       fileUpload.upload(fur);
@@ -113,4 +128,109 @@ public abstract class FileUploadRestTemplate {
     return retVal;
   }
 
+  /**
+   * Downloads a file, streaming its chunks as they are read. Single-range requests (e.g.
+   * "Range: bytes=1000-") are answered with 206 (Partial Content) so that downloads can be
+   * resumed and media can be seeked; requests for several ranges are answered with the whole file.
+   * Files which do not exist are answered with 404 (Not Found) and files not all chunks of which
+   * have been uploaded with 409 (Conflict).
+   *
+   * @param fileUpload The file upload service.
+   * @param fileID The ID of the file to download.
+   * @param range The value of the Range header of the request (may be null).
+   * @return The response streaming the (requested part of the) file.
+   */
+  public Response download(FileUpload fileUpload, String fileID, String range) {
+    DBFileDTO file = fileUpload.getInfoByID(fileID).getFile();
+    long size = file.getTotalSize();
+    long start = 0;
+    long end = size - 1;
+
+    boolean partial = range != null && range.startsWith(RANGE_UNIT) && !range.contains(",");
+    if (partial) {
+      try {
+        String[] bounds = range.substring(RANGE_UNIT.length()).trim().split("-", -1);
+        if (bounds[0].isEmpty()) {
+          // A suffix range, i.e. the last N bytes.
+          start = Math.max(0, size - Long.parseLong(bounds[1].trim()));
+        } else {
+          start = Long.parseLong(bounds[0].trim());
+          if (!bounds[1].isEmpty()) {
+            end = Math.min(end, Long.parseLong(bounds[1].trim()));
+          }
+        }
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        partial = false;
+        start = 0;
+        end = size - 1;
+      }
+      if (partial && (start > end || start >= size)) {
+        return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+          .header("Content-Range", "bytes */" + size).build();
+      }
+    }
+
+    // Open the stream before responding, so that a missing or incomplete file fails the request
+    // instead of breaking off the response.
+    final InputStream stream;
+    try {
+      stream = fileUpload.openStream(fileID, start);
+    } catch (QFileNotFoundException e) {
+      return Response.status(Status.NOT_FOUND).build();
+    } catch (QFileNotCompletedException e) {
+      return Response.status(Status.CONFLICT).build();
+    }
+    final long length = end - start + 1;
+    StreamingOutput output = out -> {
+      try (InputStream in = stream) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        int read;
+        while (remaining > 0
+          && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+          out.write(buffer, 0, read);
+          remaining -= read;
+        }
+      }
+    };
+
+    ResponseBuilder builder = partial
+      ? Response.status(Status.PARTIAL_CONTENT)
+        .header("Content-Range", "bytes " + start + "-" + end + "/" + size)
+      : Response.ok();
+    return builder.entity(output)
+      .type(MediaType.APPLICATION_OCTET_STREAM)
+      .header("Accept-Ranges", "bytes")
+      .header("Content-Length", length)
+      .header("Content-Disposition", contentDisposition(file.getFilename()))
+      .build();
+  }
+
+  /**
+   * Builds the Content-Disposition header of a download, with the filename both as a quoted
+   * ASCII fallback and in its RFC 5987 encoded form, so that the header can not be broken by
+   * quotes, control characters or non-ASCII characters in the filename.
+   */
+  private static String contentDisposition(String filename) {
+    if (filename == null || filename.isEmpty()) {
+      return "attachment";
+    }
+    StringBuilder fallback = new StringBuilder(filename.length());
+    StringBuilder encoded = new StringBuilder(filename.length());
+    for (int i = 0; i < filename.length(); i++) {
+      char c = filename.charAt(i);
+      fallback.append(c >= 0x20 && c < 0x7f && c != '"' && c != '\\' ? c : '_');
+    }
+    for (byte b : filename.getBytes(StandardCharsets.UTF_8)) {
+      int c = b & 0xff;
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+        || "!#$&+-.^_`|~".indexOf(c) >= 0) {
+        encoded.append((char) c);
+      } else {
+        encoded.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+          .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+      }
+    }
+    return "attachment; filename=\"" + fallback + "\"; filename*=UTF-8''" + encoded;
+  }
 }
@@ -54,7 +54,7 @@ public class ValidateTicketAspect {
 		QSignedRequest sreq = (QSignedRequest) pjp.getArgs()[requestIndex];
 
 		if (sreq.getSignedTicket() != null) {
-			LOGGER.log(Level.FINEST, "Validating ticket {0}", sreq.getSignedTicket().toString());
+			LOGGER.log(Level.FINEST, "Validating ticket {0}", sreq.getSignedTicket());
 			Field idmField = pjp.getTarget().getClass().getDeclaredField(idmServiceField);
 			idmField.setAccessible(true);
 			IDMService idmService = (IDMService) idmField.get(pjp.getTarget());
@@ -14,25 +14,33 @@
  */
 package com.eurodyn.qlack2.fuse.idm.impl;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.Charset;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.beanutils.PropertyUtils;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 
 import com.eurodyn.qlack2.fuse.aaa.api.UserService;
-import com.eurodyn.qlack2.fuse.crypto.api.CryptoService;
 import com.eurodyn.qlack2.fuse.idm.api.IDMService;
 import com.eurodyn.qlack2.fuse.idm.api.request.AuthenticateRequest;
 import com.eurodyn.qlack2.fuse.idm.api.request.AuthenticateSSORequest;
@@ -44,13 +52,32 @@ import com.eurodyn.qlack2.fuse.idm.api.signing.SignedTicket;
 import com.eurodyn.qlack2.fuse.idm.api.signing.Ticket;
 import com.eurodyn.qlack2.fuse.ticketserver.api.TicketDTO;
 import com.eurodyn.qlack2.fuse.ticketserver.api.TicketServerService;
+import com.eurodyn.qlack2.util.jwt.JWTUtil;
+import com.eurodyn.qlack2.util.jwt.api.JWTClaimsRequest;
+import com.eurodyn.qlack2.util.jwt.api.JWTClaimsResponse;
+import com.eurodyn.qlack2.util.jwt.api.JWTGenerateRequest;
 
 public class IDMServiceImpl implements IDMService {
 	private static final Logger LOGGER = Logger.getLogger(IDMServiceImpl.class
 			.getName());
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final String JWT_ISSUER = "QLACK IDM";
+	private static final String JWT_CLAIM_USERNAME = "username";
+	private static final String JWT_CLAIM_EPOCH = "epoch";
+
+	/**
+	 * The getters of the signed fields of tickets, looked up once.
+	 */
+	private static final List<Method> SIGNED_GETTERS = sortedSignedGetters();
+
 	private TicketServerService ticketService;
 	private UserService userService;
-	private CryptoService cryptoService;
+	private ValidatedTicketCache validatedTicketCache;
+	private TicketDenyList ticketDenyList;
+	private boolean jwtTickets;
+	private long jwtRevocationEpoch;
+	private volatile Signer signer;
 	private Long ticketValidUntil;
 	private Long ticketAutoExtendValidUntil;
 	private Long ticketAutoExtendDuration;
@@ -94,6 +121,7 @@ public class IDMServiceImpl implements IDMService {
 
 	public void setSecret(String secret) {
 		this.secret = secret;
+		this.signer = new Signer(secret);
 	}
 
 	public void setTicketService(TicketServerService ticketService) {
@@ -104,8 +132,20 @@ public class IDMServiceImpl implements IDMService {
 		this.userService = userService;
 	}
 
-	public void setCryptoService(CryptoService cryptoService) {
-		this.cryptoService = cryptoService;
+	public void setValidatedTicketCache(ValidatedTicketCache validatedTicketCache) {
+		this.validatedTicketCache = validatedTicketCache;
+	}
+
+	public void setTicketDenyList(TicketDenyList ticketDenyList) {
+		this.ticketDenyList = ticketDenyList;
+	}
+
+	public void setJwtTickets(boolean jwtTickets) {
+		this.jwtTickets = jwtTickets;
+	}
+
+	public void setJwtRevocationEpoch(long jwtRevocationEpoch) {
+		this.jwtRevocationEpoch = jwtRevocationEpoch;
 	}
 
 	private AuthenticateResponse authenticate(String username, String password,
@@ -164,12 +204,14 @@ public class IDMServiceImpl implements IDMService {
 				ticketDTO.setValidUntil(DateTime.now().getMillis()
 						+ ticketValidUntil);
 			}
-			if (ticketAutoExtendValidUntil != null
+			// JWT tickets are validated without the Ticket Server, so they
+			// cannot be extended automatically.
+			if (!jwtTickets && ticketAutoExtendValidUntil != null
 					&& ticketAutoExtendValidUntil > 0) {
 				ticketDTO.setAutoExtendValidUntil(DateTime.now().getMillis()
 						+ ticketAutoExtendValidUntil);
 			}
-			if (ticketAutoExtendDuration != null
+			if (!jwtTickets && ticketAutoExtendDuration != null
 					&& ticketAutoExtendDuration > 0) {
 				ticketDTO.setAutoExtendDuration(ticketAutoExtendDuration);
 			}
@@ -185,11 +227,11 @@ public class IDMServiceImpl implements IDMService {
 						.getAutoExtendDuration());
 				signedTicket.setAutoExtendValidUntil(ticketDTO
 						.getAutoExtendValidUntil());
-				signedTicket.setSignature(generateSignature(signedTicket));
+				signedTicket.setSignature(jwtTickets ? generateJWT(signedTicket)
+						: generateSignature(signedTicket));
 			}
 		} catch (InvalidKeyException | NoSuchAlgorithmException
-				| IllegalAccessException | InvocationTargetException
-				| NoSuchMethodException e) {
+				| IllegalAccessException | InvocationTargetException e) {
 			LOGGER.log(Level.SEVERE, MessageFormat.format(
 					"Could not create a ticket for user {0}.", username), e);
 		}
@@ -217,6 +259,9 @@ public class IDMServiceImpl implements IDMService {
 						.isBlank(ticket.getSignature()))) {
 			return new ValidateTicketResponse(false);
 		}
+		if (jwtTickets) {
+			return new ValidateTicketResponse(validateJWT(ticket));
+		}
 
 		// Validate the HMAC.
 		boolean retVal = false;
@@ -225,8 +270,14 @@ public class IDMServiceImpl implements IDMService {
 				LOGGER.log(Level.FINE,
 						"Could not verify the signature of ticket {0}.",
 						ticket.getTicketID());
+			} else if (validatedTicketCache != null && validatedTicketCache
+					.isValid(ticket.getTicketID(), ticket.getSignature())) {
+				// The ticket was found valid recently and has not been
+				// revoked since.
+				retVal = true;
 			} else {
-				if (ticketService.getTicket(ticket.getTicketID()) == null) {
+				TicketDTO ticketDTO = ticketService.getTicket(ticket.getTicketID());
+				if (ticketDTO == null) {
 					LOGGER.log(Level.FINE, "Could not find ticket {0} in "
 							+ "Ticket Server.", ticket.getTicketID());
 				} else {
@@ -238,12 +289,14 @@ public class IDMServiceImpl implements IDMService {
 										+ "{0} passed but the ticket was invalid or "
 										+ "has been revoked.",
 								ticket.getTicketID());
+					} else if (validatedTicketCache != null) {
+						validatedTicketCache.put(ticket.getTicketID(),
+								ticket.getSignature(), ticketDTO.getValidUntil());
 					}
 				}
 			}
 		} catch (InvalidKeyException | NoSuchAlgorithmException
-				| IllegalAccessException | InvocationTargetException
-				| NoSuchMethodException e) {
+				| IllegalAccessException | InvocationTargetException e) {
 			LOGGER.log(Level.SEVERE, MessageFormat.format("There was an error "
 					+ "verifying the authenticity of the ticket {0}",
 					ticket.getTicketID()), e);
@@ -253,12 +306,13 @@ public class IDMServiceImpl implements IDMService {
 	}
 
 	/**
-	 * Returns an alphabetically sorted list of the Fields of the class
-	 * {@link Ticket} which are annotated with the {@link Signed} annotation.
+	 * Returns the getters of the fields of the class {@link Ticket} which are
+	 * annotated with the {@link Signed} annotation, sorted alphabetically by
+	 * field name.
 	 *
 	 * @return
 	 */
-	private List<Field> sortedSignedFields() {
+	private static List<Method> sortedSignedGetters() {
 		// Iterate through the fields of the Ticket class to find
 		// which ones should participate in the signing process.
 		List<Field> signatureParticipants = new ArrayList<>();
@@ -271,36 +325,147 @@ public class IDMServiceImpl implements IDMService {
 		// Sort the list of fields alphabetically.
 		Collections.sort(signatureParticipants, new SignatureFieldComparator());
 
-		return signatureParticipants;
+		// Look up the getter of each field.
+		Map<String, Method> getters = new HashMap<>();
+		try {
+			for (PropertyDescriptor pd : Introspector.getBeanInfo(Ticket.class)
+					.getPropertyDescriptors()) {
+				if (pd.getReadMethod() != null) {
+					getters.put(pd.getName(), pd.getReadMethod());
+				}
+			}
+		} catch (IntrospectionException e) {
+			throw new IllegalStateException("Could not introspect tickets.", e);
+		}
+		List<Method> retVal = new ArrayList<>();
+		for (Field f : signatureParticipants) {
+			Method getter = getters.get(f.getName());
+			if (getter == null) {
+				throw new IllegalStateException(MessageFormat.format(
+						"Signed ticket field {0} has no getter.", f.getName()));
+			}
+			retVal.add(getter);
+		}
+
+		return Collections.unmodifiableList(retVal);
+	}
+
+	/**
+	 * Creates the JWT of a ticket, carrying the ID of the ticket, the user
+	 * and the current revocation epoch.
+	 */
+	private String generateJWT(SignedTicket t) {
+		JWTGenerateRequest request = new JWTGenerateRequest();
+		request.setSecret(secret);
+		request.setId(t.getTicketID());
+		request.setSubject(t.getUserID());
+		request.setIssuer(JWT_ISSUER);
+		request.setTtl(t.getValidUntil() != null ? ticketValidUntil : -1);
+		request.getClaims().put(JWT_CLAIM_USERNAME, t.getUsername());
+		request.getClaims().put(JWT_CLAIM_EPOCH, jwtRevocationEpoch);
+
+		return JWTUtil.generateToken(request);
+	}
+
+	/**
+	 * Validates a JWT ticket without contacting the Ticket Server: the JWT
+	 * (carried as the signature of the ticket) should be authentic, not
+	 * expired, match the ticket, be issued in the current revocation epoch and
+	 * not be in the deny-list.
+	 */
+	private boolean validateJWT(SignedTicket t) {
+		JWTClaimsResponse jwt = JWTUtil.getClaims(new JWTClaimsRequest(
+				t.getSignature(), secret));
+		if (!jwt.isValid()) {
+			LOGGER.log(Level.FINE, "Could not verify the JWT of ticket {0} [{1}].",
+					new Object[] { t.getTicketID(), jwt.getErrorMessage() });
+			return false;
+		}
+		Map<String, Object> claims = jwt.getClaims();
+		if (!t.getTicketID().equals(jwt.getId())
+				|| !StringUtils.equals(t.getUserID(), jwt.getSubject())
+				|| !StringUtils.equals(t.getUsername(),
+						(String) claims.get(JWT_CLAIM_USERNAME))) {
+			LOGGER.log(Level.FINE, "The JWT of ticket {0} does not match the "
+					+ "ticket.", t.getTicketID());
+			return false;
+		}
+		Object epoch = claims.get(JWT_CLAIM_EPOCH);
+		if (!(epoch instanceof Number)
+				|| ((Number) epoch).longValue() < jwtRevocationEpoch) {
+			LOGGER.log(Level.FINE, "Ticket {0} was issued before the current "
+					+ "revocation epoch.", t.getTicketID());
+			return false;
+		}
+		if (ticketDenyList != null && ticketDenyList.isRevoked(t.getTicketID())) {
+			LOGGER.log(Level.FINE, "Ticket {0} has been revoked.",
+					t.getTicketID());
+			return false;
+		}
+
+		return true;
 	}
 
 	private boolean validateSignature(SignedTicket t)
 			throws NoSuchAlgorithmException, InvalidKeyException,
-			IllegalAccessException, InvocationTargetException,
-			NoSuchMethodException {
-		return generateSignature(t).equals(t.getSignature());
+			IllegalAccessException, InvocationTargetException {
+		// Compare in constant time, so as not to leak how much of a forged
+		// signature matched.
+		return MessageDigest.isEqual(
+				generateSignature(t).getBytes(StandardCharsets.UTF_8),
+				t.getSignature().getBytes(StandardCharsets.UTF_8));
 	}
 
-	// TODO cache lookup of annotations.
 	private String generateSignature(SignedTicket t)
 			throws IllegalAccessException, InvocationTargetException,
-			NoSuchMethodException, InvalidKeyException,
-			NoSuchAlgorithmException {
+			InvalidKeyException, NoSuchAlgorithmException {
 		// Generate the signature.
 		StringBuilder bodyToSign = new StringBuilder();
-		for (Field f : sortedSignedFields()) {
-			bodyToSign.append(PropertyUtils.getProperty(t, f.getName()));
+		for (Method getter : SIGNED_GETTERS) {
+			bodyToSign.append(getter.invoke(t));
 		}
 
 		// Sign the resulting text.
-		return cryptoService.hmacSha256(secret, bodyToSign.toString(),
-				Charset.forName("UTF-8"));
+		byte[] hmac = signer.mac().doFinal(
+				bodyToSign.toString().getBytes(StandardCharsets.UTF_8));
+		char[] hex = new char[hmac.length * 2];
+		for (int i = 0; i < hmac.length; i++) {
+			hex[2 * i] = HEX_DIGITS[(hmac[i] >> 4) & 0x0f];
+			hex[2 * i + 1] = HEX_DIGITS[hmac[i] & 0x0f];
+		}
+
+		return new String(hex);
 	}
 
-	private class SignatureFieldComparator implements Comparator<Field> {
+	private static class SignatureFieldComparator implements Comparator<Field> {
 		@Override
 		public int compare(Field f1, Field f2) {
 			return f1.getName().compareTo(f2.getName());
 		}
 	}
+
+	/**
+	 * Computes HMACs with the current secret, reusing one Mac per thread. A
+	 * new Signer is created whenever the secret changes.
+	 */
+	private static class Signer {
+		private final SecretKeySpec key;
+		private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+
+		Signer(String secret) {
+			// Same key encoding as CryptoService.hmacSha256, so that existing
+			// signatures remain valid.
+			key = new SecretKeySpec(secret.getBytes(), HMAC_ALGORITHM);
+		}
+
+		Mac mac() throws NoSuchAlgorithmException, InvalidKeyException {
+			Mac mac = macs.get();
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+				macs.set(mac);
+			}
+			return mac;
+		}
+	}
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.idm.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketDTO;
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketEvents;
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketServerService;
+import com.eurodyn.qlack2.fuse.ticketserver.api.criteria.TicketSearchCriteria.TicketSearchCriteriaBuilder;
+
+/**
+ * The tickets revoked or deleted before they expire, against which JWT
+ * tickets are checked. The deny-list is filled from the revoked tickets of the
+ * Ticket Server on startup and kept up to date by the revocation and deletion
+ * {@link TicketEvents} of the Ticket Server, which are propagated to all nodes
+ * of the cluster. The Ticket Server keeps revoked tickets until they expire;
+ * tickets deleted (rather than revoked) are denied as they are deleted, but
+ * are only found again on startup if its revokeOnDelete is enabled.
+ *
+ * Lookups first check a Bloom filter, so that the (common) lookup of a ticket
+ * which is not revoked does not touch the set of revoked tickets. Revoked
+ * tickets are forgotten once they can no longer be valid, i.e. once the
+ * retention time (the validity of tickets) has passed.
+ *
+ * This bean is configured using Blueprint.
+ *
+ * @author European Dynamics SA
+ */
+public class TicketDenyList implements EventHandler {
+	private static final Logger LOGGER = Logger.getLogger(TicketDenyList.class
+			.getName());
+
+	/** The size of the Bloom filter in bits (128KB) */
+	private static final int BLOOM_BITS = 1 << 20;
+
+	/** The number of bits set in the Bloom filter per ticket */
+	private static final int BLOOM_HASHES = 4;
+
+	/** The time (in msec) between purges of tickets which have expired */
+	private static final long PURGE_INTERVAL = 60000;
+
+	private TicketServerService ticketService;
+	private boolean enabled;
+	private long retention;
+
+	/** The time after which each revoked ticket can be forgotten, by ID */
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+	private volatile AtomicLongArray bloom = new AtomicLongArray(BLOOM_BITS / 64);
+	private long nextPurge;
+
+	public void setTicketService(TicketServerService ticketService) {
+		this.ticketService = ticketService;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param retention The time (in msec) for which revoked tickets are
+	 * remembered; 0 to remember them forever (when tickets do not expire).
+	 */
+	public void setRetention(long retention) {
+		this.retention = retention;
+	}
+
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (TicketDTO ticket : ticketService.findTickets(TicketSearchCriteriaBuilder
+				.createCriteria().revoked(true).build())) {
+			if (ticket.getValidUntil() == null || ticket.getValidUntil() > now) {
+				revoke(ticket.getId(), ticket.getValidUntil());
+			}
+		}
+		LOGGER.log(Level.CONFIG, "Loaded {0} revoked tickets.", revoked.size());
+	}
+
+	/**
+	 * Checks whether a ticket has been revoked.
+	 *
+	 * @param ticketID The ID of the ticket.
+	 */
+	public boolean isRevoked(String ticketID) {
+		AtomicLongArray bits = bloom;
+		int h1 = ticketID.hashCode();
+		int h2 = secondHash(h1);
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return revoked.containsKey(ticketID);
+	}
+
+	/**
+	 * Adds a ticket to the deny-list (on this node).
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param validUntil The time the ticket expires, if known.
+	 */
+	public synchronized void revoke(String ticketID, Long validUntil) {
+		long now = System.currentTimeMillis();
+		long forgetAt;
+		if (validUntil != null) {
+			forgetAt = validUntil;
+		} else if (retention > 0) {
+			forgetAt = now + retention;
+		} else {
+			forgetAt = Long.MAX_VALUE;
+		}
+		// Set the bits before adding the ticket, so that a concurrent lookup
+		// never misses it.
+		addToBloom(bloom, ticketID);
+		revoked.put(ticketID, forgetAt);
+
+		if (now >= nextPurge) {
+			purge(now);
+			nextPurge = now + PURGE_INTERVAL;
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		String ticketID = (String) event.getProperty(TicketEvents.TICKET_ID);
+		if (!enabled || ticketID == null
+				|| !(TicketEvents.TOPIC_REVOKED.equals(event.getTopic())
+						|| TicketEvents.TOPIC_DELETED.equals(event.getTopic()))) {
+			return;
+		}
+		LOGGER.log(Level.FINEST, "Denying ticket {0}.", ticketID);
+		revoke(ticketID, (Long) event.getProperty(TicketEvents.VALID_UNTIL));
+	}
+
+	/**
+	 * Forgets the tickets which have expired, rebuilding the Bloom filter so
+	 * that it does not fill up over time.
+	 */
+	private void purge(long now) {
+		if (!revoked.values().removeIf(forgetAt -> forgetAt <= now)) {
+			return;
+		}
+		AtomicLongArray bits = new AtomicLongArray(BLOOM_BITS / 64);
+		for (String ticketID : revoked.keySet()) {
+			addToBloom(bits, ticketID);
+		}
+		bloom = bits;
+	}
+
+	private static void addToBloom(AtomicLongArray bits, String ticketID) {
+		int h1 = ticketID.hashCode();
+		int h2 = secondHash(h1);
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+			long mask = 1L << bit;
+			long word;
+			do {
+				word = bits.get(bit >>> 6);
+			} while ((word & mask) == 0
+					&& !bits.compareAndSet(bit >>> 6, word, word | mask));
+		}
+	}
+
+	/**
+	 * Derives a second, odd hash from the hash code of a ticket ID (for double
+	 * hashing).
+	 */
+	private static int secondHash(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h | 1;
+	}
+}
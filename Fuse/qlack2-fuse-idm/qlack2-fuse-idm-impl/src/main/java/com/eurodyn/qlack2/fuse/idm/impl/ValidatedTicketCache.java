@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.idm.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketEvents;
+
+/**
+ * A cache of the tickets recently found valid by the Ticket Server, keyed by
+ * ticket ID and signature, so that repeated validations of the same ticket do
+ * not query the Ticket Server. Entries expire after a short time (and never
+ * after the ticket itself expires), which also bounds how far automatic
+ * extensions of the validity of a ticket lag behind its use.
+ *
+ * The cache listens to the {@link TicketEvents} of the Ticket Server, which
+ * are propagated to all nodes of the cluster. A revoked or deleted ticket is
+ * remembered as revoked until the expiry time passes, so that a validation
+ * racing with the revocation or deletion cannot cache the ticket as valid
+ * again.
+ *
+ * This bean is configured using Blueprint; the cache is disabled when the
+ * expiry time is 0.
+ *
+ * @author European Dynamics SA
+ */
+public class ValidatedTicketCache implements EventHandler {
+	private static final Logger LOGGER = Logger.getLogger(ValidatedTicketCache.class
+			.getName());
+
+	/** The time (in msec) after which cached validations expire */
+	private long expiryTime = 30000;
+
+	/** The maximum number of entries, beyond which expired entries are purged */
+	private int maxEntries = 100000;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	public void setExpiryTime(long expiryTime) {
+		this.expiryTime = expiryTime;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public boolean isEnabled() {
+		return expiryTime > 0;
+	}
+
+	/**
+	 * Checks whether a ticket was found valid recently and has not been
+	 * revoked since.
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param signature The (already verified) signature of the ticket.
+	 * @return true if the ticket can be considered valid without asking the
+	 * Ticket Server.
+	 */
+	public boolean isValid(String ticketID, String signature) {
+		Entry entry = entries.get(ticketID);
+		return entry != null && !entry.revoked
+				&& entry.expiresAt > System.currentTimeMillis()
+				&& entry.signature.equals(signature);
+	}
+
+	/**
+	 * Caches a ticket found valid by the Ticket Server, unless it has been
+	 * revoked in the meantime.
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param signature The (already verified) signature of the ticket.
+	 * @param validUntil The time the ticket expires, null if it does not.
+	 */
+	public void put(String ticketID, String signature, Long validUntil) {
+		if (!isEnabled()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expiresAt = now + expiryTime;
+		if (validUntil != null && validUntil < expiresAt) {
+			expiresAt = validUntil;
+		}
+		Entry entry = new Entry(signature, expiresAt, false);
+		entries.compute(ticketID, (id, existing) ->
+				existing != null && existing.revoked && existing.expiresAt > now ? existing : entry);
+
+		if (entries.size() > maxEntries) {
+			purge(now);
+		}
+	}
+
+	/**
+	 * Removes a ticket from the cache (on this node).
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param revoked Whether the ticket was revoked or deleted, in which case
+	 * it is remembered as revoked until the expiry time passes.
+	 */
+	public void invalidate(String ticketID, boolean revoked) {
+		if (revoked && isEnabled()) {
+			entries.put(ticketID, new Entry(null, System.currentTimeMillis() + expiryTime, true));
+		} else {
+			entries.remove(ticketID);
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		String ticketID = (String) event.getProperty(TicketEvents.TICKET_ID);
+		if (ticketID == null) {
+			return;
+		}
+		LOGGER.log(Level.FINEST, "Invalidating validated ticket {0} [{1}].",
+				new Object[] { ticketID, event.getTopic() });
+		invalidate(ticketID, TicketEvents.TOPIC_REVOKED.equals(event.getTopic())
+				|| TicketEvents.TOPIC_DELETED.equals(event.getTopic()));
+	}
+
+	private void purge(long now) {
+		entries.values().removeIf(entry -> entry.expiresAt <= now);
+		if (entries.size() > maxEntries) {
+			// Too many tickets in use to cache all of them; start over, still
+			// remembering the revoked ones.
+			LOGGER.log(Level.FINE, "Validated ticket cache is full, clearing it.");
+			entries.values().removeIf(entry -> !entry.revoked);
+		}
+	}
+
+	private static class Entry {
+		private final String signature;
+		private final long expiresAt;
+		private final boolean revoked;
+
+		Entry(String signature, long expiresAt, boolean revoked) {
+			this.signature = signature;
+			this.expiresAt = expiresAt;
+			this.revoked = revoked;
+		}
+	}
+}
@@ -7,6 +7,7 @@ import com.eurodyn.qlack2.fuse.idm.api.request.ValidateTicketRequest;
 import com.eurodyn.qlack2.fuse.idm.api.signing.SignedTicket;
 import com.eurodyn.qlack2.fuse.idm.conf.ITTestConf;
 import com.eurodyn.qlack2.fuse.idm.util.TestConst;
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketServerService;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,10 +15,21 @@ import org.ops4j.pax.exam.junit.PaxExam;
 import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
 import org.ops4j.pax.exam.spi.reactors.PerSuite;
 import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Dictionary;
 import java.util.GregorianCalendar;
+import java.util.Hashtable;
 import java.util.UUID;
 
 /**
@@ -31,6 +43,21 @@ public class IDMServiceImplTest extends ITTestConf {
     @Filter(timeout = 1200000)
     IDMService idmService;
 
+    @Inject
+    @Filter(timeout = 1200000)
+    TicketServerService ticketServerService;
+
+    @Inject
+    ConfigurationAdmin configurationAdmin;
+
+    @Inject
+    BundleContext bundleContext;
+
+    /**
+     * The secret of IDM when not configured otherwise.
+     */
+    private static final String DEFAULT_SECRET = "P2_65jGU~Cpf%5EpHne/a5h,pg>+R;E7";
+
     @Test
     public void authenticateReq(){
         AuthenticateRequest authenticateRequest = new AuthenticateRequest();
@@ -66,7 +93,148 @@ public class IDMServiceImplTest extends ITTestConf {
         validateTicketRequest.setSignedTicket(signedTicket);
 
         Assert.assertNotNull(idmService.validateTicket(validateTicketRequest));
+        // The signature is random, so the ticket is never valid.
+        Assert.assertFalse(idmService.validateTicket(validateTicketRequest).isValid());
     }
 
-}
+    @Test
+    public void validateCachedTicket() {
+        IDMService service = currentIdmService();
+        SignedTicket signedTicket = newTicket(service);
+
+        // The second validation is answered from the cache of validated tickets.
+        Assert.assertTrue(isValid(service, signedTicket));
+        Assert.assertTrue(isValid(service, signedTicket));
+
+        // A ticket with the ID of a cached ticket but a different signature is still rejected.
+        SignedTicket tamperedTicket = newTicket(service);
+        tamperedTicket.setTicketID(signedTicket.getTicketID());
+        Assert.assertFalse(isValid(service, tamperedTicket));
+    }
+
+    @Test
+    public void validateRevokedTicket() {
+        IDMService service = currentIdmService();
+        SignedTicket signedTicket = newTicket(service);
+        Assert.assertTrue(isValid(service, signedTicket));
+
+        // Revocation evicts the ticket from the cache of validated tickets.
+        ticketServerService.revoke(signedTicket.getTicketID());
+        Assert.assertFalse(isValid(service, signedTicket));
+    }
+
+    @Test
+    public void validateDeletedTicket() {
+        IDMService service = currentIdmService();
+        SignedTicket signedTicket = newTicket(service);
+        Assert.assertTrue(isValid(service, signedTicket));
+
+        // Deletion evicts the ticket from the cache of validated tickets.
+        ticketServerService.deleteTicket(signedTicket.getTicketID());
+        Assert.assertFalse(isValid(service, signedTicket));
+    }
+
+    @Test
+    public void validateLegacySignature() throws Exception {
+        IDMService service = currentIdmService();
+        SignedTicket signedTicket = newTicket(service);
 
+        // Tickets signed before signing stopped going through CryptoService are still accepted.
+        signedTicket.setSignature(legacySignature(signedTicket));
+        Assert.assertTrue(isValid(service, signedTicket));
+    }
+
+    @Test
+    public void validateJWTTicket() throws Exception {
+        IDMService jwtIdmService = configure("jwtTickets", "true");
+        try {
+            AuthenticateSSORequest authenticateSSORequest = new AuthenticateSSORequest();
+            authenticateSSORequest.setUsername(UUID.randomUUID().toString());
+            SignedTicket validTicket = jwtIdmService.authenticate(authenticateSSORequest)
+                .getSignedTicket();
+            SignedTicket revokedTicket = jwtIdmService.authenticate(authenticateSSORequest)
+                .getSignedTicket();
+            Assert.assertTrue(isValid(jwtIdmService, validTicket));
+            Assert.assertTrue(isValid(jwtIdmService, revokedTicket));
+
+            ticketServerService.revoke(revokedTicket.getTicketID());
+            Assert.assertTrue(isValid(jwtIdmService, validTicket));
+            Assert.assertFalse(isValid(jwtIdmService, revokedTicket));
+
+            // The deny-list is rebuilt from the Ticket Server on restart.
+            jwtIdmService = configure("validatedTicketExpiryTime", "30001");
+            Assert.assertTrue(isValid(jwtIdmService, validTicket));
+            Assert.assertFalse(isValid(jwtIdmService, revokedTicket));
+        } finally {
+            configure("jwtTickets", "false");
+        }
+    }
+
+    private SignedTicket newTicket(IDMService service) {
+        AuthenticateSSORequest authenticateSSORequest = new AuthenticateSSORequest();
+        authenticateSSORequest.setUsername(UUID.randomUUID().toString());
+        return service.authenticate(authenticateSSORequest).getSignedTicket();
+    }
+
+    /**
+     * Signs a ticket as IDM did through CryptoService.hmacSha256, i.e. the
+     * hex HMAC-SHA256 of the signed fields in alphabetical order.
+     */
+    private String legacySignature(SignedTicket signedTicket) throws Exception {
+        Configuration configuration = configurationAdmin
+            .getConfiguration("com.eurodyn.qlack2.fuse.idm", null);
+        Object secret = configuration.getProperties() != null
+            ? configuration.getProperties().get("secret") : null;
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec((secret != null ? secret.toString() : DEFAULT_SECRET).getBytes(),
+            "HmacSHA256"));
+        String body = "" + signedTicket.getTicketID() + signedTicket.getUserID()
+            + signedTicket.getUsername() + signedTicket.getValidUntil();
+        StringBuilder retVal = new StringBuilder();
+        for (byte b : mac.doFinal(body.getBytes(StandardCharsets.UTF_8))) {
+            retVal.append(String.format("%02x", b));
+        }
+        return retVal.toString();
+    }
+
+    /**
+     * Looks up the currently registered IDMService, as tests changing the
+     * configuration of IDM register it again.
+     */
+    private IDMService currentIdmService() {
+        return bundleContext.getService(bundleContext.getServiceReference(IDMService.class));
+    }
+
+    private boolean isValid(IDMService service, SignedTicket signedTicket) {
+        ValidateTicketRequest validateTicketRequest = new ValidateTicketRequest();
+        validateTicketRequest.setSignedTicket(signedTicket);
+        return service.validateTicket(validateTicketRequest).isValid();
+    }
+
+    /**
+     * Updates a property of IDM and waits for its service to be registered
+     * again with the new configuration.
+     */
+    private IDMService configure(String key, String value)
+        throws IOException, InterruptedException {
+        ServiceReference<IDMService> oldReference = bundleContext.getServiceReference(IDMService.class);
+        Configuration configuration = configurationAdmin
+            .getConfiguration("com.eurodyn.qlack2.fuse.idm", null);
+        Dictionary<String, Object> properties = configuration.getProperties() != null
+            ? configuration.getProperties() : new Hashtable<>();
+        properties.put(key, value);
+        configuration.update(properties);
+
+        long deadline = System.currentTimeMillis() + 60000;
+        while (System.currentTimeMillis() < deadline) {
+            ServiceReference<IDMService> reference = bundleContext.getServiceReference(IDMService.class);
+            if (reference != null && (oldReference == null || !reference.getProperty(Constants.SERVICE_ID)
+                .equals(oldReference.getProperty(Constants.SERVICE_ID)))) {
+                return bundleContext.getService(reference);
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("IDMService was not registered again.");
+    }
+
+}
@@ -17,6 +17,7 @@ package com.eurodyn.qlack2.fuse.lexicon.api;
 import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria;
 import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria.SortType;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.KeyDTO;
+import com.eurodyn.qlack2.fuse.lexicon.api.dto.TranslationBundleDTO;
 
 import java.util.Collection;
 import java.util.List;
@@ -301,4 +302,35 @@ public interface KeyService {
      */
 	String getTranslationForKeyGroupLocale(String keyName, String groupName, String locale);
 
+	/**
+     * Returns the current version of the translations of a group in a locale.
+     * The version increases whenever a translation of the group in the locale
+     * changes, so it can be used to validate bundles cached by clients.
+     * @param groupName The name of the group.
+     * @param locale The locale.
+     * @return The version of the translations, 0 if they never changed.
+     */
+	long getTranslationBundleVersion(String groupName, String locale);
+
+	/**
+     * Returns all translations of a group in a locale together with their version.
+     * @param groupName The name of the group.
+     * @param locale The locale.
+     * @return A complete bundle of (key_name, translation_value) pairs.
+     */
+	TranslationBundleDTO getTranslationBundle(String groupName, String locale);
+
+	/**
+     * Returns the translations of a group in a locale changed since an earlier
+     * version. When the changes cannot be expressed as a delta (e.g. keys were
+     * renamed, moved or deleted since that version) a complete bundle is
+     * returned instead.
+     * @param groupName The name of the group.
+     * @param locale The locale.
+     * @param sinceVersion The version of the bundle the caller already has.
+     * @return A delta of the changed (key_name, translation_value) pairs, or a
+     * complete bundle.
+     */
+	TranslationBundleDTO getTranslationBundleChanges(String groupName, String locale, long sinceVersion);
+
 }
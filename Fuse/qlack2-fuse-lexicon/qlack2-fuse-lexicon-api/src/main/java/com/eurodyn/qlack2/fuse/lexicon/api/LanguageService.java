@@ -17,6 +17,8 @@ package com.eurodyn.qlack2.fuse.lexicon.api;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.LanguageDTO;
 import com.eurodyn.qlack2.fuse.lexicon.api.exception.QLanguageProcessingException;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface LanguageService {
@@ -163,12 +165,12 @@ public interface LanguageService {
 
   /**
    * Creates an Excel file with the translations of the requested language.
-   * The returned Excel file is based on Excel '97(-2007) file format (.xls)
+   * The returned Excel file is based on Excel 2007 file format (.xlsx)
    * and has one sheet for each translation group available in the Lexicon DB.
    *
    * @param languageID
    *            The ID of the language for which to retrieve all translations.
-   * @return A byte array representing an Excel '97 (.xls) file with the
+   * @return A byte array representing an Excel 2007 (.xlsx) file with the
    *         requested translations.
    * @throws QLanguageProcessingException
    *             If an error occurs during the processing of the language
@@ -176,11 +178,28 @@ public interface LanguageService {
    */
   byte[] downloadLanguage(String languageID);
 
+  /**
+   * Writes an Excel file with the translations of the requested language to
+   * a stream, as {@link #downloadLanguage(String)} does. The file is
+   * created in a streaming fashion, so this method should be preferred for
+   * languages with many translations. The stream is not closed.
+   *
+   * @param languageID
+   *            The ID of the language for which to retrieve all translations.
+   * @param out
+   *            The stream to write the Excel 2007 (.xlsx) file to.
+   * @throws QLanguageProcessingException
+   *             If an error occurs during the processing of the language
+   *             translations and the creation of the Excel file.
+   */
+  void downloadLanguage(String languageID, OutputStream out);
+
   /**
    * Updates the system translations with the translations found on the
    * provided Excel. It is assumed that each sheet of the uploaded Excel file
    * corresponds to a translation group and is named after the group title.
    * Keys which can not be found in the Lexicon database are simply ignored.
+   * Both Excel 2007 (.xlsx) and Excel '97 (.xls) files are accepted.
    *
    * @param languageID
    *            The locale for which the translations are uploaded.
@@ -191,6 +210,21 @@ public interface LanguageService {
    */
   void uploadLanguage(String languageID, byte[] lgXL);
 
+  /**
+   * Updates the system translations with the translations found on the
+   * provided Excel, as {@link #uploadLanguage(String, byte[])} does. Excel
+   * 2007 (.xlsx) files are read in a streaming fashion, so this method should
+   * be preferred for large files. The stream is not closed.
+   *
+   * @param languageID
+   *            The locale for which the translations are uploaded.
+   * @param lgXL
+   *            The stream of the Excel file as uploaded by the user.
+   * @throws QLanguageProcessingException
+   *             If an error occurs during the processing of the Excel file.
+   */
+  void uploadLanguage(String languageID, InputStream lgXL);
+
   /**
    * A helper method to identify whether the requested local is for an RTL
    * language.
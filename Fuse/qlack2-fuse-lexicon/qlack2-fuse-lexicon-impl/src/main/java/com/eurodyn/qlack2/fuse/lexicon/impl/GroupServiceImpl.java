@@ -17,12 +17,14 @@ package com.eurodyn.qlack2.fuse.lexicon.impl;
 import com.eurodyn.qlack2.fuse.lexicon.api.BundleUpdateService;
 import com.eurodyn.qlack2.fuse.lexicon.api.GroupService;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.GroupDTO;
+import com.eurodyn.qlack2.fuse.lexicon.impl.cache.TranslationCache;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.*;
 import com.eurodyn.qlack2.fuse.lexicon.impl.util.ConverterUtil;
 import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -40,6 +42,9 @@ public class GroupServiceImpl implements GroupService {
 	@PersistenceContext(unitName = "fuse-lexicon")
 	private EntityManager em;
 
+	@Inject
+	private TranslationCache translationCache;
+
 	// Querydsl fields.
 	private QKey qKey = QKey.key;
 	private QData qData = QData.data;
@@ -60,12 +65,14 @@ public class GroupServiceImpl implements GroupService {
 		Group entity = Group.find(group.getId(), em);
 		entity.setTitle(group.getTitle());
 		entity.setDescription(group.getDescription());
+		translationCache.invalidateAll();
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void deleteGroup(String groupID) {
 		em.remove(Group.find(groupID, em));
+		translationCache.invalidateAll();
 	}
 
 	@Override
@@ -102,6 +109,8 @@ public class GroupServiceImpl implements GroupService {
 		for (Data data : dataList) {
 			em.remove(data);
 		}
+		resetBundle(groupID, language);
+		translationCache.invalidateLocale(language.getLocale());
 	}
 
 	@Override
@@ -111,6 +120,18 @@ public class GroupServiceImpl implements GroupService {
 		for (Data data : dataList) {
 			em.remove(data);
 		}
+		resetBundle(groupID, Language.findByLocale(locale, em));
+		translationCache.invalidateLocale(locale);
+	}
+
+	/**
+	 * Resets the version of the bundle of a group in a language, since deleted
+	 * translations cannot be served as deltas.
+	 */
+	private void resetBundle(String groupID, Language language) {
+		if (groupID != null && language != null) {
+			BundleVersion.lock(Group.find(groupID, em), language, em).reset();
+		}
 	}
 
 	@Override
@@ -17,14 +17,14 @@ package com.eurodyn.qlack2.fuse.lexicon.impl;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -43,6 +43,10 @@ import com.eurodyn.qlack2.fuse.lexicon.api.KeyService;
 import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria;
 import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria.SortType;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.KeyDTO;
+import com.eurodyn.qlack2.fuse.lexicon.api.dto.TranslationBundleDTO;
+import com.eurodyn.qlack2.fuse.lexicon.impl.cache.TranslationCache;
+import com.eurodyn.qlack2.fuse.lexicon.impl.cache.TranslationSnapshot;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.BundleVersion;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Data;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Group;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Key;
@@ -61,6 +65,12 @@ public class KeyServiceImpl implements KeyService {
 	@PersistenceContext(unitName = "fuse-lexicon")
 	private EntityManager em;
 
+	@Inject
+	private TranslationCache translationCache;
+
+	// The number of translations written at once by bulk updates.
+	private static final int UPDATE_BATCH_SIZE = 500;
+
 	// Entities for queries
 	QData qData = QData.data;
 	QKey qKey = QKey.key;
@@ -76,6 +86,7 @@ public class KeyServiceImpl implements KeyService {
 		}
 		em.persist(entity);
 
+		Set<String> locales = new HashSet<>();
 		if (createDefaultTranslations) {
 			List<Language> languages = Language.getAllLanguages(em);
 			for (Language language : languages) {
@@ -86,13 +97,14 @@ public class KeyServiceImpl implements KeyService {
 				if (translation == null) {
 					translation = key.getName();
 				}
-				updateTranslation(entity.getId(), language.getId(), translation);
+				locales.add(setTranslation(entity.getId(), language.getId(), translation));
 			}
 		} else if (key.getTranslations() != null) {
 			for (String languageId : key.getTranslations().keySet()) {
-				updateTranslation(entity.getId(), languageId, key.getTranslations().get(languageId));
+				locales.add(setTranslation(entity.getId(), languageId, key.getTranslations().get(languageId)));
 			}
 		}
+		invalidate(locales);
 
 		return entity.getId();
 	}
@@ -118,15 +130,22 @@ public class KeyServiceImpl implements KeyService {
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void deleteKeys(Collection<String> keyIDs) {
+		Set<Group> groups = new HashSet<>();
 		for (String keyID : keyIDs) {
-			em.remove(Key.find(keyID, em));
+			Key key = Key.find(keyID, em);
+			groups.add(key.getGroup());
+			em.remove(key);
 		}
+		resetBundles(groups);
+		translationCache.invalidateAll();
 	}
 	
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void deleteKeysByGroupId(String groupId) {
 		new JPAQueryFactory(em).delete(qKey).where(qKey.group.id.eq(groupId)).execute();
+		resetBundles(Collections.singleton(Group.find(groupId, em)));
+		translationCache.invalidateAll();
 	}
 
 	@Override
@@ -134,6 +153,8 @@ public class KeyServiceImpl implements KeyService {
 	public void renameKey(String keyID, String newName) {
 		Key key = Key.find(keyID, em);
 		key.setName(newName);
+		resetBundles(Collections.singleton(key.getGroup()));
+		translationCache.invalidateAll();
 	}
 
 	@Override
@@ -148,10 +169,16 @@ public class KeyServiceImpl implements KeyService {
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void moveKeys(Collection<String> keyIDs, String newGroupId) {
+		Group newGroup = Group.find(newGroupId, em);
+		Set<Group> groups = new HashSet<>();
+		groups.add(newGroup);
 		for (String keyID : keyIDs) {
 			Key key = Key.find(keyID, em);
-			key.setGroup(Group.find(newGroupId, em));
+			groups.add(key.getGroup());
+			key.setGroup(newGroup);
 		}
+		resetBundles(groups);
+		translationCache.invalidateAll();
 	}
 
 	@Override
@@ -215,14 +242,44 @@ public class KeyServiceImpl implements KeyService {
 		return cq;
 	}
 
-	private void update(Data data) {
+	/**
+	 * Stores the value of a translation and advances the version of its bundle,
+	 * without invalidating the cache.
+	 *
+	 * @return The locale of the translation.
+	 */
+	private String update(Data data, String value) {
+		data.setValue(value);
 		data.setLastUpdatedOn(Instant.now().toEpochMilli());
+		if (data.getKey() != null && data.getKey().getGroup() != null && data.getLanguage() != null) {
+			data.setBundleVersion(BundleVersion.lock(data.getKey().getGroup(), data.getLanguage(), em).advance());
+		}
 		em.merge(data);
+		return data.getLanguage() != null ? data.getLanguage().getLocale() : null;
 	}
-	
-	@Override
-	@Transactional(TxType.REQUIRED)
-	public void updateTranslation(String keyID, String languageID, String value) {
+
+	/**
+	 * Resets the versions of the bundles of a group in all languages, after
+	 * changes that cannot be served as deltas.
+	 */
+	private void resetBundles(Collection<Group> groups) {
+		List<Language> languages = Language.getAllLanguages(em);
+		for (Group group : groups) {
+			if (group != null) {
+				for (Language language : languages) {
+					BundleVersion.lock(group, language, em).reset();
+				}
+			}
+		}
+	}
+
+	private void invalidate(Collection<String> locales) {
+		for (String locale : locales) {
+			translationCache.invalidateLocale(locale);
+		}
+	}
+
+	private String setTranslation(String keyID, String languageID, String value) {
 		Key key = Key.find(keyID, em);
 		Data data = Data.findByKeyAndLanguageId(keyID, languageID, em);
 		if (data == null) {
@@ -230,21 +287,10 @@ public class KeyServiceImpl implements KeyService {
 			data.setKey(key);
 			data.setLanguage(Language.find(languageID, em));
 		}
-		data.setValue(value);
-		update(data);
+		return update(data, value);
 	}
-	
-	@Override
-	@Transactional(TxType.REQUIRED)
-	public void updateTranslationsByGroupId(Map<String, String> keys, String groupId, String languageId) {
-		for (Map.Entry<String, String> key : keys.entrySet()) {
-			updateTranslationByGroupId(key.getKey(), key.getValue(), groupId, languageId);
-		}
-	}
-	
-	@Override
-	@Transactional(TxType.REQUIRED)
-	public void updateTranslationByGroupId(String keyName, String value, String groupId, String languageId) {
+
+	private String setTranslationByGroupId(String keyName, String value, String groupId, String languageId) {
 		Data data = new JPAQueryFactory(em).selectFrom(qData).where(qData.key.name.eq(keyName)
 				.and(qData.key.group.id.eq(groupId))
 				.and(qData.language.id.eq(languageId))).fetchOne();
@@ -253,83 +299,149 @@ public class KeyServiceImpl implements KeyService {
 			data.setKey(Key.findByName(keyName, groupId, em));
 			data.setLanguage(Language.find(languageId, em));
 		}
-		data.setValue(value);
-		update(data);
+		return update(data, value);
 	}
 
-	@Override
-	@Transactional(TxType.REQUIRED)
-	public void updateTranslationByKeyName(String keyName, String groupID, String languageID, String value) {
+	private String setTranslationByKeyName(String keyName, String groupID, String languageID, String value) {
 		Data data = Data.findByKeyNameAndLanguageId(keyName, languageID, em);
 		if (data == null) {
 			data = new Data();
 			data.setKey(Key.findByName(keyName, groupID, em));
 			data.setLanguage(Language.find(languageID, em));
 		}
-		data.setValue(value);
-		update(data);
+		return update(data, value);
 	}
 
-	@Override
-	@Transactional(TxType.REQUIRED)
-	public void updateTranslationByLocale(String keyID, String locale, String value) {
+	private String setTranslationByLocale(String keyID, String locale, String value) {
 		Data data = Data.findByKeyIdAndLocale(keyID, locale, em);
 		if (data == null) {
 			data = new Data();
 			data.setKey(Key.find(keyID, em));
 			data.setLanguage(Language.findByLocale(locale, em));
 		}
-		data.setValue(value);
-		update(data);
+		return update(data, value);
+	}
+	
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public void updateTranslation(String keyID, String languageID, String value) {
+		translationCache.invalidateLocale(setTranslation(keyID, languageID, value));
+	}
+	
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public void updateTranslationsByGroupId(Map<String, String> keys, String groupId, String languageId) {
+		Set<String> locales = new HashSet<>();
+		for (Map.Entry<String, String> key : keys.entrySet()) {
+			locales.add(setTranslationByGroupId(key.getKey(), key.getValue(), groupId, languageId));
+		}
+		invalidate(locales);
+	}
+	
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public void updateTranslationByGroupId(String keyName, String value, String groupId, String languageId) {
+		translationCache.invalidateLocale(setTranslationByGroupId(keyName, value, groupId, languageId));
+	}
+
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public void updateTranslationByKeyName(String keyName, String groupID, String languageID, String value) {
+		translationCache.invalidateLocale(setTranslationByKeyName(keyName, groupID, languageID, value));
+	}
+
+	@Override
+	@Transactional(TxType.REQUIRED)
+	public void updateTranslationByLocale(String keyID, String locale, String value) {
+		translationCache.invalidateLocale(setTranslationByLocale(keyID, locale, value));
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void updateTranslationsForKey(String keyID,
 			Map<String, String> translations) {
+		Set<String> locales = new HashSet<>();
 		for (String languageId : translations.keySet()) {
-			// This call also takes care of invalidating the cache.
-			updateTranslation(keyID, languageId, translations.get(languageId));
+			locales.add(setTranslation(keyID, languageId, translations.get(languageId)));
 		}
+		invalidate(locales);
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void updateTranslationsForKeyByLocale(String keyID, Map<String, String> translations) {
+		Set<String> locales = new HashSet<>();
 		for (String locale : translations.keySet()) {
-			// This call also takes care of invalidating the cache.
-			updateTranslationByLocale(keyID, locale, translations.get(locale));
+			locales.add(setTranslationByLocale(keyID, locale, translations.get(locale)));
 		}
+		invalidate(locales);
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void updateTranslationsForLanguage(String languageID,
 			Map<String, String> translations) {
+		Set<String> locales = new HashSet<>();
 		for (String keyId : translations.keySet()) {
-			// This call also takes care of invalidating the cache.
-			updateTranslation(keyId, languageID, translations.get(keyId));
+			locales.add(setTranslation(keyId, languageID, translations.get(keyId)));
 		}
+		invalidate(locales);
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public void updateTranslationsForLanguageByKeyName(String languageID, String groupID,
 			Map<String, String> translations) {
-		for (String keyName : translations.keySet()) {
-			// This call also takes care of invalidating the cache.
-			updateTranslationByKeyName(keyName, groupID, languageID, translations.get(keyName));
+		// Translations are written in batches, loading the keys and existing
+		// translations of each batch with a single query and flushing the
+		// batch at once (inserts and updates are JDBC-batched, see
+		// persistence.xml). Written translations are detached after each
+		// batch, so that large uploads do not fill the persistence context.
+		Language language = Language.find(languageID, em);
+		Group group = groupID != null ? Group.find(groupID, em) : null;
+		List<String> keyNames = new ArrayList<>(translations.keySet());
+		for (int from = 0; from < keyNames.size(); from += UPDATE_BATCH_SIZE) {
+			List<String> batch = keyNames.subList(from, Math.min(from + UPDATE_BATCH_SIZE, keyNames.size()));
+			List<Key> keys = new JPAQueryFactory(em).selectFrom(qKey)
+					.where(qKey.name.in(batch), groupID != null ? qKey.group.id.eq(groupID) : qKey.group.isNull())
+					.fetch();
+			if (keys.isEmpty()) {
+				continue;
+			}
+			Map<String, Data> existing = new HashMap<>();
+			for (Data data : new JPAQueryFactory(em).selectFrom(qData)
+					.where(qData.key.in(keys), qData.language.id.eq(languageID)).fetch()) {
+				existing.put(data.getKey().getId(), data);
+			}
+
+			long now = Instant.now().toEpochMilli();
+			long bundleVersion = group != null ? BundleVersion.lock(group, language, em).advance() : 0;
+			List<Data> written = new ArrayList<>(keys.size());
+			for (Key key : keys) {
+				Data data = existing.get(key.getId());
+				if (data == null) {
+					data = new Data();
+					data.setKey(key);
+					data.setLanguage(language);
+					em.persist(data);
+				}
+				data.setValue(translations.get(key.getName()));
+				data.setLastUpdatedOn(now);
+				data.setBundleVersion(bundleVersion);
+				written.add(data);
+			}
+			em.flush();
+			for (Data data : written) {
+				em.detach(data);
+			}
 		}
+		translationCache.invalidateLocale(language.getLocale());
 	}
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public String getTranslation(String keyName, String locale) {
-		Data data = Data.findByKeyNameAndLocale(keyName, locale, em);
-		if (data == null) {
-			return null;
-		}
-		return data.getValue();
+		return translationCache.getLocale(locale, em).get(keyName);
 	}
 
 	@Override
@@ -346,29 +458,13 @@ public class KeyServiceImpl implements KeyService {
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public String getTranslationForKeyGroupLocale(String keyName, String groupName, String locale) {
-		List<String> list = new JPAQueryFactory(em)
-				.select(qData.value).from(qData)
-				.where(
-						qData.key.name.eq(keyName)
-						.and(qData.key.group.title.eq(groupName))
-						.and(qData.language.locale.eq(locale))
-						)
-				.fetch();
-		if (list != null && !list.isEmpty()) {
-			return list.get(0);
-		}
-		return null;
+		return translationCache.getGroup(groupName, locale, em).get(keyName);
 	} 
 
 	@Override
 	@Transactional(TxType.REQUIRED)
 	public Map<String, String> getTranslationsForLocale(String locale) {
-		Language language = Language.findByLocale(locale, em);
-		Map<String, String> translations = new HashMap<>();
-		for (Data data : language.getData()) {
-			translations.put(data.getKey().getName(), data.getValue());
-		}
-		return translations;
+		return translationCache.getLocale(locale, em).toMap();
 	}
 
 	@Override
@@ -384,98 +480,73 @@ public class KeyServiceImpl implements KeyService {
 	
 	@Override
 	public Map<String, String> getTranslationsForGroupNameAndLocale(String groupName, String locale) {
-		
-		List<Tuple> listTuples = new JPAQueryFactory(em)
-				.select(qData.key.name, qData.value)
-				.from(qData)
-				.leftJoin(qData.key) 
-				.where( 
-						(qData.key.group.title.eq(groupName))
-						.and(qData.language.locale.eq(locale))
-						)
-				.fetch();
-		
-		Map<String, String> translations = new HashMap<>();
-		if (listTuples != null) {
-			for (Tuple t : listTuples) {
-				translations.put(t.get(0, String.class), t.get(1, String.class));
-			}
-		}
-		
-		return translations;
+		return translationCache.getGroup(groupName, locale, em).toMap();
 	} 
 
-	private SortedSet<TranslationKV> getSortedDataForGroupNameAndLocale(String groupName, String locale, SortType sortType) {
-		Map<String, String> translations = getTranslationsForGroupNameAndLocale(groupName, locale);
-		// sort in java side as we cannot order by in SQL side because translation data value is CLOB and not string
-		SortedSet<TranslationKV> sortedSet = new TreeSet<>(new TranslationKV(sortType));
-		for (Map.Entry<String, String> entry : translations.entrySet()) {
-			sortedSet.add(new TranslationKV(entry.getKey(), entry.getValue()));
-		}
-		return sortedSet;
-	}
-	
 	@Override
 	public Map<String, String> getTranslationsForGroupNameAndLocaleSorted(String groupName, String locale, SortType sortType) { 
-		SortedSet<TranslationKV> sortedSet = getSortedDataForGroupNameAndLocale(groupName, locale, sortType);
-		HashMap<String, String> sortedMap = new LinkedHashMap<>();
-		for (TranslationKV x : sortedSet) {
-			sortedMap.put(x.key, x.value);
-		}
-		return sortedMap;
+		return translationCache.getGroup(groupName, locale, em).toSortedMap(sortType);
 	}
 
 	@Override
 	public List<String> getKeysSortedByTranslation(String groupName, String locale, SortType sortType) { 
-		SortedSet<TranslationKV> sortedSet = getSortedDataForGroupNameAndLocale(groupName, locale, sortType);
-		List<String> sortedList = new ArrayList<>(sortedSet.size());
-		for (TranslationKV tkv : sortedSet) {
-			sortedList.add(tkv.key);
-		} 
-		return sortedList;
+		return translationCache.getGroup(groupName, locale, em).getSortedKeys(sortType);
 	}
-	
-	// This class is used to sort translation keys ordered by value.
-	private static class TranslationKV implements Comparator<TranslationKV>, Comparable<TranslationKV> {
-		String key;
-		String value;
-		SortType sortType;
-
-		public TranslationKV(SortType sortType) {
-			this.sortType = sortType;
-		}
 
-		public TranslationKV(String key, String value) {
-			this.key = key;
-			this.value = value;
-		}
+	@Override
+	public long getTranslationBundleVersion(String groupName, String locale) {
+		return translationCache.getGroup(groupName, locale, em).getVersion();
+	}
 
-		@Override
-		public int compare(TranslationKV arg0, TranslationKV arg1) {
-			return sortType.equals(SortType.ASCENDING) ? arg0.value.compareTo(arg1.value) : arg1.value.compareTo(arg0.value);
-		}
+	@Override
+	public TranslationBundleDTO getTranslationBundle(String groupName, String locale) {
+		TranslationSnapshot snapshot = translationCache.getGroup(groupName, locale, em);
+		return bundle(groupName, locale, snapshot.getVersion(), true, snapshot.toMap());
+	}
 
-		@Override
-		public int compareTo(TranslationKV arg0) {
-			return sortType.equals(SortType.ASCENDING) ? value.compareTo(arg0.value) : arg0.value.compareTo(value);
+	@Override
+	public TranslationBundleDTO getTranslationBundleChanges(String groupName, String locale, long sinceVersion) {
+		// Up to date callers are answered from the cache.
+		TranslationSnapshot snapshot = translationCache.getGroup(groupName, locale, em);
+		if (sinceVersion == snapshot.getVersion()) {
+			return bundle(groupName, locale, sinceVersion, false, new HashMap<>());
 		}
-		
-		@Override
-		public boolean equals(Object obj) {
-		  if (obj == null)
-		    return false;
-		  if (!(obj instanceof TranslationKV))
-		    return false;
-		  TranslationKV x = (TranslationKV)obj;
-		  if (value == null)
-		    return (x.value == null);
-		  return value.equals(x.value);
+
+		// The version is read before the changes, so that a concurrent change can
+		// only make the changes newer (never older) than their version.
+		BundleVersion bundleVersion = BundleVersion.findByGroupNameAndLocale(groupName, locale, em);
+		long version = bundleVersion != null ? bundleVersion.getVersion() : 0;
+		long resetVersion = bundleVersion != null ? bundleVersion.getResetVersion() : 0;
+		if (sinceVersion < resetVersion || sinceVersion > version) {
+			return getTranslationBundle(groupName, locale);
 		}
-		
-		@Override
-		public int hashCode() {
-		  return super.hashCode();
+
+		List<Tuple> listTuples = new JPAQueryFactory(em)
+				.select(qData.key.name, qData.value)
+				.from(qData)
+				.where(
+						qData.key.group.title.eq(groupName)
+						.and(qData.language.locale.eq(locale))
+						.and(qData.bundleVersion.gt(sinceVersion))
+						)
+				.fetch();
+		Map<String, String> translations = new HashMap<>();
+		for (Tuple t : listTuples) {
+			translations.put(t.get(qData.key.name), t.get(qData.value));
 		}
-	} 
+
+		return bundle(groupName, locale, version, false, translations);
+	}
+
+	private TranslationBundleDTO bundle(String groupName, String locale, long version,
+			boolean complete, Map<String, String> translations) {
+		TranslationBundleDTO dto = new TranslationBundleDTO();
+		dto.setGroupName(groupName);
+		dto.setLocale(locale);
+		dto.setVersion(version);
+		dto.setComplete(complete);
+		dto.setTranslations(translations);
+		return dto;
+	}
 
 }
@@ -18,14 +18,21 @@ import com.eurodyn.qlack2.fuse.lexicon.api.KeyService;
 import com.eurodyn.qlack2.fuse.lexicon.api.LanguageService;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.LanguageDTO;
 import com.eurodyn.qlack2.fuse.lexicon.api.exception.QLanguageProcessingException;
+import com.eurodyn.qlack2.fuse.lexicon.impl.cache.TranslationCache;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Group;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Key;
 import com.eurodyn.qlack2.fuse.lexicon.impl.model.Language;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QData;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QKey;
 import com.eurodyn.qlack2.fuse.lexicon.impl.util.ConverterUtil;
+import com.eurodyn.qlack2.fuse.lexicon.impl.util.XlsxSheetReader;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 
 import javax.inject.Inject;
@@ -38,6 +45,11 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -57,6 +69,22 @@ public class LanguageServiceImpl implements LanguageService {
   @Inject
   private KeyService keyService;
 
+  @Inject
+  private TranslationCache translationCache;
+
+  // The title of the sheet holding the translations without a group.
+  private static final String NO_GROUP_SHEET = "<No group>";
+
+  // The number of rows kept in memory while creating an Excel file.
+  private static final int ROW_ACCESS_WINDOW = 100;
+
+  // The number of translations updated at once while reading an Excel file.
+  private static final int UPLOAD_BATCH_SIZE = 1000;
+
+  // Entities for queries
+  private static final QData qData = QData.data;
+  private static final QKey qKey = QKey.key;
+
   // A pattern for RTL languages (from Google Closure Templates).
   private static final Pattern RtlLocalesRe = Pattern.compile(
     "^(ar|dv|he|iw|fa|nqo|ps|sd|ug|ur|yi|.*[-_](Arab|Hebr|Thaa|Nkoo|Tfng))" +
@@ -114,12 +142,14 @@ public class LanguageServiceImpl implements LanguageService {
     Language entity = Language.find(language.getId(), em);
     entity.setName(language.getName());
     entity.setLocale(language.getLocale());
+    translationCache.invalidateAll();
   }
 
   @Override
   @Transactional(TxType.REQUIRED)
   public void deleteLanguage(String languageID) {
     em.remove(Language.find(languageID, em));
+    translationCache.invalidateAll();
   }
 
   @Override
@@ -206,91 +236,187 @@ public class LanguageServiceImpl implements LanguageService {
   @Override
   @Transactional(TxType.REQUIRED)
   public byte[] downloadLanguage(String languageID) {
-    byte[] retVal = null;
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    downloadLanguage(languageID, bos);
 
-    // Check that the language exists and get its translations
-    Language language = Language.find(languageID, em);
+    return bos.toByteArray();
+  }
 
-    // Create an Excel workbook. The workbook will contain a sheet for each
-    // group.
-    Workbook wb = new HSSFWorkbook();
-    CreationHelper createHelper = wb.getCreationHelper();
-
-    // Iterate over all existing groups and create a sheet for each one.
-    // Creating a new list below and not using the one retrieved from
-    // Group.getAllGroups since result lists are read only and
-    // we need to add the empty group below to the list.
-    List<Group> groups = new ArrayList<>(Group.getAllGroups(em));
-    // Add an dummy entry to the list to also check for translations without
-    // a group.
-    Group emptyGroup = new Group();
-    emptyGroup.setId(null);
-    emptyGroup.setTitle("<No group>");
-    groups.add(0, emptyGroup);
-    for (Group group : groups) {
-      Map<String, String> translations;
-      translations = keyService.getTranslationsForGroupAndLocale(group.getId(), language.getLocale());
-      if (!translations.isEmpty()) {
-        Sheet sheet = wb.createSheet(group.getTitle());
-
-        // Add the header.
-        Row headerRow = sheet.createRow(0);
-        headerRow.createCell(0).setCellValue(createHelper.createRichTextString("Key"));
-        headerRow.createCell(1).setCellValue(createHelper.createRichTextString("Translation"));
-
-        // Add the data.
-        int rowCounter = 1;
-        for (String key : translations.keySet()) {
-          Row row = sheet.createRow(rowCounter++);
-          row.createCell(0).setCellValue(createHelper.createRichTextString(key));
-          row.createCell(1).setCellValue(createHelper.createRichTextString(translations.get(key)));
+  @Override
+  @Transactional(TxType.REQUIRED)
+  public void downloadLanguage(String languageID, OutputStream out) {
+    // Create a streaming Excel workbook, which keeps only the last few rows in
+    // memory and flushes the rest to a temporary file. The workbook will
+    // contain a sheet for each group.
+    SXSSFWorkbook wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+    try {
+      // Iterate over all existing groups and create a sheet for each one.
+      // A null entry is added to the list to also check for translations
+      // without a group.
+      List<Group> groups = new ArrayList<>(Group.getAllGroups(em));
+      groups.add(0, null);
+      for (Group group : groups) {
+        // Only the key names and values are fetched, without loading the
+        // translations in the persistence context.
+        List<Tuple> translations = new JPAQueryFactory(em)
+          .select(qKey.name, qData.value)
+          .from(qData)
+          .innerJoin(qData.key, qKey)
+          .where(group != null ? qKey.group.id.eq(group.getId()) : qKey.group.isNull(),
+            qData.language.id.eq(languageID))
+          .orderBy(qKey.name.asc())
+          .fetch();
+        if (!translations.isEmpty()) {
+          Sheet sheet = wb.createSheet(group != null ? group.getTitle() : NO_GROUP_SHEET);
+
+          // Add the header.
+          Row headerRow = sheet.createRow(0);
+          headerRow.createCell(0).setCellValue("Key");
+          headerRow.createCell(1).setCellValue("Translation");
+
+          // Add the data.
+          int rowCounter = 1;
+          for (Tuple translation : translations) {
+            Row row = sheet.createRow(rowCounter++);
+            row.createCell(0).setCellValue(translation.get(qKey.name));
+            row.createCell(1).setCellValue(translation.get(qData.value));
+          }
         }
       }
-    }
 
-    // Create the byte[] holding the Excel data.
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    try {
-      wb.write(bos);
-      retVal = bos.toByteArray();
+      wb.write(out);
     } catch (IOException ex) {
       // Convert to a runtime exception in order to roll back transaction
       LOGGER.log(Level.SEVERE, ex.getLocalizedMessage(), ex);
       throw new QLanguageProcessingException("Error creating Excel file for language " + languageID);
+    } finally {
+      wb.dispose();
     }
-
-    return retVal;
   }
 
   @Override
   @Transactional(TxType.REQUIRED)
   public void uploadLanguage(String languageID, byte[] lgXL) {
-    Map<String, String> translations = new HashMap<>();
+    uploadLanguage(languageID, new ByteArrayInputStream(lgXL));
+  }
+
+  @Override
+  @Transactional(TxType.REQUIRED)
+  public void uploadLanguage(String languageID, InputStream lgXL) {
+    // The file is copied to a temporary file, so that its sheets can be
+    // parsed as streams without holding the workbook in memory.
+    Path file = null;
     try {
-      Workbook wb = WorkbookFactory.create(new BufferedInputStream(
-        new ByteArrayInputStream(lgXL)));
-      for (int si = 0; si < wb.getNumberOfSheets(); si++) {
-        Sheet sheet = wb.getSheetAt(si);
-        String groupName = sheet.getSheetName();
-        String groupID = null;
-        if (StringUtils.isNotBlank(groupName)) {
-          groupID = Group.findByName(groupName, em).getId();
-        }
-        // Skip first row (the header of the Excel file) and start
-        // parsing translations.
-        for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-          String keyName = sheet.getRow(i).getCell(0).getStringCellValue();
-          String keyValue = sheet.getRow(i).getCell(1).getStringCellValue();
-          translations.put(keyName, keyValue);
-        }
-        keyService.updateTranslationsForLanguageByKeyName(languageID, groupID, translations);
+      file = Files.createTempFile("qlack2-lexicon-", ".xlsx");
+      Files.copy(lgXL, file, StandardCopyOption.REPLACE_EXISTING);
+      TranslationsUploader uploader = new TranslationsUploader(languageID);
+      boolean legacy;
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+        legacy = POIFSFileSystem.hasPOIFSHeader(in);
+      }
+      if (legacy) {
+        uploadLegacyWorkbook(file, uploader);
+      } else {
+        XlsxSheetReader.read(file.toFile(), uploader);
       }
     } catch (IOException | InvalidFormatException ex) {
       // Convert to a runtime exception in order to roll back transaction
       LOGGER.log(Level.SEVERE, ex.getLocalizedMessage(), ex);
       throw new QLanguageProcessingException("Error reading Excel file for language " + languageID);
+    } finally {
+      if (file != null) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException ex) {
+          LOGGER.log(Level.WARNING, "Could not delete temporary file " + file, ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads an Excel '97 (.xls) file, as created by earlier versions of
+   * downloadLanguage, in memory.
+   */
+  private void uploadLegacyWorkbook(Path file, TranslationsUploader uploader)
+    throws IOException, InvalidFormatException {
+    DataFormatter formatter = new DataFormatter();
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      Workbook wb = WorkbookFactory.create(in);
+      for (int si = 0; si < wb.getNumberOfSheets(); si++) {
+        Sheet sheet = wb.getSheetAt(si);
+        uploader.startSheet(sheet.getSheetName());
+        for (Row row : sheet) {
+          List<String> cells = new ArrayList<>();
+          for (int ci = 0; ci < 2; ci++) {
+            Cell cell = row.getCell(ci);
+            cells.add(cell != null ? formatter.formatCellValue(cell) : null);
+          }
+          uploader.row(row.getRowNum(), cells);
+        }
+        uploader.endSheet();
+      }
+    }
+  }
+
+  /**
+   * Updates the translations of the rows read from an uploaded file, in
+   * batches of UPLOAD_BATCH_SIZE translations.
+   */
+  private class TranslationsUploader implements XlsxSheetReader.RowHandler {
+
+    private final String languageID;
+    private String groupID;
+    private boolean skipSheet;
+    private Map<String, String> translations = new HashMap<>();
+
+    TranslationsUploader(String languageID) {
+      this.languageID = languageID;
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+      groupID = null;
+      skipSheet = false;
+      if (StringUtils.isNotBlank(sheetName) && !NO_GROUP_SHEET.equals(sheetName)) {
+        Group group = Group.findByName(sheetName, em);
+        if (group != null) {
+          groupID = group.getId();
+        } else {
+          LOGGER.log(Level.WARNING, "Skipping sheet {0}, no such group.", sheetName);
+          skipSheet = true;
+        }
+      }
+    }
+
+    @Override
+    public void row(int rowNum, List<String> cells) {
+      // Skip first row (the header of the Excel file) and rows without a key
+      // or a translation.
+      if (skipSheet || rowNum == 0 || cells.size() < 2) {
+        return;
+      }
+      String keyName = cells.get(0);
+      String keyValue = cells.get(1);
+      if (StringUtils.isNotBlank(keyName) && keyValue != null) {
+        translations.put(keyName, keyValue);
+        if (translations.size() >= UPLOAD_BATCH_SIZE) {
+          flush();
+        }
+      }
+    }
+
+    @Override
+    public void endSheet() {
+      flush();
     }
 
+    private void flush() {
+      if (!translations.isEmpty()) {
+        keyService.updateTranslationsForLanguageByKeyName(languageID, groupID, translations);
+        translations = new HashMap<>();
+      }
+    }
   }
 
   @Override
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.lexicon.impl.cache;
+
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.BundleVersion;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QData;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QGroup;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QKey;
+import com.eurodyn.qlack2.fuse.lexicon.impl.model.QLanguage;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.ops4j.pax.cdi.api.OsgiService;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * An in-memory cache of the translations of each (group, locale) and of each locale as a whole,
+ * used to serve translation lookups without querying the database. A snapshot is loaded with a
+ * single query the first time it is requested and is replaced as a whole by the next load after
+ * an invalidation, so readers always see a complete and consistent set of translations. The
+ * Lexicon services invalidate the affected locale whenever a translation changes and the whole
+ * cache whenever keys, groups or languages change. When a QlackClusterService is available,
+ * invalidations are also propagated to the other nodes of the cluster. Snapshots of groups also
+ * carry the version of their translations, so that unchanged bundles can be recognised without
+ * querying the database.
+ *
+ * Invalidations requested within a transaction are applied (and propagated) once it commits, so
+ * that a concurrent lookup can not re-load the data as it was before the change. Snapshots also
+ * expire after a short time as a safety net against lost cluster messages.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+public class TranslationCache {
+
+  private static final Logger LOGGER = Logger.getLogger(TranslationCache.class.getName());
+
+  /**
+   * The topic on which invalidations are exchanged between cluster nodes.
+   */
+  static final String CLUSTER_TOPIC = "qlack2-fuse-lexicon-translations";
+
+  private static final String CLUSTER_SERVICE =
+    "com.eurodyn.qlack2.util.cluster.core.QlackClusterService";
+
+  private static final QData Q_DATA = QData.data;
+  private static final QKey Q_KEY = QKey.key;
+  private static final QGroup Q_GROUP = QGroup.group;
+  private static final QLanguage Q_LANGUAGE = QLanguage.language;
+
+  private long expiryTime = 60000;
+
+  @Inject
+  @OsgiService
+  private TransactionSynchronizationRegistry tsr;
+
+  private final Map<SnapshotKey, TranslationSnapshot> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented on every invalidation so that snapshots loaded concurrently with an invalidation
+   * are not put in the cache.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private ServiceTracker<Object, Object> clusterTracker;
+
+  public void setExpiryTime(long expiryTime) {
+    this.expiryTime = expiryTime;
+  }
+
+  public void setTsr(TransactionSynchronizationRegistry tsr) {
+    this.tsr = tsr;
+  }
+
+  @PostConstruct
+  public void init() {
+    trackClusterService();
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (clusterTracker != null) {
+      clusterTracker.close();
+    }
+  }
+
+  /**
+   * Looks up (loading it if necessary) the translations of a group in a locale.
+   *
+   * @param groupName The title of the group.
+   * @param locale The locale of the translations.
+   * @param em The entity manager to load the translations with.
+   * @return The translations of the group keyed by key name.
+   */
+  public TranslationSnapshot getGroup(String groupName, String locale, EntityManager em) {
+    return get(new SnapshotKey(locale, groupName), em);
+  }
+
+  /**
+   * Looks up (loading it if necessary) the translations of all keys in a locale, regardless of
+   * their group.
+   *
+   * @param locale The locale of the translations.
+   * @param em The entity manager to load the translations with.
+   * @return The translations keyed by key name.
+   */
+  public TranslationSnapshot getLocale(String locale, EntityManager em) {
+    return get(new SnapshotKey(locale, null), em);
+  }
+
+  /**
+   * Removes the translations of a locale from the cache (on this and all other cluster nodes),
+   * once the current transaction commits.
+   *
+   * @param locale The locale whose translations changed, null if unknown.
+   */
+  public void invalidateLocale(String locale) {
+    if (locale == null) {
+      invalidateAll();
+      return;
+    }
+    Changes changes = pending();
+    changes.locales.add(locale);
+    applyIfImmediate(changes);
+  }
+
+  /**
+   * Empties the cache (on this and all other cluster nodes), once the current transaction
+   * commits. Used for changes affecting the keys, groups or languages themselves.
+   */
+  public void invalidateAll() {
+    Changes changes = pending();
+    changes.all = true;
+    applyIfImmediate(changes);
+  }
+
+  void invalidateLocaleLocally(String locale) {
+    generation.incrementAndGet();
+    snapshots.keySet().removeIf(key -> Objects.equals(key.locale, locale));
+  }
+
+  void invalidateAllLocally() {
+    generation.incrementAndGet();
+    snapshots.clear();
+  }
+
+  private TranslationSnapshot get(SnapshotKey key, EntityManager em) {
+    // The translations changed by the current transaction are read from the database and not
+    // cached, as they have not been committed yet.
+    if (current().affectsLocale(key.locale)) {
+      return load(key, em);
+    }
+
+    TranslationSnapshot retVal = snapshots.get(key);
+    if (retVal == null || retVal.getLoadedOn() + expiryTime < System.currentTimeMillis()) {
+      long loadGeneration = generation.get();
+      retVal = load(key, em);
+      // Unknown groups and locales are not cached, so that the cache cannot grow unbounded.
+      if (!retVal.isEmpty()) {
+        fill(key, retVal, loadGeneration);
+      }
+    }
+
+    return retVal;
+  }
+
+  /**
+   * Puts a loaded snapshot in the cache, unless the cache has been invalidated since the snapshot
+   * started loading. An invalidation may take place between the check and the put, in which case
+   * the snapshot is removed again.
+   */
+  private void fill(SnapshotKey key, TranslationSnapshot snapshot, long loadGeneration) {
+    if (loadGeneration == generation.get()) {
+      snapshots.put(key, snapshot);
+      if (loadGeneration != generation.get()) {
+        snapshots.remove(key, snapshot);
+      }
+    }
+  }
+
+  private TranslationSnapshot load(SnapshotKey key, EntityManager em) {
+    long loadedOn = System.currentTimeMillis();
+
+    // The version is read before the translations, so that a concurrent change can only make
+    // the translations newer (never older) than their version.
+    long version = 0;
+    long resetVersion = 0;
+    if (key.groupName != null) {
+      BundleVersion bundleVersion = BundleVersion.findByGroupNameAndLocale(key.groupName,
+        key.locale, em);
+      if (bundleVersion != null) {
+        version = bundleVersion.getVersion();
+        resetVersion = bundleVersion.getResetVersion();
+      }
+    }
+
+    JPAQuery<Tuple> query = new JPAQueryFactory(em)
+      .select(Q_KEY.name, Q_DATA.value)
+      .from(Q_DATA)
+      .innerJoin(Q_DATA.key, Q_KEY)
+      .innerJoin(Q_DATA.language, Q_LANGUAGE);
+    if (key.groupName != null) {
+      query.innerJoin(Q_KEY.group, Q_GROUP)
+        .where(Q_LANGUAGE.locale.eq(key.locale), Q_GROUP.title.eq(key.groupName));
+    } else {
+      query.where(Q_LANGUAGE.locale.eq(key.locale));
+    }
+
+    Map<String, String> translations = new HashMap<>();
+    for (Tuple t : query.fetch()) {
+      translations.put(t.get(Q_KEY.name), t.get(Q_DATA.value));
+    }
+    LOGGER.log(Level.FINEST, "Loaded {0} translations of group {1} in locale {2}.",
+      new Object[]{translations.size(), key.groupName, key.locale});
+
+    return new TranslationSnapshot(translations, version, resetVersion, loadedOn);
+  }
+
+  /**
+   * @return The invalidations requested so far by the current transaction, if any.
+   */
+  private Changes current() {
+    if (tsr != null && tsr.getTransactionStatus() != Status.STATUS_NO_TRANSACTION) {
+      Changes retVal = (Changes) tsr.getResource(this);
+      if (retVal != null) {
+        return retVal;
+      }
+    }
+
+    return Changes.NONE;
+  }
+
+  /**
+   * @return The invalidations of the current transaction, registering them to be applied on
+   * commit, or an empty set of invalidations to be applied immediately when there is no
+   * transaction.
+   */
+  private Changes pending() {
+    if (tsr == null || tsr.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+      return new Changes(false);
+    }
+    Changes retVal = (Changes) tsr.getResource(this);
+    if (retVal == null) {
+      retVal = new Changes(true);
+      tsr.putResource(this, retVal);
+      if (tsr.getTransactionStatus() == Status.STATUS_ACTIVE) {
+        final Changes changes = retVal;
+        tsr.registerInterposedSynchronization(new Synchronization() {
+          @Override
+          public void beforeCompletion() {
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+              apply(changes);
+            }
+          }
+        });
+      }
+      // Otherwise the transaction is rolling back, so there is nothing to apply.
+    }
+
+    return retVal;
+  }
+
+  private void applyIfImmediate(Changes changes) {
+    if (!changes.transactional) {
+      apply(changes);
+    }
+  }
+
+  /**
+   * Applies committed invalidations to the cache and propagates them to the other cluster nodes.
+   */
+  private void apply(Changes changes) {
+    if (changes.all) {
+      invalidateAllLocally();
+      publish(TranslationCacheClusterSync.ALL);
+      return;
+    }
+    for (String locale : changes.locales) {
+      invalidateLocaleLocally(locale);
+      publish(TranslationCacheClusterSync.LOCALE + locale);
+    }
+  }
+
+  private void publish(String message) {
+    Object sync = clusterTracker != null ? clusterTracker.getService() : null;
+    if (sync != null) {
+      ((TranslationCacheClusterSync) sync).publish(message);
+    }
+  }
+
+  /**
+   * Tracks the (optional) QlackClusterService, registering a listener for invalidations on the
+   * other nodes whenever the service appears.
+   */
+  private void trackClusterService() {
+    Bundle bundle = FrameworkUtil.getBundle(TranslationCache.class);
+    if (bundle == null || bundle.getBundleContext() == null) {
+      return;
+    }
+
+    clusterTracker = new ServiceTracker<Object, Object>(bundle.getBundleContext(),
+      CLUSTER_SERVICE, null) {
+      @Override
+      public Object addingService(ServiceReference<Object> reference) {
+        try {
+          TranslationCacheClusterSync sync = new TranslationCacheClusterSync(
+            TranslationCache.this, context.getService(reference));
+          LOGGER.log(Level.CONFIG, "Propagating translation invalidations on cluster topic {0}.",
+            CLUSTER_TOPIC);
+          return sync;
+        } catch (LinkageError e) {
+          LOGGER.log(Level.WARNING, "Cluster support is not available to Lexicon, translation "
+            + "invalidations will not be propagated.", e);
+          context.ungetService(reference);
+          return null;
+        }
+      }
+
+      @Override
+      public void removedService(ServiceReference<Object> reference, Object service) {
+        ((TranslationCacheClusterSync) service).close();
+        context.ungetService(reference);
+      }
+    };
+    clusterTracker.open();
+  }
+
+  /**
+   * The invalidations requested within a transaction.
+   */
+  private static final class Changes {
+
+    static final Changes NONE = new Changes(false);
+
+    private final boolean transactional;
+    private final Set<String> locales = new HashSet<>();
+    private boolean all;
+
+    Changes(boolean transactional) {
+      this.transactional = transactional;
+    }
+
+    boolean affectsLocale(String locale) {
+      return all || locales.contains(locale);
+    }
+  }
+
+  /**
+   * The locale and (optional) group title of a snapshot.
+   */
+  private static class SnapshotKey {
+
+    private final String locale;
+    private final String groupName;
+
+    SnapshotKey(String locale, String groupName) {
+      this.locale = locale;
+      this.groupName = groupName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SnapshotKey)) {
+        return false;
+      }
+      SnapshotKey that = (SnapshotKey) o;
+      return Objects.equals(locale, that.locale) && Objects.equals(groupName, that.groupName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(locale, groupName);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.lexicon.impl.cache;
+
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterListener;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterService;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exchanges {@link TranslationCache} invalidations with the other nodes of the cluster. Messages
+ * have the form 'nodeID type[locale]', where type is 'L' (locale) or 'A' (everything). This class
+ * is only loaded when a QlackClusterService is present, so that Lexicon does not require the
+ * cluster bundles.
+ */
+class TranslationCacheClusterSync extends QlackClusterListener {
+
+  private static final Logger LOGGER =
+    Logger.getLogger(TranslationCacheClusterSync.class.getName());
+  static final String LOCALE = "L";
+  static final String ALL = "A";
+
+  private final String nodeID = UUID.randomUUID().toString();
+  private final TranslationCache cache;
+  private final QlackClusterService clusterService;
+  private final String registrationID;
+
+  TranslationCacheClusterSync(TranslationCache cache, Object clusterService) {
+    this.cache = cache;
+    this.clusterService = (QlackClusterService) clusterService;
+    this.registrationID = this.clusterService.addListener(this, TranslationCache.CLUSTER_TOPIC);
+  }
+
+  void publish(String message) {
+    clusterService.publish(TranslationCache.CLUSTER_TOPIC, nodeID + " " + message);
+  }
+
+  void close() {
+    clusterService.removeListener(registrationID, TranslationCache.CLUSTER_TOPIC);
+  }
+
+  @Override
+  public void onMessage(String message) {
+    int separator = message.indexOf(' ');
+    if (separator < 1 || separator == message.length() - 1
+      || nodeID.equals(message.substring(0, separator))) {
+      return;
+    }
+
+    String type = message.substring(separator + 1, separator + 2);
+    String locale = message.substring(separator + 2);
+    LOGGER.log(Level.FINEST, "Received translation invalidation {0}{1}.",
+      new Object[]{type, locale});
+    if (LOCALE.equals(type)) {
+      cache.invalidateLocaleLocally(locale);
+    } else {
+      cache.invalidateAllLocally();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+ *
+ * Licensed under the EUPL, Version 1.1 only (the "License").
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package com.eurodyn.qlack2.fuse.lexicon.impl.cache;
+
+import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria.SortType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the translations of a locale (optionally limited to a group), keyed
+ * by key name, together with their version (for groups). The key names are also kept sorted by
+ * translation, so that sorted views do not need to sort on every call.
+ *
+ * @author European Dynamics SA
+ */
+public class TranslationSnapshot {
+
+  private static final Comparator<String> VALUE_ORDER =
+    Comparator.nullsFirst(Comparator.<String>naturalOrder());
+
+  private final Map<String, String> translations;
+
+  /**
+   * The key names in ascending order of their translation (and of their name, for equal
+   * translations).
+   */
+  private final List<String> sortedKeys;
+
+  private final long version;
+  private final long resetVersion;
+  private final long loadedOn;
+
+  TranslationSnapshot(Map<String, String> translations, long version, long resetVersion,
+    long loadedOn) {
+    this.translations = Collections.unmodifiableMap(translations);
+    List<String> keys = new ArrayList<>(translations.keySet());
+    keys.sort(Comparator.comparing((String key) -> translations.get(key), VALUE_ORDER)
+      .thenComparing(VALUE_ORDER));
+    this.sortedKeys = Collections.unmodifiableList(keys);
+    this.version = version;
+    this.resetVersion = resetVersion;
+    this.loadedOn = loadedOn;
+  }
+
+  boolean isEmpty() {
+    return translations.isEmpty() && version == 0;
+  }
+
+  long getLoadedOn() {
+    return loadedOn;
+  }
+
+  /**
+   * @return The version of the translations of the group, 0 for locales or groups whose
+   * translations never changed.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return The version before which changes cannot be served as deltas.
+   */
+  public long getResetVersion() {
+    return resetVersion;
+  }
+
+  /**
+   * @param keyName The name of the key.
+   * @return The translation of the key, null if the key is not translated.
+   */
+  public String get(String keyName) {
+    return translations.get(keyName);
+  }
+
+  /**
+   * @return A (modifiable) copy of the translations keyed by key name.
+   */
+  public Map<String, String> toMap() {
+    return new HashMap<>(translations);
+  }
+
+  /**
+   * @param sortType The order of the translations.
+   * @return A (modifiable) copy of the translations, iterated in the order of their values.
+   */
+  public Map<String, String> toSortedMap(SortType sortType) {
+    Map<String, String> retVal = new LinkedHashMap<>();
+    for (String key : getSortedKeys(sortType)) {
+      retVal.put(key, translations.get(key));
+    }
+
+    return retVal;
+  }
+
+  /**
+   * @param sortType The order of the translations.
+   * @return A (modifiable) list of the key names, in the order of their translations.
+   */
+  public List<String> getSortedKeys(SortType sortType) {
+    List<String> retVal = new ArrayList<>(sortedKeys);
+    if (!SortType.ASCENDING.equals(sortType)) {
+      Collections.reverse(retVal);
+    }
+
+    return retVal;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.lexicon.impl.model;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.LockModeType;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * The version of the translations of a group in a language. Every change of a
+ * translation advances the version and stamps the changed translation with it,
+ * so that the translations changed since a version can be queried. Changes
+ * that cannot be queried this way (e.g. deleted or renamed keys) also move the
+ * reset version, before which only complete bundles can be served.
+ *
+ * Versions are derived from the current time (while always increasing), so
+ * that bundles of different groups which happened to have the same name at
+ * different times do not share versions.
+ */
+@Entity
+@Table(name = "lex_bundle_version")
+public class BundleVersion {
+	@Id
+	private String id;
+	@Version
+	private long dbversion;
+	@ManyToOne
+	@JoinColumn(name = "group_id")
+	private Group group;
+	@ManyToOne
+	@JoinColumn(name = "language_id")
+	private Language language;
+	private long version;
+	@Column(name = "reset_version")
+	private long resetVersion;
+
+	public BundleVersion() {
+		id = UUID.randomUUID().toString();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Group getGroup() {
+		return group;
+	}
+
+	public void setGroup(Group group) {
+		this.group = group;
+	}
+
+	public Language getLanguage() {
+		return language;
+	}
+
+	public void setLanguage(Language language) {
+		this.language = language;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public long getResetVersion() {
+		return resetVersion;
+	}
+
+	public void setResetVersion(long resetVersion) {
+		this.resetVersion = resetVersion;
+	}
+
+	/**
+	 * Advances the version.
+	 * @return The new version.
+	 */
+	public long advance() {
+		version = Math.max(version + 1, System.currentTimeMillis());
+		return version;
+	}
+
+	/**
+	 * Advances the version, invalidating all earlier versions for deltas.
+	 */
+	public void reset() {
+		resetVersion = advance();
+	}
+
+	/**
+	 * Finds the version of the translations of a group in a language, locking
+	 * it until the end of the transaction so that versions are committed in
+	 * order. The version is created if it does not exist yet.
+	 */
+	public static BundleVersion lock(Group group, Language language, EntityManager em) {
+		List<BundleVersion> queryResult = em.createQuery("SELECT b FROM BundleVersion b "
+				+ "WHERE b.group = :group AND b.language = :language", BundleVersion.class)
+				.setParameter("group", group)
+				.setParameter("language", language)
+				.setLockMode(LockModeType.PESSIMISTIC_WRITE)
+				.getResultList();
+		if (!queryResult.isEmpty()) {
+			return queryResult.get(0);
+		}
+
+		BundleVersion bundleVersion = new BundleVersion();
+		bundleVersion.setGroup(group);
+		bundleVersion.setLanguage(language);
+		em.persist(bundleVersion);
+		return bundleVersion;
+	}
+
+	public static BundleVersion findByGroupNameAndLocale(String groupName, String locale,
+			EntityManager em) {
+		List<BundleVersion> queryResult = em.createQuery("SELECT b FROM BundleVersion b "
+				+ "WHERE b.group.title = :groupName AND b.language.locale = :locale",
+				BundleVersion.class)
+				.setParameter("groupName", groupName)
+				.setParameter("locale", locale)
+				.getResultList();
+		if (queryResult.isEmpty()) {
+			return null;
+		}
+		return queryResult.get(0);
+	}
+
+}
@@ -43,6 +43,8 @@ public class Data {
 	private Language language;
 	@Column(name="last_updated_on")
 	private long lastUpdatedOn;
+	@Column(name="bundle_version")
+	private long bundleVersion;
 
 	public Data() {
 		id = UUID.randomUUID().toString();
@@ -88,6 +90,14 @@ public class Data {
 		this.lastUpdatedOn = lastUpdatedOn;
 	}
 
+	public long getBundleVersion() {
+		return bundleVersion;
+	}
+
+	public void setBundleVersion(long bundleVersion) {
+		this.bundleVersion = bundleVersion;
+	}
+
 	public static Data findByKeyAndLanguageId(String keyId, String languageId,
 			EntityManager em) {
 		Query query = em.createQuery("SELECT d FROM Data d WHERE d.key.id = :keyId "
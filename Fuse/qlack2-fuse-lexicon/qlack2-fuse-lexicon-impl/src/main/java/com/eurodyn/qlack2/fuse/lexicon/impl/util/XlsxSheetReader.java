@@ -0,0 +1,204 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.lexicon.impl.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the cell values of the sheets of an Excel 2007 (.xlsx) file as
+ * strings, parsing the XML of each sheet with SAX instead of loading the
+ * workbook in memory. Only the current row is held in memory while reading.
+ *
+ * @author European Dynamics SA
+ */
+public class XlsxSheetReader {
+
+	/**
+	 * Receives the rows of the sheets, in sheet and row order.
+	 */
+	public interface RowHandler {
+
+		void startSheet(String sheetName);
+
+		/**
+		 * @param rowNum The (0-based) number of the row.
+		 * @param cells The values of the cells of the row by column, null for
+		 * missing cells.
+		 */
+		void row(int rowNum, List<String> cells);
+
+		void endSheet();
+	}
+
+	private XlsxSheetReader() {
+	}
+
+	public static void read(File file, RowHandler handler) throws IOException {
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException(e);
+		}
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			XMLReader parser = newParser();
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+			while (sheets.hasNext()) {
+				try (InputStream sheet = sheets.next()) {
+					handler.startSheet(sheets.getSheetName());
+					parser.setContentHandler(new SheetHandler(strings, handler));
+					parser.parse(new InputSource(sheet));
+					handler.endSheet();
+				}
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new IOException(e);
+		} finally {
+			// Close the package without saving it back to the file.
+			pkg.revert();
+		}
+	}
+
+	private static XMLReader newParser() throws SAXException, ParserConfigurationException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		// Uploaded files are not trusted, so DTDs (and external entities) are
+		// not allowed.
+		factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+		return factory.newSAXParser().getXMLReader();
+	}
+
+	/**
+	 * Collects the cells of the rows of a sheet, resolving shared and inline
+	 * strings.
+	 */
+	private static class SheetHandler extends DefaultHandler {
+
+		private final ReadOnlySharedStringsTable strings;
+		private final RowHandler handler;
+
+		private int rowNum = -1;
+		private final List<String> cells = new ArrayList<>();
+		private int column;
+		private String cellType;
+		private boolean inValue;
+		private boolean hasValue;
+		private final StringBuilder value = new StringBuilder();
+
+		SheetHandler(ReadOnlySharedStringsTable strings, RowHandler handler) {
+			this.strings = strings;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			switch (localName) {
+			case "row":
+				String r = attributes.getValue("r");
+				rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+				cells.clear();
+				column = -1;
+				break;
+			case "c":
+				String ref = attributes.getValue("r");
+				column = ref != null ? columnIndex(ref) : column + 1;
+				cellType = attributes.getValue("t");
+				value.setLength(0);
+				hasValue = false;
+				break;
+			case "v":
+			case "t":
+				// <t> holds the text of inline strings.
+				inValue = true;
+				hasValue = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			switch (localName) {
+			case "v":
+			case "t":
+				inValue = false;
+				break;
+			case "c":
+				while (cells.size() <= column) {
+					cells.add(null);
+				}
+				cells.set(column, cellValue());
+				break;
+			case "row":
+				handler.row(rowNum, cells);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inValue) {
+				value.append(ch, start, length);
+			}
+		}
+
+		private String cellValue() {
+			if (!hasValue) {
+				return null;
+			} else if ("s".equals(cellType)) {
+				return strings.getEntryAt(Integer.parseInt(value.toString().trim()));
+			} else if ("b".equals(cellType)) {
+				return "1".equals(value.toString()) ? "TRUE" : "FALSE";
+			} else {
+				return value.toString();
+			}
+		}
+
+		/**
+		 * Returns the (0-based) column of a cell reference, e.g. 1 for 'B12'.
+		 */
+		private static int columnIndex(String ref) {
+			int index = 0;
+			for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+				index = index * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+			}
+			return index - 1;
+		}
+	}
+
+}
@@ -6,6 +6,7 @@ import com.eurodyn.qlack2.fuse.lexicon.api.LanguageService;
 import com.eurodyn.qlack2.fuse.lexicon.api.criteria.KeySearchCriteria;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.KeyDTO;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.LanguageDTO;
+import com.eurodyn.qlack2.fuse.lexicon.api.dto.TranslationBundleDTO;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.GroupDTO;
 import com.eurodyn.qlack2.fuse.lexicon.conf.ITTestConf;
 import com.eurodyn.qlack2.fuse.lexicon.util.TestConst;
@@ -413,5 +414,101 @@ public class KeyServiceImplTest extends ITTestConf {
         Assert.assertNotNull(keyService.getTranslationsForGroupAndLocale(groupID,languageDTO.getLocale()));
     }
 
-}
+    @Test
+    public void getTranslationsForGroupNameAndLocaleAfterUpdate(){
+        LanguageDTO languageDTO = TestUtilities.createLanguageDTO();
+        String languageID = languageService.createLanguage(languageDTO);
+        Assert.assertNotNull(languageID);
+
+        GroupDTO groupDTO = TestUtilities.createGroupDTO();
+        String groupID = groupService.createGroup(groupDTO);
+        Assert.assertNotNull(groupID);
+
+        KeyDTO keyDTO = TestUtilities.createKeyDTO();
+        keyDTO.setGroupId(groupID);
+        String keyID = keyService.createKey(keyDTO,true);
+        Assert.assertNotNull(keyID);
+
+        Map<String, String> translations = keyService.getTranslationsForGroupNameAndLocale(groupDTO.getTitle(),languageDTO.getLocale());
+        Assert.assertEquals(keyDTO.getName(),translations.get(keyDTO.getName()));
+
+        // A cached read must reflect later updates.
+        keyService.updateTranslation(keyID,languageID,"testVal10");
+        translations = keyService.getTranslationsForGroupNameAndLocale(groupDTO.getTitle(),languageDTO.getLocale());
+        Assert.assertEquals("testVal10",translations.get(keyDTO.getName()));
+        Assert.assertEquals("testVal10",keyService.getTranslation(keyDTO.getName(),languageDTO.getLocale()));
+    }
+
+    @Test
+    public void getTranslationsForGroupNameAndLocaleSorted(){
+        LanguageDTO languageDTO = TestUtilities.createLanguageDTO();
+        String languageID = languageService.createLanguage(languageDTO);
+        Assert.assertNotNull(languageID);
+
+        GroupDTO groupDTO = TestUtilities.createGroupDTO();
+        String groupID = groupService.createGroup(groupDTO);
+        Assert.assertNotNull(groupID);
+
+        KeyDTO keyDTO1 = TestUtilities.createKeyDTO();
+        keyDTO1.setGroupId(groupID);
+        keyDTO1.setTranslations(null);
+        String keyID1 = keyService.createKey(keyDTO1,false);
+        KeyDTO keyDTO2 = TestUtilities.createKeyDTO();
+        keyDTO2.setGroupId(groupID);
+        keyDTO2.setTranslations(null);
+        String keyID2 = keyService.createKey(keyDTO2,false);
+        keyService.updateTranslation(keyID1,languageID,"b");
+        keyService.updateTranslation(keyID2,languageID,"a");
+
+        List<String> keys = keyService.getKeysSortedByTranslation(groupDTO.getTitle(),languageDTO.getLocale(),
+                KeySearchCriteria.SortType.ASCENDING);
+        Assert.assertEquals(Arrays.asList(keyDTO2.getName(),keyDTO1.getName()),keys);
+
+        Map<String, String> sorted = keyService.getTranslationsForGroupNameAndLocaleSorted(groupDTO.getTitle(),
+                languageDTO.getLocale(),KeySearchCriteria.SortType.DESCENDING);
+        Assert.assertEquals(Arrays.asList(keyDTO1.getName(),keyDTO2.getName()),new ArrayList<>(sorted.keySet()));
+    }
+
+    @Test
+    public void getTranslationBundleChanges(){
+        LanguageDTO languageDTO = TestUtilities.createLanguageDTO();
+        String languageID = languageService.createLanguage(languageDTO);
+        Assert.assertNotNull(languageID);
+
+        GroupDTO groupDTO = TestUtilities.createGroupDTO();
+        String groupID = groupService.createGroup(groupDTO);
+        Assert.assertNotNull(groupID);
 
+        KeyDTO keyDTO1 = TestUtilities.createKeyDTO();
+        keyDTO1.setGroupId(groupID);
+        String keyID1 = keyService.createKey(keyDTO1,true);
+        KeyDTO keyDTO2 = TestUtilities.createKeyDTO();
+        keyDTO2.setGroupId(groupID);
+        keyService.createKey(keyDTO2,true);
+
+        TranslationBundleDTO bundle = keyService.getTranslationBundle(groupDTO.getTitle(),languageDTO.getLocale());
+        Assert.assertTrue(bundle.isComplete());
+        Assert.assertEquals(2,bundle.getTranslations().size());
+        Assert.assertEquals(bundle.getVersion(),keyService.getTranslationBundleVersion(groupDTO.getTitle(),languageDTO.getLocale()));
+
+        // Nothing changed since the bundle.
+        TranslationBundleDTO changes = keyService.getTranslationBundleChanges(groupDTO.getTitle(),languageDTO.getLocale(),bundle.getVersion());
+        Assert.assertFalse(changes.isComplete());
+        Assert.assertTrue(changes.getTranslations().isEmpty());
+
+        // Only the updated translation is sent.
+        keyService.updateTranslation(keyID1,languageID,"testVal11");
+        changes = keyService.getTranslationBundleChanges(groupDTO.getTitle(),languageDTO.getLocale(),bundle.getVersion());
+        Assert.assertFalse(changes.isComplete());
+        Assert.assertTrue(changes.getVersion() > bundle.getVersion());
+        Assert.assertEquals(1,changes.getTranslations().size());
+        Assert.assertEquals("testVal11",changes.getTranslations().get(keyDTO1.getName()));
+
+        // Renamed keys require a complete bundle.
+        keyService.renameKey(keyID1,TestConst.generateRandomString());
+        changes = keyService.getTranslationBundleChanges(groupDTO.getTitle(),languageDTO.getLocale(),changes.getVersion());
+        Assert.assertTrue(changes.isComplete());
+        Assert.assertEquals(2,changes.getTranslations().size());
+    }
+
+}
@@ -17,6 +17,8 @@ import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
 import org.ops4j.pax.exam.spi.reactors.PerSuite;
 import org.ops4j.pax.exam.util.Filter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
@@ -175,6 +177,33 @@ public class LanguageServiceImplTest extends ITTestConf {
     Assert.assertNotNull(languageService.downloadLanguage(languageID));
   }
 
+  @Test
+  public void uploadLanguageStream() {
+    LanguageDTO languageDTO = TestUtilities.createLanguageDTO();
+    String languageID = languageService.createLanguage(languageDTO);
+    Assert.assertNotNull(languageID);
+
+    GroupDTO groupDTO = TestUtilities.createGroupDTO();
+    String groupID = groupService.createGroup(groupDTO);
+    Assert.assertNotNull(groupID);
+
+    KeyDTO keyDTO = TestUtilities.createKeyDTO();
+    keyDTO.setGroupId(groupID);
+    String keyID = keyService.createKey(keyDTO, true);
+    Assert.assertNotNull(keyID);
+    keyService.updateTranslation(keyID, languageID, "uploadedValue");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    languageService.downloadLanguage(languageID, out);
+    keyService.updateTranslation(keyID, languageID, "changedValue");
+
+    // Uploading the downloaded file restores the translation.
+    languageService.uploadLanguage(languageID, new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertEquals("uploadedValue",
+      keyService.getTranslationsForGroupNameAndLocale(groupDTO.getTitle(), languageDTO.getLocale())
+        .get(keyDTO.getName()));
+  }
+
   @Test
   public void isLocaleRTL() {
     LanguageDTO languageDTO = TestUtilities.createLanguageDTO();
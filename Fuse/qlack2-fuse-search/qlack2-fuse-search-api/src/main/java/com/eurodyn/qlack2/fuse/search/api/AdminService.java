@@ -113,4 +113,12 @@ public interface AdminService {
    *         nodes.
    */
   boolean checkIsUp();
+
+  /**
+   * Returns the latency statistics of the requests sent to ES, per HTTP method and operation
+   * (e.g. 'GET _search', 'PUT document'): count, errors, mean, p50, p90, p99 and max (in msec).
+   *
+   * @return The statistics keyed by operation and statistic, e.g. 'GET _search.p99'.
+   */
+  Map<String, Long> getStatistics();
 }
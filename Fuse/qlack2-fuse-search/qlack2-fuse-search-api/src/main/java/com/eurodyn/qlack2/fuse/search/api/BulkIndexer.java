@@ -0,0 +1,35 @@
+package com.eurodyn.qlack2.fuse.search.api;
+
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingResultDTO;
+
+/**
+ * Indexes documents in bulk requests. Documents are sent whenever the configured number of
+ * documents, size in bytes or flush interval is reached, with a bounded number of requests in
+ * flight, so that any number of documents can be indexed without keeping them in memory. Documents
+ * rejected because ES is overloaded are retried with exponential backoff. Instances are obtained
+ * through {@link IndexingService#createBulkIndexer(String, String, java.util.Map, boolean)} and
+ * are thread-safe.
+ */
+public interface BulkIndexer {
+
+  /**
+   * Adds a document to the next bulk request, sending the request if it is full. Blocks while the
+   * maximum number of requests is in flight.
+   *
+   * @param id The id of the document.
+   * @param document The document to index (or the partial document, when updating).
+   */
+  void add(String id, Object document);
+
+  /**
+   * Sends the documents added so far.
+   */
+  void flush();
+
+  /**
+   * Sends any remaining documents and waits for all requests to complete.
+   *
+   * @return The outcome of all the requests of this indexer.
+   */
+  BulkIndexingResultDTO close();
+}
@@ -1,9 +1,12 @@
 package com.eurodyn.qlack2.fuse.search.api;
 
 import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingDTO;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingResultDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.ESDocumentIdentifierDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.IndexingDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.queries.QuerySpec;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Provides functionality to index (and unindex) documents.
@@ -31,6 +34,33 @@ public interface IndexingService {
    */
   void unindexDocument(ESDocumentIdentifierDTO dto);
 
+  /**
+   * Indexes a document without blocking the calling thread.
+   *
+   * @param dto The document to index with all necessary accompanying info.
+   * @return A future completed when ES has acknowledged the document, or exceptionally with a
+   * QSearchException.
+   */
+  CompletableFuture<Void> indexDocumentAsync(IndexingDTO dto);
+
+  /**
+   * Updates a document without blocking the calling thread.
+   *
+   * @param dto The document to update with all necessary accompanying info.
+   * @return A future completed when ES has acknowledged the update, or exceptionally with a
+   * QSearchException.
+   */
+  CompletableFuture<Void> updateDocumentAsync(IndexingDTO dto);
+
+  /**
+   * Removes a previously indexed document from the index without blocking the calling thread.
+   *
+   * @param dto The identification of the document to remove.
+   * @return A future completed when ES has removed the document, or exceptionally with a
+   * QSearchException.
+   */
+  CompletableFuture<Void> unindexDocumentAsync(ESDocumentIdentifierDTO dto);
+
   /**
    * Indexes documents in a bulk operation.
    *
@@ -49,6 +79,37 @@ public interface IndexingService {
    */
   <T> boolean updateDocuments(BulkIndexingDTO<T> dto);
 
+  /**
+   * Indexes documents in a bulk operation, reporting the documents that could not be indexed.
+   *
+   * @param <T> The type of the documents.
+   * @param dto The documents to index with all necessary accompanying info.
+   * @return The outcome of the operation.
+   */
+  <T> BulkIndexingResultDTO bulkIndexDocuments(BulkIndexingDTO<T> dto);
+
+  /**
+   * Updates documents in a bulk operation, reporting the documents that could not be updated.
+   *
+   * @param <T> The type of the documents.
+   * @param dto The documents to update with all necessary accompanying info.
+   * @return The outcome of the operation.
+   */
+  <T> BulkIndexingResultDTO bulkUpdateDocuments(BulkIndexingDTO<T> dto);
+
+  /**
+   * Creates an indexer streaming documents to ES in bulk requests. Useful when (re)indexing large
+   * numbers of documents. The indexer must be closed when no more documents are to be added.
+   *
+   * @param index The index name to index to.
+   * @param type The type in the index to index to.
+   * @param parameters Additional parameters of the bulk requests (may be null).
+   * @param update Whether documents should be updated rather than indexed.
+   * @return A new indexer.
+   */
+  BulkIndexer createBulkIndexer(String index, String type, Map<String, String> parameters,
+    boolean update);
+
   /**
    * Deletes data returned by the given query.
    *
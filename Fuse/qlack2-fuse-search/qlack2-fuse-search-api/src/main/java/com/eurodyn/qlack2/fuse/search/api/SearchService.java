@@ -4,6 +4,9 @@ import com.eurodyn.qlack2.fuse.search.api.dto.SearchHitDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.SearchResultDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.queries.QuerySpec;
 import com.eurodyn.qlack2.fuse.search.api.request.ScrollRequest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Provides search functionality to ES.
@@ -19,6 +22,34 @@ public interface SearchService {
 	 */
 	SearchResultDTO search(QuerySpec dto);
 
+  /**
+   * Executes a search against ES without blocking the calling thread. The returned future is
+   * completed on the I/O threads of the ES client, so dependent stages doing more than light
+   * processing should use the *Async methods of {@link CompletableFuture}.
+   *
+   * @param dto The query to be executed.
+   * @return A future completed with the result of the query, or exceptionally with a
+   * QSearchException.
+   */
+  CompletableFuture<SearchResultDTO> searchAsync(QuerySpec dto);
+
+  /**
+   * Executes several searches in a single _msearch request.
+   *
+   * @param dtos The queries to be executed.
+   * @return The results of the queries, in the order of the queries.
+   */
+  List<SearchResultDTO> multiSearch(List<QuerySpec> dtos);
+
+  /**
+   * Same as {@link #multiSearch(List)}, without blocking the calling thread.
+   *
+   * @param dtos The queries to be executed.
+   * @return A future completed with the results of the queries, in the order of the queries. It
+   * completes exceptionally with a QSearchException if any of the queries fails.
+   */
+  CompletableFuture<List<SearchResultDTO>> multiSearchAsync(List<QuerySpec> dtos);
+
   /**
    * Checks if a document with the specified id exists in the index with the given type.
    *
@@ -39,6 +70,16 @@ public interface SearchService {
    */
   SearchHitDTO findById(String indexName, String typeName, String id);
 
+  /**
+   * Finds a document by its id without blocking the calling thread.
+   *
+   * @param indexName The name of the index to search
+   * @param typeName The type of the document
+   * @param id The id of the document
+   * @return A future completed with the document, or with null if not found
+   */
+  CompletableFuture<SearchHitDTO> findByIdAsync(String indexName, String typeName, String id);
+
   /**
    * Sends a scroll request to ES requesting the next set of results
    *
@@ -47,6 +88,27 @@ public interface SearchService {
    */
   SearchResultDTO scroll(ScrollRequest request);
 
+  /**
+   * Lazily iterates over all the hits of a query using scroll requests, fetching the next page in
+   * the background while the current one is consumed. The page size of the query is used as the
+   * size of each scroll page, while its start record is ignored. The stream must be closed (e.g.
+   * with try-with-resources) to release the scroll context on ES.
+   *
+   * @param dto The query to be executed.
+   * @return The hits of the query, in the order of the query's sort.
+   */
+  Stream<SearchHitDTO> stream(QuerySpec dto);
+
+  /**
+   * Same as {@link #stream(QuerySpec)}, splitting the scroll into slices fetched in parallel.
+   * Hits of different slices are interleaved, so the sort order of the query is not preserved.
+   *
+   * @param dto The query to be executed.
+   * @param slices The number of slices, at most the number of shards of the searched indices.
+   * @return The hits of the query.
+   */
+  Stream<SearchHitDTO> stream(QuerySpec dto, int slices);
+
   /**
    * Builds a query as a string.
    *
@@ -0,0 +1,43 @@
+package com.eurodyn.qlack2.fuse.search.api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a bulk operation, holding the documents that could not be indexed.
+ */
+public class BulkIndexingResultDTO {
+
+  // The number of documents that were indexed.
+  private long successful;
+
+  // The documents that could not be indexed, even after retrying.
+  private List<BulkItemFailureDTO> failures;
+
+  public long getSuccessful() {
+    return successful;
+  }
+
+  public void setSuccessful(long successful) {
+    this.successful = successful;
+  }
+
+  public List<BulkItemFailureDTO> getFailures() {
+    if (failures == null) {
+      failures = new ArrayList<>();
+    }
+
+    return failures;
+  }
+
+  public void setFailures(List<BulkItemFailureDTO> failures) {
+    this.failures = failures;
+  }
+
+  /**
+   * @return true if all documents were indexed.
+   */
+  public boolean isSuccessful() {
+    return getFailures().isEmpty();
+  }
+}
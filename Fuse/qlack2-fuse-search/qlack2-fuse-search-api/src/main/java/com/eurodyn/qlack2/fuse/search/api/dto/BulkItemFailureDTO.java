@@ -0,0 +1,54 @@
+package com.eurodyn.qlack2.fuse.search.api.dto;
+
+/**
+ * A document of a bulk operation that could not be indexed.
+ */
+public class BulkItemFailureDTO {
+
+  // The id of the document.
+  private String id;
+
+  // The HTTP status ES returned for the document.
+  private int status;
+
+  // The reason of the failure as reported by ES.
+  private String reason;
+
+  public BulkItemFailureDTO() {
+  }
+
+  public BulkItemFailureDTO(String id, int status, String reason) {
+    this.id = id;
+    this.status = status;
+    this.reason = reason;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  public void setReason(String reason) {
+    this.reason = reason;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkItemFailureDTO{" + "id=" + id + ", status=" + status + ", reason=" + reason + '}';
+  }
+}
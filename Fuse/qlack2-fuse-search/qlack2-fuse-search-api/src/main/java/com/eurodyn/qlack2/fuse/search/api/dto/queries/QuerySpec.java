@@ -71,6 +71,9 @@ public abstract class QuerySpec {
 	// A map for additional parameters in the url
 	private final Map<String, String> params = new HashMap<>();
 
+	// Whether the results of this query may be served from the query cache (if enabled).
+	private boolean cacheable = false;
+
 	/**
 	 * Sets the indices against which the query is executed.
 	 * @param indexName The names of the indices to add.
@@ -251,6 +254,15 @@ public abstract class QuerySpec {
     return excludes;
   }
 
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  public QuerySpec setCacheable(boolean cacheable) {
+    this.cacheable = cacheable;
+    return this;
+  }
+
   public QueryHighlight getHighlight() {
     return highlight;
   }
@@ -19,6 +19,7 @@ import com.eurodyn.qlack2.fuse.search.api.request.CreateIndexRequest;
 import com.eurodyn.qlack2.fuse.search.api.request.UpdateMappingRequest;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.CreateIndexRequestMapper;
 import com.eurodyn.qlack2.fuse.search.impl.util.ESClient;
+import com.eurodyn.qlack2.fuse.search.impl.util.ESQueryCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Singleton
@@ -31,6 +32,10 @@ public class AdminServiceImpl implements AdminService {
   @Named("ESClient")
   private ESClient esClient;
 
+  @Inject
+  @Named("ESQueryCache")
+  private ESQueryCache queryCache;
+
   @Override
   public boolean createIndex(CreateIndexRequest createIndexRequest) {
     boolean retVal = false;
@@ -81,6 +86,8 @@ public class AdminServiceImpl implements AdminService {
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, MessageFormat.format("Could not delete index {0}.", indexName), e);
       throw new QSearchException(MessageFormat.format("Could not delete index {0}.", indexName), e);
+    } finally {
+      queryCache.invalidate(indexName);
     }
 
     return true;
@@ -134,6 +141,8 @@ public class AdminServiceImpl implements AdminService {
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, "Could not close index.", e);
       throw new QSearchException("Could not close index.");
+    } finally {
+      queryCache.invalidate(indexName);
     }
     return true;
   }
@@ -152,6 +161,8 @@ public class AdminServiceImpl implements AdminService {
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, "Could not open index.", e);
       throw new QSearchException("Could not open index.", e);
+    } finally {
+      queryCache.invalidate(indexName);
     }
     return true;
   }
@@ -194,4 +205,12 @@ public class AdminServiceImpl implements AdminService {
       return false;
     }
   }
+
+  @Override
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = esClient.getStatistics();
+    statistics.putAll(queryCache.getStatistics());
+
+    return statistics;
+  }
 }
@@ -9,6 +9,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -16,17 +17,18 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import org.apache.http.entity.ContentType;
 import org.apache.http.nio.entity.NStringEntity;
-import org.elasticsearch.client.Response;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 import com.eurodyn.qlack2.fuse.search.api.IndexingService;
 import com.eurodyn.qlack2.fuse.search.api.SearchService;
+import com.eurodyn.qlack2.fuse.search.api.BulkIndexer;
 import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingDTO;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingResultDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.ESDocumentIdentifierDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.IndexingDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.queries.QuerySpec;
 import com.eurodyn.qlack2.fuse.search.api.exception.QSearchException;
-import com.eurodyn.qlack2.fuse.search.impl.mappers.response.QueryResponse;
 import com.eurodyn.qlack2.fuse.search.impl.util.ESClient;
+import com.eurodyn.qlack2.fuse.search.impl.util.ESQueryCache;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -46,6 +48,11 @@ public class IndexingServiceImpl implements IndexingService {
   @Named("ESClient")
   private ESClient esClient;
 
+  // The query cache injected by blueprint.
+  @Inject
+  @Named("ESQueryCache")
+  private ESQueryCache queryCache;
+
   @Inject
   private SearchService searchService;
 
@@ -62,19 +69,29 @@ public class IndexingServiceImpl implements IndexingService {
 
   @Override
   public void indexDocument(IndexingDTO dto) {
-    index(dto, false);
+    esClient.join(index(dto, false));
   }
 
   @Override
   public void updateDocument(IndexingDTO dto) {
-    index(dto, true);
+    esClient.join(index(dto, true));
+  }
+
+  @Override
+  public CompletableFuture<Void> indexDocumentAsync(IndexingDTO dto) {
+    return index(dto, false);
   }
 
-  private void index(IndexingDTO dto, boolean update) {
+  @Override
+  public CompletableFuture<Void> updateDocumentAsync(IndexingDTO dto) {
+    return index(dto, true);
+  }
+
+  private CompletableFuture<Void> index(IndexingDTO dto, boolean update) {
+    String endpoint = dto.getIndex() + "/" + dto.getType() + "/" + dto.getId();
+    String method;
+    String jsonBody;
     try {
-      String endpoint = dto.getIndex() + "/" + dto.getType() + "/" + dto.getId();
-      String method;
-      String jsonBody;
       if (update) {
         endpoint += "/_update";
         method = "POST";
@@ -83,82 +100,107 @@ public class IndexingServiceImpl implements IndexingService {
         method = "PUT";
         jsonBody = mapper.writeValueAsString(dto.getSourceObject());
       }
-
-      if (dto.isRefresh()) {
-        dto.getParameters().put("refresh", "wait_for");
-      }
-
-      // Execute indexing request.
-      ContentType contentType = ContentType.APPLICATION_JSON.withCharset(Charset.forName("UTF-8"));
-      esClient.getClient().performRequest(method, endpoint, dto.getParameters(), new NStringEntity(jsonBody, contentType));
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, MessageFormat.format("Could not index document with id: {0}", dto.getId()), e);
       throw new QSearchException(MessageFormat.format("Could not index document with id: {0}", dto.getId()));
     }
+
+    if (dto.isRefresh()) {
+      dto.getParameters().put("refresh", "wait_for");
+    }
+
+    // Execute indexing request.
+    ContentType contentType = ContentType.APPLICATION_JSON.withCharset(Charset.forName("UTF-8"));
+    return esClient
+      .performRequestAsync(method, endpoint, dto.getParameters(), new NStringEntity(jsonBody, contentType))
+      .handle((response, e) -> {
+        queryCache.invalidate(dto.getIndex());
+        if (e != null) {
+          LOGGER.log(Level.SEVERE, MessageFormat.format("Could not index document with id: {0}", dto.getId()), e);
+          throw new QSearchException(MessageFormat.format("Could not index document with id: {0}", dto.getId()));
+        }
+        return null;
+      });
   }
 
   @Override
   public void unindexDocument(ESDocumentIdentifierDTO dto) {
-    try {
-      String endpoint = dto.getIndex() + "/" + dto.getType() + "/" + dto.getId();
+    esClient.join(unindexDocumentAsync(dto));
+  }
 
-      if (dto.isRefresh()) {
-        dto.getParameters().put("refresh", "wait_for");
-      }
+  @Override
+  public CompletableFuture<Void> unindexDocumentAsync(ESDocumentIdentifierDTO dto) {
+    String endpoint = dto.getIndex() + "/" + dto.getType() + "/" + dto.getId();
 
-      // Execute indexing request.
-      esClient.getClient().performRequest("DELETE", endpoint, dto.getParameters());
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, MessageFormat.format("Could not delete document with id: {0}", dto.getId()), e);
-      throw new QSearchException(MessageFormat.format("Could not delete document with id: {0}", dto.getId()));
+    if (dto.isRefresh()) {
+      dto.getParameters().put("refresh", "wait_for");
     }
+
+    // Execute indexing request.
+    return esClient.performRequestAsync("DELETE", endpoint, dto.getParameters(), null)
+      .handle((response, e) -> {
+        queryCache.invalidate(dto.getIndex());
+        if (e != null) {
+          LOGGER.log(Level.SEVERE, MessageFormat.format("Could not delete document with id: {0}", dto.getId()), e);
+          throw new QSearchException(MessageFormat.format("Could not delete document with id: {0}", dto.getId()));
+        }
+        return null;
+      });
   }
 
   @Override
   public <T> boolean indexDocuments(BulkIndexingDTO<T> dto) {
-    return bulkIndex(dto, false);
+    return bulkIndex(dto, false).isSuccessful();
   }
 
   @Override
   public <T> boolean updateDocuments(BulkIndexingDTO<T> dto) {
+    return bulkIndex(dto, true).isSuccessful();
+  }
+
+  @Override
+  public <T> BulkIndexingResultDTO bulkIndexDocuments(BulkIndexingDTO<T> dto) {
+    return bulkIndex(dto, false);
+  }
+
+  @Override
+  public <T> BulkIndexingResultDTO bulkUpdateDocuments(BulkIndexingDTO<T> dto) {
     return bulkIndex(dto, true);
   }
 
-  private <T> boolean bulkIndex(BulkIndexingDTO<T> dto, boolean update) {
+  @Override
+  public BulkIndexer createBulkIndexer(String index, String type, Map<String, String> parameters,
+    boolean update) {
+    return esClient.createBulkIndexer(index + "/" + type + "/_bulk", parameters,
+      update ? updateMapper : mapper, update, () -> queryCache.invalidate(index));
+  }
+
+  private <T> BulkIndexingResultDTO bulkIndex(BulkIndexingDTO<T> dto, boolean update) {
     if (dto.getObjects().isEmpty()) {
-      return true;
+      return new BulkIndexingResultDTO();
     }
 
-    try {
-      String endpoint = dto.getIndex() + "/" + dto.getType() + "/_bulk";
+    if (dto.isRefresh()) {
+      dto.getParameters().put("refresh", "wait_for");
+    }
 
-      StringBuilder jsonBody = new StringBuilder();
+    BulkIndexer bulkIndexer = createBulkIndexer(dto.getIndex(), dto.getType(),
+      dto.getParameters(), update);
+    try {
       for (Entry<String, T> entry : dto.getObjects().entrySet()) {
-        if (update) {
-          jsonBody.append("{\"update\" : {\"_id\": \"" + entry.getKey() + "\"}}\n")
-              .append("{\"doc\": ")
-              .append(updateMapper.writeValueAsString(entry.getValue()))
-              .append("}");
-        } else {
-          jsonBody.append("{\"index\" : {\"_id\": \"" + entry.getKey() + "\"}}\n")
-              .append(mapper.writeValueAsString(entry.getValue()));
-        }
-        jsonBody.append("\n");
-      }
-
-      if (dto.isRefresh()) {
-        dto.getParameters().put("refresh", "wait_for");
+        bulkIndexer.add(entry.getKey(), entry.getValue());
       }
+    } catch (RuntimeException e) {
+      bulkIndexer.close();
+      throw e;
+    }
 
-      // Execute indexing request.
-      ContentType contentType = ContentType.APPLICATION_JSON.withCharset(Charset.forName("UTF-8"));
-      Response response = esClient.getClient().performRequest("POST", endpoint, dto.getParameters(), new NStringEntity(jsonBody.toString(), contentType));
-      QueryResponse queryResponse = mapper.readValue(response.getEntity().getContent(), QueryResponse.class);
-      return !queryResponse.isErrors();
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, "Could not bulk index documents", e);
-      throw new QSearchException("Could not bulk index documents");
+    BulkIndexingResultDTO result = bulkIndexer.close();
+    if (!result.isSuccessful()) {
+      LOGGER.log(Level.WARNING, "Could not bulk index {0} documents, first failure: {1}",
+        new Object[]{result.getFailures().size(), result.getFailures().get(0)});
     }
+    return result;
   }
 
   @Override
@@ -210,6 +252,8 @@ public class IndexingServiceImpl implements IndexingService {
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, "Could not delete documents", e);
       throw new QSearchException("Could not delete documents", e);
+    } finally {
+      queryCache.invalidate(indeces);
     }
   }
 
@@ -220,6 +264,8 @@ public class IndexingServiceImpl implements IndexingService {
     } catch (IOException e) {
       LOGGER.log(Level.SEVERE, "Could not refresh index " + index, e);
       throw new QSearchException("Could not refresh index " + index, e);
+    } finally {
+      queryCache.invalidate(index);
     }
   }
 }
@@ -9,8 +9,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -50,12 +56,16 @@ import com.eurodyn.qlack2.fuse.search.api.exception.QSearchException;
 import com.eurodyn.qlack2.fuse.search.api.request.ScrollRequest;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.request.InternalScollRequest;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.request.InternalSearchRequest;
+import com.eurodyn.qlack2.fuse.search.impl.mappers.request.InternalSearchRequest.Slice;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.request.InternalSearchRequest.Source;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.response.QueryResponse;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.response.QueryResponse.Aggregations.Agg.Bucket;
 import com.eurodyn.qlack2.fuse.search.impl.mappers.response.QueryResponse.Hits.Hit;
 import com.eurodyn.qlack2.fuse.search.impl.util.ESClient;
+import com.eurodyn.qlack2.fuse.search.impl.util.ESQueryCache;
+import com.eurodyn.qlack2.fuse.search.impl.util.ESScrollIterator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -68,13 +78,173 @@ public class SearchServiceImpl implements SearchService {
   private static final ObjectMapper mapper = new ObjectMapper();
   private static final Logger LOGGER = Logger.getLogger(IndexingServiceImpl.class.getName());
 
+  private static final ContentType CONTENT_TYPE =
+    ContentType.APPLICATION_JSON.withCharset(Charset.forName("UTF-8"));
+
+  // The maximum size of a buffered search response.
+  private static final int RESPONSE_BUFFER_LIMIT = 280 * 1024 * 1024;
+
   // The ES client injected by blueprint.
   @Inject
   @Named("ESClient")
   private ESClient esClient;
 
+  // The query cache injected by blueprint.
+  @Inject
+  @Named("ESQueryCache")
+  private ESQueryCache queryCache;
+
   @Override
   public SearchResultDTO search(QuerySpec dto) {
+    return esClient.join(searchAsync(dto));
+  }
+
+  @Override
+  public CompletableFuture<SearchResultDTO> searchAsync(QuerySpec dto) {
+    StringBuilder endpointBuilder = new StringBuilder(buildIndicesPath(dto));
+
+    if (dto.isCountOnly()) {
+      endpointBuilder.append("/_count");
+    }
+    else {
+      endpointBuilder.append("/_search");
+    }
+
+    Map<String, String> params = new HashMap<>(dto.getParams());
+    InternalSearchRequest internalRequest = buildSearchRequest(dto, params);
+
+    String body;
+    try {
+      body = mapper.writeValueAsString(internalRequest);
+    } catch (JsonProcessingException e) {
+      LOGGER.log(Level.SEVERE, "Could not execute query.", e);
+      throw new QSearchException("Could not execute query.", e);
+    }
+
+    String endpoint = endpointBuilder.toString();
+    if (dto.isCacheable() && dto.getScroll() == null && queryCache.isEnabled()) {
+      // The flags shaping the result are not part of the request, so they are added to the key.
+      String key = endpoint + new TreeMap<>(params) + body + '|' + dto.isIncludeAllSource()
+        + '|' + dto.isIncludeResults();
+      return queryCache.get(key, dto.getIndices(), () -> search(dto, endpoint, params, body));
+    }
+
+    return search(dto, endpoint, params, body);
+  }
+
+  private CompletableFuture<SearchResultDTO> search(QuerySpec dto, String endpoint,
+      Map<String, String> params, String body) {
+    return esClient.performRequestAsync("GET", endpoint, params,
+        new NStringEntity(body, CONTENT_TYPE),
+        new HeapBufferedResponseConsumerFactory(RESPONSE_BUFFER_LIMIT))
+      .handleAsync((response, e) -> {
+        if (e != null) {
+          LOGGER.log(Level.SEVERE, "Could not execute query.", e);
+          throw new QSearchException("Could not execute query.", e);
+        }
+
+        QueryResponse queryResponse;
+        try {
+          queryResponse = mapper.readValue(response.getEntity().getContent(), QueryResponse.class);
+        } catch (UnsupportedOperationException | IOException ex) {
+          LOGGER.log(Level.SEVERE, "Could not deserialize response.", ex);
+          throw new QSearchException("Could not deserialize response.", ex);
+        }
+
+        return buildResultFrom(queryResponse, dto);
+      }, esClient.getResponseExecutor());
+  }
+
+  @Override
+  public List<SearchResultDTO> multiSearch(List<QuerySpec> dtos) {
+    return esClient.join(multiSearchAsync(dtos));
+  }
+
+  @Override
+  public CompletableFuture<List<SearchResultDTO>> multiSearchAsync(List<QuerySpec> dtos) {
+    if (dtos.isEmpty()) {
+      return CompletableFuture.completedFuture(new ArrayList<>());
+    }
+
+    // The body of an _msearch request is a header and a search request per query, one JSON
+    // object per line. URL parameters apply to all queries, so they are taken from the first.
+    Map<String, String> params = new HashMap<>(dtos.get(0).getParams());
+    StringBuilder body = new StringBuilder();
+    try {
+      for (QuerySpec dto : dtos) {
+        Map<String, Object> header = new HashMap<>();
+        if (!dto.getIndices().isEmpty()) {
+          header.put("index", new ArrayList<>(new HashSet<>(dto.getIndices())));
+        }
+        if (!dto.getTypes().isEmpty()) {
+          header.put("type", new ArrayList<>(new HashSet<>(dto.getTypes())));
+        }
+
+        InternalSearchRequest internalRequest = buildSearchRequest(dto, new HashMap<>());
+        // _msearch has no count API, so counting is a search without hits.
+        if (dto.isCountOnly()) {
+          internalRequest.setSize(0);
+        }
+
+        body.append(mapper.writeValueAsString(header)).append('\n')
+          .append(mapper.writeValueAsString(internalRequest)).append('\n');
+      }
+    } catch (JsonProcessingException e) {
+      LOGGER.log(Level.SEVERE, "Could not execute query.", e);
+      throw new QSearchException("Could not execute query.", e);
+    }
+
+    return esClient.performRequestAsync("GET", "_msearch", params,
+        new NStringEntity(body.toString(), CONTENT_TYPE),
+        new HeapBufferedResponseConsumerFactory(RESPONSE_BUFFER_LIMIT))
+      .handleAsync((response, e) -> {
+        if (e != null) {
+          LOGGER.log(Level.SEVERE, "Could not execute query.", e);
+          throw new QSearchException("Could not execute query.", e);
+        }
+
+        List<SearchResultDTO> results = new ArrayList<>(dtos.size());
+        try {
+          JsonNode responses = mapper.readTree(response.getEntity().getContent()).path("responses");
+          for (int i = 0; i < dtos.size(); i++) {
+            JsonNode item = responses.path(i);
+            if (item.has("error")) {
+              throw new QSearchException(MessageFormat.format("Could not execute query {0}: {1}",
+                i, item.path("error")));
+            }
+
+            QuerySpec dto = dtos.get(i);
+            QueryResponse queryResponse = mapper.treeToValue(item, QueryResponse.class);
+            if (dto.isCountOnly()) {
+              results.add(buildResultFrom(queryResponse, false, false, false));
+            } else {
+              results.add(buildResultFrom(queryResponse, dto));
+            }
+          }
+        } catch (UnsupportedOperationException | IOException ex) {
+          LOGGER.log(Level.SEVERE, "Could not deserialize response.", ex);
+          throw new QSearchException("Could not deserialize response.", ex);
+        }
+
+        return results;
+      }, esClient.getResponseExecutor());
+  }
+
+  private SearchResultDTO buildResultFrom(QueryResponse queryResponse, QuerySpec dto) {
+    SearchResultDTO result = buildResultFrom(queryResponse, dto.isCountOnly(), dto.isIncludeAllSource(),
+        dto.isIncludeResults());
+
+    if (!dto.isCountOnly()) {
+      result.setHasMore(queryResponse.getHits().getTotal() > dto.getPageSize());
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the indices/types part of a search endpoint.
+   */
+  private String buildIndicesPath(QuerySpec dto) {
     StringBuilder endpointBuilder = new StringBuilder();
 
     // This is done to remove duplicates
@@ -111,15 +281,13 @@ public class SearchServiceImpl implements SearchService {
       endpointBuilder.append(type);
     }
 
-    if (dto.isCountOnly()) {
-      endpointBuilder.append("/_count");
-    }
-    else {
-      endpointBuilder.append("/_search");
-    }
-
-    Map<String, String> params = new HashMap<>(dto.getParams());
+    return endpointBuilder.toString();
+  }
 
+  /**
+   * Builds the body of a search request, adding any required URL parameters to params.
+   */
+  private InternalSearchRequest buildSearchRequest(QuerySpec dto, Map<String, String> params) {
     QuerySort dtoSort = dto.getQuerySort();
     InternalSearchRequest internalRequest = new InternalSearchRequest();
     if (!dto.isCountOnly()) {
@@ -161,34 +329,7 @@ public class SearchServiceImpl implements SearchService {
     }
     internalRequest.setQuery(buildQuery(dto));
 
-    Response response;
-    try {
-      ContentType contentType = ContentType.APPLICATION_JSON.withCharset(Charset.forName("UTF-8"));
-      response = esClient.getClient()
-        .performRequest("GET", endpointBuilder.toString(), params,
-          new NStringEntity(mapper.writeValueAsString(internalRequest), contentType),
-          new HeapBufferedResponseConsumerFactory(280 * 1024 * 1024));
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, "Could not execute query.", e);
-      throw new QSearchException("Could not execute query.", e);
-    }
-
-    QueryResponse queryResponse;
-    try {
-      queryResponse = mapper.readValue(response.getEntity().getContent(), QueryResponse.class);
-    } catch (UnsupportedOperationException | IOException e) {
-      LOGGER.log(Level.SEVERE, "Could not deserialize response.", e);
-      throw new QSearchException("Could not deserialize response.", e);
-    }
-
-    SearchResultDTO result = buildResultFrom(queryResponse, dto.isCountOnly(), dto.isIncludeAllSource(),
-        dto.isIncludeResults());
-
-    if (!dto.isCountOnly()) {
-      result.setHasMore(queryResponse.getHits().getTotal() > dto.getPageSize());
-    }
-
-    return result;
+    return internalRequest;
   }
 
   @Override
@@ -589,18 +730,23 @@ public class SearchServiceImpl implements SearchService {
 
   @Override
   public SearchHitDTO findById(String indexName, String typeName, String id) {
+    return esClient.join(findByIdAsync(indexName, typeName, id));
+  }
+
+  @Override
+  public CompletableFuture<SearchHitDTO> findByIdAsync(String indexName, String typeName, String id) {
     String endpoint = indexName + "/" + typeName + "/" + id;
-    try {
-      Response response = esClient.getClient().performRequest("GET", endpoint);
-      if (response.getStatusLine().getStatusCode() == 200) {
-        Hit hit = mapper.readValue(response.getEntity().getContent(), Hit.class);
-        return map(hit);
-      } else {
-        return null;
-      }
-    } catch (IOException e) {
-      return null;
-    }
+    return esClient.performRequestAsync("GET", endpoint, new HashMap<>(), null)
+      .handleAsync((response, e) -> {
+        if (e != null || response.getStatusLine().getStatusCode() != 200) {
+          return null;
+        }
+        try {
+          return map(mapper.readValue(response.getEntity().getContent(), Hit.class));
+        } catch (IOException ex) {
+          return null;
+        }
+      }, esClient.getResponseExecutor());
   }
 
   @Override
@@ -633,6 +779,45 @@ public class SearchServiceImpl implements SearchService {
     return result;
   }
 
+  @Override
+  public Stream<SearchHitDTO> stream(QuerySpec dto) {
+    return stream(dto, 1);
+  }
+
+  @Override
+  public Stream<SearchHitDTO> stream(QuerySpec dto, int slices) {
+    Map<String, String> params = new HashMap<>(dto.getParams());
+    InternalSearchRequest internalRequest = buildSearchRequest(dto, params);
+    // Scroll requests always start from the first hit and sorting by _doc (when no other sort is
+    // requested) is the cheapest way to scroll.
+    internalRequest.setFrom(null);
+    if ("[]".equals(internalRequest.getSort())) {
+      internalRequest.setSort("[\"_doc\"]");
+    }
+    String scroll = (dto.getScroll() != null ? dto.getScroll() : 1) + "m";
+    params.put("scroll", scroll);
+
+    List<String> requests = new ArrayList<>(slices);
+    try {
+      for (int i = 0; i < Math.max(1, slices); i++) {
+        if (slices > 1) {
+          internalRequest.setSlice(new Slice(i, slices));
+        }
+        requests.add(mapper.writeValueAsString(internalRequest));
+      }
+    } catch (JsonProcessingException e) {
+      LOGGER.log(Level.SEVERE, "Could not serialize query.", e);
+      throw new QSearchException("Could not serialize query.", e);
+    }
+
+    ESScrollIterator iterator = new ESScrollIterator(esClient, mapper,
+      buildIndicesPath(dto) + "/_search", params, requests, scroll);
+    int characteristics = Spliterator.NONNULL | (slices > 1 ? 0 : Spliterator.ORDERED);
+    return StreamSupport
+      .stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false)
+      .onClose(iterator::close);
+  }
+
   private SearchResultDTO buildResultFrom(QueryResponse queryResponse,
       boolean countOnly, boolean includeAllSource, boolean includeResults) {
 
@@ -30,6 +30,9 @@ public class InternalSearchRequest {
     @JsonInclude(Include.NON_NULL)
 	private String highlight;
 
+	@JsonInclude(Include.NON_NULL)
+	private Slice slice;
+
 	public Integer getFrom() {
 		return from;
 	}
@@ -86,6 +89,14 @@ public class InternalSearchRequest {
     this.source = source;
   }
 
+  public Slice getSlice() {
+    return slice;
+  }
+
+  public void setSlice(Slice slice) {
+    this.slice = slice;
+  }
+
   public String getHighlight() {
     return highlight;
   }
@@ -116,4 +127,22 @@ public class InternalSearchRequest {
       this.excludes = excludes;
     }
   }
+
+  public static final class Slice {
+    private int id;
+    private int max;
+
+    public Slice(int id, int max) {
+      this.id = id;
+      this.max = max;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public int getMax() {
+      return max;
+    }
+  }
 }
@@ -0,0 +1,331 @@
+package com.eurodyn.qlack2.fuse.search.impl.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+
+import com.eurodyn.qlack2.fuse.search.api.BulkIndexer;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingResultDTO;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkItemFailureDTO;
+import com.eurodyn.qlack2.fuse.search.api.exception.QSearchException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link BulkIndexer} sending NDJSON bulk requests through the ES REST client. Documents are
+ * serialised directly into the byte buffer backing the request entity, so a pending request
+ * never takes more than (about) the configured maximum size in memory. Only the documents
+ * rejected with 429 (too many requests) are resent; all other per-document failures are
+ * collected and returned when the indexer is closed.
+ */
+public class ESBulkIndexer implements BulkIndexer {
+
+  private static final Logger LOGGER = Logger.getLogger(ESBulkIndexer.class.getName());
+
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  private static final ContentType CONTENT_TYPE =
+    ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8);
+
+  private final ESClient client;
+  private final ScheduledExecutorService scheduler;
+  private final String endpoint;
+  private final Map<String, String> parameters;
+  private final ObjectMapper mapper;
+  private final boolean update;
+  private final Runnable onWrite;
+  private final int maxActions;
+  private final int maxBytes;
+  private final int concurrentRequests;
+  private final int maxRetries;
+  private final long initialBackoff;
+
+  // Limits the requests in flight. A permit is held until a request (including its retries)
+  // completes.
+  private final Semaphore inFlight;
+  private final ScheduledFuture<?> flushTask;
+
+  private final AtomicLong successful = new AtomicLong();
+  private final List<BulkItemFailureDTO> failures = new ArrayList<>();
+
+  // The request currently being filled, guarded by this.
+  private Batch current;
+  private boolean closed;
+
+  ESBulkIndexer(ESClient esClient, String endpoint, Map<String, String> parameters,
+    ObjectMapper mapper, boolean update, Runnable onWrite) {
+    this.client = esClient;
+    this.scheduler = esClient.getBulkScheduler();
+    this.endpoint = endpoint;
+    this.parameters = parameters != null ? new HashMap<>(parameters) : new HashMap<>();
+    this.mapper = mapper;
+    this.update = update;
+    this.onWrite = onWrite;
+    this.maxActions = esClient.getBulkMaxActions();
+    this.maxBytes = esClient.getBulkMaxBytes();
+    this.concurrentRequests = Math.max(1, esClient.getBulkConcurrentRequests());
+    this.maxRetries = esClient.getBulkMaxRetries();
+    this.initialBackoff = esClient.getBulkInitialBackoff();
+    this.inFlight = new Semaphore(concurrentRequests);
+    this.current = new Batch();
+
+    long flushInterval = esClient.getBulkFlushInterval();
+    if (flushInterval > 0) {
+      flushTask = scheduler.scheduleWithFixedDelay(this::flushIfIdle, flushInterval,
+        flushInterval, TimeUnit.MILLISECONDS);
+    } else {
+      flushTask = null;
+    }
+  }
+
+  @Override
+  public void add(String id, Object document) {
+    Batch full = null;
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("The bulk indexer is closed.");
+      }
+
+      try {
+        current.add(id, document);
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, MessageFormat.format("Could not serialise document with id: {0}", id), e);
+        throw new QSearchException(MessageFormat.format("Could not serialise document with id: {0}", id), e);
+      }
+
+      if (current.actions() >= maxActions || current.bytes() >= maxBytes) {
+        full = current;
+        current = new Batch();
+      }
+    }
+
+    // Permits are acquired outside the lock, so that waiting for a request to complete does not
+    // block the periodic flush (which shares its thread with the retries).
+    if (full != null) {
+      acquire(1);
+      send(full, 0);
+    }
+  }
+
+  @Override
+  public void flush() {
+    Batch batch;
+    synchronized (this) {
+      if (current.actions() == 0) {
+        return;
+      }
+      batch = current;
+      current = new Batch();
+    }
+
+    acquire(1);
+    send(batch, 0);
+  }
+
+  /**
+   * Periodic flush. Runs on the scheduler which also runs the retries releasing the permits, so it
+   * must never wait for a permit.
+   */
+  private void flushIfIdle() {
+    Batch batch;
+    synchronized (this) {
+      if (current.actions() == 0 || !inFlight.tryAcquire()) {
+        return;
+      }
+      batch = current;
+      current = new Batch();
+    }
+
+    send(batch, 0);
+  }
+
+  @Override
+  public BulkIndexingResultDTO close() {
+    synchronized (this) {
+      closed = true;
+      if (flushTask != null) {
+        flushTask.cancel(false);
+      }
+    }
+    flush();
+
+    // Wait for the requests in flight.
+    acquire(concurrentRequests);
+    inFlight.release(concurrentRequests);
+
+    BulkIndexingResultDTO result = new BulkIndexingResultDTO();
+    result.setSuccessful(successful.get());
+    synchronized (failures) {
+      result.setFailures(new ArrayList<>(failures));
+    }
+
+    return result;
+  }
+
+  private void acquire(int permits) {
+    try {
+      inFlight.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QSearchException("Interrupted while waiting for bulk requests to complete", e);
+    }
+  }
+
+  private void send(final Batch batch, final int attempt) {
+    LOGGER.log(Level.FINEST, "Sending bulk request with {0} documents ({1} bytes), attempt {2}.",
+      new Object[]{batch.actions(), batch.bytes(), attempt});
+    NByteArrayEntity entity = new NByteArrayEntity(batch.buffer(), 0, batch.bytes(), CONTENT_TYPE);
+    client.performRequestAsync("POST", endpoint, parameters, entity).whenComplete((response, e) -> {
+      if (e != null) {
+        int status = e instanceof ResponseException
+          ? ((ResponseException) e).getResponse().getStatusLine().getStatusCode() : 0;
+        if (status == TOO_MANY_REQUESTS && attempt < maxRetries) {
+          retry(batch, attempt);
+        } else {
+          LOGGER.log(Level.SEVERE, "Could not bulk index documents", e);
+          fail(batch, status, e.getMessage());
+          inFlight.release();
+        }
+        return;
+      }
+
+      try {
+        handleResponse(batch, attempt, response);
+      } catch (IOException | RuntimeException ex) {
+        LOGGER.log(Level.SEVERE, "Could not process bulk response", ex);
+        fail(batch, 0, ex.getMessage());
+        inFlight.release();
+      }
+    });
+  }
+
+  private void handleResponse(Batch batch, int attempt, Response response) throws IOException {
+    if (onWrite != null) {
+      onWrite.run();
+    }
+
+    JsonNode root = mapper.readTree(response.getEntity().getContent());
+    if (!root.path("errors").asBoolean()) {
+      successful.addAndGet(batch.actions());
+      inFlight.release();
+      return;
+    }
+
+    // Items are returned in the order of the actions of the request.
+    JsonNode items = root.path("items");
+    Batch rejected = new Batch();
+    for (int i = 0; i < batch.actions(); i++) {
+      // Each item is keyed by its action, e.g. {"index": {"_id": ..., "status": ...}}.
+      JsonNode item = items.path(i).elements().hasNext()
+        ? items.path(i).elements().next() : items.path(i);
+      int status = item.path("status").asInt();
+      if (status >= 200 && status < 300) {
+        successful.incrementAndGet();
+      } else if (status == TOO_MANY_REQUESTS && attempt < maxRetries) {
+        rejected.copy(batch, i);
+      } else {
+        JsonNode error = item.path("error");
+        String reason = error.isObject()
+          ? error.path("type").asText() + ": " + error.path("reason").asText() : error.asText();
+        addFailure(new BulkItemFailureDTO(batch.id(i), status, reason));
+      }
+    }
+
+    if (rejected.actions() > 0) {
+      retry(rejected, attempt);
+    } else {
+      inFlight.release();
+    }
+  }
+
+  private void retry(Batch batch, int attempt) {
+    long backoff = initialBackoff << Math.min(attempt, 20);
+    LOGGER.log(Level.FINE, "Retrying {0} rejected documents in {1} msec.",
+      new Object[]{batch.actions(), backoff});
+    try {
+      scheduler.schedule(() -> send(batch, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      // The scheduler has been shut down.
+      fail(batch, TOO_MANY_REQUESTS, e.getMessage());
+      inFlight.release();
+    }
+  }
+
+  private void fail(Batch batch, int status, String reason) {
+    for (int i = 0; i < batch.actions(); i++) {
+      addFailure(new BulkItemFailureDTO(batch.id(i), status, reason));
+    }
+  }
+
+  private void addFailure(BulkItemFailureDTO failure) {
+    synchronized (failures) {
+      failures.add(failure);
+    }
+  }
+
+  /**
+   * The NDJSON body of a bulk request, together with the position of each document in it so that
+   * individual documents can be resent.
+   */
+  private class Batch extends ByteArrayOutputStream {
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<Integer> offsets = new ArrayList<>();
+
+    void add(String id, Object document) throws IOException {
+      ids.add(id);
+      offsets.add(count);
+      write(("{\"" + (update ? "update" : "index") + "\":{\"_id\":"
+        + mapper.writeValueAsString(id) + "}}\n").getBytes(StandardCharsets.UTF_8));
+      if (update) {
+        write("{\"doc\":".getBytes(StandardCharsets.UTF_8));
+        mapper.writeValue(this, document);
+        write('}');
+      } else {
+        mapper.writeValue(this, document);
+      }
+      write('\n');
+    }
+
+    void copy(Batch source, int index) {
+      int start = source.offsets.get(index);
+      int end = index + 1 < source.actions() ? source.offsets.get(index + 1) : source.bytes();
+      ids.add(source.id(index));
+      offsets.add(count);
+      write(source.buffer(), start, end - start);
+    }
+
+    int actions() {
+      return ids.size();
+    }
+
+    int bytes() {
+      return count;
+    }
+
+    String id(int index) {
+      return ids.get(index);
+    }
+
+    byte[] buffer() {
+      return buf;
+    }
+  }
+}
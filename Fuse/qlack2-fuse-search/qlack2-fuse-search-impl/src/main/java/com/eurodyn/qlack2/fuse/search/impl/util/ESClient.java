@@ -2,6 +2,18 @@ package com.eurodyn.qlack2.fuse.search.impl.util;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -10,15 +22,28 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSession;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 
+import com.eurodyn.qlack2.fuse.search.api.exception.QSearchException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * A client to communicate with ES. This client is using the {@link RestClient} implementation
  * of the ES Java client. This client is configured using Blueprint and can then be injected to
@@ -29,6 +54,10 @@ import org.elasticsearch.client.RestClientBuilder;
 public class ESClient {
 
   private static final Logger LOGGER = Logger.getLogger(ESClient.class.getName());
+
+  /** The context attribute holding the time (in nanos) a request was sent */
+  private static final String REQUEST_START = "qlack2.es.requestStart";
+
   /** A comma-separated list of ES hosts in the form of protocol1:host1:port1,protocol2:host2:port2. */
   private String esHosts;
 
@@ -44,9 +73,42 @@ public class ESClient {
   /** ES Max Retry Timeout Millis */
   private String esMaxRetryTimeoutMillis;
 
+  /** The parsed esMaxRetryTimeoutMillis, also the maximum time blocking calls wait for ES */
+  private int maxRetryTimeoutMillis;
+
+  /** The number of threads processing the responses of asynchronous requests */
+  private int responseThreads = 4;
+
+  /** The maximum number of documents per bulk request */
+  private int bulkMaxActions = 1000;
+
+  /** The maximum size (in bytes) of a bulk request */
+  private int bulkMaxBytes = 5 * 1024 * 1024;
+
+  /** The interval (in msec) at which bulk indexers send pending documents, 0 to disable */
+  private long bulkFlushInterval = 0;
+
+  /** The maximum number of in-flight requests per bulk indexer */
+  private int bulkConcurrentRequests = 1;
+
+  /** The number of times documents rejected with 429 (too many requests) are retried */
+  private int bulkMaxRetries = 8;
+
+  /** The delay (in msec) before the first retry, doubled on every subsequent retry */
+  private long bulkInitialBackoff = 100;
+
   /** The client to ES */
   private RestClient client;
 
+  /** Schedules the periodic flushes and the retries of bulk indexers */
+  private ScheduledExecutorService bulkScheduler;
+
+  /** Processes the responses of asynchronous requests, off the I/O threads of the client */
+  private ExecutorService responseExecutor;
+
+  /** The latencies of the requests to ES, per method and operation (e.g. 'GET _search') */
+  private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
   public void setEsUsername(String esUsername) {
     this.esUsername = esUsername;
   }
@@ -65,6 +127,34 @@ public class ESClient {
 
   public void setEsMaxRetryTimeoutMillis(String esMaxRetryTimeoutMillis) { this.esMaxRetryTimeoutMillis = esMaxRetryTimeoutMillis;}
 
+  public void setBulkMaxActions(int bulkMaxActions) {
+    this.bulkMaxActions = bulkMaxActions;
+  }
+
+  public void setBulkMaxBytes(int bulkMaxBytes) {
+    this.bulkMaxBytes = bulkMaxBytes;
+  }
+
+  public void setBulkFlushInterval(long bulkFlushInterval) {
+    this.bulkFlushInterval = bulkFlushInterval;
+  }
+
+  public void setBulkConcurrentRequests(int bulkConcurrentRequests) {
+    this.bulkConcurrentRequests = bulkConcurrentRequests;
+  }
+
+  public void setBulkMaxRetries(int bulkMaxRetries) {
+    this.bulkMaxRetries = bulkMaxRetries;
+  }
+
+  public void setBulkInitialBackoff(long bulkInitialBackoff) {
+    this.bulkInitialBackoff = bulkInitialBackoff;
+  }
+
+  public void setResponseThreads(int responseThreads) {
+    this.responseThreads = responseThreads;
+  }
+
   /** Initialiser for this singleton instance */
   public void init() {
     LOGGER.log(Level.CONFIG, "Initialising connection to ES: {0}", esHosts);
@@ -73,6 +163,8 @@ public class ESClient {
       new HttpHost(host.split(":")[1], Integer.parseInt(host.split(":")[2]), host.split(":")[0])
     ).collect(Collectors.toList()).toArray(new HttpHost[esHosts.split(",").length]);
 
+    maxRetryTimeoutMillis = Integer.parseInt(StringUtils.isNotBlank(esMaxRetryTimeoutMillis)
+      && StringUtils.isNumericSpace(esMaxRetryTimeoutMillis) ? esMaxRetryTimeoutMillis.trim() : "30000");
     client = RestClient
     	.builder(httpHosts)
     	.setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
@@ -88,6 +180,12 @@ public class ESClient {
 
 				}
 
+				// Measure every request, whichever API sent it.
+				httpClientBuilder.addInterceptorLast((HttpRequestInterceptor) (request, context) ->
+					context.setAttribute(REQUEST_START, System.nanoTime()));
+				httpClientBuilder.addInterceptorFirst((HttpResponseInterceptor) (response, context) ->
+					recordLatency(response, context));
+
 				if ("false".equals(verifyHostName)) {
 					httpClientBuilder = httpClientBuilder.setSSLHostnameVerifier(new HostnameVerifier() {
 
@@ -100,9 +198,19 @@ public class ESClient {
 
 				return httpClientBuilder;
 			}
-    	}).setMaxRetryTimeoutMillis(Integer.parseInt(StringUtils.isNotBlank(esMaxRetryTimeoutMillis)
-        && StringUtils.isNumericSpace(esMaxRetryTimeoutMillis)?esMaxRetryTimeoutMillis:"30000"))
+    	}).setMaxRetryTimeoutMillis(maxRetryTimeoutMillis)
     	.build();
+
+    bulkScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "qlack2-es-bulk");
+      thread.setDaemon(true);
+      return thread;
+    });
+    responseExecutor = Executors.newFixedThreadPool(Math.max(1, responseThreads), runnable -> {
+      Thread thread = new Thread(runnable, "qlack2-es-response");
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   	/**
@@ -113,6 +221,8 @@ public class ESClient {
 	 */
   public void shutdown() throws IOException {
     LOGGER.log(Level.CONFIG, "Shutting down connection to ES.");
+    bulkScheduler.shutdownNow();
+    responseExecutor.shutdownNow();
     client.close();
   }
 
@@ -124,4 +234,180 @@ public class ESClient {
   public RestClient getClient() {
     return client;
   }
+
+  int getBulkMaxActions() {
+    return bulkMaxActions;
+  }
+
+  int getBulkMaxBytes() {
+    return bulkMaxBytes;
+  }
+
+  long getBulkFlushInterval() {
+    return bulkFlushInterval;
+  }
+
+  int getBulkConcurrentRequests() {
+    return bulkConcurrentRequests;
+  }
+
+  int getBulkMaxRetries() {
+    return bulkMaxRetries;
+  }
+
+  long getBulkInitialBackoff() {
+    return bulkInitialBackoff;
+  }
+
+  ScheduledExecutorService getBulkScheduler() {
+    return bulkScheduler;
+  }
+
+  /**
+   * Returns the executor to process responses on (e.g. to deserialise them), so that large
+   * responses do not hold up the I/O threads of the client and the other requests in flight.
+   *
+   * @return A bounded executor.
+   */
+  public Executor getResponseExecutor() {
+    return responseExecutor;
+  }
+
+  /**
+   * Sends a request without blocking. The returned future is completed on the I/O threads of the
+   * client, so dependent stages doing more than light processing should use the *Async methods
+   * of {@link CompletableFuture}.
+   *
+   * @param method The HTTP method.
+   * @param endpoint The endpoint.
+   * @param params The query string parameters.
+   * @param entity The body of the request, may be null.
+   * @return A future completed with the response, or exceptionally (e.g. with a
+   * {@link org.elasticsearch.client.ResponseException} for error status codes).
+   */
+  public CompletableFuture<Response> performRequestAsync(String method, String endpoint,
+    Map<String, String> params, HttpEntity entity) {
+    return performRequestAsync(method, endpoint, params, entity,
+      HttpAsyncResponseConsumerFactory.DEFAULT);
+  }
+
+  /**
+   * Sends a request without blocking, buffering the response with the given consumer.
+   *
+   * @see #performRequestAsync(String, String, Map, HttpEntity)
+   */
+  public CompletableFuture<Response> performRequestAsync(String method, String endpoint,
+    Map<String, String> params, HttpEntity entity,
+    HttpAsyncResponseConsumerFactory responseConsumerFactory) {
+    CompletableFuture<Response> future = new CompletableFuture<>();
+    client.performRequestAsync(method, endpoint, params, entity, responseConsumerFactory,
+      new ResponseListener() {
+        @Override
+        public void onSuccess(Response response) {
+          future.complete(response);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+          future.completeExceptionally(e);
+        }
+      });
+
+    return future;
+  }
+
+  /**
+   * Waits for a future returned by this client, unwrapping its failure. Like the blocking calls
+   * of {@link RestClient}, it gives up after the configured max retry timeout.
+   *
+   * @param future The future to wait for.
+   * @return The result of the future.
+   * @throws RuntimeException The exception the future completed with, wrapped in a
+   * {@link QSearchException} if checked or if the future did not complete in time.
+   */
+  public <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.get(maxRetryTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new QSearchException(e.getCause().getMessage(), e.getCause());
+    } catch (TimeoutException e) {
+      throw new QSearchException("Request to ES timed out after " + maxRetryTimeoutMillis
+        + " msec.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QSearchException("Interrupted while waiting for ES.", e);
+    }
+  }
+
+  private void recordLatency(HttpResponse response, HttpContext context) {
+    Long start = (Long) context.getAttribute(REQUEST_START);
+    HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+    if (start == null || request == null) {
+      return;
+    }
+    int status = response.getStatusLine().getStatusCode();
+    latencies.computeIfAbsent(request.getRequestLine().getMethod() + " "
+      + operation(request.getRequestLine().getUri()), key -> new LatencyHistogram())
+      .record(System.nanoTime() - start, status >= 500 || status == 429);
+  }
+
+  /**
+   * Maps the path of a request to the operation it performs, so that requests to different
+   * indices or documents are measured together: the path from the first '_' segment on (e.g.
+   * '_search/scroll'), or 'document'/'index' for paths without one.
+   */
+  static String operation(String uri) {
+    int query = uri.indexOf('?');
+    String[] segments = (query >= 0 ? uri.substring(0, query) : uri).split("/");
+    StringBuilder operation = new StringBuilder();
+    int names = 0;
+    for (String segment : segments) {
+      if (segment.isEmpty()) {
+        continue;
+      }
+      if (operation.length() > 0) {
+        operation.append('/').append(segment);
+      } else if (segment.startsWith("_") && !"_all".equals(segment)) {
+        operation.append(segment);
+      } else {
+        names++;
+      }
+    }
+
+    if (operation.length() > 0) {
+      return operation.toString();
+    }
+    return names >= 3 ? "document" : "index";
+  }
+
+  /**
+   * Returns the latency statistics of the requests to ES, per method and operation: count,
+   * errors (5xx and 429 responses), mean, p50, p90, p99 and max (in msec).
+   *
+   * @return The statistics keyed by e.g. 'GET _search.p99'.
+   */
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = new TreeMap<>();
+    latencies.forEach((operation, histogram) -> histogram.putStatistics(operation, statistics));
+
+    return statistics;
+  }
+
+  /**
+   * Creates a bulk indexer using the configured bulk settings.
+   *
+   * @param endpoint The _bulk endpoint to send requests to.
+   * @param parameters The parameters of the requests.
+   * @param mapper The mapper serialising the documents.
+   * @param update Whether documents should be updated rather than indexed.
+   * @param onWrite Run after every bulk request ES has processed (may be null).
+   * @return A new bulk indexer.
+   */
+  public ESBulkIndexer createBulkIndexer(String endpoint, Map<String, String> parameters,
+    ObjectMapper mapper, boolean update, Runnable onWrite) {
+    return new ESBulkIndexer(this, endpoint, parameters, mapper, update, onWrite);
+  }
 }
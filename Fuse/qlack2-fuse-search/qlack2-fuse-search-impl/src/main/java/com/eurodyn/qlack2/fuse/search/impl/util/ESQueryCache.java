@@ -0,0 +1,250 @@
+package com.eurodyn.qlack2.fuse.search.impl.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.eurodyn.qlack2.fuse.search.api.dto.SearchResultDTO;
+
+/**
+ * A bounded, expiring cache of search results, keyed by the endpoint, parameters and JSON body of
+ * the search request. Entries are invalidated per index whenever documents of the index are
+ * written, deleted or the index is refreshed through this module. Queries on all indices or on
+ * index patterns are invalidated by a write to any index, while queries on aliases are only
+ * invalidated by expiry.
+ *
+ * The pending result of a query is cached as soon as the query is sent, so that concurrent
+ * identical queries share a single request to ES and an invalidation taking place while the query
+ * is in flight discards its (possibly stale) result.
+ *
+ * This bean is configured using Blueprint; the cache is disabled when maxEntries is 0.
+ */
+public class ESQueryCache {
+
+  private static final Logger LOGGER = Logger.getLogger(ESQueryCache.class.getName());
+
+  /** The invalidation bucket of queries on all indices or on index patterns */
+  private static final String ANY_INDEX = "*";
+
+  /** The maximum number of cached results, 0 to disable the cache */
+  private int maxEntries = 0;
+
+  /** The time (in msec) after which cached results expire */
+  private long expiryTime = 10000;
+
+  /** The cached results in access order, guarded by this */
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      if (size() > maxEntries) {
+        evictions.increment();
+        unregister(eldest.getKey(), eldest.getValue());
+        return true;
+      }
+      return false;
+    }
+  };
+
+  /** The keys of the cached results per index, guarded by this */
+  private final Map<String, Set<String>> keysByIndex = new HashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public void setExpiryTime(long expiryTime) {
+    this.expiryTime = expiryTime;
+  }
+
+  public boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * Returns the cached result of a search, sending it if not cached (or expired). The returned
+   * result is shared between callers and should not be modified.
+   *
+   * @param key The key of the search.
+   * @param indices The indices searched, all indices if empty.
+   * @param loader Sends the search.
+   * @return The (possibly pending) result of the search.
+   */
+  public CompletableFuture<SearchResultDTO> get(String key, Collection<String> indices,
+    Supplier<CompletableFuture<SearchResultDTO>> loader) {
+    CompletableFuture<SearchResultDTO> result;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.expires > System.currentTimeMillis()) {
+        hits.increment();
+        return entry.result;
+      }
+      if (entry != null) {
+        remove(key);
+      }
+
+      misses.increment();
+      result = new CompletableFuture<>();
+      entry = new Entry(result, indexKeys(indices), System.currentTimeMillis() + expiryTime);
+      entries.put(key, entry);
+      for (String index : entry.indices) {
+        keysByIndex.computeIfAbsent(index, k -> new HashSet<>()).add(key);
+      }
+    }
+
+    try {
+      loader.get().whenComplete((response, e) -> {
+        if (e != null) {
+          discard(key, result);
+          result.completeExceptionally(e);
+        } else {
+          result.complete(response);
+        }
+      });
+    } catch (RuntimeException e) {
+      discard(key, result);
+      throw e;
+    }
+
+    return result;
+  }
+
+  /**
+   * Invalidates the cached results of the queries on an index.
+   *
+   * @param index The name of the index, a comma-separated list of names or a pattern.
+   */
+  public synchronized void invalidate(String index) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (index == null || index.contains("*") || "_all".equals(index)) {
+      invalidateAll();
+      return;
+    }
+    if (index.contains(",")) {
+      for (String name : index.split(",")) {
+        invalidate(name);
+      }
+      return;
+    }
+
+    LOGGER.log(Level.FINEST, "Invalidating cached queries on index {0}.", index);
+    invalidations.increment();
+    for (String bucket : new String[]{index, ANY_INDEX}) {
+      Set<String> keys = keysByIndex.get(bucket);
+      if (keys != null) {
+        for (String key : new HashSet<>(keys)) {
+          remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Invalidates the cached results of the queries on any of the given indices.
+   *
+   * @param indices The names of the indices, all indices if empty.
+   */
+  public synchronized void invalidate(Collection<String> indices) {
+    if (indices.isEmpty()) {
+      invalidateAll();
+    } else {
+      for (String index : indices) {
+        invalidate(index);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all cached results.
+   */
+  public synchronized void invalidateAll() {
+    invalidations.increment();
+    entries.clear();
+    keysByIndex.clear();
+  }
+
+  /**
+   * Returns the statistics of this cache: the hits, misses, evictions and invalidations of the
+   * cached results.
+   *
+   * @return The statistics keyed by e.g. 'queryCache.hits'.
+   */
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = new TreeMap<>();
+    statistics.put("queryCache.hits", hits.sum());
+    statistics.put("queryCache.misses", misses.sum());
+    statistics.put("queryCache.evictions", evictions.sum());
+    statistics.put("queryCache.invalidations", invalidations.sum());
+    synchronized (this) {
+      statistics.put("queryCache.size", (long) entries.size());
+    }
+
+    return statistics;
+  }
+
+  private synchronized void discard(String key, CompletableFuture<SearchResultDTO> result) {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.result == result) {
+      remove(key);
+    }
+  }
+
+  private void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      unregister(key, entry);
+    }
+  }
+
+  private void unregister(String key, Entry entry) {
+    for (String index : entry.indices) {
+      Set<String> keys = keysByIndex.get(index);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          keysByIndex.remove(index);
+        }
+      }
+    }
+  }
+
+  private static Set<String> indexKeys(Collection<String> indices) {
+    Set<String> keys = new HashSet<>();
+    for (String index : indices) {
+      keys.add(index.contains("*") || "_all".equals(index) ? ANY_INDEX : index);
+    }
+    if (keys.isEmpty()) {
+      keys.add(ANY_INDEX);
+    }
+
+    return keys;
+  }
+
+  private static class Entry {
+
+    private final CompletableFuture<SearchResultDTO> result;
+    private final Set<String> indices;
+    private final long expires;
+
+    Entry(CompletableFuture<SearchResultDTO> result, Set<String> indices, long expires) {
+      this.result = result;
+      this.indices = indices;
+      this.expires = expires;
+    }
+  }
+}
@@ -0,0 +1,324 @@
+package com.eurodyn.qlack2.fuse.search.impl.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Response;
+
+import com.eurodyn.qlack2.fuse.search.api.dto.SearchHitDTO;
+import com.eurodyn.qlack2.fuse.search.api.exception.QSearchException;
+import com.eurodyn.qlack2.fuse.search.impl.mappers.request.InternalScollRequest;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Lazily iterates over the hits of a (possibly sliced) scroll search. As soon as a page of a slice
+ * is consumed the next page of that slice is requested asynchronously, so that fetching overlaps
+ * with processing, and slices are fetched in parallel. Responses are parsed with Jackson's
+ * streaming parser, copying only the raw source of each hit. The scroll contexts are cleared on
+ * {@link #close()}, including those of the requests still in flight, which are cleared as soon as
+ * their responses arrive.
+ */
+public class ESScrollIterator implements Iterator<SearchHitDTO>, AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(ESScrollIterator.class.getName());
+
+  private static final ContentType CONTENT_TYPE =
+    ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8);
+
+  private final ESClient client;
+  private final ObjectMapper mapper;
+  private final String scroll;
+  private final List<Slice> slices = new ArrayList<>();
+
+  private Iterator<SearchHitDTO> page = Collections.emptyIterator();
+  private boolean closed;
+
+  /**
+   * Starts the search, sending the initial request of every slice.
+   *
+   * @param client The ES client.
+   * @param mapper The mapper used to create parsers and serialise requests.
+   * @param endpoint The _search endpoint.
+   * @param params The parameters of the initial requests, including the scroll keep-alive.
+   * @param requests The bodies of the initial requests, one per slice.
+   * @param scroll The keep-alive of the scroll contexts, e.g. '1m'.
+   */
+  public ESScrollIterator(ESClient client, ObjectMapper mapper, String endpoint,
+    Map<String, String> params, List<String> requests, String scroll) {
+    this.client = client;
+    this.mapper = mapper;
+    this.scroll = scroll;
+    for (String request : requests) {
+      Slice slice = new Slice();
+      slice.pending = send("GET", endpoint, params, request);
+      slices.add(slice);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!page.hasNext()) {
+      Slice slice = nextSlice();
+      if (slice == null) {
+        return false;
+      }
+      page = slice.take().iterator();
+    }
+
+    return true;
+  }
+
+  @Override
+  public SearchHitDTO next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    return page.next();
+  }
+
+  /**
+   * Returns the slice whose next page arrives first, or null if all slices are exhausted.
+   */
+  private Slice nextSlice() {
+    if (closed) {
+      return null;
+    }
+
+    List<CompletableFuture<Response>> pending = new ArrayList<>();
+    for (Slice slice : slices) {
+      if (slice.pending != null) {
+        if (slice.pending.isDone()) {
+          return slice;
+        }
+        pending.add(slice.pending);
+      }
+    }
+    if (pending.isEmpty()) {
+      return null;
+    }
+
+    // Errors are reported when the page is taken.
+    client.join(CompletableFuture.anyOf(pending.toArray(new CompletableFuture[pending.size()]))
+      .handle((response, e) -> null));
+    for (Slice slice : slices) {
+      if (slice.pending != null && slice.pending.isDone()) {
+        return slice;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    List<String> scrollIds = new ArrayList<>();
+    for (Slice slice : slices) {
+      if (slice.pending != null) {
+        // The request in flight (the initial one or a prefetch) opens or keeps alive a scroll
+        // context, so no further page is requested and the context is cleared once it arrives.
+        String knownScrollId = slice.scrollId;
+        slice.pending.whenComplete((response, e) -> {
+          String scrollId = response != null ? parseScrollId(response) : null;
+          clearScroll(scrollId != null ? scrollId : knownScrollId);
+        });
+        slice.pending = null;
+      } else if (slice.scrollId != null) {
+        scrollIds.add(slice.scrollId);
+      }
+    }
+    clearScroll(scrollIds.toArray(new String[scrollIds.size()]));
+  }
+
+  private void clearScroll(String... scrollIds) {
+    List<String> ids = new ArrayList<>();
+    for (String scrollId : scrollIds) {
+      if (scrollId != null) {
+        ids.add(scrollId);
+      }
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    Map<String, List<String>> request = new HashMap<>();
+    request.put("scroll_id", ids);
+    try {
+      send("DELETE", "_search/scroll", new HashMap<>(), mapper.writeValueAsString(request))
+        .whenComplete((response, e) -> {
+          if (e != null) {
+            LOGGER.log(Level.WARNING, "Could not clear scroll.", e);
+          }
+        });
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not clear scroll.", e);
+    }
+  }
+
+  private CompletableFuture<Response> send(String method, String endpoint,
+    Map<String, String> params, String body) {
+    return client.performRequestAsync(method, endpoint, params,
+      new NStringEntity(body, CONTENT_TYPE));
+  }
+
+  private Page parse(Response response) throws IOException {
+    Page page = new Page();
+
+    try (JsonParser parser = mapper.getFactory().createParser(response.getEntity().getContent())) {
+      parser.nextToken();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("_scroll_id".equals(field)) {
+          page.scrollId = parser.getText();
+        } else if ("hits".equals(field)) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String hitsField = parser.getCurrentName();
+            parser.nextToken();
+            if ("hits".equals(hitsField)) {
+              while (parser.nextToken() == JsonToken.START_OBJECT) {
+                page.hits.add(parseHit(parser));
+              }
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+
+    return page;
+  }
+
+  /**
+   * Returns the scroll ID of a response, reading no further than needed (ES sends it first).
+   */
+  private String parseScrollId(Response response) {
+    try (JsonParser parser = mapper.getFactory().createParser(response.getEntity().getContent())) {
+      parser.nextToken();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("_scroll_id".equals(field)) {
+          return parser.getText();
+        }
+        parser.skipChildren();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not read the scroll ID of a response.", e);
+    }
+
+    return null;
+  }
+
+  private SearchHitDTO parseHit(JsonParser parser) throws IOException {
+    SearchHitDTO hit = new SearchHitDTO();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "_type":
+          hit.setType(parser.getText());
+          break;
+        case "_id":
+          hit.setId(parser.getText());
+          break;
+        case "_score":
+          hit.setScore(parser.getCurrentToken() == JsonToken.VALUE_NULL ? 0 : parser.getFloatValue());
+          break;
+        case "_source":
+          hit.setSource(copy(parser));
+          break;
+        case "inner_hits":
+          hit.setInnerHits(copy(parser));
+          break;
+        case "highlight":
+          hit.setHighlight(copy(parser));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    return hit;
+  }
+
+  /**
+   * Copies the current value of the parser as a JSON string.
+   */
+  private String copy(JsonParser parser) throws IOException {
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+      generator.copyCurrentStructure(parser);
+    }
+
+    return writer.toString();
+  }
+
+  private static class Page {
+
+    private String scrollId;
+    private final List<SearchHitDTO> hits = new ArrayList<>();
+  }
+
+  private class Slice {
+
+    // The request for the next page of this slice, null when the slice is exhausted.
+    private CompletableFuture<Response> pending;
+    private String scrollId;
+
+    List<SearchHitDTO> take() {
+      Page page;
+      try {
+        page = parse(client.join(pending));
+      } catch (RuntimeException | IOException e) {
+        pending = null;
+        LOGGER.log(Level.SEVERE, "Could not execute scroll query.", e);
+        throw new QSearchException("Could not execute scroll query.", e);
+      }
+      if (page.scrollId != null) {
+        scrollId = page.scrollId;
+      }
+
+      // Prefetch the next page while this one is being consumed.
+      if (page.hits.isEmpty()) {
+        pending = null;
+      } else {
+        InternalScollRequest request = new InternalScollRequest();
+        request.setScroll(scroll);
+        request.setScrollId(scrollId);
+        try {
+          pending = send("POST", "_search/scroll", new HashMap<>(),
+            mapper.writeValueAsString(request));
+        } catch (IOException e) {
+          throw new QSearchException("Could not execute scroll query.", e);
+        }
+      }
+
+      return page.hits;
+    }
+  }
+}
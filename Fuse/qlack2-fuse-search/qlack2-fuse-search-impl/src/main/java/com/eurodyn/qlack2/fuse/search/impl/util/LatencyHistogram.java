@@ -0,0 +1,106 @@
+package com.eurodyn.qlack2.fuse.search.impl.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of request latencies. Latencies are counted in power-of-two millisecond
+ * buckets, so percentiles are approximate (reported as the upper bound of their bucket) while
+ * recording costs a couple of atomic increments.
+ */
+public class LatencyHistogram {
+
+  // Bucket i counts the latencies in [2^(i-1), 2^i) msec, the last bucket all longer ones.
+  private static final int BUCKETS = 20;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a request.
+   *
+   * @param nanos The latency of the request in nanoseconds.
+   * @param error Whether the request failed.
+   */
+  public void record(long nanos, boolean error) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+    buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    count.increment();
+    if (error) {
+      errors.increment();
+    }
+    totalNanos.add(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  /**
+   * Returns the approximate latency (in msec) below which the given fraction of requests fall.
+   *
+   * @param fraction The fraction of requests, e.g. 0.99.
+   * @return The upper bound of the bucket containing the percentile.
+   */
+  public long percentile(double fraction) {
+    long total = 0;
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    long target = (long) Math.ceil(fraction * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      seen += counts[i];
+      if (seen >= target && seen > 0) {
+        return Math.min(1L << i, getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * @return The mean latency in msec.
+   */
+  public long getMean() {
+    long requests = count.sum();
+    return requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / requests);
+  }
+
+  /**
+   * @return The maximum latency in msec.
+   */
+  public long getMax() {
+    return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+  }
+
+  /**
+   * Adds the statistics of this histogram to the given map, prefixing their keys.
+   *
+   * @param prefix The prefix of the keys, e.g. 'GET _search'.
+   * @param statistics The map to add the statistics to.
+   */
+  public void putStatistics(String prefix, Map<String, Long> statistics) {
+    statistics.put(prefix + ".count", getCount());
+    statistics.put(prefix + ".errors", getErrors());
+    statistics.put(prefix + ".mean", getMean());
+    statistics.put(prefix + ".p50", percentile(0.5));
+    statistics.put(prefix + ".p90", percentile(0.9));
+    statistics.put(prefix + ".p99", percentile(0.99));
+    statistics.put(prefix + ".max", getMax());
+  }
+}
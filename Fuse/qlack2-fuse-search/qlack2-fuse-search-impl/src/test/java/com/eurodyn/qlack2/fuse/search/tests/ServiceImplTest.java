@@ -1,9 +1,13 @@
 package com.eurodyn.qlack2.fuse.search.tests;
 
 import com.eurodyn.qlack2.fuse.search.api.AdminService;
+import com.eurodyn.qlack2.fuse.search.api.BulkIndexer;
 import com.eurodyn.qlack2.fuse.search.api.IndexingService;
 import com.eurodyn.qlack2.fuse.search.api.SearchService;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingDTO;
+import com.eurodyn.qlack2.fuse.search.api.dto.BulkIndexingResultDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.IndexingDTO;
+import com.eurodyn.qlack2.fuse.search.api.dto.SearchHitDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.SearchResultDTO;
 import com.eurodyn.qlack2.fuse.search.api.dto.queries.QueryBoolean;
 import com.eurodyn.qlack2.fuse.search.api.dto.queries.QueryBoolean.BooleanType;
@@ -17,9 +21,14 @@ import com.eurodyn.qlack2.fuse.search.api.request.CreateIndexRequest;
 import com.eurodyn.qlack2.fuse.search.api.request.UpdateMappingRequest;
 import com.eurodyn.qlack2.fuse.search.conf.ITTestConf;
 import com.eurodyn.qlack2.fuse.search.util.TestDocument;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import javax.inject.Inject;
 import org.junit.Assert;
 import org.junit.Test;
@@ -131,6 +140,145 @@ public class ServiceImplTest extends ITTestConf {
     indexingService.unindexDocument(dto);
   }
 
+  @Test
+  public void testBulkIndexer() {
+    CreateIndexRequest createIndexRequest = new CreateIndexRequest();
+    createIndexRequest.setName(UUID.randomUUID().toString().replace("-", ""));
+    adminService.createIndex(createIndexRequest);
+
+    BulkIndexer bulkIndexer = indexingService.createBulkIndexer(createIndexRequest.getName(),
+      "testDocument", null, false);
+    for (int i = 0; i < 2500; i++) {
+      bulkIndexer.add(String.valueOf(i), new TestDocument("name" + i, "surname" + i));
+    }
+    BulkIndexingResultDTO result = bulkIndexer.close();
+
+    Assert.assertTrue(result.isSuccessful());
+    Assert.assertEquals(2500, result.getSuccessful());
+  }
+
+  @Test
+  public void testBulkIndexDocumentsFailures() {
+    CreateIndexRequest createIndexRequest = new CreateIndexRequest();
+    createIndexRequest.setName(UUID.randomUUID().toString().replace("-", ""));
+    adminService.createIndex(createIndexRequest);
+
+    // Updating documents which do not exist fails per document.
+    Map<String, TestDocument> documents = new HashMap<>();
+    documents.put("1", new TestDocument("name1", "surname1"));
+    documents.put("2", new TestDocument("name2", "surname2"));
+    BulkIndexingResultDTO result = indexingService.bulkUpdateDocuments(
+      new BulkIndexingDTO<>(createIndexRequest.getName(), "testDocument", documents));
+
+    Assert.assertFalse(result.isSuccessful());
+    Assert.assertEquals(2, result.getFailures().size());
+    Assert.assertEquals(404, result.getFailures().get(0).getStatus());
+  }
+
+  @Test
+  public void testStream() {
+    CreateIndexRequest createIndexRequest = new CreateIndexRequest();
+    createIndexRequest.setName(UUID.randomUUID().toString().replace("-", ""));
+    adminService.createIndex(createIndexRequest);
+
+    Map<String, TestDocument> documents = new HashMap<>();
+    for (int i = 0; i < 250; i++) {
+      documents.put(String.valueOf(i), new TestDocument("name" + i, "surname" + i));
+    }
+    BulkIndexingDTO<TestDocument> dto = new BulkIndexingDTO<>(createIndexRequest.getName(),
+      "testDocument", documents);
+    dto.setRefresh(true);
+    Assert.assertTrue(indexingService.indexDocuments(dto));
+
+    QuerySpec query = new QueryWildcard()
+      .setTerm("name", "name*")
+      .setPageSize(40)
+      .setIndex(createIndexRequest.getName());
+
+    try (Stream<SearchHitDTO> hits = searchService.stream(query)) {
+      Assert.assertEquals(250, hits.map(SearchHitDTO::getId).distinct().count());
+    }
+    try (Stream<SearchHitDTO> hits = searchService.stream(query, 2)) {
+      Assert.assertEquals(250, hits.map(SearchHitDTO::getId).distinct().count());
+    }
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    CreateIndexRequest createIndexRequest = new CreateIndexRequest();
+    createIndexRequest.setName(UUID.randomUUID().toString().replace("-", ""));
+    adminService.createIndex(createIndexRequest);
+
+    List<CompletableFuture<Void>> indexed = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      IndexingDTO dto = new IndexingDTO();
+      dto.setId(String.valueOf(i));
+      dto.setIndex(createIndexRequest.getName());
+      dto.setType("testDocument");
+      dto.setSourceObject(new TestDocument("name" + i, "surname" + i));
+      dto.setRefresh(true);
+      indexed.add(indexingService.indexDocumentAsync(dto));
+    }
+    CompletableFuture.allOf(indexed.toArray(new CompletableFuture[indexed.size()])).get();
+
+    SearchHitDTO hit = searchService.findByIdAsync(createIndexRequest.getName(), "testDocument", "3")
+      .get();
+    Assert.assertNotNull(hit);
+    Assert.assertNull(searchService.findByIdAsync(createIndexRequest.getName(), "testDocument",
+      "missing").get());
+
+    QuerySpec all = new QueryWildcard()
+      .setTerm("name", "name*")
+      .setIndex(createIndexRequest.getName());
+    Assert.assertEquals(10, searchService.searchAsync(all).get().getTotalHits());
+
+    QuerySpec one = new QueryTerm()
+      .setTerm("name", "name3")
+      .setIndex(createIndexRequest.getName());
+    QuerySpec count = new QueryWildcard()
+      .setTerm("name", "name*")
+      .setCountOnly(true)
+      .setIndex(createIndexRequest.getName());
+    List<SearchResultDTO> results = searchService.multiSearch(Arrays.asList(one, all, count));
+    Assert.assertEquals(3, results.size());
+    Assert.assertEquals(1, results.get(0).getTotalHits());
+    Assert.assertEquals(10, results.get(1).getTotalHits());
+    Assert.assertEquals(10, results.get(2).getTotalHits());
+    Assert.assertTrue(results.get(2).getHits().isEmpty());
+
+    Assert.assertTrue(adminService.getStatistics().get("GET _msearch.count") >= 1);
+  }
+
+  @Test
+  public void testQueryCache() {
+    CreateIndexRequest createIndexRequest = new CreateIndexRequest();
+    createIndexRequest.setName(UUID.randomUUID().toString().replace("-", ""));
+    adminService.createIndex(createIndexRequest);
+
+    IndexingDTO dto = new IndexingDTO();
+    dto.setId("1");
+    dto.setIndex(createIndexRequest.getName());
+    dto.setType("testDocument");
+    dto.setSourceObject(new TestDocument("name1", "surname1"));
+    dto.setRefresh(true);
+    indexingService.indexDocument(dto);
+
+    QuerySpec query = new QueryWildcard()
+      .setTerm("name", "name*")
+      .setCacheable(true)
+      .setIndex(createIndexRequest.getName());
+    long hits = adminService.getStatistics().get("queryCache.hits");
+    Assert.assertEquals(1, searchService.search(query).getTotalHits());
+    Assert.assertEquals(1, searchService.search(query).getTotalHits());
+    Assert.assertEquals(hits + 1, (long) adminService.getStatistics().get("queryCache.hits"));
+
+    // Indexing invalidates the cached results of the index.
+    dto.setId("2");
+    dto.setSourceObject(new TestDocument("name2", "surname2"));
+    indexingService.indexDocument(dto);
+    Assert.assertEquals(2, searchService.search(query).getTotalHits());
+  }
+
   @Test
   public void testSearchService() {
     // create an index
@@ -26,6 +26,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import java.util.List;
 import java.util.Set;
 
 @CrossOriginResourceSharing(allowAllOrigins = true)
@@ -68,6 +69,24 @@ public interface SecurityProxy {
 	public Boolean checkPermission(CheckPermissionRDTO rdto,
 			@Context HttpHeaders headers);
 
+	/**
+	 * Checks a number of permissions for the owner of the ticket in a single
+	 * request (e.g. the permissions of all rows of a page), instead of calling
+	 * check-permission once per permission.
+	 *
+	 * @return The result of each check, in the order of the requested checks
+	 *         (true/false or null if no information is available), or a
+	 *         QInvalidTicketException exception in case the ticket that was
+	 *         used when issuing this request (passed in via the HTTP Headers)
+	 *         was invalid.
+	 */
+	@Path("/check-permissions")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<Boolean> checkPermissions(List<CheckPermissionRDTO> rdtos,
+			@Context HttpHeaders headers);
+
 	/**
 	 * Checks the validity of a ticket. Be careful as this method expects the
 	 * ticket to be present in its arguments (i.e. inside a ValidateTicketRDTO
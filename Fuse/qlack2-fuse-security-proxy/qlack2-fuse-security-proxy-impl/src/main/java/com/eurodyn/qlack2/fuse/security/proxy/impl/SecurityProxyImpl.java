@@ -14,6 +14,8 @@
  */
 package com.eurodyn.qlack2.fuse.security.proxy.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,6 +25,7 @@ import javax.ws.rs.core.HttpHeaders;
 
 import com.eurodyn.qlack2.fuse.aaa.api.OperationService;
 import com.eurodyn.qlack2.fuse.aaa.api.UserService;
+import com.eurodyn.qlack2.fuse.aaa.api.dto.PermissionQuery;
 import com.eurodyn.qlack2.fuse.aaa.api.dto.UserDTO;
 import com.eurodyn.qlack2.fuse.idm.api.IDMService;
 import com.eurodyn.qlack2.fuse.idm.api.exception.QInvalidTicketException;
@@ -106,6 +109,24 @@ public class SecurityProxyImpl implements SecurityProxy {
 		}
 	}
 
+	@Override
+	public List<Boolean> checkPermissions(List<CheckPermissionRDTO> rdtos,
+			@Context HttpHeaders headers) {
+		// Since IDM is a QLACK Fuse component it expects security to have
+		// been enforced by its caller. Therefore, we have to check the validity
+		// of the ticket before we check the allowed operations.
+		SignedTicket signedTicket = getValidTicketFromHeaders(headers);
+		if (signedTicket != null) {
+			List<PermissionQuery> queries = new ArrayList<>(rdtos.size());
+			for (CheckPermissionRDTO rdto : rdtos) {
+				queries.add(new PermissionQuery(rdto.getPermission(), rdto.getObjectID()));
+			}
+			return operationService.isPermittedBatch(signedTicket.getUserID(), queries);
+		} else {
+			throw new QInvalidTicketException(signedTicket);
+		}
+	}
+
 	@Override
 	public ValidateTicketResponse isTicketValid(ValidateTicketRequest req) {
 		return idm.validateTicket(req);
@@ -0,0 +1,63 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.api;
+
+/**
+ * The OSGi events posted by the Ticket Server when tickets change, so that
+ * components holding on to the state of tickets (e.g. caches of validated
+ * tickets) can drop it. Events are posted on every node of the cluster when a
+ * QlackClusterService is available, and carry the ID of the ticket in the
+ * {@link #TICKET_ID} property.
+ *
+ * @author European Dynamics SA
+ */
+public final class TicketEvents {
+
+	/**
+	 * The topic of all ticket events, to subscribe with.
+	 */
+	public static final String TOPIC_ALL = "com/eurodyn/qlack2/fuse/ticketserver/Ticket/*";
+
+	/**
+	 * Posted when a ticket is revoked, i.e. it will never be valid again.
+	 */
+	public static final String TOPIC_REVOKED = "com/eurodyn/qlack2/fuse/ticketserver/Ticket/REVOKED";
+
+	/**
+	 * Posted when a ticket is deleted, i.e. it will never be valid again
+	 * (whether or not it is kept as revoked).
+	 */
+	public static final String TOPIC_DELETED = "com/eurodyn/qlack2/fuse/ticketserver/Ticket/DELETED";
+
+	/**
+	 * Posted when the validity of a ticket is changed explicitly.
+	 */
+	public static final String TOPIC_CHANGED = "com/eurodyn/qlack2/fuse/ticketserver/Ticket/CHANGED";
+
+	/**
+	 * The event property holding the ID of the ticket.
+	 */
+	public static final String TICKET_ID = "ticketID";
+
+	/**
+	 * The event property holding the time (in msec) the ticket would have
+	 * expired, for revoked and deleted tickets; absent if the ticket does not
+	 * expire.
+	 */
+	public static final String VALID_UNTIL = "validUntil";
+
+	private TicketEvents() {
+	}
+}
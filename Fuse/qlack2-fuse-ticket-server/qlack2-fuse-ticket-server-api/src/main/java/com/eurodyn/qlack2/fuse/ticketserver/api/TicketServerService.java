@@ -28,7 +28,8 @@ public interface TicketServerService {
 	String createTicket(TicketDTO ticketDTO);
 
 	/**
-	 * Deletes a ticket given its ID.
+	 * Deletes a ticket given its ID. If revokeOnDelete is configured, a ticket
+	 * which has not expired is kept as revoked until it expires instead.
 	 * @param ticketID The ID of the ticket to delete
 	 */
 	void deleteTicket(String ticketID);
@@ -19,9 +19,14 @@ import com.eurodyn.qlack2.fuse.ticketserver.api.TicketServerService;
 import com.eurodyn.qlack2.fuse.ticketserver.api.criteria.TicketSearchCriteria;
 import com.eurodyn.qlack2.fuse.ticketserver.api.criteria.TicketSearchCriteria.PayloadMatch;
 import com.eurodyn.qlack2.fuse.ticketserver.api.exception.QTicketRevokedException;
+import com.eurodyn.qlack2.fuse.ticketserver.impl.cleanup.ExpiredTicketsCleanupJob;
+import com.eurodyn.qlack2.fuse.ticketserver.impl.cleanup.RevokedTicketsCleanupJob;
+import com.eurodyn.qlack2.fuse.ticketserver.impl.events.TicketEventPublisher;
+import com.eurodyn.qlack2.fuse.ticketserver.impl.extension.ValidityExtensionBuffer;
 import com.eurodyn.qlack2.fuse.ticketserver.impl.model.Ticket;
 import com.eurodyn.qlack2.fuse.ticketserver.impl.util.ConverterUtil;
 import com.eurodyn.qlack2.util.liquibase.api.LiquibaseBootMigrationsDoneService;
+import org.apache.aries.blueprint.annotation.config.ConfigProperty;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.ops4j.pax.cdi.api.OsgiService;
@@ -31,13 +36,13 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 import java.text.MessageFormat;
 import java.util.*;
 
@@ -45,6 +50,9 @@ import java.util.*;
 @OsgiServiceProvider(classes = {TicketServerService.class})
 @Transactional
 public class TicketServerServiceImpl implements TicketServerService {
+	/** The number of tickets deleted per transaction when cleaning up */
+	private static final int CLEANUP_CHUNK_SIZE = 1000;
+
 	@PersistenceContext(unitName = "fuse-ticketserver")
 	private EntityManager em;
 
@@ -52,6 +60,21 @@ public class TicketServerServiceImpl implements TicketServerService {
 	@Inject
 	private LiquibaseBootMigrationsDoneService liquibaseBootMigrationsDoneService;
 
+	@Inject
+	private TicketEventPublisher ticketEventPublisher;
+
+	@Inject
+	private ValidityExtensionBuffer validityExtensionBuffer;
+
+	@Inject
+	private ExpiredTicketsCleanupJob expiredTicketsCleanupJob;
+
+	@Inject
+	private RevokedTicketsCleanupJob revokedTicketsCleanupJob;
+
+	@ConfigProperty("${revokeOnDelete}")
+	private boolean revokeOnDelete;
+
 	@Override
 	public String createTicket(TicketDTO ticketDTO) {
 		DateTime now = DateTime.now();
@@ -84,7 +107,20 @@ public class TicketServerServiceImpl implements TicketServerService {
 	@Override
 	public void deleteTicket(String ticketID) {
 		Ticket ticket = em.find(Ticket.class, ticketID);
-		em.remove(ticket);
+		Long validUntil = validityExtensionBuffer.getValidUntil(ticketID,
+				ticket.getValidUntil());
+		long now = DateTime.now().getMillis();
+		if (revokeOnDelete && (validUntil == null || validUntil > now)) {
+			// Keep the ticket as revoked until it expires, so that it remains
+			// denied (e.g. as a JWT ticket of IDM) after a restart.
+			ticket.setRevoked(true);
+			ticket.setValidUntil(validUntil);
+			ticket.setLastModifiedAt(now);
+		} else {
+			em.remove(ticket);
+		}
+		validityExtensionBuffer.discard(ticketID);
+		ticketEventPublisher.deleted(ticketID, validUntil);
 	}
 
 	@Override
@@ -98,16 +134,19 @@ public class TicketServerServiceImpl implements TicketServerService {
 	public boolean isValid(String ticketID) {
 		boolean retVal = false;
 		Ticket ticket = em.find(Ticket.class, ticketID);
+		// Take into account automatic extensions not written yet.
+		Long validUntil = validityExtensionBuffer.getValidUntil(ticketID,
+				ticket.getValidUntil());
 		if (!ticket.isRevoked()
-				&& ((ticket.getValidUntil() == null) || (DateTime.now()
-						.getMillis() < ticket.getValidUntil()))) {
+				&& ((validUntil == null) || (DateTime.now()
+						.getMillis() < validUntil))) {
 			retVal = true;
 		}
 
 		// Check if the ticket should be auto-extended.
 		// Only a valid ticket, with a expiring original duration, having a
 		// auto-extend duration > 0 can be auto-extended.
-		if (retVal && ticket.getValidUntil() != null
+		if (retVal && validUntil != null
 				&& ticket.getAutoExtendDuration() != null
 				&& ticket.getAutoExtendDuration().longValue() > 0) {
 			long now = DateTime.now().getMillis();
@@ -120,7 +159,12 @@ public class TicketServerServiceImpl implements TicketServerService {
 			} else {
 				newValidUntil = ticket.getAutoExtendUntil();
 			}
-			ticket.setValidUntil(newValidUntil);
+			// Write the extension behind if possible, so that validations do
+			// not update the ticket every time.
+			if (!validityExtensionBuffer.extend(ticketID,
+					ticket.getValidUntil(), newValidUntil)) {
+				ticket.setValidUntil(newValidUntil);
+			}
 		}
 
 		return retVal;
@@ -129,7 +173,8 @@ public class TicketServerServiceImpl implements TicketServerService {
 	@Override
 	public Long getValidUntil(String ticketID) {
 		Ticket ticket = em.find(Ticket.class, ticketID);
-		return ticket.getValidUntil();
+		return validityExtensionBuffer.getValidUntil(ticketID,
+				ticket.getValidUntil());
 	}
 
 	@Override
@@ -140,8 +185,14 @@ public class TicketServerServiceImpl implements TicketServerService {
 					"Cannot revoke ticket with ID {0}; the ticket is already "
 							+ "revoked", new Object[] { ticketID }));
 		}
+		// Keep the extended validity, so that the revoked ticket is not
+		// cleaned up before it would have expired.
+		ticket.setValidUntil(validityExtensionBuffer.getValidUntil(ticketID,
+				ticket.getValidUntil()));
 		ticket.setRevoked(true);
 		ticket.setLastModifiedAt(DateTime.now().getMillis());
+		validityExtensionBuffer.discard(ticketID);
+		ticketEventPublisher.revoked(ticketID, ticket.getValidUntil());
 	}
 
 	@Override
@@ -162,6 +213,8 @@ public class TicketServerServiceImpl implements TicketServerService {
 		}
 		ticket.setValidUntil(validUntil);
 		ticket.setLastModifiedAt(DateTime.now().getMillis());
+		validityExtensionBuffer.discard(ticketID);
+		ticketEventPublisher.changed(ticketID);
 	}
 
 	@Override
@@ -175,11 +228,18 @@ public class TicketServerServiceImpl implements TicketServerService {
 		}
 		ticket.setAutoExtendUntil(validUntil);
 		ticket.setLastModifiedAt(DateTime.now().getMillis());
+		ticketEventPublisher.changed(ticketID);
 	}
 
 	@Override
 	public TicketDTO getTicket(String ticketID) {
-		return ConverterUtil.ticketToTicketDTO(em.find(Ticket.class, ticketID));
+		TicketDTO ticketDTO = ConverterUtil.ticketToTicketDTO(em.find(
+				Ticket.class, ticketID));
+		if (ticketDTO != null) {
+			ticketDTO.setValidUntil(validityExtensionBuffer.getValidUntil(
+					ticketID, ticketDTO.getValidUntil()));
+		}
+		return ticketDTO;
 	}
 
 	@Override
@@ -240,32 +300,20 @@ public class TicketServerServiceImpl implements TicketServerService {
 	}
 
 	@Override
+	@Transactional(TxType.NOT_SUPPORTED)
 	public void cleanupExpired() {
-		Query query = em
-				.createQuery("DELETE FROM Ticket t WHERE t.validUntil < :currentDate");
-		query.setParameter("currentDate", DateTime.now().getMillis());
-		query.executeUpdate();
-
-		// Flush and clear the entity manager so as to pick up the deletion of
-		// the tickets above
-		// since the delete query bypasses the first-level cache of the entity
-		// manager
-		em.flush();
-		em.clear();
+		int deleted;
+		do {
+			deleted = expiredTicketsCleanupJob.deleteExpired(CLEANUP_CHUNK_SIZE);
+		} while (deleted == CLEANUP_CHUNK_SIZE);
 	}
 
 	@Override
+	@Transactional(TxType.NOT_SUPPORTED)
 	public void cleanupRevoked() {
-		Query query = em
-				.createQuery("DELETE FROM Ticket t WHERE t.revoked = true");
-		query.executeUpdate();
-
-		// Flush and clear the entity manager so as to pick up the deletion of
-		// the tickets above
-		// since the delete query bypasses the first-level cache of the entity
-		// manager
-
-		em.flush();
-		em.clear();
+		int deleted;
+		do {
+			deleted = revokedTicketsCleanupJob.deleteRevoked(CLEANUP_CHUNK_SIZE);
+		} while (deleted == CLEANUP_CHUNK_SIZE);
 	}
 }
@@ -0,0 +1,99 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.impl.cleanup;
+
+import com.eurodyn.qlack2.fuse.ticketserver.impl.extension.ValidityExtensionBuffer;
+import com.eurodyn.qlack2.util.cleanup.api.CleanupJob;
+import org.apache.aries.blueprint.annotation.config.ConfigProperty;
+import org.ops4j.pax.cdi.api.OsgiServiceProvider;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+import java.util.List;
+
+/**
+ * Deletes the expired tickets, earliest expired first, using the index on the
+ * validity of the tickets.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+@OsgiServiceProvider(classes = {CleanupJob.class})
+@Transactional(TxType.REQUIRES_NEW)
+public class ExpiredTicketsCleanupJob implements CleanupJob {
+	@PersistenceContext(unitName = "fuse-ticketserver")
+	private EntityManager em;
+
+	@Inject
+	private ValidityExtensionBuffer validityExtensionBuffer;
+
+	@ConfigProperty("${enableCleanup}")
+	private boolean enableCleanup;
+
+	@ConfigProperty("${cleanupExpired}")
+	private boolean cleanupExpired;
+
+	@Override
+	public String getName() {
+		return "ticketserver.expired";
+	}
+
+	@Override
+	public int deleteChunk(int maxRows) {
+		return enableCleanup && cleanupExpired ? deleteExpired(maxRows) : 0;
+	}
+
+	@Override
+	public long getLag() {
+		if (!enableCleanup || !cleanupExpired) {
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		Long oldest = em.createQuery(
+				"SELECT MIN(t.validUntil) FROM Ticket t WHERE t.validUntil < :now", Long.class)
+				.setParameter("now", now)
+				.getSingleResult();
+		return oldest != null ? now - oldest : 0;
+	}
+
+	/**
+	 * Deletes some of the expired tickets, regardless of the configuration.
+	 *
+	 * @param maxRows The maximum number of tickets to delete.
+	 * @return The number of tickets deleted.
+	 */
+	public int deleteExpired(int maxRows) {
+		// Write the pending extensions first, so that tickets still in use
+		// are not deleted.
+		validityExtensionBuffer.flush();
+
+		List<String> ticketIDs = em.createQuery(
+				"SELECT t.id FROM Ticket t WHERE t.validUntil < :now ORDER BY t.validUntil",
+				String.class)
+				.setParameter("now", System.currentTimeMillis())
+				.setMaxResults(maxRows)
+				.getResultList();
+		if (ticketIDs.isEmpty()) {
+			return 0;
+		}
+		return em.createQuery("DELETE FROM Ticket t WHERE t.id IN :ids")
+				.setParameter("ids", ticketIDs)
+				.executeUpdate();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.impl.events;
+
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketEvents;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterListener;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterService;
+
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exchanges {@link TicketEvents} with the other nodes of the cluster.
+ * Messages have the form 'nodeID typeTicketID[ validUntil]', where type is
+ * 'R' (revoked), 'D' (deleted) or 'C' (changed), and validUntil is the time
+ * a revoked or deleted ticket would have expired, if any. This class is only loaded when a QlackClusterService is
+ * present, so that the Ticket Server does not require the cluster bundles.
+ */
+class TicketEventClusterSync extends QlackClusterListener {
+	private static final Logger LOGGER = Logger.getLogger(TicketEventClusterSync.class.getName());
+	static final String REVOKED = "R";
+	static final String DELETED = "D";
+	static final String CHANGED = "C";
+
+	private final String nodeID = UUID.randomUUID().toString();
+	private final TicketEventPublisher publisher;
+	private final QlackClusterService clusterService;
+	private final String registrationID;
+
+	TicketEventClusterSync(TicketEventPublisher publisher, Object clusterService) {
+		this.publisher = publisher;
+		this.clusterService = (QlackClusterService) clusterService;
+		this.registrationID = this.clusterService.addListener(this,
+				TicketEventPublisher.CLUSTER_TOPIC);
+	}
+
+	static String message(String type, String ticketID, Long validUntil) {
+		return validUntil != null ? type + ticketID + " " + validUntil : type + ticketID;
+	}
+
+	void publish(String message) {
+		clusterService.publish(TicketEventPublisher.CLUSTER_TOPIC, nodeID + " " + message);
+	}
+
+	void close() {
+		clusterService.removeListener(registrationID, TicketEventPublisher.CLUSTER_TOPIC);
+	}
+
+	@Override
+	public void onMessage(String message) {
+		int separator = message.indexOf(' ');
+		if (separator < 1 || separator >= message.length() - 2
+				|| nodeID.equals(message.substring(0, separator))) {
+			return;
+		}
+
+		String type = message.substring(separator + 1, separator + 2);
+		String ticketID = message.substring(separator + 2);
+		Long validUntil = null;
+		int validUntilSeparator = ticketID.indexOf(' ');
+		if (validUntilSeparator >= 0) {
+			try {
+				validUntil = Long.valueOf(ticketID.substring(validUntilSeparator + 1));
+			} catch (NumberFormatException e) {
+				LOGGER.log(Level.WARNING, "Ignoring invalid ticket event {0}.", message);
+				return;
+			}
+			ticketID = ticketID.substring(0, validUntilSeparator);
+		}
+		LOGGER.log(Level.FINEST, "Received ticket event {0}{1}.", new Object[]{type, ticketID});
+		if (REVOKED.equals(type)) {
+			publisher.postLocally(TicketEvents.TOPIC_REVOKED, ticketID, validUntil);
+		} else if (DELETED.equals(type)) {
+			publisher.postLocally(TicketEvents.TOPIC_DELETED, ticketID, validUntil);
+		} else if (CHANGED.equals(type)) {
+			publisher.postLocally(TicketEvents.TOPIC_CHANGED, ticketID, null);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.impl.events;
+
+import com.eurodyn.qlack2.fuse.ticketserver.api.TicketEvents;
+import org.ops4j.pax.cdi.api.OsgiService;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.util.tracker.ServiceTracker;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Posts the {@link TicketEvents} of this node as OSGi events. When a
+ * QlackClusterService is available, the events are also published to the
+ * other nodes of the cluster, where they are posted again locally.
+ *
+ * Events of this node are delivered synchronously, so that e.g. a revoked
+ * ticket is no longer considered valid by the time the revocation returns.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+public class TicketEventPublisher {
+	private static final Logger LOGGER = Logger.getLogger(TicketEventPublisher.class.getName());
+
+	/**
+	 * The topic on which events are exchanged between cluster nodes.
+	 */
+	static final String CLUSTER_TOPIC = "qlack2-fuse-ticketserver-tickets";
+
+	private static final String CLUSTER_SERVICE =
+			"com.eurodyn.qlack2.util.cluster.core.QlackClusterService";
+
+	@OsgiService
+	@Inject
+	private EventAdmin eventAdmin;
+
+	private ServiceTracker<Object, Object> clusterTracker;
+
+	@PostConstruct
+	public void init() {
+		trackClusterService();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (clusterTracker != null) {
+			clusterTracker.close();
+		}
+	}
+
+	/**
+	 * Announces that a ticket was revoked.
+	 *
+	 * @param validUntil The time the ticket would have expired, null if it
+	 * does not expire.
+	 */
+	public void revoked(String ticketID, Long validUntil) {
+		send(TicketEvents.TOPIC_REVOKED, ticketID, validUntil);
+		publish(TicketEventClusterSync.message(TicketEventClusterSync.REVOKED, ticketID,
+				validUntil));
+	}
+
+	/**
+	 * Announces that a ticket was deleted.
+	 *
+	 * @param validUntil The time the ticket would have expired, null if it
+	 * does not expire.
+	 */
+	public void deleted(String ticketID, Long validUntil) {
+		send(TicketEvents.TOPIC_DELETED, ticketID, validUntil);
+		publish(TicketEventClusterSync.message(TicketEventClusterSync.DELETED, ticketID,
+				validUntil));
+	}
+
+	/**
+	 * Announces that the validity of a ticket was changed.
+	 */
+	public void changed(String ticketID) {
+		send(TicketEvents.TOPIC_CHANGED, ticketID, null);
+		publish(TicketEventClusterSync.message(TicketEventClusterSync.CHANGED, ticketID, null));
+	}
+
+	/**
+	 * Posts (asynchronously) an event received from another node.
+	 */
+	void postLocally(String topic, String ticketID, Long validUntil) {
+		eventAdmin.postEvent(new Event(topic, properties(ticketID, validUntil)));
+	}
+
+	private void send(String topic, String ticketID, Long validUntil) {
+		eventAdmin.sendEvent(new Event(topic, properties(ticketID, validUntil)));
+	}
+
+	private static Map<String, Object> properties(String ticketID, Long validUntil) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(TicketEvents.TICKET_ID, ticketID);
+		if (validUntil != null) {
+			properties.put(TicketEvents.VALID_UNTIL, validUntil);
+		}
+		return properties;
+	}
+
+	private void publish(String message) {
+		Object sync = clusterTracker != null ? clusterTracker.getService() : null;
+		if (sync != null) {
+			((TicketEventClusterSync) sync).publish(message);
+		}
+	}
+
+	/**
+	 * Tracks the (optional) QlackClusterService, registering a listener for
+	 * the events of the other nodes whenever the service appears.
+	 */
+	private void trackClusterService() {
+		Bundle bundle = FrameworkUtil.getBundle(TicketEventPublisher.class);
+		if (bundle == null || bundle.getBundleContext() == null) {
+			return;
+		}
+
+		clusterTracker = new ServiceTracker<Object, Object>(bundle.getBundleContext(),
+				CLUSTER_SERVICE, null) {
+			@Override
+			public Object addingService(ServiceReference<Object> reference) {
+				try {
+					TicketEventClusterSync sync = new TicketEventClusterSync(
+							TicketEventPublisher.this, context.getService(reference));
+					LOGGER.log(Level.CONFIG, "Propagating ticket events on cluster topic {0}.",
+							CLUSTER_TOPIC);
+					return sync;
+				} catch (LinkageError e) {
+					LOGGER.log(Level.WARNING, "Cluster support is not available to the Ticket "
+							+ "Server, ticket events will not be propagated.", e);
+					context.ungetService(reference);
+					return null;
+				}
+			}
+
+			@Override
+			public void removedService(ServiceReference<Object> reference, Object service) {
+				((TicketEventClusterSync) service).close();
+				context.ungetService(reference);
+			}
+		};
+		clusterTracker.open();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.impl.extension;
+
+import org.apache.aries.blueprint.annotation.config.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the automatic extensions of the validity of tickets in memory and
+ * writes them to the database periodically, so that validating a ticket does
+ * not update (and lock) its row every time.
+ *
+ * For each ticket only the latest extension (the high-water mark of its
+ * validity) is kept, and validity checks take it into account. An extension
+ * is written immediately instead, when the validity stored in the database
+ * is about to run out (i.e. is less than the write-behind threshold away),
+ * so that other nodes and a restart of this node never find a ticket in use
+ * expired. The threshold should therefore be well above the write-behind
+ * interval.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+public class ValidityExtensionBuffer {
+	private static final Logger LOGGER = Logger.getLogger(ValidityExtensionBuffer.class.getName());
+
+	/** Whether automatic extensions are written behind */
+	@ConfigProperty("${writeBehindExtension}")
+	private boolean enabled;
+
+	/** How often buffered extensions are written (msec) */
+	@ConfigProperty("${writeBehindInterval}")
+	private long interval;
+
+	/** The remaining validity (msec) below which extensions are written at once */
+	@ConfigProperty("${writeBehindThreshold}")
+	private long threshold;
+
+	@Inject
+	private ValidityExtensionWriter writer;
+
+	/** The extended validity of tickets not written yet, by ticket ID */
+	private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Ticket validity write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::flushQuietly, interval, interval,
+				TimeUnit.MILLISECONDS);
+		LOGGER.log(Level.FINE, "Started ticket validity write-behind every {0} msec.", interval);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+			flushQuietly();
+		}
+	}
+
+	/**
+	 * Returns the validity of a ticket, taking into account the extensions
+	 * not written yet.
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param storedValidUntil The validity of the ticket in the database.
+	 */
+	public Long getValidUntil(String ticketID, Long storedValidUntil) {
+		Long validUntil = pending.get(ticketID);
+		if (validUntil == null || storedValidUntil == null || storedValidUntil >= validUntil) {
+			return storedValidUntil;
+		}
+		return validUntil;
+	}
+
+	/**
+	 * Records the automatic extension of a ticket.
+	 *
+	 * @param ticketID The ID of the ticket.
+	 * @param storedValidUntil The validity of the ticket in the database.
+	 * @param validUntil The extended validity of the ticket.
+	 * @return true if the extension will be written later, false if the
+	 * caller should update the ticket itself.
+	 */
+	public boolean extend(String ticketID, long storedValidUntil, long validUntil) {
+		if (!enabled || storedValidUntil - System.currentTimeMillis() < threshold) {
+			discard(ticketID);
+			return false;
+		}
+		pending.merge(ticketID, validUntil, Math::max);
+		return true;
+	}
+
+	/**
+	 * Forgets the extensions of a ticket not written yet, e.g. because the
+	 * ticket was revoked or its validity was set explicitly.
+	 */
+	public void discard(String ticketID) {
+		pending.remove(ticketID);
+	}
+
+	/**
+	 * Writes the buffered extensions to the database, within the current
+	 * transaction if there is one.
+	 */
+	public void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		Map<String, Long> batch = new HashMap<>();
+		for (Map.Entry<String, Long> entry : pending.entrySet()) {
+			batch.put(entry.getKey(), entry.getValue());
+		}
+		// Extensions recorded while writing are kept for the next flush.
+		for (Map.Entry<String, Long> entry : batch.entrySet()) {
+			pending.remove(entry.getKey(), entry.getValue());
+		}
+
+		try {
+			int updated = writer.write(batch);
+			LOGGER.log(Level.FINEST, "Wrote the extended validity of {0} tickets.", updated);
+		} catch (RuntimeException e) {
+			// Put the extensions back, unless they have been superseded.
+			for (Map.Entry<String, Long> entry : batch.entrySet()) {
+				pending.merge(entry.getKey(), entry.getValue(), Math::max);
+			}
+			throw e;
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			LOGGER.log(Level.SEVERE, "Could not write the extended validity of tickets.", e);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.fuse.ticketserver.impl.extension;
+
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the buffered automatic extensions of tickets to the database.
+ * Each extension is written as a conditional bulk update, so that a
+ * revocation or a change of validity committed in the meantime (on any node)
+ * is never overwritten. Tickets extended to the same validity are updated
+ * together, in chunks.
+ *
+ * @author European Dynamics SA
+ */
+@Singleton
+@Transactional
+public class ValidityExtensionWriter {
+	/** The maximum number of tickets updated by a single statement */
+	private static final int BATCH_SIZE = 500;
+
+	@PersistenceContext(unitName = "fuse-ticketserver")
+	private EntityManager em;
+
+	/**
+	 * Extends the validity of tickets. A ticket is only updated if it is not
+	 * revoked and its validity is not already later than the given one (e.g.
+	 * because it was extended by another node in the meantime).
+	 *
+	 * @param validUntils The new validity of each ticket, by ticket ID.
+	 * @return The number of tickets updated.
+	 */
+	public int write(Map<String, Long> validUntils) {
+		Map<Long, List<String>> ticketIDs = new TreeMap<>();
+		for (Map.Entry<String, Long> entry : validUntils.entrySet()) {
+			ticketIDs.computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
+					.add(entry.getKey());
+		}
+
+		int updated = 0;
+		for (Map.Entry<Long, List<String>> entry : ticketIDs.entrySet()) {
+			// Update the rows in the same order on every node, so that
+			// concurrent flushes do not deadlock.
+			List<String> ids = entry.getValue();
+			Collections.sort(ids);
+			for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+				updated += em.createQuery("UPDATE Ticket t SET t.validUntil = :validUntil "
+						+ "WHERE t.id IN :ids AND t.revoked = false "
+						+ "AND t.validUntil < :validUntil")
+						.setParameter("validUntil", entry.getKey())
+						.setParameter("ids", ids.subList(from,
+								Math.min(from + BATCH_SIZE, ids.size())))
+						.executeUpdate();
+			}
+		}
+
+		return updated;
+	}
+}
@@ -69,6 +69,24 @@ public class TicketServerImplTest extends ITTestConf {
         Assert.assertTrue(ticketServerService.isValid(ticketID));
     }
 
+    @Test
+    public void isValidAutoExtend(){
+        long now = new Date().getTime();
+        Long validUntil = now + 600000;
+
+        TicketDTO ticketDTO = TestUtilities.createTicketDTO();
+        ticketDTO.setValidUntil(validUntil);
+        ticketDTO.setAutoExtendValidUntil(null);
+        ticketDTO.setAutoExtendDuration(3600000L);
+        String ticketID = ticketServerService.createTicket(ticketDTO);
+        Assert.assertNotNull(ticketID);
+
+        Assert.assertTrue(ticketServerService.isValid(ticketID));
+        Assert.assertTrue(ticketServerService.getValidUntil(ticketID) >= now + 3600000);
+        Assert.assertEquals(ticketServerService.getValidUntil(ticketID),
+            ticketServerService.getTicket(ticketID).getValidUntil());
+    }
+
     @Test
     public void getValidUntil(){
         TicketDTO ticketDTO = TestUtilities.createTicketDTO();
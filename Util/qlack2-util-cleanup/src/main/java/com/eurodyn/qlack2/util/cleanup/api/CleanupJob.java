@@ -0,0 +1,35 @@
+package com.eurodyn.qlack2.util.cleanup.api;
+
+/**
+ * A job periodically deleting obsolete rows (expired tickets, old sessions
+ * etc.). Jobs are registered as OSGi services and run by the cleanup engine,
+ * which deletes rows a chunk at a time (pausing between chunks) on a single
+ * node of the cluster.
+ *
+ * Implementations should select the rows to delete with predicates served by
+ * an index, so that deleting a chunk does not scan (and lock) the table.
+ */
+public interface CleanupJob {
+
+	/**
+	 * @return A unique name for the job, used in logs and statistics, e.g.
+	 * 'ticketserver.expired'.
+	 */
+	String getName();
+
+	/**
+	 * Deletes some of the rows to be deleted, in a transaction of its own.
+	 *
+	 * @param maxRows The maximum number of rows to delete.
+	 * @return The number of rows deleted; less than maxRows when no rows are
+	 * left to delete.
+	 */
+	int deleteChunk(int maxRows);
+
+	/**
+	 * @return How far behind the job is, i.e. how long ago (in msec) the
+	 * oldest row still to be deleted became eligible for deletion; 0 when no
+	 * rows are left to delete.
+	 */
+	long getLag();
+}
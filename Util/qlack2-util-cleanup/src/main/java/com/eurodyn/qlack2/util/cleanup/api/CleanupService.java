@@ -0,0 +1,25 @@
+package com.eurodyn.qlack2.util.cleanup.api;
+
+import java.util.Map;
+
+/**
+ * The cleanup engine, running the {@link CleanupJob} services.
+ */
+public interface CleanupService {
+
+	/**
+	 * Returns the statistics of the cleanup jobs, keyed by job name and
+	 * statistic, e.g. 'ticketserver.expired.rowsPerSecond':
+	 * <ul>
+	 * <li>deleted: The rows deleted since startup.</li>
+	 * <li>lastRun: The time of the last run (msec since the epoch).</li>
+	 * <li>lastRun.deleted: The rows deleted in the last run.</li>
+	 * <li>rowsPerSecond: The rows deleted per second in the last run.</li>
+	 * <li>lag: The lag of the job after the last run (msec).</li>
+	 * <li>failures: The runs that failed since startup.</li>
+	 * </ul>
+	 * The 'leader' statistic is 1 if this node runs the jobs of the cluster, 0
+	 * otherwise.
+	 */
+	Map<String, Long> getStatistics();
+}
@@ -0,0 +1,180 @@
+package com.eurodyn.qlack2.util.cleanup.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.eurodyn.qlack2.util.cleanup.api.CleanupJob;
+import com.eurodyn.qlack2.util.cleanup.api.CleanupService;
+
+/**
+ * Runs the registered {@link CleanupJob}s periodically. Each job deletes its
+ * rows a chunk at a time, each chunk in its own transaction, pausing between
+ * chunks so that other transactions get a chance to use the tables. Only the
+ * leader of the cluster runs the jobs.
+ */
+public class CleanupEngine implements CleanupService {
+	private static final Logger LOGGER = Logger.getLogger(CleanupEngine.class.getName());
+
+	private boolean enabled;
+	private long startupDelay;
+	private long interval;
+	private int chunkSize;
+	private long chunkPause;
+	private long heartbeatInterval;
+
+	/** The registered jobs (a dynamic list maintained by blueprint) */
+	private List<CleanupJob> jobs;
+
+	private final Map<String, JobStatistics> statistics = new ConcurrentHashMap<>();
+	private LeaderElection leaderElection;
+	private ScheduledExecutorService executor;
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setStartupDelay(long startupDelay) {
+		this.startupDelay = startupDelay;
+	}
+
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setChunkPause(long chunkPause) {
+		this.chunkPause = chunkPause;
+	}
+
+	public void setHeartbeatInterval(long heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	public void setJobs(List<CleanupJob> jobs) {
+		this.jobs = jobs;
+	}
+
+	public void init() {
+		if (!enabled) {
+			LOGGER.log(Level.CONFIG, "Cleanup engine is disabled.");
+			return;
+		}
+		leaderElection = new LeaderElection(heartbeatInterval);
+		leaderElection.start();
+
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Cleanup engine");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::runJobs, startupDelay, interval,
+				TimeUnit.MILLISECONDS);
+		LOGGER.log(Level.CONFIG, "Started cleanup engine every {0} msec, deleting "
+				+ "{1} rows per chunk.", new Object[] { interval, chunkSize });
+	}
+
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (leaderElection != null) {
+			leaderElection.stop();
+			leaderElection = null;
+		}
+	}
+
+	@Override
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> retVal = new HashMap<>();
+		retVal.put("leader", leaderElection != null && leaderElection.isLeader() ? 1L : 0L);
+		for (Map.Entry<String, JobStatistics> entry : statistics.entrySet()) {
+			entry.getValue().addTo(entry.getKey(), retVal);
+		}
+
+		return retVal;
+	}
+
+	private void runJobs() {
+		if (!leaderElection.isLeader()) {
+			LOGGER.log(Level.FINEST, "Not the cleanup leader, skipping cleanup.");
+			return;
+		}
+		for (CleanupJob job : jobs) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			String name = null;
+			try {
+				name = job.getName();
+				run(name, job);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.log(Level.FINEST, "Cleanup engine interrupted.");
+				return;
+			} catch (Exception e) {
+				// Also covers jobs going away while running.
+				if (name != null) {
+					statistics.computeIfAbsent(name, n -> new JobStatistics()).failures++;
+				}
+				LOGGER.log(Level.SEVERE, "Cleanup job " + name + " failed.", e);
+			}
+		}
+	}
+
+	private void run(String name, CleanupJob job) throws InterruptedException {
+		long start = System.nanoTime();
+		long deleted = 0;
+		int chunk;
+		do {
+			if (deleted > 0 && chunkPause > 0) {
+				Thread.sleep(chunkPause);
+			}
+			chunk = job.deleteChunk(chunkSize);
+			deleted += chunk;
+			// Stop if another node took over in the meantime.
+		} while (chunk >= chunkSize && leaderElection.isLeader());
+		long elapsed = System.nanoTime() - start;
+
+		JobStatistics stats = statistics.computeIfAbsent(name, n -> new JobStatistics());
+		stats.lastRun = System.currentTimeMillis();
+		stats.lastRunDeleted = deleted;
+		stats.deleted += deleted;
+		stats.rowsPerSecond = elapsed > 0 ? deleted * 1000000000L / elapsed : 0;
+		stats.lag = job.getLag();
+		LOGGER.log(deleted > 0 ? Level.FINE : Level.FINEST,
+				"Cleanup job {0} deleted {1} rows ({2} rows/sec, lag {3} msec).",
+				new Object[] { name, deleted, stats.rowsPerSecond, stats.lag });
+	}
+
+	/**
+	 * The statistics of a job; only written by the engine thread.
+	 */
+	private static class JobStatistics {
+		private volatile long deleted;
+		private volatile long lastRun;
+		private volatile long lastRunDeleted;
+		private volatile long rowsPerSecond;
+		private volatile long lag;
+		private volatile long failures;
+
+		void addTo(String name, Map<String, Long> statistics) {
+			statistics.put(name + ".deleted", deleted);
+			statistics.put(name + ".lastRun", lastRun);
+			statistics.put(name + ".lastRun.deleted", lastRunDeleted);
+			statistics.put(name + ".rowsPerSecond", rowsPerSecond);
+			statistics.put(name + ".lag", lag);
+			statistics.put(name + ".failures", failures);
+		}
+	}
+}
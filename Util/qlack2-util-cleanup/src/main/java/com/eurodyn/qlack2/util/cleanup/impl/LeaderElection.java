@@ -0,0 +1,160 @@
+package com.eurodyn.qlack2.util.cleanup.impl;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Elects the node of the cluster running the cleanup jobs. Every node
+ * publishes a heartbeat carrying its ID on a cluster topic, and the longest
+ * running node among those heard from recently is the leader. IDs start with
+ * the (zero-padded) start time of the node, so they sort by age.
+ *
+ * When no QlackClusterService is available this node is the leader. A node
+ * joining the cluster does not consider itself the leader before it has had
+ * the chance to hear from the other nodes.
+ */
+class LeaderElection {
+	private static final Logger LOGGER = Logger.getLogger(LeaderElection.class.getName());
+
+	/** The topic on which heartbeats are exchanged between cluster nodes */
+	static final String CLUSTER_TOPIC = "qlack2-util-cleanup-leader";
+
+	private static final String CLUSTER_SERVICE =
+			"com.eurodyn.qlack2.util.cluster.core.QlackClusterService";
+
+	/** The number of heartbeats a node may miss before it is considered gone */
+	private static final int MISSED_HEARTBEATS = 3;
+
+	private final String nodeID = String.format("%013d", System.currentTimeMillis())
+			+ "-" + UUID.randomUUID();
+	private final long heartbeatInterval;
+
+	/** The time each node was last heard from, by node ID */
+	private final Map<String, Long> lastHeard = new ConcurrentHashMap<>();
+	private volatile long joinedAt;
+	private volatile boolean leader;
+
+	private ServiceTracker<Object, Object> clusterTracker;
+	private ScheduledExecutorService heartbeats;
+
+	LeaderElection(long heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	void start() {
+		trackClusterService();
+		heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Cleanup leader election");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeats.scheduleAtFixedRate(this::heartbeat, 0, heartbeatInterval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	void stop() {
+		if (heartbeats != null) {
+			heartbeats.shutdownNow();
+		}
+		if (clusterTracker != null) {
+			clusterTracker.close();
+		}
+	}
+
+	/**
+	 * @return Whether this node should run the cleanup jobs.
+	 */
+	boolean isLeader() {
+		Object sync = clusterTracker != null ? clusterTracker.getService() : null;
+		if (sync == null) {
+			return true;
+		}
+
+		long now = System.currentTimeMillis();
+		long timeout = MISSED_HEARTBEATS * heartbeatInterval;
+		if (now - joinedAt < timeout) {
+			return false;
+		}
+		String leaderID = nodeID;
+		for (Map.Entry<String, Long> entry : lastHeard.entrySet()) {
+			if (entry.getValue() < now - timeout) {
+				lastHeard.remove(entry.getKey(), entry.getValue());
+			} else if (entry.getKey().compareTo(leaderID) < 0) {
+				leaderID = entry.getKey();
+			}
+		}
+
+		boolean retVal = leaderID.equals(nodeID);
+		if (retVal != leader) {
+			leader = retVal;
+			LOGGER.log(Level.INFO, retVal ? "This node is now the cleanup leader."
+					: "Node {0} is now the cleanup leader.", leaderID);
+		}
+		return retVal;
+	}
+
+	void heard(String otherNodeID) {
+		lastHeard.put(otherNodeID, System.currentTimeMillis());
+	}
+
+	private void heartbeat() {
+		Object sync = clusterTracker != null ? clusterTracker.getService() : null;
+		if (sync != null) {
+			try {
+				((LeaderElectionClusterSync) sync).publish(nodeID);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Could not publish the cleanup heartbeat.", e);
+			}
+		}
+	}
+
+	/**
+	 * Tracks the (optional) QlackClusterService, listening to the heartbeats
+	 * of the other nodes whenever the service appears.
+	 */
+	private void trackClusterService() {
+		Bundle bundle = FrameworkUtil.getBundle(LeaderElection.class);
+		if (bundle == null || bundle.getBundleContext() == null) {
+			return;
+		}
+
+		clusterTracker = new ServiceTracker<Object, Object>(bundle.getBundleContext(),
+				CLUSTER_SERVICE, null) {
+			@Override
+			public Object addingService(ServiceReference<Object> reference) {
+				try {
+					LeaderElectionClusterSync sync = new LeaderElectionClusterSync(
+							LeaderElection.this, context.getService(reference));
+					joinedAt = System.currentTimeMillis();
+					lastHeard.clear();
+					LOGGER.log(Level.CONFIG, "Electing the cleanup leader on cluster topic {0}.",
+							CLUSTER_TOPIC);
+					return sync;
+				} catch (LinkageError e) {
+					LOGGER.log(Level.WARNING, "Cluster support is not available to the cleanup "
+							+ "engine, cleanup will run on every node.", e);
+					context.ungetService(reference);
+					return null;
+				}
+			}
+
+			@Override
+			public void removedService(ServiceReference<Object> reference, Object service) {
+				((LeaderElectionClusterSync) service).close();
+				context.ungetService(reference);
+			}
+		};
+		clusterTracker.open();
+	}
+}
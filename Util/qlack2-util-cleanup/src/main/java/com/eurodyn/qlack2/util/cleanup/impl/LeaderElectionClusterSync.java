@@ -0,0 +1,37 @@
+package com.eurodyn.qlack2.util.cleanup.impl;
+
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterListener;
+import com.eurodyn.qlack2.util.cluster.core.QlackClusterService;
+
+/**
+ * Exchanges the heartbeats of the {@link LeaderElection} with the other nodes
+ * of the cluster. This class is only loaded when a QlackClusterService is
+ * present, so that the cleanup engine does not require the cluster bundles.
+ */
+class LeaderElectionClusterSync extends QlackClusterListener {
+	private final LeaderElection election;
+	private final QlackClusterService clusterService;
+	private final String registrationID;
+
+	LeaderElectionClusterSync(LeaderElection election, Object clusterService) {
+		this.election = election;
+		this.clusterService = (QlackClusterService) clusterService;
+		this.registrationID = this.clusterService.addListener(this,
+				LeaderElection.CLUSTER_TOPIC);
+	}
+
+	void publish(String nodeID) {
+		clusterService.publish(LeaderElection.CLUSTER_TOPIC, nodeID);
+	}
+
+	void close() {
+		clusterService.removeListener(registrationID, LeaderElection.CLUSTER_TOPIC);
+	}
+
+	@Override
+	public void onMessage(String message) {
+		if (message != null && !message.isEmpty()) {
+			election.heard(message);
+		}
+	}
+}
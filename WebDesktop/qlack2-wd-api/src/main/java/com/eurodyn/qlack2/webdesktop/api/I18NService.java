@@ -3,10 +3,14 @@ package com.eurodyn.qlack2.webdesktop.api;
 import java.util.List;
 import java.util.Map;
 
+import com.eurodyn.qlack2.webdesktop.api.dto.LexiconBundleDTO;
 import com.eurodyn.qlack2.webdesktop.api.dto.LexiconLanguageDTO;
 
 public interface I18NService {
 	List<LexiconLanguageDTO> getActiveLanguages();
 	Map<String, String> getModuleTranslations(String groupName, String locale);
 	Map<String, Map<String, String>> getTranslations(String locale);
+	long getModuleTranslationsVersion(String groupName, String locale);
+	LexiconBundleDTO getModuleTranslationBundle(String groupName, String locale);
+	LexiconBundleDTO getModuleTranslationChanges(String groupName, String locale, long sinceVersion);
 }
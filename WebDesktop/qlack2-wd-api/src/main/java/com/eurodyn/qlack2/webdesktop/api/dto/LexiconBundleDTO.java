@@ -0,0 +1,72 @@
+/*
+* Copyright 2014 EUROPEAN DYNAMICS SA <info@eurodyn.com>
+*
+* Licensed under the EUPL, Version 1.1 only (the "License").
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+* https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and
+* limitations under the Licence.
+*/
+package com.eurodyn.qlack2.webdesktop.api.dto;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The translations of a module at a specific version; either all of them
+ * (complete) or only those changed since an earlier version.
+ */
+public class LexiconBundleDTO implements Serializable {
+	private static final long serialVersionUID = 7385294610538476012L;
+
+	private String groupName;
+	private String locale;
+	private long version;
+	private boolean complete;
+	private Map<String, String> translations;
+
+	public String getGroupName() {
+		return groupName;
+	}
+
+	public void setGroupName(String groupName) {
+		this.groupName = groupName;
+	}
+
+	public String getLocale() {
+		return locale;
+	}
+
+	public void setLocale(String locale) {
+		this.locale = locale;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+
+	public Map<String, String> getTranslations() {
+		return translations;
+	}
+
+	public void setTranslations(Map<String, String> translations) {
+		this.translations = translations;
+	}
+}
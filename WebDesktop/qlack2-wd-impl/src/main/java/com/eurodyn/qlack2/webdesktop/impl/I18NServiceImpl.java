@@ -5,8 +5,10 @@ import com.eurodyn.qlack2.fuse.lexicon.api.KeyService;
 import com.eurodyn.qlack2.fuse.lexicon.api.LanguageService;
 import com.eurodyn.qlack2.fuse.lexicon.api.dto.GroupDTO;
 import com.eurodyn.qlack2.webdesktop.api.I18NService;
+import com.eurodyn.qlack2.webdesktop.api.dto.LexiconBundleDTO;
 import com.eurodyn.qlack2.webdesktop.api.dto.LexiconLanguageDTO;
 import com.eurodyn.qlack2.webdesktop.impl.mappers.LanguageDTOMapperImpl;
+import com.eurodyn.qlack2.webdesktop.impl.mappers.LexiconBundleDTOMapperImpl;
 import org.ops4j.pax.cdi.api.OsgiService;
 import org.ops4j.pax.cdi.api.OsgiServiceProvider;
 
@@ -34,6 +36,7 @@ public class I18NServiceImpl extends BaseService implements I18NService {
 	
 	// Mapstruct refs.
 	private LanguageDTOMapperImpl languageDTOMapper = new LanguageDTOMapperImpl();
+	private LexiconBundleDTOMapperImpl lexiconBundleDTOMapper = new LexiconBundleDTOMapperImpl();
 	
 	@Override
 	public List<LexiconLanguageDTO> getActiveLanguages() {
@@ -62,4 +65,18 @@ public class I18NServiceImpl extends BaseService implements I18NService {
 		}
 		return retVal;
 	}
+	@Override
+	public long getModuleTranslationsVersion(String groupName, String locale) {
+		return keyService.getTranslationBundleVersion(groupName, locale);
+	}
+	@Override
+	public LexiconBundleDTO getModuleTranslationBundle(String groupName, String locale) {
+		return lexiconBundleDTOMapper.toLexiconBundleDTO(
+				keyService.getTranslationBundle(groupName, locale));
+	}
+	@Override
+	public LexiconBundleDTO getModuleTranslationChanges(String groupName, String locale, long sinceVersion) {
+		return lexiconBundleDTOMapper.toLexiconBundleDTO(
+				keyService.getTranslationBundleChanges(groupName, locale, sinceVersion));
+	}
 }
@@ -0,0 +1,12 @@
+package com.eurodyn.qlack2.webdesktop.impl.mappers;
+
+import org.mapstruct.Mapper;
+
+import com.eurodyn.qlack2.fuse.lexicon.api.dto.TranslationBundleDTO;
+import com.eurodyn.qlack2.webdesktop.api.dto.LexiconBundleDTO;
+
+@Mapper
+public interface LexiconBundleDTOMapper {
+	LexiconBundleDTO toLexiconBundleDTO(TranslationBundleDTO dto);
+
+}
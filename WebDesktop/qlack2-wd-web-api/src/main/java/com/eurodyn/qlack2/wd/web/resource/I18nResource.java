@@ -1,8 +1,13 @@
 package com.eurodyn.qlack2.wd.web.resource;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -11,19 +16,33 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.ops4j.pax.cdi.api.OsgiService;
 
 import com.eurodyn.qlack2.webdesktop.api.I18NService;
+import com.eurodyn.qlack2.webdesktop.api.dto.LexiconBundleDTO;
 import com.eurodyn.qlack2.webdesktop.api.dto.LexiconLanguageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Singleton
 @Path("i18n")
 public class I18nResource {
+	private static final Logger LOGGER = Logger.getLogger(I18nResource.class.getName());
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
 	@OsgiService @Inject
 	private I18NService i18nService;
 
+	// The gzip-encoded JSON of the latest bundle of each module and locale.
+	private final Map<String, EncodedBundle> bundles = new ConcurrentHashMap<>();
+
 	@GET
 	@Path("languages")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -44,4 +63,92 @@ public class I18nResource {
 	public Map<String, Map<String, String>> getTranslations(@QueryParam("lang") String locale) {
 		return i18nService.getTranslations(locale);
 	}
+
+	/**
+	 * Returns all translations of a module together with their version, using
+	 * the version as the ETag so that clients can revalidate their cached copy
+	 * without downloading it again. The encoded bundle is kept in memory until
+	 * the version changes.
+	 */
+	@GET
+	@Path("bundles/{groupName}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getModuleTranslationBundle(@PathParam("groupName") String groupName,
+			@QueryParam("lang") String locale, @Context Request request, @Context HttpHeaders headers) {
+		long version = i18nService.getModuleTranslationsVersion(groupName, locale);
+		ResponseBuilder builder = request.evaluatePreconditions(eTag(version));
+		if (builder != null) {
+			return builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+		}
+
+		if (!acceptsGzip(headers)) {
+			LexiconBundleDTO dto = i18nService.getModuleTranslationBundle(groupName, locale);
+			return Response.ok(dto).tag(eTag(dto.getVersion()))
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+		}
+
+		String key = groupName + "/" + locale;
+		EncodedBundle bundle = bundles.get(key);
+		if (bundle == null || bundle.version != version) {
+			LexiconBundleDTO dto = i18nService.getModuleTranslationBundle(groupName, locale);
+			bundle = new EncodedBundle(dto.getVersion(), encode(dto));
+			// Unknown modules are not kept, so that the map cannot grow unbounded.
+			if (!dto.getTranslations().isEmpty()) {
+				bundles.put(key, bundle);
+			}
+		}
+		return Response.ok(bundle.content).tag(eTag(bundle.version))
+				.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+	}
+
+	/**
+	 * Returns the translations of a module changed since the version of the
+	 * bundle the client already has, or a complete bundle if the changes cannot
+	 * be sent as a delta.
+	 */
+	@GET
+	@Path("bundles/{groupName}/changes")
+	@Produces(MediaType.APPLICATION_JSON)
+	public LexiconBundleDTO getModuleTranslationChanges(@PathParam("groupName") String groupName,
+			@QueryParam("lang") String locale, @QueryParam("since") long sinceVersion) {
+		return i18nService.getModuleTranslationChanges(groupName, locale, sinceVersion);
+	}
+
+	private static EntityTag eTag(long version) {
+		return new EntityTag(String.valueOf(version), true);
+	}
+
+	private static boolean acceptsGzip(HttpHeaders headers) {
+		List<String> values = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (values != null) {
+			for (String value : values) {
+				if (value.toLowerCase().contains("gzip")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static byte[] encode(LexiconBundleDTO dto) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			MAPPER.writeValue(gzip, dto);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not encode translation bundle.", e);
+			throw new IllegalStateException("Could not encode translation bundle.", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static class EncodedBundle {
+		private final long version;
+		private final byte[] content;
+
+		EncodedBundle(long version, byte[] content) {
+			this.version = version;
+			this.content = content;
+		}
+	}
 }